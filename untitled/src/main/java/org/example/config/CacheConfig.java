@@ -1,27 +1,51 @@
 package org.example.config;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存配置
+ * 基于 Caffeine（W-TinyLFU 准入/淘汰），每个缓存按 app.cache.specs 中的规格设置容量上限和过期时间，
+ * 启动时全部注册，命中/未命中/淘汰等指标由 Actuator 自动导出到 Micrometer
+ */
 @Configuration
 @EnableCaching
 @EnableAsync
+@EnableConfigurationProperties(CacheConfig.CacheSpecProperties.class)
 public class CacheConfig {
 
     @Bean
-    public CacheManager cacheManager() {
-        return new ConcurrentMapCacheManager(
-            "userMusic",
-            "publicMusic", 
-            "allPublicMusic",
-            "musicById",
-            "musicSearch",
-            "popularMusic",
-            "musicStats"
-        );
+    public CacheManager cacheManager(CacheSpecProperties properties) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        // 未声明规格的缓存名使用默认规格
+        cacheManager.setCacheSpecification(properties.getDefaultSpec());
+        properties.getSpecs().forEach((name, spec) ->
+                cacheManager.registerCustomCache(name, Caffeine.from(spec).recordStats().build()));
+        return cacheManager;
+    }
+
+    /**
+     * 缓存规格：名称 -> Caffeine 规格字符串（如 maximumSize=1000,expireAfterWrite=300s）
+     */
+    @ConfigurationProperties(prefix = "app.cache")
+    public static class CacheSpecProperties {
+        private String defaultSpec = "maximumSize=1000,expireAfterWrite=300s,recordStats";
+        private Map<String, String> specs = new LinkedHashMap<>();
+
+        // getters and setters
+        public String getDefaultSpec() { return defaultSpec; }
+        public void setDefaultSpec(String defaultSpec) { this.defaultSpec = defaultSpec; }
+        public Map<String, String> getSpecs() { return specs; }
+        public void setSpecs(Map<String, String> specs) { this.specs = specs; }
     }
-}
\ No newline at end of file
+}
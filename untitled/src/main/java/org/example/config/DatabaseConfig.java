@@ -51,6 +51,10 @@ public class DatabaseConfig {
     @Value("${spring.datasource.hikari.max-lifetime:1800000}")
     private long maxLifetime;
 
+    // 流式读取连接池，只供备份、汇总对账、推荐模型全量计算等后台任务使用
+    @Value("${app.datasource.streaming.maximum-pool-size:2}")
+    private int streamingPoolSize;
+
     /**
      * 优化的数据源配置
      */
@@ -116,6 +120,35 @@ public class DatabaseConfig {
         return new HikariDataSource(config);
     }
 
+    /**
+     * 大结果集流式读取专用的数据源
+     * 只有这里的连接开启 useCursorFetch（MySQL 服务端游标，按 fetchSize 分批取行），
+     * 主数据源上的普通查询仍一次取回结果，不为每条语句付出游标的往返开销
+     */
+    @Bean(name = "streamingDataSource")
+    public DataSource streamingDataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(dataSourceUrl);
+        config.setUsername(dataSourceUsername);
+        config.setPassword(dataSourcePassword);
+        config.setMaximumPoolSize(streamingPoolSize);
+        config.setMinimumIdle(0);
+        config.setConnectionTimeout(connectionTimeout);
+        config.setIdleTimeout(idleTimeout);
+        config.setMaxLifetime(maxLifetime);
+        config.setReadOnly(true);
+        config.setPoolName("VideoWebsiteStreamingCP");
+
+        config.addDataSourceProperty("useCursorFetch", "true");
+        config.addDataSourceProperty("serverTimezone", "Asia/Shanghai");
+        config.addDataSourceProperty("characterEncoding", "UTF-8");
+        config.addDataSourceProperty("useUnicode", "true");
+        config.addDataSourceProperty("useSSL", "false");
+        config.addDataSourceProperty("allowPublicKeyRetrieval", "true");
+
+        return new HikariDataSource(config);
+    }
+
     /**
      * JPA实体管理器工厂配置
      */
@@ -75,7 +75,7 @@ public class PerformanceConfig implements WebMvcConfigurer {
      * 文件处理专用执行器
      */
     @Bean("fileTaskExecutor")
-    public Executor fileTaskExecutor() {
+    public ThreadPoolTaskExecutor fileTaskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(3);
         executor.setMaxPoolSize(10);
@@ -88,6 +88,44 @@ public class PerformanceConfig implements WebMvcConfigurer {
         return executor;
     }
 
+    /**
+     * 语音识别专用执行器：线程数与识别器池大小一致，队列有界，
+     * 队列满时直接拒绝（识别一首歌需要数十秒，不能退回到调用方线程执行）
+     */
+    @Bean("voskTaskExecutor")
+    public ThreadPoolTaskExecutor voskTaskExecutor(@Value("${app.vosk.pool-size:2}") int poolSize,
+                                                   @Value("${app.vosk.queue-capacity:50}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("vosk-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * HLS 转码专用执行器：默认占用一半 CPU 核心，任务由 HlsTranscodeService 按空闲线程数领取，
+     * 队列只作缓冲，满时拒绝（不能在调用方线程上转码）
+     */
+    @Bean("transcodeTaskExecutor")
+    public ThreadPoolTaskExecutor transcodeTaskExecutor(@Value("${app.transcode.workers:0}") int workers) {
+        int poolSize = workers > 0 ? workers : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(poolSize);
+        executor.setThreadNamePrefix("transcode-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
     /**
      * 异步请求配置
      */
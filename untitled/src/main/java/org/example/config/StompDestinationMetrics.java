@@ -0,0 +1,144 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * STOMP 按目的地统计的消息速率
+ * inbound：客户端发送到 /app 的消息；broker：服务端发布到代理的消息；outbound：推送给客户端的消息（含扇出）。
+ * 目的地中的数字和会话后缀归一化为 {id}，避免每个视频、每个会话生成一个统计项。
+ */
+@Component
+public class StompDestinationMetrics {
+
+    private static final Pattern ID_SEGMENT = Pattern.compile("/(\\d+|[0-9a-fA-F-]{32,36})(?=/|$)");
+    private static final Pattern USER_SESSION_SUFFIX = Pattern.compile("-user[\\w-]+$");
+    private static final String OTHER = "other";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 统计项数量上限，超出的目的地合并到 other
+    @Value("${app.websocket.metrics.max-destinations:200}")
+    private int maxDestinations;
+
+    private final Map<String, DestinationCounter> counters = new ConcurrentHashMap<>();
+
+    private volatile long lastSnapshotNanos = System.nanoTime();
+
+    private final ChannelInterceptor inboundInterceptor = counting("inbound");
+    private final ChannelInterceptor brokerInterceptor = counting("broker");
+    private final ChannelInterceptor outboundInterceptor = counting("outbound");
+
+    public ChannelInterceptor inbound() {
+        return inboundInterceptor;
+    }
+
+    public ChannelInterceptor broker() {
+        return brokerInterceptor;
+    }
+
+    public ChannelInterceptor outbound() {
+        return outboundInterceptor;
+    }
+
+    private ChannelInterceptor counting(String direction) {
+        return new ChannelInterceptor() {
+            @Override
+            public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+                if (!sent) {
+                    return;
+                }
+                SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+                if (type != SimpMessageType.MESSAGE) {
+                    return;
+                }
+                String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+                if (destination != null) {
+                    counter(direction, normalize(destination)).count.increment();
+                }
+            }
+        };
+    }
+
+    private DestinationCounter counter(String direction, String destination) {
+        String key = direction + " " + destination;
+        DestinationCounter counter = counters.get(key);
+        if (counter != null) {
+            return counter;
+        }
+        if (counters.size() >= maxDestinations) {
+            key = direction + " " + OTHER;
+            destination = OTHER;
+        }
+        String finalDestination = destination;
+        return counters.computeIfAbsent(key, k -> {
+            DestinationCounter created = new DestinationCounter();
+            FunctionCounter.builder("websocket.stomp.messages", created.count, LongAdder::sum)
+                    .description("按目的地统计的 STOMP 消息数")
+                    .tag("direction", direction)
+                    .tag("destination", finalDestination)
+                    .register(meterRegistry);
+            return created;
+        });
+    }
+
+    static String normalize(String destination) {
+        String normalized = USER_SESSION_SUFFIX.matcher(destination).replaceFirst("-user{session}");
+        return ID_SEGMENT.matcher(normalized).replaceAll("/{id}");
+    }
+
+    /**
+     * 定期计算每个目的地的每秒消息数
+     */
+    @Scheduled(fixedDelayString = "${app.websocket.metrics.rate-interval-ms:10000}")
+    public void snapshotRates() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - lastSnapshotNanos) / 1e9);
+        lastSnapshotNanos = now;
+        for (DestinationCounter counter : counters.values()) {
+            long total = counter.count.sum();
+            counter.ratePerSecond = (total - counter.lastTotal) / seconds;
+            counter.lastTotal = total;
+        }
+    }
+
+    /**
+     * 方向 -> 目的地 -> {total, ratePerSecond}
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        for (Map.Entry<String, DestinationCounter> entry : counters.entrySet()) {
+            String[] parts = entry.getKey().split(" ", 2);
+            @SuppressWarnings("unchecked")
+            Map<String, Object> byDestination = (Map<String, Object>) stats.computeIfAbsent(parts[0], k -> new HashMap<String, Object>());
+            Map<String, Object> item = new HashMap<>();
+            item.put("total", entry.getValue().count.sum());
+            item.put("ratePerSecond", Math.round(entry.getValue().ratePerSecond * 100) / 100.0);
+            byDestination.put(parts[1], item);
+        }
+        return stats;
+    }
+
+    private static final class DestinationCounter {
+        final LongAdder count = new LongAdder();
+        // 以下字段只在 snapshotRates 中写入
+        volatile long lastTotal;
+        volatile double ratePerSecond;
+    }
+}
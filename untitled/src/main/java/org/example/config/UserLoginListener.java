@@ -34,7 +34,6 @@ public class UserLoginListener implements ApplicationListener<AuthenticationSucc
                 
                 // 设置用户为在线状态
                 userOnlineStatusService.userOnline(user.getId(), "web-login-" + System.currentTimeMillis());
-                userOnlineStatusService.broadcastOnlineCount();
                 
                 System.out.println("用户登录成功，自动设置在线状态: " + user.getUsername() + " (ID: " + user.getId() + ")");
             } else if (principal instanceof UserDetails) {
@@ -48,7 +47,6 @@ public class UserLoginListener implements ApplicationListener<AuthenticationSucc
                     
                     // 设置用户为在线状态
                     userOnlineStatusService.userOnline(user.getId(), "web-login-" + System.currentTimeMillis());
-                    userOnlineStatusService.broadcastOnlineCount();
                     
                     System.out.println("用户登录成功，自动设置在线状态: " + user.getUsername() + " (ID: " + user.getId() + ")");
                 } else {
@@ -1,57 +1,152 @@
 package org.example.config;
 
+import org.example.service.WebSocketSessionRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
 import org.springframework.web.socket.server.HandshakeInterceptor;
 import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 import jakarta.servlet.http.HttpSession;
 
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
  * WebSocket配置类
  * 配置WebSocket消息代理和端点
+ * 代理模式由 app.websocket.broker.mode 决定：simple 为进程内简单代理（开发、单节点）；
+ * relay 把 /topic、/queue 转发到外部 STOMP 代理，用户目的地和广播可以跨节点送达。
+ * 连接的登记、限制和空闲过期统一由 WebSocketSessionRegistry 负责。
  */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
-    // 连接计数器
-    private final AtomicInteger connectionCount = new AtomicInteger(0);
-    private final Map<String, Long> connectionTimes = new ConcurrentHashMap<>();
-    private final Map<String, String> connectionUsers = new ConcurrentHashMap<>();
-    
-    // 更严格的连接限制
-    private static final int MAX_CONNECTIONS = 500; // 降低最大连接数
-    private static final long CONNECTION_TIMEOUT = 180000; // 3分钟超时
-    private static final int MAX_CONNECTIONS_PER_USER = 3; // 每个用户最多3个连接
-    
-    // 定时清理任务
-    private final ScheduledExecutorService cleanupExecutor = Executors.newSingleThreadScheduledExecutor();
-
-    public WebSocketConfig() {
-        // 启动定时清理任务
-        cleanupExecutor.scheduleAtFixedRate(this::cleanupTimeoutConnections, 30, 30, TimeUnit.SECONDS);
-    }
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketConfig.class);
+
+    // 被注册表拒绝的连接没有交给 STOMP 处理器，关闭时也不再通知它
+    private static final String REJECTED_ATTRIBUTE = "websocketRegistryRejected";
+
+    @Autowired
+    private StompDestinationMetrics destinationMetrics;
+
+    // 代理模式：simple 或 relay
+    @Value("${app.websocket.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${app.websocket.broker.relay-host:localhost}")
+    private String relayHost;
+
+    @Value("${app.websocket.broker.relay-port:61613}")
+    private int relayPort;
+
+    @Value("${app.websocket.broker.client-login:guest}")
+    private String clientLogin;
+
+    @Value("${app.websocket.broker.client-passcode:guest}")
+    private String clientPasscode;
+
+    @Value("${app.websocket.broker.system-login:guest}")
+    private String systemLogin;
+
+    @Value("${app.websocket.broker.system-passcode:guest}")
+    private String systemPasscode;
+
+    @Value("${app.websocket.broker.virtual-host:}")
+    private String virtualHost;
+
+    // 与代理之间、简单代理与客户端之间的 STOMP 心跳，注册表据此判断连接是否空闲
+    @Value("${app.websocket.broker.heartbeat-ms:10000}")
+    private long heartbeatMillis;
+
+    // 客户端入站通道（处理 /app 消息和订阅）线程池
+    @Value("${app.websocket.inbound.core-pool-size:8}")
+    private int inboundCorePoolSize;
+
+    @Value("${app.websocket.inbound.max-pool-size:32}")
+    private int inboundMaxPoolSize;
+
+    @Value("${app.websocket.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    // 客户端出站通道（向连接写消息）线程池
+    @Value("${app.websocket.outbound.core-pool-size:16}")
+    private int outboundCorePoolSize;
+
+    @Value("${app.websocket.outbound.max-pool-size:64}")
+    private int outboundMaxPoolSize;
+
+    @Value("${app.websocket.outbound.queue-capacity:50000}")
+    private int outboundQueueCapacity;
+
+    // 单个连接发送超时和缓冲上限，慢客户端超出后断开，不拖住出站线程
+    @Value("${app.websocket.send-time-limit-ms:15000}")
+    private int sendTimeLimitMillis;
+
+    @Value("${app.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${app.websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    @Autowired
+    @Lazy
+    @Qualifier("messageBrokerTaskScheduler")
+    private TaskScheduler messageBrokerTaskScheduler;
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        // 启用简单消息代理，并设置消息代理路径前缀
-        config.enableSimpleBroker("/topic", "/queue", "/user");
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            // 外部 STOMP 代理（ActiveMQ / Artemis 等支持以 / 分隔的目的地名）
+            StompBrokerRelayRegistration relay = config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(clientLogin)
+                    .setClientPasscode(clientPasscode)
+                    .setSystemLogin(systemLogin)
+                    .setSystemPasscode(systemPasscode)
+                    .setSystemHeartbeatSendInterval(heartbeatMillis)
+                    .setSystemHeartbeatReceiveInterval(heartbeatMillis)
+                    // 本节点找不到会话的用户消息广播给其他节点，并同步各节点的用户注册表
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                    .setUserRegistryBroadcast("/topic/simp-user-registry");
+            if (!virtualHost.isEmpty()) {
+                relay.setVirtualHost(virtualHost);
+            }
+        } else {
+            // 启用简单消息代理，并设置消息代理路径前缀
+            config.enableSimpleBroker("/topic", "/queue", "/user")
+                    .setHeartbeatValue(new long[]{heartbeatMillis, heartbeatMillis})
+                    .setTaskScheduler(messageBrokerTaskScheduler);
+        }
+
+        config.configureBrokerChannel().interceptors(destinationMetrics.broker());
 
         // 设置应用程序消息前缀
         config.setApplicationDestinationPrefixes("/app");
@@ -60,6 +155,77 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         config.setUserDestinationPrefix("/user");
     }
 
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // 有界队列：核心线程忙且队列满时才扩容到最大线程数
+        registration.taskExecutor()
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity)
+                .keepAliveSeconds(60);
+        registration.interceptors(destinationMetrics.inbound());
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity)
+                .keepAliveSeconds(60);
+        registration.interceptors(destinationMetrics.outbound());
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMillis)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit)
+                .addDecoratorFactory(this::registering);
+    }
+
+    /**
+     * 连接建立时登记到注册表（超出总数或单用户上限时关闭），收到帧时刷新活跃时间，关闭时注销
+     */
+    private WebSocketHandler registering(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                String username = session.getPrincipal() != null
+                        ? session.getPrincipal().getName()
+                        : (String) session.getAttributes().get("username");
+                WebSocketSessionRegistry.Admission admission = sessionRegistry.tryRegister(session.getId(), username, session);
+                if (admission != WebSocketSessionRegistry.Admission.ACCEPTED) {
+                    session.getAttributes().put(REJECTED_ATTRIBUTE, admission);
+                }
+                if (admission == WebSocketSessionRegistry.Admission.REJECTED_PER_USER) {
+                    session.close(CloseStatus.POLICY_VIOLATION.withReason("too many connections for user"));
+                    return;
+                }
+                if (admission == WebSocketSessionRegistry.Admission.REJECTED_GLOBAL) {
+                    session.close(CloseStatus.SERVICE_OVERLOAD);
+                    return;
+                }
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                sessionRegistry.touch(session.getId());
+                super.handleMessage(session, message);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                // 先注销，断开事件的监听器据此判断用户是否还有其他连接
+                sessionRegistry.unregister(session.getId());
+                if (!session.getAttributes().containsKey(REJECTED_ATTRIBUTE)) {
+                    super.afterConnectionClosed(session, closeStatus);
+                }
+            }
+        };
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         // 注册WebSocket端点，并允许跨域
@@ -70,16 +236,12 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                     public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
                                                    WebSocketHandler wsHandler, Map<String, Object> attributes) throws Exception {
                         try {
-                            // 检查连接数量限制
-                            int currentConnections = connectionCount.get();
-                            if (currentConnections >= MAX_CONNECTIONS) {
-                                System.err.println("WebSocket连接数达到上限: " + currentConnections + "/" + MAX_CONNECTIONS);
+                            // 快速拒绝，连接建立后由注册表原子地检查总数和单用户上限
+                            if (sessionRegistry.isAtCapacity()) {
+                                logger.warn("WebSocket连接数达到上限: {}", sessionRegistry.getMaxConnections());
                                 return false;
                             }
 
-                            // 清理超时连接
-                            cleanupTimeoutConnections();
-
                             String username = null;
                             String sessionId = null;
 
@@ -91,7 +253,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
                                 if (session != null) {
                                     sessionId = session.getId();
-                                    System.out.println("WebSocket握手：找到HTTP会话，ID: " + sessionId);
+                                    logger.debug("WebSocket握手：找到HTTP会话，ID: {}", sessionId);
 
                                     // 从会话中获取Spring Security的认证信息
                                     Object securityContext = session.getAttribute("SPRING_SECURITY_CONTEXT");
@@ -99,7 +261,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                                         Authentication auth = ((org.springframework.security.core.context.SecurityContext) securityContext).getAuthentication();
                                         if (auth != null && auth.isAuthenticated() && !"anonymousUser".equals(auth.getName())) {
                                             username = auth.getName();
-                                            System.out.println("WebSocket握手：从会话获取用户 " + username);
+                                            logger.debug("WebSocket握手：从会话获取用户 {}", username);
                                         }
                                     }
 
@@ -108,7 +270,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                                         Object userObj = session.getAttribute("user");
                                         if (userObj != null) {
                                             username = userObj.toString();
-                                            System.out.println("WebSocket握手：从会话属性获取用户 " + username);
+                                            logger.debug("WebSocket握手：从会话属性获取用户 {}", username);
                                         }
                                     }
                                 }
@@ -119,16 +281,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                                 Authentication auth = SecurityContextHolder.getContext().getAuthentication();
                                 if (auth != null && auth.isAuthenticated() && !"anonymousUser".equals(auth.getName())) {
                                     username = auth.getName();
-                                    System.out.println("WebSocket握手：从SecurityContext获取用户 " + username);
-                                }
-                            }
-
-                            // 检查用户连接数限制
-                            if (username != null) {
-                                int userConnections = countUserConnections(username);
-                                if (userConnections >= MAX_CONNECTIONS_PER_USER) {
-                                    System.err.println("用户 " + username + " 连接数达到上限: " + userConnections + "/" + MAX_CONNECTIONS_PER_USER);
-                                    return false;
+                                    logger.debug("WebSocket握手：从SecurityContext获取用户 {}", username);
                                 }
                             }
 
@@ -136,21 +289,10 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                                 attributes.put("username", username);
                                 attributes.put("sessionId", sessionId);
                                 attributes.put("connectionTime", System.currentTimeMillis());
-                                
-                                // 增加连接计数
-                                connectionCount.incrementAndGet();
-                                String connectionKey = sessionId != null ? sessionId : username + "_" + System.currentTimeMillis();
-                                connectionTimes.put(connectionKey, System.currentTimeMillis());
-                                connectionUsers.put(connectionKey, username);
-                                
-                                System.out.println("WebSocket握手：用户 " + username + " 连接成功，当前连接数: " + connectionCount.get() + "/" + MAX_CONNECTIONS);
-                            } else {
-                                System.out.println("WebSocket握手：匿名用户连接");
                             }
 
                         } catch (Exception e) {
-                            System.err.println("WebSocket握手处理出错: " + e.getMessage());
-                            e.printStackTrace();
+                            logger.warn("WebSocket握手处理出错: {}", e.getMessage(), e);
                             return false;
                         }
                         return true;
@@ -159,11 +301,8 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                     @Override
                     public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
                                                WebSocketHandler wsHandler, Exception exception) {
-                        // 握手完成后的处理
                         if (exception != null) {
-                            System.err.println("WebSocket握手失败: " + exception.getMessage());
-                            // 减少连接计数
-                            connectionCount.decrementAndGet();
+                            logger.warn("WebSocket握手失败: {}", exception.getMessage());
                         }
                     }
                 })
@@ -176,100 +315,52 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     }
 
     /**
-     * 配置WebSocket容器
+     * 关闭时先停止客户端入站/出站通道线程池
+     * Web 容器在生命周期停止阶段就关闭，早于线程池 Bean 的销毁，Tomcat 会把仍在运行的通道线程报告为泄漏；
+     * 该阶段排在 STOMP 处理器（DEFAULT_PHASE）之后、Web 容器之前
      */
     @Bean
-    public ServletServerContainerFactoryBean createWebSocketContainer() {
-        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
-        container.setMaxTextMessageBufferSize(4096); // 减少缓冲区大小
-        container.setMaxBinaryMessageBufferSize(4096);
-        container.setMaxSessionIdleTimeout(180000L); // 3分钟空闲超时
-        container.setAsyncSendTimeout(10000L); // 10秒异步发送超时
-        return container;
-    }
+    public SmartLifecycle channelExecutorShutdown(
+            @Qualifier("clientInboundChannelExecutor") ThreadPoolTaskExecutor inboundExecutor,
+            @Qualifier("clientOutboundChannelExecutor") ThreadPoolTaskExecutor outboundExecutor) {
+        return new SmartLifecycle() {
+            private volatile boolean running;
 
-    /**
-     * 清理超时连接
-     */
-    private void cleanupTimeoutConnections() {
-        long currentTime = System.currentTimeMillis();
-        connectionTimes.entrySet().removeIf(entry -> {
-            if (currentTime - entry.getValue() > CONNECTION_TIMEOUT) {
-                connectionCount.decrementAndGet();
-                String username = connectionUsers.remove(entry.getKey());
-                System.out.println("清理超时连接: " + entry.getKey() + " (用户: " + username + ")");
-                return true;
+            @Override
+            public void start() {
+                running = true;
             }
-            return false;
-        });
-    }
-
-    /**
-     * 统计用户连接数
-     */
-    private int countUserConnections(String username) {
-        return (int) connectionUsers.values().stream()
-                .filter(user -> user.equals(username))
-                .count();
-    }
 
-    /**
-     * 获取当前连接数
-     */
-    public int getCurrentConnectionCount() {
-        return connectionCount.get();
-    }
-
-    /**
-     * 获取最大连接数
-     */
-    public int getMaxConnectionCount() {
-        return MAX_CONNECTIONS;
-    }
-
-    /**
-     * 移除连接
-     */
-    public void removeConnection(String sessionId) {
-        if (connectionTimes.remove(sessionId) != null) {
-            connectionCount.decrementAndGet();
-            String username = connectionUsers.remove(sessionId);
-            System.out.println("移除WebSocket连接: " + sessionId + " (用户: " + username + ")，当前连接数: " + connectionCount.get());
-        }
-    }
+            @Override
+            public void stop() {
+                inboundExecutor.shutdown();
+                outboundExecutor.shutdown();
+                running = false;
+            }
 
-    /**
-     * 获取连接统计信息
-     */
-    public Map<String, Object> getConnectionStats() {
-        Map<String, Object> stats = new ConcurrentHashMap<>();
-        stats.put("currentConnections", connectionCount.get());
-        stats.put("maxConnections", MAX_CONNECTIONS);
-        stats.put("connectionTimeout", CONNECTION_TIMEOUT);
-        stats.put("maxConnectionsPerUser", MAX_CONNECTIONS_PER_USER);
-        stats.put("activeUsers", connectionUsers.values().stream().distinct().count());
-        return stats;
-    }
+            @Override
+            public boolean isRunning() {
+                return running;
+            }
 
-    /**
-     * 重置连接计数（紧急情况使用）
-     */
-    public void resetConnectionCount() {
-        int oldCount = connectionCount.get();
-        connectionCount.set(0);
-        connectionTimes.clear();
-        connectionUsers.clear();
-        System.out.println("⚠️  紧急重置WebSocket连接计数: " + oldCount + " -> 0");
+            @Override
+            public int getPhase() {
+                return DEFAULT_PHASE - 512;
+            }
+        };
     }
 
     /**
-     * 强制清理所有连接
+     * 配置WebSocket容器
      */
-    public void forceCleanupAllConnections() {
-        int oldCount = connectionCount.get();
-        connectionCount.set(0);
-        connectionTimes.clear();
-        connectionUsers.clear();
-        System.out.println("🧹 强制清理所有WebSocket连接: " + oldCount + " -> 0");
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        // 与 STOMP 的消息大小上限一致，否则超过 4K 的帧在容器层就被拒绝
+        container.setMaxTextMessageBufferSize(messageSizeLimit);
+        container.setMaxBinaryMessageBufferSize(messageSizeLimit);
+        container.setMaxSessionIdleTimeout(180000L); // 3分钟空闲超时
+        container.setAsyncSendTimeout(10000L); // 10秒异步发送超时
+        return container;
     }
 }
@@ -1,8 +1,8 @@
 package org.example.config;
 
-import org.example.controller.WebRTCSignalingController;
 import org.example.service.UserOnlineStatusService;
 import org.example.service.UserService;
+import org.example.service.WebSocketSessionRegistry;
 import org.example.entity.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,7 +27,7 @@ public class WebSocketEventListener {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketEventListener.class);
 
     @Autowired
-    private WebRTCSignalingController webRTCSignalingController;
+    private WebSocketSessionRegistry sessionRegistry;
 
     @Autowired
     private UserOnlineStatusService userOnlineStatusService;
@@ -71,7 +71,6 @@ public class WebSocketEventListener {
                     Long userId = user.getId();
                     sessionUserMap.put(sessionId, userId);
                     userOnlineStatusService.userOnline(userId, sessionId);
-                    userOnlineStatusService.broadcastOnlineCount();
 
                     logger.info("用户上线: {} (ID: {})", user.getUsername(), userId);
                 } else {
@@ -96,15 +95,17 @@ public class WebSocketEventListener {
         logger.info("=== WebSocket连接断开 ===");
         logger.info("会话ID: {}", sessionId);
 
-        // 处理用户离线
-        webRTCSignalingController.handleUserDisconnect(sessionId);
-
-        // 处理用户在线状态
+        // 处理用户在线状态：注册表已先注销本连接，用户仍有其他连接（其他标签页）时保持在线
         try {
             Long userId = sessionUserMap.remove(sessionId);
-            if (userId != null) {
+            String username = event.getUser() != null ? event.getUser().getName() : null;
+            if (username == null && headerAccessor.getSessionAttributes() != null) {
+                username = (String) headerAccessor.getSessionAttributes().get("username");
+            }
+            if (userId != null && username != null && sessionRegistry.isUserConnected(username)) {
+                logger.info("用户仍有其他连接: ID {}", userId);
+            } else if (userId != null) {
                 userOnlineStatusService.userOffline(userId);
-                userOnlineStatusService.broadcastOnlineCount();
 
                 logger.info("用户下线: ID {}", userId);
             }
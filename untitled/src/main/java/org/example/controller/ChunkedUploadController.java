@@ -0,0 +1,274 @@
+package org.example.controller;
+
+import org.example.entity.Category;
+import org.example.entity.Tag;
+import org.example.entity.UploadSession;
+import org.example.entity.User;
+import org.example.entity.Video;
+import org.example.service.AchievementService;
+import org.example.service.CategoryService;
+import org.example.service.ChunkedUploadService;
+import org.example.service.FileUploadService;
+import org.example.service.HlsTranscodeService;
+import org.example.service.TagService;
+import org.example.service.ThumbnailGenerationService;
+import org.example.service.UserLogService;
+import org.example.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 可续传的分片上传接口
+ * POST 创建会话 -> PUT 逐个（可并行）上传分片 -> GET 查询缺失分片续传 -> POST complete 登记为视频
+ * 分片以原始字节作为请求体，可选 X-Chunk-SHA256 头校验内容
+ */
+@RestController
+@RequestMapping("/api/uploads")
+public class ChunkedUploadController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadController.class);
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FileUploadService fileUploadService;
+
+    @Autowired
+    private ThumbnailGenerationService thumbnailGenerationService;
+
+    @Autowired
+    private HlsTranscodeService hlsTranscodeService;
+
+    @Autowired
+    private TagService tagService;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private AchievementService achievementService;
+
+    @Autowired
+    private UserLogService userLogService;
+
+    /**
+     * 创建上传会话
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> create(@RequestParam String fileName,
+                                                      @RequestParam long totalSize,
+                                                      Authentication authentication) {
+        Optional<User> user = currentUser(authentication);
+        if (user.isEmpty()) {
+            return error(401, "请先登录");
+        }
+        try {
+            UploadSession session = chunkedUploadService.create(user.get().getId(), fileName, totalSize);
+            Map<String, Object> response = chunkedUploadService.getProgress(session.getId(), user.get().getId());
+            response.put("success", true);
+            return ResponseEntity.status(201).body(response);
+        } catch (IllegalArgumentException e) {
+            return error(400, e.getMessage());
+        } catch (IllegalStateException e) {
+            return error(429, e.getMessage());
+        } catch (Exception e) {
+            logger.error("创建分片上传会话失败: {}", e.getMessage(), e);
+            return error(500, "创建上传失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 上传一个分片；重复上传已接收的分片直接返回当前进度
+     */
+    @PutMapping("/{id}/chunks/{index}")
+    public ResponseEntity<Map<String, Object>> uploadChunk(@PathVariable String id,
+                                                           @PathVariable int index,
+                                                           @RequestHeader(value = "X-Chunk-SHA256", required = false) String sha256,
+                                                           HttpServletRequest request,
+                                                           Authentication authentication) {
+        Optional<User> user = currentUser(authentication);
+        if (user.isEmpty()) {
+            return error(401, "请先登录");
+        }
+        try {
+            Map<String, Object> response = chunkedUploadService.writeChunk(id, user.get().getId(), index,
+                    request.getContentLengthLong(), request.getInputStream(), sha256);
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return error(400, e.getMessage());
+        } catch (IllegalStateException e) {
+            return error(409, e.getMessage());
+        } catch (Exception e) {
+            logger.warn("分片写入失败: {} #{} - {}", id, index, e.getMessage());
+            return error(500, "分片写入失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询上传进度和缺失的分片
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> status(@PathVariable String id, Authentication authentication) {
+        Optional<User> user = currentUser(authentication);
+        if (user.isEmpty()) {
+            return error(401, "请先登录");
+        }
+        try {
+            Map<String, Object> response = chunkedUploadService.getProgress(id, user.get().getId());
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return error(404, e.getMessage());
+        }
+    }
+
+    /**
+     * 全部分片到齐后登记为视频，后续处理与普通上传一致
+     */
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<Map<String, Object>> complete(@PathVariable String id,
+                                                        @RequestParam String title,
+                                                        @RequestParam(required = false) String description,
+                                                        @RequestParam(required = false) String thumbnailUrl,
+                                                        @RequestParam(value = "category", required = false) String categoryName,
+                                                        @RequestParam(required = false) String selectedTags,
+                                                        Authentication authentication) {
+        Optional<User> userOpt = currentUser(authentication);
+        if (userOpt.isEmpty()) {
+            return error(401, "请先登录");
+        }
+        if (title == null || title.trim().isEmpty()) {
+            return error(400, "请输入视频标题");
+        }
+        User user = userOpt.get();
+
+        Video video = new Video();
+        video.setTitle(title.trim());
+        video.setDescription(description != null ? description.trim() : "");
+
+        String generatedThumbnail = null;
+        if (thumbnailUrl != null && !thumbnailUrl.trim().isEmpty()) {
+            // 只接受本站已上传的缩略图，不接受外部地址或上传目录以外的路径
+            String thumbnail = thumbnailUrl.trim();
+            Path thumbnailFile = fileUploadService.resolveWebPath(thumbnail);
+            if (thumbnailFile == null || !thumbnailFile.startsWith(fileUploadService.getUploadRoot().resolve("thumbnails"))
+                    || !Files.isRegularFile(thumbnailFile)) {
+                return error(400, "缩略图地址无效");
+            }
+            video.setThumbnail(thumbnail);
+        } else {
+            generatedThumbnail = thumbnailGenerationService.generateDefaultThumbnail(title);
+            video.setThumbnail(generatedThumbnail);
+        }
+
+        if (selectedTags != null && !selectedTags.trim().isEmpty()) {
+            try {
+                List<String> tagNames = Arrays.asList(selectedTags.split(","));
+                Set<Tag> tags = tagService.getOrCreateTags(tagNames, user);
+                video.setTags(tags);
+            } catch (Exception e) {
+                logger.warn("处理标签失败: {}", e.getMessage());
+            }
+        }
+
+        if (categoryName != null && !categoryName.trim().isEmpty()) {
+            Optional<Category> category = categoryService.getCategoryByName(categoryName.trim());
+            category.ifPresent(video::setCategory);
+        }
+
+        video.setViews(0L);
+        video.setLikeCount(0);
+        video.setFavoriteCount(0);
+        video.setStatus(Video.VideoStatus.PENDING);
+
+        try {
+            Video savedVideo = chunkedUploadService.commit(id, user, video);
+
+            // 与普通上传相同：后台抽帧、HLS 转码
+            thumbnailGenerationService.scheduleFrameExtraction(savedVideo.getId(), savedVideo.getFilePath(),
+                    generatedThumbnail);
+            hlsTranscodeService.dispatch();
+
+            userLogService.logUserAction("VIDEO_UPLOAD_SUCCESS",
+                String.format("Video uploaded successfully: ID=%d, Title=%s",
+                    savedVideo.getId(), savedVideo.getTitle()));
+
+            try {
+                achievementService.triggerAchievementCheck(user, "UPLOAD_VIDEO");
+            } catch (Exception e) {
+                logger.warn("成就检查失败: {}", e.getMessage());
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("videoId", savedVideo.getId());
+            response.put("message", "视频上传成功！视频正在审核中，请稍后查看。");
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return error(404, e.getMessage());
+        } catch (IllegalStateException e) {
+            return error(409, e.getMessage());
+        } catch (Exception e) {
+            userLogService.logError("VIDEO_UPLOAD_ERROR",
+                String.format("Chunked upload commit failed for user %s: %s",
+                    authentication.getName(), e.getMessage()), e);
+            return error(500, "上传失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 取消上传
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> abort(@PathVariable String id, Authentication authentication) {
+        Optional<User> user = currentUser(authentication);
+        if (user.isEmpty()) {
+            return error(401, "请先登录");
+        }
+        try {
+            chunkedUploadService.abort(id, user.get().getId());
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return error(404, e.getMessage());
+        } catch (IllegalStateException e) {
+            return error(409, e.getMessage());
+        } catch (Exception e) {
+            return error(500, "取消上传失败: " + e.getMessage());
+        }
+    }
+
+    private Optional<User> currentUser(Authentication authentication) {
+        if (authentication == null) {
+            return Optional.empty();
+        }
+        return userService.findByUsername(authentication.getName());
+    }
+
+    private static ResponseEntity<Map<String, Object>> error(int status, String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", message);
+        return ResponseEntity.status(status).body(response);
+    }
+}
@@ -71,7 +71,8 @@ public class LogController {
         status.put("recentErrors", recentErrors);
         status.put("errorCount", recentErrors.size());
         
-        // 这里可以添加更多系统状态信息
+        // 日志写入队列深度与丢弃计数
+        status.put("logIngestion", userLogService.getIngestionStats());
         status.put("timestamp", System.currentTimeMillis());
         status.put("status", recentErrors.isEmpty() ? "HEALTHY" : "WARNING");
         
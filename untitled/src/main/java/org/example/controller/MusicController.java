@@ -1,6 +1,5 @@
 package org.example.controller;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -8,8 +7,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+import org.example.entity.LyricJob;
 import org.example.entity.Music;
 import org.example.entity.User;
+import org.example.service.LyricJobService;
 import org.example.service.LyricsService;
 import org.example.service.MusicService;
 import org.example.service.UserService;
@@ -19,6 +20,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -53,6 +56,9 @@ public class MusicController {
     @Qualifier("voskAudioRecognitionService")
     private VoskAudioRecognitionService voskAudioRecognitionService;
 
+    @Autowired
+    private LyricJobService lyricJobService;
+
     /**
      * 新的音乐主页
      */
@@ -412,38 +418,53 @@ public class MusicController {
                 return "{\"success\": false, \"message\": \"无权限操作此音乐\"}";
             }
 
-            logger.info("开始Vosk识别: " + music.getTitle());
-
-            // 异步处理音频识别
-            voskAudioRecognitionService.processAudioToLyricsAsync(music.getFilePath())
-                .thenAccept(lyrics -> {
-                    try {
-                        if (!lyrics.isEmpty()) {
-                            // 转换为LRC格式
-                            String lrcLyrics = convertToLrcFormat(lyrics);
-                            music.setLyrics(lrcLyrics);
-                            musicService.save(music);
-
-                            System.out.println("Vosk自动生成歌词成功: " + music.getTitle());
-                        } else {
-                            System.out.println("Vosk识别结果为空: " + music.getTitle());
-                        }
-                    } catch (Exception e) {
-                        System.err.println("保存Vosk识别歌词失败: " + e.getMessage());
-                    }
-                })
-                .exceptionally(throwable -> {
-                    System.err.println("Vosk自动生成歌词失败: " + throwable.getMessage());
-                    return null;
-                });
-
-            return "{\"success\": true, \"message\": \"Vosk歌词识别任务已启动，请稍后刷新查看结果\"}";
+            LyricJob job = lyricJobService.enqueue(music, user.getId());
+            logger.info("Vosk歌词识别任务: {} (音乐 {}, 状态 {})", job.getId(), music.getTitle(), job.getStatus());
+
+            if (job.getStatus() == LyricJob.Status.COMPLETED) {
+                return "{\"success\": true, \"cached\": true, \"jobId\": " + job.getId() +
+                       ", \"status\": \"COMPLETED\", \"message\": \"该音频已识别过，歌词已更新\"}";
+            }
+            return "{\"success\": true, \"jobId\": " + job.getId() +
+                   ", \"status\": \"" + job.getStatus() + "\"" +
+                   ", \"topic\": \"/topic/lyric-jobs/" + job.getId() + "\"" +
+                   ", \"message\": \"Vosk歌词识别任务已启动，请稍后刷新查看结果\"}";
 
         } catch (Exception e) {
             return "{\"success\": false, \"message\": \"处理失败：" + e.getMessage() + "\"}";
         }
     }
 
+    /**
+     * 查询歌词识别任务进度，仅限提交者、音乐所有者和管理员
+     */
+    @GetMapping("/api/lyric-jobs/{id}")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> getLyricJob(@PathVariable Long id, Authentication auth) {
+        if (auth == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Optional<User> userOpt = userService.findByUsername(auth.getName());
+        if (!userOpt.isPresent()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Optional<LyricJob> jobOpt = lyricJobService.findById(id);
+        if (!jobOpt.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        User user = userOpt.get();
+        LyricJob job = jobOpt.get();
+        // 同一首音乐进行中的任务会返回给后来的提交者，音乐所有者也可以查询
+        boolean allowed = user.getId().equals(job.getRequestedBy())
+                || "ADMIN".equals(user.getRole())
+                || musicService.findById(job.getMusicId()).map(m -> user.getId().equals(m.getUserId())).orElse(false);
+        if (!allowed) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(LyricJobService.toProgress(job));
+    }
+
     /**
      * 测试页面
      */
@@ -514,56 +535,10 @@ public class MusicController {
         try {
             logger.info("开始自动生成歌词: " + music.getTitle());
 
-            // 转换Web路径为文件系统路径
-            String webPath = music.getFilePath(); // 例如: /uploads/music/xxx.mp3
-            String filePath = webPath.startsWith("/") ? webPath.substring(1) : webPath; // 去掉开头的"/"
-            File audioFile = new File(filePath);
-
-            logger.info("音频文件路径: {}", audioFile.getAbsolutePath());
-            logger.info("文件是否存在: {}", audioFile.exists());
-
-            // 异步处理音频识别 - 使用绝对路径
-            voskAudioRecognitionService.processAudioToLyricsAsync(audioFile.getAbsolutePath())
-                .thenAccept(lyrics -> {
-                    try {
-                        if (!lyrics.isEmpty()) {
-                            // 直接使用识别结果，不管准确性如何
-                            String lrcLyrics = convertToLrcFormat(lyrics);
-                            music.setLyrics(lrcLyrics);
-                            musicService.save(music);
-                            logger.info("自动生成歌词完成: " + music.getTitle());
-                        } else {
-                            logger.warn("Vosk识别结果为空: " + music.getTitle());
-                        }
-                    } catch (Exception e) {
-                        logger.error("保存自动生成歌词失败: " + e.getMessage());
-                    }
-                })
-                .exceptionally(throwable -> {
-                    logger.error("自动生成歌词失败: " + throwable.getMessage());
-                    return null;
-                });
-
+            LyricJob job = lyricJobService.enqueue(music, music.getUserId());
+            logger.info("歌词识别任务: {} (状态 {})", job.getId(), job.getStatus());
         } catch (Exception e) {
             logger.error("启动自动歌词生成失败: " + e.getMessage());
         }
     }
-
-    /**
-     * 转换为LRC格式
-     */
-    private String convertToLrcFormat(List<LyricsService.LyricLine> lyrics) {
-        StringBuilder lrc = new StringBuilder();
-        for (LyricsService.LyricLine lyric : lyrics) {
-            int minutes = (int) (lyric.getTime() / 60);
-            int seconds = (int) (lyric.getTime() % 60);
-            int centiseconds = (int) ((lyric.getTime() % 1) * 100);
-
-            lrc.append(String.format("[%02d:%02d.%02d]%s\n",
-                minutes, seconds, centiseconds, lyric.getText()));
-        }
-        return lrc.toString();
-    }
-
-
 }
@@ -149,6 +149,8 @@ public class PostsController {
         }
 
         UserMoment moment = momentOpt.get();
+        momentService.incrementViewCount(momentId);
+        momentService.applyPendingViews(moment);
         model.addAttribute("moment", moment);
 
         // 解析图片路径
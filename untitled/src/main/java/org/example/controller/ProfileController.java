@@ -95,7 +95,7 @@ public class ProfileController {
             UserStats userStats = new UserStats(
                 userVideos.size(),
                 userVideos.stream().mapToLong(v -> v.getViews() != null ? v.getViews() : 0).sum(),
-                0L, // TODO: 实现评论统计
+                (Long) userStatsMap.get("totalComments"),
                 userVideos.stream().mapToLong(v -> v.getLikeCount() != null ? v.getLikeCount() : 0).sum(),
                 userVideos.stream().mapToLong(v -> v.getFavoriteCount() != null ? v.getFavoriteCount() : 0).sum()
             );
@@ -4,6 +4,8 @@ import org.example.dto.RealtimeCommentMessage;
 import org.example.entity.Comment;
 import org.example.entity.User;
 import org.example.service.CommentService;
+import org.example.service.DanmakuService;
+import org.example.service.VideoPresenceService;
 import org.example.service.UserService;
 import org.example.service.AchievementService;
 import org.example.service.UserLevelService;
@@ -19,6 +21,8 @@ import org.slf4j.LoggerFactory;
 
 import java.security.Principal;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -46,7 +50,10 @@ public class RealtimeCommentController {
     private WebRTCSignalingController webRTCSignalingController;
 
     @Autowired
-    private org.example.service.UserOnlineStatusService userOnlineStatusService;
+    private DanmakuService danmakuService;
+
+    @Autowired
+    private VideoPresenceService videoPresenceService;
 
     /**
      * 处理实时评论消息
@@ -117,108 +124,44 @@ public class RealtimeCommentController {
                 return;
             }
 
-            String username = principal.getName();
-            Optional<User> userOpt = userService.findByUsername(username);
-            if (!userOpt.isPresent()) {
-                return;
-            }
-
-            User user = userOpt.get();
-
-            // 创建弹幕消息
-            RealtimeCommentMessage danmakuMessage = new RealtimeCommentMessage();
-            danmakuMessage.setContent(message.getContent());
-            danmakuMessage.setVideoId(message.getVideoId());
-            danmakuMessage.setUsername(user.getUsername());
-            danmakuMessage.setUserAvatar(user.getAvatar());
-            danmakuMessage.setTime(message.getTime());
-            danmakuMessage.setCreatedAt(LocalDateTime.now());
-            danmakuMessage.setType("DANMAKU");
-
-            // WebSocket功能已删除，弹幕广播功能暂时禁用
-
-            System.out.println("弹幕发送成功: " + message.getContent());
+            // 限流、落库和按帧推送都由弹幕服务处理
+            danmakuService.send(principal.getName(), message.getVideoId(), message.getContent(),
+                    message.getTime(), message.getColor(), message.getFontSize());
 
+        } catch (DanmakuService.RateLimitedException e) {
+            logger.debug("弹幕发送过于频繁: {}", principal.getName());
+        } catch (IllegalArgumentException e) {
+            logger.debug("弹幕被拒绝: {} - {}", principal.getName(), e.getMessage());
         } catch (Exception e) {
-            System.err.println("处理弹幕失败: " + e.getMessage());
-            e.printStackTrace();
+            logger.error("处理弹幕失败: {}", e.getMessage(), e);
         }
     }
 
     /**
-     * 用户加入视频观看
+     * 加入视频观看，按 STOMP 会话计入观看人数（未登录用户同样计入）
      */
     @MessageMapping("/video.join")
     public void joinVideo(@Payload RealtimeCommentMessage message,
-                         Principal principal) {
-        try {
-            if (principal == null) {
-                return;
-            }
-
-            String username = principal.getName();
-            Optional<User> userOpt = userService.findByUsername(username);
-            if (!userOpt.isPresent()) {
-                return;
-            }
-
-            User user = userOpt.get();
-
-            // 创建加入消息
-            RealtimeCommentMessage joinMessage = new RealtimeCommentMessage();
-            joinMessage.setVideoId(message.getVideoId());
-            joinMessage.setUsername(user.getUsername());
-            joinMessage.setUserAvatar(user.getAvatar());
-            joinMessage.setCreatedAt(LocalDateTime.now());
-            joinMessage.setType("USER_JOIN");
-            joinMessage.setContent(user.getUsername() + " 加入了观看");
-
-            // WebSocket功能已删除，用户活动广播功能暂时禁用
-
-            System.out.println("用户加入视频观看: " + username);
+                         SimpMessageHeaderAccessor headerAccessor) {
+        videoPresenceService.join(headerAccessor.getSessionId(), message.getVideoId());
+    }
 
-        } catch (Exception e) {
-            System.err.println("处理用户加入失败: " + e.getMessage());
-            e.printStackTrace();
-        }
+    /**
+     * 观看心跳，超过 app.presence.ttl-ms 未收到心跳的会话不再计入
+     */
+    @MessageMapping("/video.heartbeat")
+    public void heartbeat(@Payload RealtimeCommentMessage message,
+                          SimpMessageHeaderAccessor headerAccessor) {
+        videoPresenceService.heartbeat(headerAccessor.getSessionId(), message.getVideoId());
     }
 
     /**
-     * 用户离开视频观看
+     * 离开视频观看；会话断开时也会自动离开
      */
     @MessageMapping("/video.leave")
     public void leaveVideo(@Payload RealtimeCommentMessage message,
-                          Principal principal) {
-        try {
-            if (principal == null) {
-                return;
-            }
-
-            String username = principal.getName();
-            Optional<User> userOpt = userService.findByUsername(username);
-            if (!userOpt.isPresent()) {
-                return;
-            }
-
-            User user = userOpt.get();
-
-            // 创建离开消息
-            RealtimeCommentMessage leaveMessage = new RealtimeCommentMessage();
-            leaveMessage.setVideoId(message.getVideoId());
-            leaveMessage.setUsername(user.getUsername());
-            leaveMessage.setUserAvatar(user.getAvatar());
-            leaveMessage.setCreatedAt(LocalDateTime.now());
-            leaveMessage.setType("USER_LEAVE");
-            leaveMessage.setContent(user.getUsername() + " 离开了观看");
-
-            // WebSocket功能已删除，用户活动广播功能暂时禁用
-
-            System.out.println("用户离开视频观看: " + username);
-
-        } catch (Exception e) {
-            System.err.println("处理用户离开失败: " + e.getMessage());
-            e.printStackTrace();
-        }
+                          SimpMessageHeaderAccessor headerAccessor) {
+        videoPresenceService.leave(headerAccessor.getSessionId(), message.getVideoId());
     }
 
     /**
@@ -227,25 +170,26 @@ public class RealtimeCommentController {
     @GetMapping("/api/video/{videoId}/viewers")
     @ResponseBody
     public int getViewerCount(@PathVariable Long videoId) {
-        // 从WebRTC信令控制器获取在线用户数
-        try {
-            // 这里可以进一步优化，根据具体视频获取观看人数
-            // 目前返回总在线用户数作为观看人数的估算
-            return userOnlineStatusService.getOnlineUserCount();
-        } catch (Exception e) {
-            logger.error("获取在线观看人数失败: {}", e.getMessage());
-            return 0;
-        }
+        return videoPresenceService.getViewerCount(videoId);
+    }
+
+    /**
+     * REST API - 正在观看人数最多的视频
+     */
+    @GetMapping("/api/live/top-videos")
+    @ResponseBody
+    public List<Map<String, Object>> getTopLiveVideos(@RequestParam(defaultValue = "10") int limit) {
+        return videoPresenceService.getTopLiveVideos(Math.max(1, Math.min(limit, 50)));
     }
 
     /**
-     * REST API - 获取视频弹幕
+     * REST API - 获取视频弹幕，from/to 为播放时间（秒）
      */
     @GetMapping("/api/video/{videoId}/danmaku")
     @ResponseBody
-    public Object getDanmaku(@PathVariable Long videoId) {
-        // 这里可以实现获取视频弹幕的逻辑
-        // 从数据库或缓存中获取弹幕数据
-        return "[]"; // 暂时返回空数组
+    public List<RealtimeCommentMessage> getDanmaku(@PathVariable Long videoId,
+                                                   @RequestParam(defaultValue = "0") double from,
+                                                   @RequestParam(required = false) Double to) {
+        return danmakuService.getDanmaku(videoId, from, to);
     }
 }
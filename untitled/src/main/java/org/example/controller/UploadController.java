@@ -12,6 +12,7 @@ import org.example.service.UserService;
 import org.example.service.VideoService;
 import org.example.service.VideoContentService;
 import org.example.service.UserLogService;
+import org.example.service.HlsTranscodeService;
 import org.example.service.ThumbnailGenerationService;
 import org.example.service.CategoryService;
 import org.example.service.AchievementService;
@@ -58,6 +59,9 @@ public class UploadController {
     @Autowired
     private ThumbnailGenerationService thumbnailGenerationService;
 
+    @Autowired
+    private HlsTranscodeService hlsTranscodeService;
+
     @Autowired
     private TagService tagService;
 
@@ -209,6 +213,7 @@ public class UploadController {
                 video.setUrl(videoPath);
                 video.setFilePath(videoPath); // 设置file_path字段
                 System.out.println("视频文件上传成功: " + videoPath);
+                video.setTranscodeStatus(Video.TranscodeStatus.PENDING); // 保存后由后台转码为HLS
             } else if (url != null && !url.trim().isEmpty()) {
                 video.setUrl(url.trim());
                 video.setFilePath(url.trim()); // 设置file_path字段
@@ -220,6 +225,7 @@ public class UploadController {
             }
 
             // 处理缩略图
+            String generatedThumbnail = null;
             if (thumbnailFile != null && !thumbnailFile.isEmpty()) {
                 System.out.println("处理缩略图上传: " + thumbnailFile.getOriginalFilename());
                 String thumbnailPath = fileUploadService.uploadThumbnail(thumbnailFile); // 使用专门的缩略图上传方法
@@ -229,7 +235,7 @@ public class UploadController {
             } else {
                 // 自动生成缩略图
                 System.out.println("自动生成缩略图: " + title);
-                String generatedThumbnail = thumbnailGenerationService.generateDefaultThumbnail(title);
+                generatedThumbnail = thumbnailGenerationService.generateDefaultThumbnail(title);
                 video.setThumbnail(generatedThumbnail);
             }
 
@@ -330,6 +336,13 @@ public class UploadController {
                     }
                 }
 
+                // 后台抽帧生成封面和拖动预览；只替换自动生成的占位缩略图
+                if (videoFile != null && !videoFile.isEmpty()) {
+                    thumbnailGenerationService.scheduleFrameExtraction(savedVideo.getId(), savedVideo.getFilePath(),
+                            generatedThumbnail);
+                    hlsTranscodeService.dispatch();
+                }
+
                 userLogService.logUserAction("VIDEO_UPLOAD_SUCCESS",
                     String.format("Video uploaded successfully: ID=%d, Title=%s",
                         savedVideo.getId(), savedVideo.getTitle()));
@@ -363,7 +363,6 @@ public class VideoController {
                 // 只有非所有者观看时才增加观看量
                 if (!isOwner) {
                     videoService.incrementViews(id);
-                    System.out.println("增加观看量，视频ID: " + id + "，当前观看量: " + (videoEntity.getViews() + 1));
 
                     // 触发观看成就检查
                     if (authentication != null) {
@@ -381,7 +380,14 @@ public class VideoController {
                     System.out.println("视频所有者观看自己的视频，不增加观看量，视频ID: " + id);
                 }
 
+                // 叠加尚未写回数据库的观看增量
+                videoService.applyPendingViews(videoEntity);
                 model.addAttribute("video", videoEntity);
+                // 拖动预览的 WebVTT 索引，未生成时为空
+                model.addAttribute("previewVtt", videoEntity.getPreviewVtt());
+                // 转码完成后优先播放 HLS 多码率，否则只用原始文件
+                model.addAttribute("hlsMasterUrl", videoEntity.getTranscodeStatus() == Video.TranscodeStatus.COMPLETED
+                        ? videoEntity.getHlsMasterUrl() : null);
 
                 // 添加当前用户信息
                 User currentUser = null;
@@ -1,26 +1,16 @@
 package org.example.controller;
 
+import org.example.service.HlsTranscodeService;
+import org.example.service.VideoStreamingService;
+import org.example.service.VideoStreamingService.VideoFileHandle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Arrays;
 
 /**
  * 视频流媒体控制器
@@ -32,151 +22,89 @@ public class VideoStreamController {
 
     private static final Logger logger = LoggerFactory.getLogger(VideoStreamController.class);
 
-    @Value("${app.upload.path:./uploads}")
-    private String uploadPath;
+    private static final int HLS_MASTER_MAX_AGE = 60;
+
+    @Autowired
+    private VideoStreamingService videoStreamingService;
 
     /**
      * 视频流媒体播放端点
      */
     @GetMapping("/{folder}/{filename:.+}")
-    public ResponseEntity<Resource> streamVideo(
+    public void streamVideo(
             @PathVariable String folder,
             @PathVariable String filename,
             HttpServletRequest request,
             HttpServletResponse response) {
 
         try {
-            // 查找视频文件
-            File videoFile = findVideoFile(folder, filename);
-            if (videoFile == null || !videoFile.exists()) {
-                logger.warn("视频文件未找到: {}/{}", folder, filename);
-                return ResponseEntity.notFound().build();
-            }
-
             // 检查是否是视频文件
-            if (!isVideoFile(filename)) {
+            if (!videoStreamingService.isVideoFile(filename)) {
                 logger.warn("请求的文件不是视频文件: {}", filename);
-                return ResponseEntity.badRequest().build();
+                response.setStatus(HttpStatus.BAD_REQUEST.value());
+                return;
             }
 
-            Resource resource = new FileSystemResource(videoFile);
-            String contentType = getVideoContentType(filename);
-
-            // 处理范围请求
-            String rangeHeader = request.getHeader("Range");
-            if (rangeHeader != null && rangeHeader.startsWith("bytes=")) {
-                return handleRangeRequest(videoFile, rangeHeader, contentType);
+            // 查找视频文件（句柄缓存）
+            VideoFileHandle handle = videoStreamingService.resolve(folder, filename);
+            if (handle == null) {
+                logger.warn("视频文件未找到: {}/{}", folder, filename);
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+                return;
             }
 
-            // 普通请求
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_TYPE, contentType)
-                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
-                    .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(videoFile.length()))
-                    .header(HttpHeaders.CACHE_CONTROL, "no-cache")
-                    .header(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*")
-                    .body(resource);
+            videoStreamingService.serve(handle, request, response);
 
         } catch (Exception e) {
             if (isClientAbortException(e)) {
                 logger.info("客户端中断视频流: {}/{} - {}", folder, filename, e.getMessage());
-                return ResponseEntity.status(499).build(); // 499 Client Closed Request
             } else {
                 logger.error("视频流播放失败: {}/{} - {}", folder, filename, e.getMessage(), e);
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+                if (!response.isCommitted()) {
+                    response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+                }
             }
         }
     }
 
     /**
-     * 处理范围请求（支持视频拖拽播放）
+     * HLS 主播放列表（重新转码后会变化，短缓存）
      */
-    private ResponseEntity<Resource> handleRangeRequest(File videoFile, String rangeHeader, String contentType) {
-        try {
-            long fileLength = videoFile.length();
-            String range = rangeHeader.substring("bytes=".length());
-            String[] ranges = range.split("-");
-            
-            long start = Long.parseLong(ranges[0]);
-            long end = ranges.length > 1 && !ranges[1].isEmpty() ? 
-                      Long.parseLong(ranges[1]) : fileLength - 1;
-            
-            // 验证范围
-            if (start >= fileLength || end >= fileLength || start > end) {
-                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
-                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileLength)
-                        .build();
-            }
-
-            long contentLength = end - start + 1;
-            
-            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
-                    .header(HttpHeaders.CONTENT_TYPE, contentType)
-                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
-                    .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileLength)
-                    .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(contentLength))
-                    .header(HttpHeaders.CACHE_CONTROL, "no-cache")
-                    .header(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*")
-                    .body(new RangeFileSystemResource(videoFile, start, end));
-
-        } catch (Exception e) {
-            logger.error("处理范围请求失败: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+    @GetMapping("/hls/{videoId}/master.m3u8")
+    public void streamHlsMaster(@PathVariable Long videoId, HttpServletRequest request, HttpServletResponse response) {
+        serveHls(HlsTranscodeService.HLS_DIR + "/" + videoId, "master.m3u8", "public, max-age=" + HLS_MASTER_MAX_AGE,
+                request, response);
     }
 
     /**
-     * 查找视频文件
+     * HLS 档位播放列表和切片（写完后不再变化，按不可变资源缓存）
      */
-    private File findVideoFile(String folder, String filename) {
-        String workingDir = System.getProperty("user.dir");
-        String[] possibleBasePaths = {
-            workingDir + "/../uploads",
-            workingDir + "/uploads",
-            "./uploads",
-            "../uploads"
-        };
-
-        for (String basePath : possibleBasePaths) {
-            File testFile = new File(basePath, folder + File.separator + filename);
-            if (testFile.exists() && testFile.isFile()) {
-                logger.debug("找到视频文件: {}", testFile.getAbsolutePath());
-                return testFile;
-            }
-        }
-        return null;
+    @GetMapping("/hls/{videoId}/{rendition:\\d+p}/{filename:index\\.m3u8|seg_\\d+\\.ts}")
+    public void streamHlsSegment(@PathVariable Long videoId, @PathVariable String rendition,
+                                 @PathVariable String filename,
+                                 HttpServletRequest request, HttpServletResponse response) {
+        serveHls(HlsTranscodeService.HLS_DIR + "/" + videoId + "/" + rendition, filename,
+                "public, max-age=31536000, immutable", request, response);
     }
 
-    /**
-     * 检查是否是视频文件
-     */
-    private boolean isVideoFile(String filename) {
-        String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase();
-        return Arrays.asList("mp4", "avi", "mov", "wmv", "mkv", "flv", "webm").contains(extension);
-    }
-
-    /**
-     * 获取视频文件的Content-Type
-     */
-    private String getVideoContentType(String filename) {
-        String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase();
-        switch (extension) {
-            case "mp4":
-                return "video/mp4";
-            case "avi":
-                return "video/x-msvideo";
-            case "mov":
-                return "video/quicktime";
-            case "wmv":
-                return "video/x-ms-wmv";
-            case "mkv":
-                return "video/x-matroska";
-            case "flv":
-                return "video/x-flv";
-            case "webm":
-                return "video/webm";
-            default:
-                return "video/mp4";
+    private void serveHls(String folder, String filename, String cacheControl,
+                          HttpServletRequest request, HttpServletResponse response) {
+        try {
+            VideoFileHandle handle = videoStreamingService.resolve(folder, filename);
+            if (handle == null) {
+                response.setStatus(HttpStatus.NOT_FOUND.value());
+                return;
+            }
+            videoStreamingService.serve(handle, cacheControl, request, response);
+        } catch (Exception e) {
+            if (isClientAbortException(e)) {
+                logger.debug("客户端中断HLS请求: {}/{}", folder, filename);
+            } else {
+                logger.error("HLS输出失败: {}/{} - {}", folder, filename, e.getMessage());
+                if (!response.isCommitted()) {
+                    response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+                }
+            }
         }
     }
 
@@ -192,81 +120,10 @@ public class VideoStreamController {
                    message.contains("Broken pipe") ||
                    message.contains("getOutputStream() has already been called");
         }
-        
+
         return e instanceof org.apache.catalina.connector.ClientAbortException ||
-               e instanceof java.io.IOException && 
+               e instanceof java.io.IOException &&
                (e.getCause() instanceof java.net.SocketException ||
                 e.getCause() instanceof java.io.IOException);
     }
-
-    /**
-     * 支持范围请求的Resource实现
-     */
-    private static class RangeFileSystemResource extends FileSystemResource {
-        private final long start;
-        private final long end;
-
-        public RangeFileSystemResource(File file, long start, long end) {
-            super(file);
-            this.start = start;
-            this.end = end;
-        }
-
-        @Override
-        public InputStream getInputStream() throws IOException {
-            InputStream inputStream = super.getInputStream();
-            inputStream.skip(start);
-            return new RangeInputStream(inputStream, end - start + 1);
-        }
-
-        @Override
-        public long contentLength() {
-            return end - start + 1;
-        }
-    }
-
-    /**
-     * 范围输入流
-     */
-    private static class RangeInputStream extends InputStream {
-        private final InputStream delegate;
-        private final long maxBytes;
-        private long bytesRead = 0;
-
-        public RangeInputStream(InputStream delegate, long maxBytes) {
-            this.delegate = delegate;
-            this.maxBytes = maxBytes;
-        }
-
-        @Override
-        public int read() throws IOException {
-            if (bytesRead >= maxBytes) {
-                return -1;
-            }
-            int result = delegate.read();
-            if (result != -1) {
-                bytesRead++;
-            }
-            return result;
-        }
-
-        @Override
-        public int read(byte[] b, int off, int len) throws IOException {
-            if (bytesRead >= maxBytes) {
-                return -1;
-            }
-            int remaining = (int) (maxBytes - bytesRead);
-            int toRead = Math.min(len, remaining);
-            int result = delegate.read(b, off, toRead);
-            if (result != -1) {
-                bytesRead += result;
-            }
-            return result;
-        }
-
-        @Override
-        public void close() throws IOException {
-            delegate.close();
-        }
-    }
-} 
\ No newline at end of file
+}
@@ -4,6 +4,7 @@ import org.example.entity.CallRecord;
 import org.example.entity.User;
 import org.example.service.CallService;
 import org.example.service.UserService;
+import org.example.service.WebSocketSessionRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
@@ -39,10 +40,10 @@ public class WebRTCSignalingController {
     @Autowired
     private UserService userService;
 
-    // 存储在线用户的会话信息 (userId -> sessionId)
-    private final Map<String, String> userSessions = new ConcurrentHashMap<>();
-    // 存储会话到用户的映射 (sessionId -> userId)
-    private final Map<String, String> sessionUsers = new ConcurrentHashMap<>();
+    // 信令用户ID与会话的绑定由连接注册表维护，连接关闭时自动解除
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
     // 存储通话房间信息
     private final Map<String, CallRoom> callRooms = new ConcurrentHashMap<>();
 
@@ -127,40 +128,6 @@ public class WebRTCSignalingController {
 
 
 
-    /**
-     * 用户离线处理
-     */
-    public void handleUserDisconnect(String sessionId) {
-        String userId = sessionUsers.get(sessionId);
-        if (userId != null) {
-            userSessions.remove(userId);
-            sessionUsers.remove(sessionId);
-
-            logger.info("=== 用户离线 ===");
-            logger.info("用户ID: {}", userId);
-            logger.info("会话ID: {}", sessionId);
-            logger.info("当前在线用户数: {}", userSessions.size());
-
-            // 广播在线用户数量更新
-            broadcastOnlineCount();
-        }
-    }
-
-    /**
-     * 广播在线用户数量
-     */
-    private void broadcastOnlineCount() {
-        int onlineCount = userSessions.size();
-        Map<String, Object> message = Map.of(
-            "type", "online-count-update",
-            "onlineCount", onlineCount,
-            "timestamp", System.currentTimeMillis()
-        );
-
-        messagingTemplate.convertAndSend("/topic/online-status", message);
-        logger.debug("广播在线用户数量: {}", onlineCount);
-    }
-    
     /**
      * 用户加入信令服务器
      */
@@ -188,24 +155,17 @@ public class WebRTCSignalingController {
             logger.info("🔥🔥🔥 解析结果 - 用户ID: {}, 会话ID: {}", userId, sessionId);
             System.out.println("🔥🔥🔥 解析结果 - 用户ID: " + userId + ", 会话ID: " + sessionId);
 
-            // 双向映射
-            userSessions.put(userId, sessionId);
-            sessionUsers.put(sessionId, userId);
+            sessionRegistry.bindSignaling(sessionId, userId);
 
             logger.info("=== 用户加入WebRTC信令服务器 ===");
             logger.info("用户ID: {}", userId);
             logger.info("会话ID: {}", sessionId);
-            logger.info("当前在线用户数: {}", userSessions.size());
-            logger.info("在线用户列表: {}", userSessions.keySet());
+            logger.info("当前在线用户数: {}", sessionRegistry.getSignalingCount());
 
             System.out.println("=== 用户加入WebRTC信令服务器 ===");
             System.out.println("用户ID: " + userId);
             System.out.println("会话ID: " + sessionId);
-            System.out.println("当前在线用户数: " + userSessions.size());
-            System.out.println("在线用户列表: " + userSessions.keySet());
-
-            // 广播在线用户数量更新
-            broadcastOnlineCount();
+            System.out.println("当前在线用户数: " + sessionRegistry.getSignalingCount());
 
             // 立即发送加入成功通知
             try {
@@ -213,7 +173,7 @@ public class WebRTCSignalingController {
                 joinResponse.put("status", "success");
                 joinResponse.put("message", "已连接到信令服务器");
                 joinResponse.put("userId", userId);
-                joinResponse.put("onlineCount", userSessions.size());
+                joinResponse.put("onlineCount", sessionRegistry.getSignalingCount());
                 joinResponse.put("timestamp", System.currentTimeMillis());
 
                 messagingTemplate.convertAndSendToUser(userId, "/queue/webrtc/joined", joinResponse);
@@ -241,9 +201,8 @@ public class WebRTCSignalingController {
         String sessionId = headerAccessor.getSessionId();
 
         if (userId != null) {
-            // 更新用户会话信息
-            userSessions.put(userId, sessionId);
-            sessionUsers.put(sessionId, userId);
+            // 更新用户会话绑定
+            sessionRegistry.bindSignaling(sessionId, userId);
             logger.debug("收到用户 {} 的保活消息，会话ID: {}", userId, sessionId);
         }
     }
@@ -303,21 +262,20 @@ public class WebRTCSignalingController {
             logger.info("目标用户ID: {}", calleeId);
             logger.info("调用者姓名: {}", caller.getUsername());
             logger.info("消息内容: {}", callInvitation);
-            logger.info("目标用户会话ID: {}", userSessions.get(calleeId));
+            String calleeSessionId = sessionRegistry.getSignalingSession(calleeId);
+            logger.info("目标用户会话ID: {}", calleeSessionId);
 
             // 检查目标用户是否在线
-            boolean isOnline = userSessions.containsKey(calleeId);
+            boolean isOnline = calleeSessionId != null;
             logger.info("🔍 目标用户在线状态检查:");
             logger.info("  - 用户ID: {}", calleeId);
             logger.info("  - 是否在线: {}", isOnline);
-            logger.info("  - 会话ID: {}", userSessions.get(calleeId));
-            logger.info("  - 当前在线用户: {}", userSessions.keySet());
+            logger.info("  - 会话ID: {}", calleeSessionId);
 
             System.out.println("🔍 目标用户在线状态检查:");
             System.out.println("  - 用户ID: " + calleeId);
             System.out.println("  - 是否在线: " + isOnline);
-            System.out.println("  - 会话ID: " + userSessions.get(calleeId));
-            System.out.println("  - 当前在线用户: " + userSessions.keySet());
+            System.out.println("  - 会话ID: " + calleeSessionId);
 
             if (!isOnline) {
                 logger.warn("⚠️ 目标用户 {} 不在线，但仍尝试发送消息", calleeId);
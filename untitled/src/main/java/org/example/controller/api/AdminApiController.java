@@ -38,6 +38,15 @@ public class AdminApiController {
     @Autowired
     private AchievementService achievementService;
 
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private NotificationBroadcastService notificationBroadcastService;
+
+    @Autowired
+    private HlsTranscodeService hlsTranscodeService;
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
@@ -292,6 +301,42 @@ public class AdminApiController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * 群发通知（公告或系统通知），userIds 为空时发给全部用户；返回任务进度
+     */
+    @PostMapping("/notification-broadcasts")
+    public ResponseEntity<Map<String, Object>> createNotificationBroadcast(@RequestParam String title,
+                                                                           @RequestParam String content,
+                                                                           @RequestParam(defaultValue = "ANNOUNCEMENT") String type,
+                                                                           @RequestParam(required = false) List<Long> userIds) {
+        NotificationBroadcast broadcast = "SYSTEM".equalsIgnoreCase(type) && userIds == null
+                ? notificationService.createSystemNotificationForAll(title, content)
+                : notificationService.broadcastAnnouncement(userIds, title, content);
+        return ResponseEntity.ok(notificationBroadcastService.getProgress(broadcast.getId()));
+    }
+
+    @GetMapping("/notification-broadcasts")
+    public ResponseEntity<List<Map<String, Object>>> getNotificationBroadcasts(@RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(notificationBroadcastService.getRecent(Math.min(Math.max(limit, 1), 100)));
+    }
+
+    @GetMapping("/notification-broadcasts/{id}")
+    public ResponseEntity<Map<String, Object>> getNotificationBroadcast(@PathVariable Long id) {
+        Map<String, Object> progress = notificationBroadcastService.getProgress(id);
+        return progress != null ? ResponseEntity.ok(progress) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * 将视频加入HLS转码队列（转码功能上线前上传的视频、转码失败的视频）
+     */
+    @PostMapping("/videos/{id}/transcode")
+    public ResponseEntity<Map<String, Object>> transcodeVideo(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("queued", hlsTranscodeService.enqueue(id));
+        response.put("stats", hlsTranscodeService.getStats());
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/violations")
     public ResponseEntity<List<Violation>> getAllViolations() {
         return ResponseEntity.ok(violationService.getAllViolations());
@@ -3,9 +3,16 @@ package org.example.controller.api;
 import org.example.entity.User;
 import org.example.entity.Message;
 import org.example.entity.Conversation;
+import org.example.entity.ConversationInbox;
+import org.example.service.ChatInboxService;
 import org.example.service.ChatService;
+import org.example.service.FileIndexService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -25,6 +32,7 @@ import java.nio.file.Paths;
 import java.nio.file.Files;
 import java.nio.file.DirectoryStream;
 import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -35,7 +43,11 @@ import java.util.Optional;
 import org.springframework.http.HttpStatus;
 
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * 聊天API控制器
@@ -44,6 +56,14 @@ import org.springframework.http.HttpHeaders;
 @RequestMapping("/api/chat")
 public class ChatApiController {
 
+    private static final Logger logger = LoggerFactory.getLogger(ChatApiController.class);
+
+    // 图片代理只返回这些公开图片目录下的文件；聊天附件只能通过 /file 接口访问
+    private static final List<String> IMAGE_DIRS = List.of("avatars/", "avatar/", "thumbnails/", "moments/", "emoji/");
+
+    // 所有人都能看到的图片，允许 CDN 和共享代理缓存；聊天文件、动态图片只允许浏览器私有缓存
+    private static final List<String> PUBLIC_DIRS = List.of("avatars/", "avatar/", "thumbnails/", "emoji/");
+
     @Autowired
     private UserService userService;
 
@@ -53,6 +73,12 @@ public class ChatApiController {
     @Autowired
     private FollowService followService;
 
+    @Autowired
+    private ChatInboxService chatInboxService;
+
+    @Autowired
+    private FileIndexService fileIndexService;
+
     /**
      * 获取用户信息
      */
@@ -78,10 +104,12 @@ public class ChatApiController {
 
     /**
      * 获取会话列表
+     * 不传游标时返回最新的会话；加载更多时把上一页返回的 nextBeforeAt、nextBeforeId 作为 beforeAt、beforeId 传回
      */
     @GetMapping("/conversations")
     public ResponseEntity<Map<String, Object>> getConversations(
-            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeAt,
+            @RequestParam(required = false) Long beforeId,
             @RequestParam(defaultValue = "20") int size,
             @AuthenticationPrincipal UserDetails userDetails) {
         if (userDetails == null) {
@@ -99,49 +127,51 @@ public class ChatApiController {
 
             System.out.println("DEBUG: 用户ID: " + currentUser.getId() + ", 用户名: " + currentUser.getUsername());
 
-            Page<Conversation> conversationsPage = chatService.getUserConversations(currentUser.getId(), page, size);
-            System.out.println("DEBUG: 查询到会话数量: " + conversationsPage.getTotalElements());
+            // 收件箱读模型：一次索引范围查询，不再逐个会话查询对方用户和最后消息
+            Slice<ConversationInbox> conversationsPage = chatInboxService.getInbox(currentUser.getId(), beforeAt, beforeId, size);
 
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
             List<Map<String, Object>> conversations = new ArrayList<>();
-            for (Conversation conversation : conversationsPage.getContent()) {
-                System.out.println("DEBUG: 处理会话 ID: " + conversation.getId() + ", 类型: " + conversation.getType());
-                
-                try {
-                Map<String, Object> convMap = convertConversationToMap(conversation);
+            for (ConversationInbox inbox : conversationsPage.getContent()) {
+                Map<String, Object> convMap = new HashMap<>();
+                String lastMessageAt = inbox.getLastMessageAt() != null ? inbox.getLastMessageAt().format(formatter) : null;
+                convMap.put("id", inbox.getConversationId());
+                convMap.put("type", inbox.getConversationType().toLowerCase());
+                convMap.put("title", inbox.getTitle());
+                convMap.put("lastMessageAt", lastMessageAt);
+                convMap.put("isActive", inbox.getIsActive());
+                convMap.put("lastMessage", inbox.getLastMessagePreview());
+                convMap.put("lastMessageTime", inbox.getLastMessageId() != null ? lastMessageAt : null);
+                convMap.put("lastMessageSender", inbox.getLastMessageSender());
+                convMap.put("unreadCount", inbox.getUnreadCount());
 
                 // 添加对方用户信息（对于私聊）
-                if (conversation.getType() == Conversation.ConversationType.PRIVATE) {
-                        System.out.println("DEBUG: 获取私聊对方用户信息，会话ID: " + conversation.getId());
-                    // 获取对方用户信息
-                    User otherUser = chatService.getOtherUserInPrivateConversation(conversation.getId(), currentUser.getId());
-                    if (otherUser != null) {
-                            System.out.println("DEBUG: 找到对方用户: " + otherUser.getUsername());
-                        convMap.put("otherUser", Map.of(
-                            "id", otherUser.getId(),
-                            "username", otherUser.getUsername(),
-                            "nickname", otherUser.getNickname() != null ? otherUser.getNickname() : otherUser.getUsername(),
-                            "avatar", AvatarUtil.getUserAvatarUrl(otherUser)
-                        ));
-                        convMap.put("title", otherUser.getNickname() != null ? otherUser.getNickname() : otherUser.getUsername());
-                        } else {
-                            System.out.println("DEBUG: 未找到对方用户");
-                    }
+                if (inbox.getOtherUserId() != null) {
+                    String nickname = inbox.getOtherNickname() != null ? inbox.getOtherNickname() : inbox.getOtherUsername();
+                    convMap.put("otherUser", Map.of(
+                        "id", inbox.getOtherUserId(),
+                        "username", inbox.getOtherUsername(),
+                        "nickname", nickname,
+                        "avatar", AvatarUtil.isInvalidAvatarPath(inbox.getOtherAvatar())
+                                ? AvatarUtil.DEFAULT_AVATAR_PATH : inbox.getOtherAvatar()
+                    ));
+                    convMap.put("title", nickname);
                 }
 
                 conversations.add(convMap);
-                } catch (Exception e) {
-                    System.err.println("DEBUG: 处理会话时出错，会话ID: " + conversation.getId() + ", 错误: " + e.getMessage());
-                    e.printStackTrace();
-                    // 继续处理其他会话，不中断整个请求
-                }
             }
 
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
             result.put("conversations", conversations);
-            result.put("totalPages", conversationsPage.getTotalPages());
-            result.put("totalElements", conversationsPage.getTotalElements());
-            result.put("currentPage", page);
+            result.put("hasMore", conversationsPage.hasNext());
+            ConversationInbox last = conversationsPage.hasContent()
+                    ? conversationsPage.getContent().get(conversationsPage.getNumberOfElements() - 1) : null;
+            result.put("nextBeforeAt", last != null && last.getLastMessageAt() != null ? last.getLastMessageAt().toString() : null);
+            result.put("nextBeforeId", last != null ? last.getConversationId() : null);
+            if (beforeAt == null) {
+                result.put("totalElements", chatInboxService.countInbox(currentUser.getId()));
+            }
 
             System.out.println("DEBUG: 会话列表获取成功，返回会话数量: " + conversations.size());
             return ResponseEntity.ok(result);
@@ -620,179 +650,56 @@ public class ChatApiController {
      * 图片代理API - 根据文件名查找实际图片
      */
     @GetMapping("/image/{fileName}")
-    public ResponseEntity<org.springframework.core.io.Resource> getImage(@PathVariable String fileName) {
-        try {
-            System.out.println("图片代理API被调用，文件名: " + fileName);
-
-            // 优先在聊天相关目录中查找
-            String[] searchDirs = {"chat/files", "chat/images", "chat/videos", "chat/voices", "private", "moments", "avatars", "thumbnails", "videos"};
-            String[] extensions = {".jpeg", ".jpg", ".png", ".gif", ".webp", ".mp4", ".mp3", ".wav", ".ogg"};
-
-            String baseUploadPath = "E:/code11/uploads";
-
-            for (String dir : searchDirs) {
-                java.io.File dirFile = new java.io.File(baseUploadPath, dir);
-                System.out.println("搜索目录: " + dirFile.getAbsolutePath());
-
-                if (dirFile.exists() && dirFile.isDirectory()) {
-                    // 首先尝试精确匹配（完整文件名）
-                    java.io.File exactFile = new java.io.File(dirFile, fileName);
-                    if (exactFile.exists()) {
-                        System.out.println("找到精确匹配文件: " + exactFile.getAbsolutePath());
-                        org.springframework.core.io.Resource resource = new org.springframework.core.io.FileSystemResource(exactFile);
-                        String contentType = getContentType(fileName);
-                        return ResponseEntity.ok()
-                            .header("Content-Type", contentType)
-                            .header("Cache-Control", "no-cache")
-                            .body(resource);
-                    }
-
-                    // 然后尝试添加扩展名的精确匹配
-                    for (String ext : extensions) {
-                        java.io.File extFile = new java.io.File(dirFile, fileName + ext);
-                        if (extFile.exists()) {
-                            System.out.println("找到扩展名匹配文件: " + extFile.getAbsolutePath());
-                            org.springframework.core.io.Resource resource = new org.springframework.core.io.FileSystemResource(extFile);
-                            String contentType = getContentType(extFile.getName());
-                            return ResponseEntity.ok()
-                                .header("Content-Type", contentType)
-                                .header("Cache-Control", "no-cache")
-                                .body(resource);
-                        }
-                    }
-
-                    // 最后尝试模糊匹配（包含文件名的文件）
-                    java.io.File[] files = dirFile.listFiles();
-                    if (files != null) {
-                        for (java.io.File file : files) {
-                            String name = file.getName().toLowerCase();
-                            if (name.contains(fileName.toLowerCase()) || fileName.toLowerCase().contains(name.replace(".jpg", "").replace(".jpeg", "").replace(".png", ""))) {
-                                System.out.println("找到模糊匹配文件: " + file.getAbsolutePath());
-                                org.springframework.core.io.Resource resource = new org.springframework.core.io.FileSystemResource(file);
-                                String contentType = getContentType(file.getName());
-                                return ResponseEntity.ok()
-                                    .header("Content-Type", contentType)
-                                    .header("Cache-Control", "no-cache")
-                                    .body(resource);
-                            }
-                        }
-                    }
-                }
-            }
-
-            System.out.println("未找到文件: " + fileName);
-            return ResponseEntity.notFound().build();
-        } catch (Exception e) {
-            System.err.println("图片代理API错误: " + e.getMessage());
-            e.printStackTrace();
-            return ResponseEntity.status(500).build();
-        }
+    public ResponseEntity<org.springframework.core.io.Resource> getImage(@PathVariable String fileName, WebRequest request) {
+        return serveIndexedFile(fileName, IMAGE_DIRS, request);
     }
 
     /**
      * 聊天文件访问API - 直接通过文件名访问聊天文件
      */
     @GetMapping("/file/{fileName}")
-    public ResponseEntity<org.springframework.core.io.Resource> getChatFile(@PathVariable String fileName) {
-        try {
-            System.out.println("聊天文件API被调用，文件名: " + fileName);
-
-            String baseUploadPath = "E:/code11/uploads";
-            String[] chatDirs = {"chat/files", "chat/images", "chat/videos", "chat/voices"};
-            String[] extensions = {".jpeg", ".jpg", ".png", ".gif", ".webp", ".mp4", ".mp3", ".wav", ".ogg"};
-
-            // 首先尝试精确匹配
-            for (String dir : chatDirs) {
-                Path filePath = Paths.get(baseUploadPath, dir, fileName);
-                File file = filePath.toFile();
-
-                if (file.exists() && file.isFile()) {
-                    System.out.println("找到聊天文件(精确匹配): " + filePath);
-
-                    org.springframework.core.io.Resource resource = new FileSystemResource(file);
-                    String contentType = getContentType(fileName);
+    public ResponseEntity<org.springframework.core.io.Resource> getChatFile(@PathVariable String fileName, WebRequest request) {
+        return serveIndexedFile(fileName, List.of("chat/"), request);
+    }
 
-                    return ResponseEntity.ok()
-                            .header(HttpHeaders.CONTENT_TYPE, contentType)
-                            .header(HttpHeaders.CACHE_CONTROL, "no-cache")
-                            .body(resource);
-                }
+    /**
+     * 通过文件位置索引返回文件：支持 If-None-Match / If-Modified-Since 和 Range，
+     * UUID 命名的文件内容不变，允许长期缓存；只有公开目录的文件允许共享缓存
+     */
+    private ResponseEntity<org.springframework.core.io.Resource> serveIndexedFile(String fileName, List<String> prefixes, WebRequest request) {
+        try {
+            FileIndexService.FileLocation location = fileIndexService.lookup(fileName, prefixes);
+            if (location == null) {
+                return ResponseEntity.notFound().build();
             }
 
-            // 然后尝试添加扩展名
-            for (String dir : chatDirs) {
-                for (String ext : extensions) {
-                    Path filePath = Paths.get(baseUploadPath, dir, fileName + ext);
-                    File file = filePath.toFile();
-
-                    if (file.exists() && file.isFile()) {
-                        System.out.println("找到聊天文件(扩展名匹配): " + filePath);
-
-                        org.springframework.core.io.Resource resource = new FileSystemResource(file);
-                        String contentType = getContentType(file.getName());
-
-                        return ResponseEntity.ok()
-                                .header(HttpHeaders.CONTENT_TYPE, contentType)
-                                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
-                                .body(resource);
-                    }
-                }
+            CacheControl cacheControl = CacheControl.noCache();
+            if (location.isImmutable()) {
+                cacheControl = CacheControl.maxAge(365, TimeUnit.DAYS).immutable();
+                cacheControl = isPublicContent(location) ? cacheControl.cachePublic() : cacheControl.cachePrivate();
             }
-
-            // 最后尝试模糊匹配
-            for (String dir : chatDirs) {
-                File dirFile = new File(baseUploadPath, dir);
-                if (dirFile.exists() && dirFile.isDirectory()) {
-                    File[] files = dirFile.listFiles();
-                    if (files != null) {
-                        for (File file : files) {
-                            String name = file.getName().toLowerCase();
-                            String searchName = fileName.toLowerCase();
-
-                            // 移除扩展名进行比较
-                            String nameWithoutExt = name.replaceAll("\\.[^.]+$", "");
-                            String searchWithoutExt = searchName.replaceAll("\\.[^.]+$", "");
-
-                            if (nameWithoutExt.equals(searchWithoutExt) || name.contains(searchName) || searchName.contains(nameWithoutExt)) {
-                                System.out.println("找到聊天文件(模糊匹配): " + file.getAbsolutePath());
-
-                                org.springframework.core.io.Resource resource = new FileSystemResource(file);
-                                String contentType = getContentType(file.getName());
-
-                                return ResponseEntity.ok()
-                                        .header(HttpHeaders.CONTENT_TYPE, contentType)
-                                        .header(HttpHeaders.CACHE_CONTROL, "no-cache")
-                                        .body(resource);
-                            }
-                        }
-                    }
-                }
+            if (request.checkNotModified(location.getEtag(), location.getLastModified())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(location.getEtag())
+                        .cacheControl(cacheControl)
+                        .build();
             }
 
-            System.out.println("聊天文件未找到: " + fileName);
-            return ResponseEntity.notFound().build();
-
+            // 长度由消息转换器按实际文件取得，不使用索引中的值
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_TYPE, location.getContentType())
+                    .eTag(location.getEtag())
+                    .lastModified(location.getLastModified())
+                    .cacheControl(cacheControl)
+                    .body(new FileSystemResource(location.getPath()));
         } catch (Exception e) {
-            System.err.println("获取聊天文件失败: " + e.getMessage());
-            e.printStackTrace();
+            logger.warn("获取文件失败: {} - {}", fileName, e.getMessage());
             return ResponseEntity.status(500).build();
         }
     }
 
-    private String getContentType(String fileName) {
-        String lowerName = fileName.toLowerCase();
-        if (lowerName.endsWith(".jpg") || lowerName.endsWith(".jpeg")) {
-            return "image/jpeg";
-        } else if (lowerName.endsWith(".png")) {
-            return "image/png";
-        } else if (lowerName.endsWith(".gif")) {
-            return "image/gif";
-        } else if (lowerName.endsWith(".webp")) {
-            return "image/webp";
-        } else if (lowerName.endsWith(".mp4")) {
-            return "video/mp4";
-        }
-        return "application/octet-stream";
+    private static boolean isPublicContent(FileIndexService.FileLocation location) {
+        return PUBLIC_DIRS.stream().anyMatch(location.getRelativePath()::startsWith);
     }
 
     /**
@@ -889,10 +796,13 @@ public class ChatApiController {
 
     /**
      * 获取会话消息
+     * 传 before（消息ID）时按游标返回更早的消息；不传 before 且 page 为 0 时返回最新的消息。
+     * 仍传 page > 0 的旧客户端走偏移分页。只读取，不改变未读数：打开会话后由客户端调用 POST .../read
      */
     @GetMapping("/conversations/{conversationId}/messages")
     public ResponseEntity<Map<String, Object>> getConversationMessages(
             @PathVariable Long conversationId,
+            @RequestParam(required = false) Long before,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @AuthenticationPrincipal UserDetails userDetails) {
@@ -906,19 +816,30 @@ public class ChatApiController {
             if (currentUser == null) {
                 return ResponseEntity.status(401).body(Map.of("error", "用户不存在"));
             }
-            
-            Page<Message> messagesPage = chatService.getConversationMessages(conversationId, currentUser.getId(), page, size);
 
+            Map<String, Object> result = new HashMap<>();
             List<Map<String, Object>> messages = new ArrayList<>();
-            for (Message message : messagesPage.getContent()) {
-                messages.add(convertMessageToMap(message));
+
+            if (before != null || page == 0) {
+                Slice<Message> slice = chatService.getMessagesBefore(conversationId, currentUser.getId(), before, size);
+                for (Message message : slice.getContent()) {
+                    messages.add(convertMessageToMap(message));
+                }
+                result.put("hasMore", slice.hasNext());
+                result.put("nextBefore", slice.hasContent()
+                        ? slice.getContent().get(slice.getNumberOfElements() - 1).getId() : null);
+            } else {
+                Page<Message> messagesPage = chatService.getConversationMessages(conversationId, currentUser.getId(), page, size);
+                for (Message message : messagesPage.getContent()) {
+                    messages.add(convertMessageToMap(message));
+                }
+                result.put("hasMore", messagesPage.hasNext());
+                result.put("totalPages", messagesPage.getTotalPages());
+                result.put("totalElements", messagesPage.getTotalElements());
             }
 
-            Map<String, Object> result = new HashMap<>();
             result.put("success", true);
             result.put("messages", messages);
-            result.put("totalPages", messagesPage.getTotalPages());
-            result.put("totalElements", messagesPage.getTotalElements());
             result.put("currentPage", page);
 
             return ResponseEntity.ok(result);
@@ -976,9 +897,13 @@ public class ChatApiController {
             return ResponseEntity.status(401).body(Map.of("error", "未登录"));
         }
 
-        // 暂时返回0，等实现完整功能后再完善
+        User user = userService.findByUsername(userDetails.getUsername()).orElse(null);
+        if (user == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "用户不存在"));
+        }
+
         Map<String, Object> result = new HashMap<>();
-        result.put("count", 0);
+        result.put("count", chatInboxService.getUnreadTotal(user.getId()));
 
         return ResponseEntity.ok(result);
     }
@@ -1066,7 +991,6 @@ public class ChatApiController {
                 // 生成一个模拟的会话ID
                 String sessionId = "manual-" + System.currentTimeMillis();
                 userOnlineStatusService.userOnline(currentUser.getId(), sessionId);
-                userOnlineStatusService.broadcastOnlineCount();
 
                 System.out.println("手动设置用户上线: " + currentUser.getUsername() + " (ID: " + currentUser.getId() + ")");
             }
@@ -1094,9 +1018,14 @@ public class ChatApiController {
             return ResponseEntity.status(401).body(Map.of("error", "未登录"));
         }
 
-        // 暂时返回成功响应，等实现完整功能后再完善
+        User user = userService.findByUsername(userDetails.getUsername()).orElse(null);
+        if (user == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "用户不存在"));
+        }
+
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
+        result.put("cleared", chatService.markAsRead(conversationId, user.getId()));
 
         return ResponseEntity.ok(result);
     }
@@ -1,20 +1,17 @@
 package org.example.controller.api;
 
 import org.example.dto.RealtimeCommentMessage;
-import org.example.entity.User;
-import org.example.service.UserService;
+import org.example.service.DanmakuService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 /**
  * 弹幕API控制器
@@ -25,9 +22,7 @@ import java.util.Optional;
 public class DanmakuApiController {
 
     @Autowired
-    private UserService userService;
-
-
+    private DanmakuService danmakuService;
 
     /**
      * 发送弹幕
@@ -46,35 +41,27 @@ public class DanmakuApiController {
                 return ResponseEntity.status(401).body(response);
             }
 
-            String username = authentication.getName();
-            Optional<User> userOpt = userService.findByUsername(username);
-            if (!userOpt.isPresent()) {
-                response.put("success", false);
-                response.put("message", "用户不存在");
-                return ResponseEntity.status(401).body(response);
-            }
-
-            User user = userOpt.get();
             Long videoId = Long.valueOf(request.get("videoId").toString());
             String text = request.get("text").toString();
             Double time = Double.valueOf(request.get("time").toString());
+            String color = request.get("color") != null ? request.get("color").toString() : null;
+            Integer fontSize = request.get("fontSize") != null ? Integer.valueOf(request.get("fontSize").toString()) : null;
 
-            // 创建弹幕消息
-            RealtimeCommentMessage danmakuMessage = new RealtimeCommentMessage();
-            danmakuMessage.setContent(text);
-            danmakuMessage.setVideoId(videoId);
-            danmakuMessage.setUsername(user.getUsername());
-            danmakuMessage.setUserAvatar(user.getAvatar());
-            danmakuMessage.setTime(time);
-            danmakuMessage.setCreatedAt(LocalDateTime.now());
-            danmakuMessage.setType("DANMAKU");
-
-            // WebSocket功能已删除，弹幕广播功能暂时禁用
+            RealtimeCommentMessage danmaku = danmakuService.send(authentication.getName(), videoId, text, time, color, fontSize);
 
+            response.put("data", danmaku);
             response.put("success", true);
             response.put("message", "弹幕发送成功");
             return ResponseEntity.ok(response);
 
+        } catch (DanmakuService.RateLimitedException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(429).body(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
         } catch (Exception e) {
             response.put("success", false);
             response.put("message", "发送失败: " + e.getMessage());
@@ -83,16 +70,14 @@ public class DanmakuApiController {
     }
 
     /**
-     * 获取视频弹幕
+     * 获取视频弹幕，from/to 为播放时间（秒），不传 to 时返回从 from 开始的一段
      */
     @GetMapping("/{videoId}")
-    public ResponseEntity<List<Map<String, Object>>> getDanmaku(@PathVariable Long videoId) {
+    public ResponseEntity<List<RealtimeCommentMessage>> getDanmaku(@PathVariable Long videoId,
+                                                                   @RequestParam(defaultValue = "0") double from,
+                                                                   @RequestParam(required = false) Double to) {
         try {
-            // 这里可以从数据库获取历史弹幕
-            // 暂时返回空列表，后续可以实现弹幕持久化
-            List<Map<String, Object>> danmakuList = new ArrayList<>();
-            
-            return ResponseEntity.ok(danmakuList);
+            return ResponseEntity.ok(danmakuService.getDanmaku(videoId, from, to));
         } catch (Exception e) {
             return ResponseEntity.status(500).body(new ArrayList<>());
         }
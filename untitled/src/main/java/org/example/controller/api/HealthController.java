@@ -6,7 +6,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.example.service.WebSocketAutoManager;
+import org.example.service.WebSocketSessionRegistry;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -18,7 +18,7 @@ import java.util.HashMap;
 public class HealthController {
 
     @Autowired
-    private WebSocketAutoManager autoManager;
+    private WebSocketSessionRegistry sessionRegistry;
 
     /**
      * 健康检查端点
@@ -30,47 +30,65 @@ public class HealthController {
         response.put("timestamp", System.currentTimeMillis());
         response.put("service", "Chat Application");
         response.put("version", "1.0.0");
-        
+
         return ResponseEntity.ok(response);
     }
 
     /**
-     * WebSocket连接统计信息
+     * WebSocket连接统计信息（阈值为上限的 80% / 95%，供监控页面着色）
      */
     @GetMapping("/health/websocket-stats")
     public ResponseEntity<Map<String, Object>> getWebSocketStats() {
-        return ResponseEntity.ok(autoManager.getConnectionStats());
+        Map<String, Object> stats = sessionRegistry.getStats();
+        int maxConnections = sessionRegistry.getMaxConnections();
+        stats.put("totalConnections", sessionRegistry.getConnectionCount());
+        stats.put("warningThreshold", maxConnections * 80 / 100);
+        stats.put("criticalThreshold", maxConnections * 95 / 100);
+        return ResponseEntity.ok(stats);
     }
 
     /**
-     * 清理超时连接
+     * 立即关闭空闲超时的连接
      */
     @PostMapping("/health/cleanup-connections")
     public ResponseEntity<Map<String, Object>> cleanupConnections() {
-        return ResponseEntity.ok(autoManager.manualCleanup());
+        int beforeCount = sessionRegistry.getConnectionCount();
+        int cleanedCount = sessionRegistry.expireIdle();
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("cleanedCount", cleanedCount);
+        result.put("beforeCount", beforeCount);
+        result.put("afterCount", sessionRegistry.getConnectionCount());
+        result.put("message", "手动清理完成");
+        return ResponseEntity.ok(result);
     }
 
     /**
-     * 重置WebSocket连接计数
+     * 关闭全部WebSocket连接
      */
     @PostMapping("/health/reset-connections")
     public ResponseEntity<Map<String, Object>> resetConnections() {
-        return ResponseEntity.ok(autoManager.forceReset());
+        int resetCount = sessionRegistry.closeAll();
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("resetCount", resetCount);
+        result.put("currentCount", sessionRegistry.getConnectionCount());
+        result.put("message", "强制重置完成");
+        return ResponseEntity.ok(result);
     }
-    
+
     /**
-     * 获取自动管理器状态
+     * 获取连接注册表状态
      */
     @GetMapping("/health/auto-manager-status")
     public ResponseEntity<Map<String, Object>> getAutoManagerStatus() {
+        Map<String, Object> stats = sessionRegistry.getStats();
         Map<String, Object> response = new HashMap<>();
         response.put("autoManagerEnabled", true);
-        response.put("cleanupInterval", "15秒");
-        response.put("connectionTimeout", "2分钟");
-        response.put("maxConnections", 1000);
-        response.put("warningThreshold", 800);
-        response.put("criticalThreshold", 950);
-        response.put("message", "自动连接管理器已启用");
+        response.put("connectionTimeout", stats.get("idleTimeoutMs"));
+        response.put("maxConnections", stats.get("maxConnections"));
+        response.put("maxConnectionsPerUser", stats.get("maxConnectionsPerUser"));
+        response.put("message", "连接注册表已启用");
         return ResponseEntity.ok(response);
     }
-} 
\ No newline at end of file
+}
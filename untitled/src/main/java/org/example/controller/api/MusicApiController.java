@@ -46,6 +46,7 @@ public class MusicApiController {
         try {
             // 从数据库获取音乐列表，而不是从文件系统
             List<Music> dbMusicList = musicService.getAllPublicMusic();
+            Map<Long, Long> playCounts = musicService.getCurrentPlayCounts(dbMusicList);
             
             for (Music music : dbMusicList) {
                 Map<String, Object> track = new HashMap<>();
@@ -55,7 +56,7 @@ public class MusicApiController {
                 track.put("album", music.getAlbum());
                 track.put("url", music.getFilePath());
                 track.put("duration", music.getDuration() != null ? music.getDuration() : 0);
-                track.put("playCount", music.getPlayCount());
+                track.put("playCount", playCounts.getOrDefault(music.getId(), 0L));
                 track.put("uploadTime", music.getUploadTime());
                 musicList.add(track);
             }
@@ -75,6 +76,7 @@ public class MusicApiController {
             
             // 从数据库获取音乐列表
             List<Music> dbMusicList = musicService.getAllPublicMusic();
+            Map<Long, Long> playCounts = musicService.getCurrentPlayCounts(dbMusicList);
             System.out.println("🎵 从数据库获取到 " + dbMusicList.size() + " 首音乐");
             
             for (Music music : dbMusicList) {
@@ -85,7 +87,7 @@ public class MusicApiController {
                 track.put("album", music.getAlbum());
                 track.put("url", music.getFilePath());
                 track.put("duration", music.getDuration() != null ? music.getDuration() : 0);
-                track.put("playCount", music.getPlayCount());
+                track.put("playCount", playCounts.getOrDefault(music.getId(), 0L));
                 track.put("uploadTime", music.getUploadTime());
                 track.put("userId", music.getUserId());
                 track.put("isPublic", music.getIsPublic());
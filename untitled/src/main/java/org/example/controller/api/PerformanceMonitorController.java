@@ -1,5 +1,6 @@
 package org.example.controller.api;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.example.config.PerformanceConfig;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
@@ -82,28 +83,35 @@ public class PerformanceMonitorController {
     public ResponseEntity<Map<String, Object>> getCacheStats() {
         Map<String, Object> stats = new HashMap<>();
         
-        if (cacheManager instanceof org.springframework.cache.concurrent.ConcurrentMapCacheManager) {
-            org.springframework.cache.concurrent.ConcurrentMapCacheManager concurrentCacheManager = 
-                (org.springframework.cache.concurrent.ConcurrentMapCacheManager) cacheManager;
-            
-            // 获取缓存名称列表
-            String[] cacheNames = concurrentCacheManager.getCacheNames().toArray(new String[0]);
-            stats.put("cacheCount", cacheNames.length);
-            stats.put("cacheNames", cacheNames);
-            
-            // 统计每个缓存的大小
-            Map<String, Integer> cacheSizes = new HashMap<>();
-            for (String cacheName : cacheNames) {
-                org.springframework.cache.Cache cache = concurrentCacheManager.getCache(cacheName);
-                if (cache != null && cache.getNativeCache() instanceof java.util.concurrent.ConcurrentHashMap) {
-                    java.util.concurrent.ConcurrentHashMap<?, ?> map = 
-                        (java.util.concurrent.ConcurrentHashMap<?, ?>) cache.getNativeCache();
-                    cacheSizes.put(cacheName, map.size());
-                }
+        String[] cacheNames = cacheManager.getCacheNames().toArray(new String[0]);
+        stats.put("cacheCount", cacheNames.length);
+        stats.put("cacheNames", cacheNames);
+
+        // 统计每个缓存的条数、命中率和淘汰数
+        Map<String, Long> cacheSizes = new HashMap<>();
+        Map<String, Map<String, Object>> cacheMetrics = new HashMap<>();
+        for (String cacheName : cacheNames) {
+            org.springframework.cache.Cache cache = cacheManager.getCache(cacheName);
+            if (cache != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache) {
+                com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache =
+                    (com.github.benmanes.caffeine.cache.Cache<?, ?>) cache.getNativeCache();
+                CacheStats cacheStats = nativeCache.stats();
+                cacheSizes.put(cacheName, nativeCache.estimatedSize());
+
+                Map<String, Object> metrics = new HashMap<>();
+                metrics.put("size", nativeCache.estimatedSize());
+                metrics.put("hitCount", cacheStats.hitCount());
+                metrics.put("missCount", cacheStats.missCount());
+                metrics.put("hitRate", cacheStats.hitRate());
+                metrics.put("evictionCount", cacheStats.evictionCount());
+                nativeCache.policy().eviction().ifPresent(eviction ->
+                    metrics.put("maximumSize", eviction.getMaximum()));
+                cacheMetrics.put(cacheName, metrics);
             }
-            stats.put("cacheSizes", cacheSizes);
         }
-        
+        stats.put("cacheSizes", cacheSizes);
+        stats.put("cacheMetrics", cacheMetrics);
+
         return ResponseEntity.ok(stats);
     }
 
@@ -1,8 +1,6 @@
 package org.example.controller.api;
 
 import org.example.entity.User;
-import org.example.repository.VideoRepository;
-import org.example.repository.CommentRepository;
 import org.example.service.StatisticsService;
 import org.example.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,12 +22,6 @@ public class StatisticsApiController {
     @Autowired
     private UserService userService;
 
-    @Autowired
-    private VideoRepository videoRepository;
-
-    @Autowired
-    private CommentRepository commentRepository;
-
     /**
      * 获取用户个人统计概览
      */
@@ -98,15 +90,13 @@ public class StatisticsApiController {
 
             User user = userOpt.get();
 
-            // 只进行最基本的查询
-            long videoCount = videoRepository.countByUserId(user.getId());
-            long commentCount = commentRepository.countByUserId(user.getId());
+            Map<String, Object> stats = statisticsService.getUserStatistics(user);
 
             response.put("success", true);
-            response.put("totalVideos", videoCount);
-            response.put("totalViews", videoCount * 2); // 简化估算
-            response.put("totalComments", commentCount);
-            response.put("totalLikes", videoCount); // 简化估算
+            response.put("totalVideos", stats.get("totalVideos"));
+            response.put("totalViews", stats.get("totalViews"));
+            response.put("totalComments", stats.get("totalComments"));
+            response.put("totalLikes", stats.get("totalLikesReceived"));
 
         } catch (Exception e) {
             response.put("success", false);
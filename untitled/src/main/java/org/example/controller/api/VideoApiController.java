@@ -62,7 +62,7 @@ public class VideoApiController {
                     videoService.incrementViews(id);
                 }
 
-                return ResponseEntity.ok(videoEntity);
+                return ResponseEntity.ok(videoService.applyPendingViews(videoEntity));
             }
         }
         return ResponseEntity.notFound().build();
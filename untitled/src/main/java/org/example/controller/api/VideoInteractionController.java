@@ -5,7 +5,10 @@ import org.example.repository.*;
 import org.example.service.UserService;
 import org.example.service.NotificationService;
 import org.example.service.AchievementService;
+import org.example.service.StatsAggregationService;
+import org.example.service.ViewCounterService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.transaction.annotation.Transactional;
@@ -37,6 +40,12 @@ public class VideoInteractionController {
     @Autowired
     private AchievementService achievementService;
 
+    @Autowired
+    private ViewCounterService viewCounterService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @PostMapping("/{id}/like")
     @Transactional
     public ResponseEntity<Map<String, Object>> addLike(@PathVariable Long id, Authentication authentication) {
@@ -70,6 +79,7 @@ public class VideoInteractionController {
             // 取消点赞
             if (existingLike.isPresent()) {
                 videoLikeRepository.delete(existingLike.get());
+                eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoUnliked(user.getId(), video.getId()));
                 video.setLikeCount(Math.max(0, video.getLikeCount() - 1));
             }
         } else {
@@ -78,6 +88,7 @@ public class VideoInteractionController {
             like.setUser(user);
             like.setVideo(video);
             videoLikeRepository.save(like);
+            eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoLiked(user.getId(), video.getId()));
             video.setLikeCount(video.getLikeCount() + 1);
 
             // 发送点赞通知
@@ -143,6 +154,7 @@ public class VideoInteractionController {
             // 取消收藏
             if (existingFavorite.isPresent()) {
                 videoFavoriteRepository.delete(existingFavorite.get());
+                eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoUnfavorited(user.getId(), video.getId()));
                 video.setFavoriteCount(Math.max(0, video.getFavoriteCount() - 1));
             }
         } else {
@@ -151,6 +163,7 @@ public class VideoInteractionController {
             favorite.setUser(user);
             favorite.setVideo(video);
             videoFavoriteRepository.save(favorite);
+            eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoFavorited(user.getId(), video.getId()));
             video.setFavoriteCount(video.getFavoriteCount() + 1);
 
             // 发送收藏通知
@@ -206,21 +219,17 @@ public class VideoInteractionController {
             }
         }
 
-        // 只有非所有者访问时才增加观看量
+        // 只有非所有者访问时才增加观看量（内存计数，批量写回）
         if (!isOwner) {
-            video.setViews(video.getViews() + 1);
-            if (video.getViewCount() != null) {
-                video.setViewCount(video.getViewCount() + 1);
-            } else {
-                video.setViewCount(1L);
-            }
-            videoRepository.save(video);
+            viewCounterService.increment(ViewCounterService.CounterType.VIDEO_VIEWS, id);
+            eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoViewed(id));
         }
 
+        long pending = viewCounterService.getPending(ViewCounterService.CounterType.VIDEO_VIEWS, id);
         Map<String, Object> response = new HashMap<>();
         response.put("success", true);
-        response.put("views", video.getViews());
-        response.put("viewCount", video.getViewCount());
+        response.put("views", (video.getViews() != null ? video.getViews() : 0L) + pending);
+        response.put("viewCount", (video.getViewCount() != null ? video.getViewCount() : 0L) + pending);
 
         return ResponseEntity.ok(response);
     }
@@ -1,66 +1,59 @@
 package org.example.controller.api;
 
-import org.example.config.WebSocketConfig;
+import org.example.config.StompDestinationMetrics;
+import org.example.service.WebSocketSessionRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
 
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * WebSocket统计API控制器
+ * WebSocket指标API控制器
+ * 连接（注册表）、目的地消息速率、通道线程池、代理状态分组返回；同样的数值也以 websocket.* 指标暴露给 /actuator/metrics。
  */
 @RestController
 @RequestMapping("/api/websocket")
 public class WebSocketStatsController {
 
     @Autowired
-    private WebSocketConfig webSocketConfig;
+    private WebSocketSessionRegistry sessionRegistry;
 
-    /**
-     * 获取WebSocket连接统计信息
-     */
-    @GetMapping("/stats")
-    public ResponseEntity<Map<String, Object>> getWebSocketStats() {
-        Map<String, Object> stats = new HashMap<>();
-        
-        try {
-            // 获取基本统计信息
-            Map<String, Object> connectionStats = webSocketConfig.getConnectionStats();
-            stats.putAll(connectionStats);
-            
-            // 添加系统信息
-            stats.put("systemInfo", getSystemInfo());
-            stats.put("timestamp", System.currentTimeMillis());
-            stats.put("status", "success");
-            
-            return ResponseEntity.ok(stats);
-        } catch (Exception e) {
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("status", "error");
-            errorResponse.put("message", "获取统计信息失败: " + e.getMessage());
-            errorResponse.put("timestamp", System.currentTimeMillis());
-            
-            return ResponseEntity.internalServerError().body(errorResponse);
-        }
-    }
+    @Autowired
+    private StompDestinationMetrics destinationMetrics;
+
+    @Autowired
+    private WebSocketMessageBrokerStats brokerStats;
+
+    @Value("${app.websocket.broker.mode:simple}")
+    private String brokerMode;
 
     /**
-     * 获取系统信息
+     * 获取WebSocket指标（/stats 为旧地址）
      */
-    private Map<String, Object> getSystemInfo() {
-        Map<String, Object> systemInfo = new HashMap<>();
-        
-        Runtime runtime = Runtime.getRuntime();
-        systemInfo.put("totalMemory", runtime.totalMemory());
-        systemInfo.put("freeMemory", runtime.freeMemory());
-        systemInfo.put("usedMemory", runtime.totalMemory() - runtime.freeMemory());
-        systemInfo.put("maxMemory", runtime.maxMemory());
-        systemInfo.put("availableProcessors", runtime.availableProcessors());
-        
-        return systemInfo;
+    @GetMapping({"/metrics", "/stats"})
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        Map<String, Object> executors = new HashMap<>();
+        executors.put("inbound", brokerStats.getClientInboundExecutorStatsInfo());
+        executors.put("outbound", brokerStats.getClientOutboundExecutorStatsInfo());
+        executors.put("sockJsScheduler", brokerStats.getSockJsTaskSchedulerStatsInfo());
+
+        Map<String, Object> broker = new HashMap<>();
+        broker.put("mode", brokerMode);
+        broker.put("relay", brokerStats.getStompBrokerRelayStatsInfo());
+        broker.put("stompSubProtocol", brokerStats.getStompSubProtocolStatsInfo());
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("connections", sessionRegistry.getStats());
+        metrics.put("destinations", destinationMetrics.getStats());
+        metrics.put("executors", executors);
+        metrics.put("broker", broker);
+        metrics.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.ok(metrics);
     }
-} 
\ No newline at end of file
+}
@@ -59,7 +59,6 @@ public class WebSocketController {
                         
                         // 设置用户上线状态
                         userOnlineStatusService.userOnline(userId, sessionId);
-                        userOnlineStatusService.broadcastOnlineCount();
                         
                         System.out.println("通过WebSocket设置用户上线: " + username + " (ID: " + userId + ", 会话: " + sessionId + ")");
                     }
@@ -0,0 +1,26 @@
+package org.example.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * 用户私信未读总数，与 conversation_inbox.unread_count 在同一事务中增减，未读角标只需按主键读取一行
+ */
+@Entity
+@Table(name = "chat_unread_totals")
+public class ChatUnreadTotal {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "unread_total", nullable = false)
+    private Long unreadTotal = 0L;
+
+    public ChatUnreadTotal() {}
+
+    // Getters and Setters
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Long getUnreadTotal() { return unreadTotal; }
+    public void setUnreadTotal(Long unreadTotal) { this.unreadTotal = unreadTotal; }
+}
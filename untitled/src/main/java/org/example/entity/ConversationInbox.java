@@ -0,0 +1,126 @@
+package org.example.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 会话收件箱（读模型）
+ * 每个 (用户, 会话) 一行，冗余保存最后一条消息预览、私聊对方信息和未读数，
+ * 会话列表只需按 (user_id, is_active, last_message_at) 分页查询一次。由 ChatInboxService 随消息收发同步维护
+ */
+@Entity
+@Table(name = "conversation_inbox",
+        uniqueConstraints = @UniqueConstraint(name = "uk_inbox_user_conversation", columnNames = {"user_id", "conversation_id"}),
+        indexes = {
+                @Index(name = "idx_inbox_user_list", columnList = "user_id, is_active, last_message_at, conversation_id"),
+                @Index(name = "idx_inbox_other_user", columnList = "other_user_id"),
+                @Index(name = "idx_inbox_conversation", columnList = "conversation_id")
+        })
+public class ConversationInbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "conversation_id", nullable = false)
+    private Long conversationId;
+
+    @Column(name = "conversation_type", nullable = false, length = 16)
+    private String conversationType;
+
+    @Column(name = "title", length = 255)
+    private String title;
+
+    // 私聊对方
+    @Column(name = "other_user_id")
+    private Long otherUserId;
+
+    @Column(name = "other_username", length = 50)
+    private String otherUsername;
+
+    @Column(name = "other_nickname", length = 100)
+    private String otherNickname;
+
+    @Column(name = "other_avatar", length = 500)
+    private String otherAvatar;
+
+    @Column(name = "last_message_id")
+    private Long lastMessageId;
+
+    @Column(name = "last_message_preview", length = 100)
+    private String lastMessagePreview;
+
+    @Column(name = "last_message_sender", length = 100)
+    private String lastMessageSender;
+
+    @Column(name = "last_message_at")
+    private LocalDateTime lastMessageAt;
+
+    @Column(name = "unread_count", nullable = false)
+    private Integer unreadCount = 0;
+
+    @Column(name = "last_read_message_id", nullable = false)
+    private Long lastReadMessageId = 0L;
+
+    @Column(name = "is_active", nullable = false)
+    private Boolean isActive = true;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public ConversationInbox() {}
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public Long getConversationId() { return conversationId; }
+    public void setConversationId(Long conversationId) { this.conversationId = conversationId; }
+
+    public String getConversationType() { return conversationType; }
+    public void setConversationType(String conversationType) { this.conversationType = conversationType; }
+
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+
+    public Long getOtherUserId() { return otherUserId; }
+    public void setOtherUserId(Long otherUserId) { this.otherUserId = otherUserId; }
+
+    public String getOtherUsername() { return otherUsername; }
+    public void setOtherUsername(String otherUsername) { this.otherUsername = otherUsername; }
+
+    public String getOtherNickname() { return otherNickname; }
+    public void setOtherNickname(String otherNickname) { this.otherNickname = otherNickname; }
+
+    public String getOtherAvatar() { return otherAvatar; }
+    public void setOtherAvatar(String otherAvatar) { this.otherAvatar = otherAvatar; }
+
+    public Long getLastMessageId() { return lastMessageId; }
+    public void setLastMessageId(Long lastMessageId) { this.lastMessageId = lastMessageId; }
+
+    public String getLastMessagePreview() { return lastMessagePreview; }
+    public void setLastMessagePreview(String lastMessagePreview) { this.lastMessagePreview = lastMessagePreview; }
+
+    public String getLastMessageSender() { return lastMessageSender; }
+    public void setLastMessageSender(String lastMessageSender) { this.lastMessageSender = lastMessageSender; }
+
+    public LocalDateTime getLastMessageAt() { return lastMessageAt; }
+    public void setLastMessageAt(LocalDateTime lastMessageAt) { this.lastMessageAt = lastMessageAt; }
+
+    public Integer getUnreadCount() { return unreadCount; }
+    public void setUnreadCount(Integer unreadCount) { this.unreadCount = unreadCount; }
+
+    public Long getLastReadMessageId() { return lastReadMessageId; }
+    public void setLastReadMessageId(Long lastReadMessageId) { this.lastReadMessageId = lastReadMessageId; }
+
+    public Boolean getIsActive() { return isActive; }
+    public void setIsActive(Boolean isActive) { this.isActive = isActive; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,79 @@
+package org.example.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 弹幕
+ * 只追加不修改；按 (video_id, time_bucket) 建索引，播放器一次读取一段播放时间内的弹幕。
+ * id 由 DanmakuService 在内存中分配，写库前就能用于热数据与库中数据的去重
+ */
+@Entity
+@Table(name = "danmaku",
+        indexes = @Index(name = "idx_danmaku_video_bucket", columnList = "video_id, time_bucket, time_ms"))
+public class Danmaku {
+    @Id
+    private Long id;
+
+    @Column(name = "video_id", nullable = false)
+    private Long videoId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "username", nullable = false, length = 50)
+    private String username;
+
+    @Column(name = "content", nullable = false, length = 255)
+    private String content;
+
+    // 弹幕出现的播放时间点（毫秒）
+    @Column(name = "time_ms", nullable = false)
+    private Integer timeMs;
+
+    // time_ms / DanmakuService.BUCKET_MS
+    @Column(name = "time_bucket", nullable = false)
+    private Integer timeBucket;
+
+    @Column(name = "color", length = 16)
+    private String color;
+
+    @Column(name = "font_size")
+    private Integer fontSize;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public Danmaku() {}
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getVideoId() { return videoId; }
+    public void setVideoId(Long videoId) { this.videoId = videoId; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+
+    public String getContent() { return content; }
+    public void setContent(String content) { this.content = content; }
+
+    public Integer getTimeMs() { return timeMs; }
+    public void setTimeMs(Integer timeMs) { this.timeMs = timeMs; }
+
+    public Integer getTimeBucket() { return timeBucket; }
+    public void setTimeBucket(Integer timeBucket) { this.timeBucket = timeBucket; }
+
+    public String getColor() { return color; }
+    public void setColor(String color) { this.color = color; }
+
+    public Integer getFontSize() { return fontSize; }
+    public void setFontSize(Integer fontSize) { this.fontSize = fontSize; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,131 @@
+package org.example.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 歌词识别任务
+ * 按音乐ID和音频文件哈希去重；完成的任务保存 LRC 结果，相同哈希的音频再次请求时直接复用，不再识别。
+ * 未完成的任务在 active_music_id 中记录音乐ID，唯一键保证同一首音乐同时只有一个未完成任务；完成或失败时置空。
+ * 由 LyricJobService 执行
+ */
+@Entity
+@Table(name = "lyric_jobs",
+        indexes = {
+                @Index(name = "idx_lyric_job_status", columnList = "status, lease_until"),
+                @Index(name = "idx_lyric_job_hash", columnList = "file_hash, status"),
+                @Index(name = "idx_lyric_job_music", columnList = "music_id, status")
+        },
+        uniqueConstraints = @UniqueConstraint(name = "uk_lyric_job_active_music", columnNames = "active_music_id"))
+public class LyricJob {
+
+    public enum Status {
+        QUEUED,     // 等待执行
+        RUNNING,    // 识别中（lease_until 之前由某个节点持有）
+        COMPLETED,  // 已完成，result_lrc 为识别结果
+        FAILED      // 重试次数用尽或音频不可用
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "music_id", nullable = false)
+    private Long musicId;
+
+    // 排队或识别中时等于 music_id，否则为 NULL
+    @Column(name = "active_music_id")
+    private Long activeMusicId;
+
+    // 音频文件内容的 SHA-256
+    @Column(name = "file_hash", nullable = false, length = 64)
+    private String fileHash;
+
+    @Column(name = "audio_path", nullable = false, length = 500)
+    private String audioPath;
+
+    @Column(name = "requested_by")
+    private Long requestedBy;
+
+    @Column(name = "status", nullable = false, length = 16)
+    @Enumerated(EnumType.STRING)
+    private Status status = Status.QUEUED;
+
+    @Column(name = "progress", nullable = false)
+    private Double progress = 0.0;
+
+    @Column(name = "line_count", nullable = false)
+    private Integer lineCount = 0;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "result_lrc", columnDefinition = "MEDIUMTEXT")
+    private String resultLrc;
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    public LyricJob() {}
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getMusicId() { return musicId; }
+    public void setMusicId(Long musicId) { this.musicId = musicId; }
+
+    public Long getActiveMusicId() { return activeMusicId; }
+    public void setActiveMusicId(Long activeMusicId) { this.activeMusicId = activeMusicId; }
+
+    public String getFileHash() { return fileHash; }
+    public void setFileHash(String fileHash) { this.fileHash = fileHash; }
+
+    public String getAudioPath() { return audioPath; }
+    public void setAudioPath(String audioPath) { this.audioPath = audioPath; }
+
+    public Long getRequestedBy() { return requestedBy; }
+    public void setRequestedBy(Long requestedBy) { this.requestedBy = requestedBy; }
+
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+
+    public Double getProgress() { return progress; }
+    public void setProgress(Double progress) { this.progress = progress; }
+
+    public Integer getLineCount() { return lineCount; }
+    public void setLineCount(Integer lineCount) { this.lineCount = lineCount; }
+
+    public Integer getAttempts() { return attempts; }
+    public void setAttempts(Integer attempts) { this.attempts = attempts; }
+
+    public String getResultLrc() { return resultLrc; }
+    public void setResultLrc(String resultLrc) { this.resultLrc = resultLrc; }
+
+    public LocalDateTime getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(LocalDateTime leaseUntil) { this.leaseUntil = leaseUntil; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getStartedAt() { return startedAt; }
+    public void setStartedAt(LocalDateTime startedAt) { this.startedAt = startedAt; }
+
+    public LocalDateTime getCompletedAt() { return completedAt; }
+    public void setCompletedAt(LocalDateTime completedAt) { this.completedAt = completedAt; }
+}
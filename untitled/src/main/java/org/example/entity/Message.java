@@ -7,7 +7,9 @@ import java.time.LocalDateTime;
  * 消息实体类
  */
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+    @Index(name = "idx_messages_conversation_keyset", columnList = "conversation_id, created_at, id")
+})
 public class Message {
     
     @Id
@@ -5,9 +5,13 @@ import java.time.LocalDateTime;
 
 /**
  * 通知实体
+ * 点赞、收藏、评论按 (接收者, 视频, 类型) 合并为一条，actorCount 为合并的人数，created_at 为最近一次事件的时间
  */
 @Entity
-@Table(name = "notifications")
+@Table(name = "notifications", indexes = {
+        @Index(name = "idx_notifications_user_unread", columnList = "user_id, is_read"),
+        @Index(name = "idx_notifications_aggregate", columnList = "user_id, related_id, type, is_read")
+})
 public class Notification {
 
     @Id
@@ -45,6 +49,9 @@ public class Notification {
     @Column(name = "read_at")
     private LocalDateTime readAt;
 
+    @Column(name = "actor_count")
+    private Integer actorCount = 1; // 合并的来源用户数
+
     // 用户关联
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", insertable = false, updatable = false)
@@ -177,6 +184,14 @@ public class Notification {
         this.readAt = readAt;
     }
 
+    public Integer getActorCount() {
+        return actorCount;
+    }
+
+    public void setActorCount(Integer actorCount) {
+        this.actorCount = actorCount;
+    }
+
     public User getUser() {
         return user;
     }
@@ -0,0 +1,113 @@
+package org.example.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 通知群发任务
+ * 记录目标用户和已处理到的用户ID游标；每批通知与游标在同一事务中写入，节点重启后从游标继续，不会重复或遗漏。
+ * 由 NotificationBroadcastService 执行
+ */
+@Entity
+@Table(name = "notification_broadcasts",
+        indexes = @Index(name = "idx_broadcast_status", columnList = "status, lease_until"))
+public class NotificationBroadcast {
+
+    public enum Status {
+        PENDING,    // 等待执行
+        RUNNING,    // 执行中（lease_until 之前由某个节点持有）
+        COMPLETED   // 已完成
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "type", nullable = false, length = 100)
+    @Enumerated(EnumType.STRING)
+    private Notification.NotificationType type;
+
+    @Column(name = "title", nullable = false)
+    private String title;
+
+    @Column(name = "content", columnDefinition = "TEXT")
+    private String content;
+
+    // 逗号分隔的升序用户ID；为空表示全部用户
+    @Column(name = "target_user_ids", columnDefinition = "LONGTEXT")
+    private String targetUserIds;
+
+    @Column(name = "status", nullable = false, length = 16)
+    @Enumerated(EnumType.STRING)
+    private Status status = Status.PENDING;
+
+    // 已处理的最大用户ID
+    @Column(name = "cursor_user_id", nullable = false)
+    private Long cursorUserId = 0L;
+
+    @Column(name = "total_recipients", nullable = false)
+    private Integer totalRecipients = 0;
+
+    @Column(name = "delivered_count", nullable = false)
+    private Integer deliveredCount = 0;
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    public NotificationBroadcast() {}
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Notification.NotificationType getType() { return type; }
+    public void setType(Notification.NotificationType type) { this.type = type; }
+
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+
+    public String getContent() { return content; }
+    public void setContent(String content) { this.content = content; }
+
+    public String getTargetUserIds() { return targetUserIds; }
+    public void setTargetUserIds(String targetUserIds) { this.targetUserIds = targetUserIds; }
+
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+
+    public Long getCursorUserId() { return cursorUserId; }
+    public void setCursorUserId(Long cursorUserId) { this.cursorUserId = cursorUserId; }
+
+    public Integer getTotalRecipients() { return totalRecipients; }
+    public void setTotalRecipients(Integer totalRecipients) { this.totalRecipients = totalRecipients; }
+
+    public Integer getDeliveredCount() { return deliveredCount; }
+    public void setDeliveredCount(Integer deliveredCount) { this.deliveredCount = deliveredCount; }
+
+    public LocalDateTime getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(LocalDateTime leaseUntil) { this.leaseUntil = leaseUntil; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+
+    public LocalDateTime getCompletedAt() { return completedAt; }
+    public void setCompletedAt(LocalDateTime completedAt) { this.completedAt = completedAt; }
+}
@@ -0,0 +1,48 @@
+package org.example.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * 统计日汇总
+ * 每行是某一天某项指标的新增量；owner_id = 0 为全站汇总，否则为该视频作者名下的汇总
+ */
+@Entity
+@Table(name = "stats_daily_rollup",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"stat_date", "metric", "owner_id"}),
+        indexes = @Index(name = "idx_rollup_owner_date", columnList = "owner_id, stat_date"))
+public class StatsDailyRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "stat_date", nullable = false)
+    private LocalDate statDate;
+
+    @Column(name = "metric", nullable = false, length = 32)
+    private String metric;
+
+    @Column(name = "owner_id", nullable = false)
+    private Long ownerId = 0L;
+
+    @Column(name = "metric_value", nullable = false)
+    private Long metricValue = 0L;
+
+    public StatsDailyRollup() {}
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public LocalDate getStatDate() { return statDate; }
+    public void setStatDate(LocalDate statDate) { this.statDate = statDate; }
+
+    public String getMetric() { return metric; }
+    public void setMetric(String metric) { this.metric = metric; }
+
+    public Long getOwnerId() { return ownerId; }
+    public void setOwnerId(Long ownerId) { this.ownerId = ownerId; }
+
+    public Long getMetricValue() { return metricValue; }
+    public void setMetricValue(Long metricValue) { this.metricValue = metricValue; }
+}
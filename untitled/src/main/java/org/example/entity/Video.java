@@ -1,12 +1,14 @@
 package org.example.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.Hibernate;
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "videos")
+@Table(name = "videos",
+        indexes = @Index(name = "idx_videos_transcode", columnList = "transcode_status, transcode_lease_until"))
 public class Video {
 
     @Id
@@ -104,6 +106,13 @@ public class Video {
         }
     }
 
+    public enum TranscodeStatus {
+        PENDING,    // 等待转码
+        RUNNING,    // 转码中（transcode_lease_until 之前由某个节点持有）
+        COMPLETED,  // HLS 多码率输出已就绪
+        FAILED      // 重试次数用尽
+    }
+
     // 构造函数
     public Video() {}
 
@@ -114,6 +123,31 @@ public class Video {
     @Column(name = "ban_reason")
     private String banReason;
 
+    // 拖动预览的 WebVTT 索引（指向雪碧图中的区域）
+    @Column(name = "preview_vtt")
+    private String previewVtt;
+
+    // HLS 转码状态，为空表示未转码（外链视频、转码功能上线前的视频）
+    @Column(name = "transcode_status", length = 16)
+    @Enumerated(EnumType.STRING)
+    private TranscodeStatus transcodeStatus;
+
+    @Column(name = "transcode_progress")
+    private Integer transcodeProgress;
+
+    @Column(name = "transcode_attempts", nullable = false)
+    private Integer transcodeAttempts = 0;
+
+    @Column(name = "transcode_lease_until")
+    private LocalDateTime transcodeLeaseUntil;
+
+    @Column(name = "transcode_error", length = 500)
+    private String transcodeError;
+
+    // HLS 主播放列表地址
+    @Column(name = "hls_master_url")
+    private String hlsMasterUrl;
+
     public Long getViewCount() { return viewCount; }
     public void setViewCount(Long viewCount) { this.viewCount = viewCount; }
 
@@ -124,6 +158,27 @@ public class Video {
     public String getBanReason() { return banReason; }
     public void setBanReason(String banReason) { this.banReason = banReason; }
 
+    public String getPreviewVtt() { return previewVtt; }
+    public void setPreviewVtt(String previewVtt) { this.previewVtt = previewVtt; }
+
+    public TranscodeStatus getTranscodeStatus() { return transcodeStatus; }
+    public void setTranscodeStatus(TranscodeStatus transcodeStatus) { this.transcodeStatus = transcodeStatus; }
+
+    public Integer getTranscodeProgress() { return transcodeProgress; }
+    public void setTranscodeProgress(Integer transcodeProgress) { this.transcodeProgress = transcodeProgress; }
+
+    public Integer getTranscodeAttempts() { return transcodeAttempts; }
+    public void setTranscodeAttempts(Integer transcodeAttempts) { this.transcodeAttempts = transcodeAttempts; }
+
+    public LocalDateTime getTranscodeLeaseUntil() { return transcodeLeaseUntil; }
+    public void setTranscodeLeaseUntil(LocalDateTime transcodeLeaseUntil) { this.transcodeLeaseUntil = transcodeLeaseUntil; }
+
+    public String getTranscodeError() { return transcodeError; }
+    public void setTranscodeError(String transcodeError) { this.transcodeError = transcodeError; }
+
+    public String getHlsMasterUrl() { return hlsMasterUrl; }
+    public void setHlsMasterUrl(String hlsMasterUrl) { this.hlsMasterUrl = hlsMasterUrl; }
+
 
 
     // Getter和Setter方法
@@ -217,4 +272,45 @@ public class Video {
         }
         return "/images/default-thumbnail.jpg";
     }
+
+    /**
+     * 列表展示用的脱离副本：复制标量字段和已加载的作者/分类，不含标签等延迟集合；
+     * 用于缓存，避免把托管实体共享给多个请求
+     */
+    public Video displayCopy() {
+        Video copy = new Video();
+        copy.id = id;
+        copy.title = title;
+        copy.description = description;
+        copy.filePath = filePath;
+        copy.thumbnailPath = thumbnailPath;
+        copy.userId = userId;
+        copy.url = url;
+        copy.thumbnail = thumbnail;
+        copy.images = images;
+        copy.status = status;
+        copy.views = views;
+        copy.likeCount = likeCount;
+        copy.favoriteCount = favoriteCount;
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        copy.viewCount = viewCount;
+        copy.duration = duration;
+        copy.tagsString = tagsString;
+        copy.previewVtt = previewVtt;
+        copy.transcodeStatus = transcodeStatus;
+        copy.hlsMasterUrl = hlsMasterUrl;
+        if (category != null && Hibernate.isInitialized(category)) {
+            copy.category = category;
+        }
+        if (user != null && Hibernate.isInitialized(user)) {
+            User author = new User();
+            author.setId(user.getId());
+            author.setUsername(user.getUsername());
+            author.setNickname(user.getNickname());
+            author.setAvatar(user.getAvatar());
+            copy.user = author;
+        }
+        return copy;
+    }
 }
\ No newline at end of file
@@ -38,6 +38,11 @@ public interface ConversationParticipantRepository extends JpaRepository<Convers
      * 检查用户是否是会话参与者（不考虑活跃状态）
      */
     boolean existsByConversationAndUser(Conversation conversation, User user);
+
+    /**
+     * 按 id 检查用户是否是会话的活跃参与者（不加载会话和用户实体）
+     */
+    boolean existsByConversationIdAndUserIdAndIsActiveTrue(Long conversationId, Long userId);
     
     /**
      * 统计会话的活跃参与者数量
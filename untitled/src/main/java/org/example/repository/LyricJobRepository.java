@@ -0,0 +1,15 @@
+package org.example.repository;
+
+import org.example.entity.LyricJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Optional;
+
+@Repository
+public interface LyricJobRepository extends JpaRepository<LyricJob, Long> {
+    Optional<LyricJob> findFirstByMusicIdAndStatusInOrderByIdDesc(Long musicId, Collection<LyricJob.Status> statuses);
+
+    Optional<LyricJob> findFirstByFileHashAndStatusInOrderByIdDesc(String fileHash, Collection<LyricJob.Status> statuses);
+}
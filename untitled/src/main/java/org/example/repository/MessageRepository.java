@@ -6,15 +6,25 @@ import org.example.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.LockModeType;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
+
+    /**
+     * 加行锁读取消息，撤回/删除时防止并发请求重复扣减未读数
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT m FROM Message m WHERE m.id = :id")
+    Optional<Message> findByIdForUpdate(@Param("id") Long id);
     
     /**
      * 查找会话中的消息（分页）
@@ -88,6 +98,32 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId AND m.isRecalled = false AND m.isDeleted = false ORDER BY m.createdAt DESC")
     Page<Message> findByConversationIdOrderByCreatedAtDesc(@Param("conversationId") Long conversationId, Pageable pageable);
 
+    /**
+     * 会话最新的可见消息，按 (created_at, id) 倒序；发送者和被回复消息一并加载
+     */
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender LEFT JOIN FETCH m.replyTo r LEFT JOIN FETCH r.sender " +
+           "WHERE m.conversation.id = :conversationId AND m.isRecalled = false AND m.isDeleted = false " +
+           "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Message> findLatestVisible(@Param("conversationId") Long conversationId, Pageable pageable);
+
+    /**
+     * 游标分页：早于 (createdAt, id) 的可见消息，走 (conversation_id, created_at, id) 索引的范围扫描
+     */
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender LEFT JOIN FETCH m.replyTo r LEFT JOIN FETCH r.sender " +
+           "WHERE m.conversation.id = :conversationId AND m.isRecalled = false AND m.isDeleted = false " +
+           "AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id)) " +
+           "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Message> findVisibleBefore(@Param("conversationId") Long conversationId,
+                                    @Param("createdAt") LocalDateTime createdAt,
+                                    @Param("id") Long id,
+                                    Pageable pageable);
+
+    /**
+     * 游标消息的发送时间（限定在会话内）
+     */
+    @Query("SELECT m.createdAt FROM Message m WHERE m.id = :id AND m.conversation.id = :conversationId")
+    Optional<LocalDateTime> findCreatedAtInConversation(@Param("conversationId") Long conversationId, @Param("id") Long id);
+
     /**
      * 根据消息类型查找消息
      */
@@ -0,0 +1,13 @@
+package org.example.repository;
+
+import org.example.entity.NotificationBroadcast;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface NotificationBroadcastRepository extends JpaRepository<NotificationBroadcast, Long> {
+    List<NotificationBroadcast> findAllByOrderByCreatedAtDesc(Pageable pageable);
+}
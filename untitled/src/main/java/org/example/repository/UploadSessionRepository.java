@@ -0,0 +1,18 @@
+package org.example.repository;
+
+import org.example.entity.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    List<UploadSession> findByStatusAndUpdatedAtBefore(UploadSession.Status status, LocalDateTime before);
+
+    // 已占用提交但未登记视频（提交中途节点退出）的会话
+    List<UploadSession> findByStatusAndVideoIdIsNullAndUpdatedAtBefore(UploadSession.Status status, LocalDateTime before);
+
+    long countByUserIdAndStatus(Long userId, UploadSession.Status status);
+}
@@ -193,6 +193,12 @@ public interface UserAchievementRepository extends JpaRepository<UserAchievement
     @Query("SELECT ua FROM UserAchievement ua WHERE ua.user.id = :userId ORDER BY ua.unlockedAt DESC")
     List<UserAchievement> findByUserId(@Param("userId") Long userId);
 
+    /**
+     * 获取用户已解锁的成就ID
+     */
+    @Query("SELECT ua.achievement.id FROM UserAchievement ua WHERE ua.user.id = :userId")
+    List<Long> findAchievementIdsByUserId(@Param("userId") Long userId);
+
     /**
      * 检查用户是否已获得指定成就
      */
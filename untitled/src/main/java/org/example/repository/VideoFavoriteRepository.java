@@ -24,6 +24,12 @@ public interface VideoFavoriteRepository extends JpaRepository<VideoFavorite, Lo
     @Query("SELECT COUNT(vf) FROM VideoFavorite vf WHERE vf.video.userId = :userId")
     long countByVideoUserId(@Param("userId") Long userId);
 
+    /**
+     * 统计用户收藏的视频数
+     */
+    @Query("SELECT COUNT(vf) FROM VideoFavorite vf WHERE vf.user.id = :userId")
+    long countByUserId(@Param("userId") Long userId);
+
     /**
      * 删除视频的所有收藏记录
      */
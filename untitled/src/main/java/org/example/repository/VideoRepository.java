@@ -222,6 +222,18 @@ public interface VideoRepository extends JpaRepository<Video, Long> {
     @Query("SELECT DISTINCT v FROM Video v LEFT JOIN FETCH v.user WHERE v.status = :status ORDER BY v.createdAt DESC")
     List<Video> findByStatusWithUser(@Param("status") Video.VideoStatus status);
 
+    // 搜索索引全量构建：一次性加载用户与标签
+    @Query("SELECT DISTINCT v FROM Video v LEFT JOIN FETCH v.user LEFT JOIN FETCH v.tags")
+    List<Video> findAllWithUserAndTags();
+
+    // 按ID批量加载并预取用户（推荐结果回填）
+    @Query("SELECT DISTINCT v FROM Video v LEFT JOIN FETCH v.user WHERE v.id IN :ids")
+    List<Video> findByIdInWithUser(@Param("ids") java.util.Collection<Long> ids);
+
+    // 搜索建议构建：只取标题与播放量
+    @Query("SELECT v.title, v.views FROM Video v WHERE v.status = 'APPROVED'")
+    List<Object[]> findApprovedTitlesAndViews();
+
     @Query("SELECT DISTINCT v FROM Video v LEFT JOIN FETCH v.user WHERE v.status = :status ORDER BY v.createdAt DESC")
     Page<Video> findByStatusWithUser(@Param("status") Video.VideoStatus status, Pageable pageable);
 
@@ -11,7 +11,6 @@ import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 成就检测和通知服务
@@ -28,10 +27,10 @@ public class AchievementDetectionService {
     private UserAchievementRepository userAchievementRepository;
 
     @Autowired
-    private UserLevelRepository userLevelRepository;
+    private NotificationRepository notificationRepository;
 
     @Autowired
-    private NotificationRepository notificationRepository;
+    private NotificationUnreadCounter unreadCounter;
 
     @Autowired
     private UserRepository userRepository;
@@ -39,6 +38,9 @@ public class AchievementDetectionService {
     @Autowired
     private ApplicationEventPublisher eventPublisher;
 
+    @Autowired
+    private AchievementEngineService achievementEngineService;
+
     /**
      * 初始化默认成就
      */
@@ -51,6 +53,7 @@ public class AchievementDetectionService {
 
         List<Achievement> achievements = createDefaultAchievements();
         achievementRepository.saveAll(achievements);
+        achievementEngineService.refreshIndex();
         logger.info("初始化了 {} 个默认成就", achievements.size());
     }
 
@@ -140,36 +143,7 @@ public class AchievementDetectionService {
     public List<Achievement> detectAllUserAchievements(Long userId) {
         logger.info("开始检测用户 {} 的所有成就", userId);
 
-        UserLevel userLevel = userLevelRepository.findByUserId(userId).orElse(null);
-        if (userLevel == null) {
-            logger.warn("用户 {} 没有等级信息，跳过成就检测", userId);
-            return Collections.emptyList();
-        }
-
-        // 获取所有活跃的成就
-        List<Achievement> allAchievements = achievementRepository.findByIsActiveTrue();
-        
-        // 获取用户已获得的成就
-        Set<Long> userAchievementIds = userAchievementRepository
-                .findByUserId(userId)
-                .stream()
-                .map(ua -> ua.getAchievement().getId())
-                .collect(Collectors.toSet());
-
-        List<Achievement> newAchievements = new ArrayList<>();
-
-        // 检查每个成就
-        for (Achievement achievement : allAchievements) {
-            if (!userAchievementIds.contains(achievement.getId()) && 
-                achievement.checkCondition(userLevel)) {
-                
-                // 授予成就
-                grantAchievement(userId, achievement);
-                newAchievements.add(achievement);
-                
-                logger.info("用户 {} 获得新成就：{}", userId, achievement.getName());
-            }
-        }
+        List<Achievement> newAchievements = achievementEngineService.detectAll(userId);
 
         if (!newAchievements.isEmpty()) {
             logger.info("用户 {} 总共获得了 {} 个新成就", userId, newAchievements.size());
@@ -194,6 +168,7 @@ public class AchievementDetectionService {
         userAchievement.setAchievement(achievement);
         userAchievement.setUnlockedAt(LocalDateTime.now());
         userAchievementRepository.save(userAchievement);
+        achievementEngineService.markUnlocked(userId, achievement.getId());
 
         // 发送成就通知
         sendAchievementNotification(userId, achievement);
@@ -225,6 +200,7 @@ public class AchievementDetectionService {
             notification.setRelatedType("ACHIEVEMENT");
             
             notificationRepository.save(notification);
+            unreadCounter.increment(userId, 1);
             
             logger.info("已发送成就通知给用户 {}: {}", userId, achievement.getName());
         } catch (Exception e) {
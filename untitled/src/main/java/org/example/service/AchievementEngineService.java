@@ -0,0 +1,805 @@
+package org.example.service;
+
+import org.example.entity.Achievement;
+import org.example.entity.UserLevel;
+import org.example.repository.AchievementRepository;
+import org.example.repository.CommentRepository;
+import org.example.repository.UserAchievementRepository;
+import org.example.repository.UserFollowRepository;
+import org.example.repository.UserLevelRepository;
+import org.example.repository.UserRepository;
+import org.example.repository.VideoFavoriteRepository;
+import org.example.repository.VideoLikeRepository;
+import org.example.repository.VideoRepository;
+import org.example.repository.ViewHistoryRepository;
+import org.example.util.TransactionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 成就判定引擎
+ * 启用的成就按条件类型建成阈值升序的不可变索引，用户行为只计算相关的一项指标，
+ * 再用二分定位本次可解锁的成就；用户已解锁集合以位图缓存在内存中，
+ * 全部解锁或无对应成就的条件类型直接跳过统计查询。
+ * 判定在事务提交后异步执行，解锁记录由定时任务批量写入。
+ */
+@Service
+public class AchievementEngineService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AchievementEngineService.class);
+
+    private static final String INSERT_SQL =
+            "INSERT IGNORE INTO user_achievements (user_id, achievement_id, unlocked_at, progress, is_displayed, notification_sent) " +
+            "VALUES (?, ?, ?, 1.0, 1, 0)";
+
+    // unlocked_at 为 datetime(6)，同一批写入的行时间戳相同；驱动不返回逐行结果时据此找出本批真正插入的行
+    private static final String INSERTED_SQL =
+            "SELECT user_id, achievement_id FROM user_achievements WHERE unlocked_at = ? AND user_id IN ";
+
+    /**
+     * 判定用的指标，每项对应一组条件类型
+     */
+    enum Metric {
+        VIDEOS("VIDEO_COUNT", "UPLOAD_VIDEO"),
+        LIKES_GIVEN("LIKE_VIDEO"),
+        COMMENTS("COMMENT_COUNT", "COMMENT"),
+        WATCHED_VIDEOS("WATCH_VIDEO"),
+        WATCH_TIME("WATCH_TIME"),
+        LIKES_RECEIVED("LIKE_COUNT", "RECEIVE_LIKE", "TOTAL_LIKES"),
+        FAVORITES("FAVORITE_COUNT"),
+        FOLLOWING("FOLLOW_COUNT", "FOLLOW_USER"),
+        FOLLOWERS("FOLLOWER_COUNT", "RECEIVE_FOLLOW"),
+        CATEGORIES("CATEGORY_DIVERSITY"),
+        WEEKEND_UPLOADS("WEEKEND_UPLOAD"),
+        SHORT_VIDEOS("SHORT_VIDEO"),
+        LONG_VIDEOS("LONG_VIDEO"),
+        MARATHON_VIDEOS("MARATHON_VIDEO"),
+        LEVEL("LEVEL"),
+        CONSECUTIVE_DAYS("CONSECUTIVE_DAYS");
+
+        private final String[] conditionTypes;
+
+        Metric(String... conditionTypes) {
+            this.conditionTypes = conditionTypes;
+        }
+    }
+
+    @Autowired
+    private AchievementRepository achievementRepository;
+
+    @Autowired
+    private UserAchievementRepository userAchievementRepository;
+
+    @Autowired
+    private VideoRepository videoRepository;
+
+    @Autowired
+    private VideoLikeRepository videoLikeRepository;
+
+    @Autowired
+    private VideoFavoriteRepository videoFavoriteRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private ViewHistoryRepository viewHistoryRepository;
+
+    @Autowired
+    private UserFollowRepository userFollowRepository;
+
+    @Autowired
+    private UserLevelRepository userLevelRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserLevelService userLevelService;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Value("${app.achievement.batch-size:200}")
+    private int batchSize;
+
+    // 已解锁位图闲置多久后移出内存
+    @Value("${app.achievement.unlocked-idle-ms:1800000}")
+    private long unlockedIdleMillis;
+
+    @Value("${app.achievement.max-cached-users:50000}")
+    private int maxCachedUsers;
+
+    private volatile AchievementIndex index = AchievementIndex.EMPTY;
+
+    private final Map<Long, UnlockedSet> unlockedByUser = new ConcurrentHashMap<>();
+
+    // 排队中的判定任务，相同 (用户, 行为, 参数) 只保留一个
+    private final Set<String> pendingTasks = ConcurrentHashMap.newKeySet();
+
+    private final ConcurrentLinkedQueue<PendingUnlock> pendingUnlocks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong skippedMetrics = new AtomicLong();
+    private final AtomicLong metricQueries = new AtomicLong();
+    private final AtomicLong dedupedTasks = new AtomicLong();
+    private final AtomicLong unlocked = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+
+    /**
+     * 应用启动完成后异步构建索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void onApplicationReady() {
+        refreshIndex();
+    }
+
+    /**
+     * 定时刷新索引，管理端修改成就后最迟一个周期生效
+     */
+    @Scheduled(initialDelayString = "${app.achievement.index-refresh-ms:300000}",
+               fixedDelayString = "${app.achievement.index-refresh-ms:300000}")
+    public void scheduledRefresh() {
+        refreshIndex();
+    }
+
+    public void refreshIndex() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            AchievementIndex fresh = AchievementIndex.build(achievementRepository.findByIsActiveTrue());
+            index = fresh;
+            logger.info("成就索引构建完成: {} 个成就, {} 种条件类型", fresh.size(), fresh.ladders.size());
+        } catch (Exception e) {
+            logger.error("成就索引构建失败: {}", e.getMessage(), e);
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * 提交一次行为触发的成就判定；在事务中调用时等提交后再执行
+     */
+    public void submit(Long userId, String action, Object... params) {
+        if (userId == null || action == null) {
+            return;
+        }
+        // 提交后才占用去重项：占用后回滚会让其他事务被合并掉的判定一起丢失
+        TransactionUtil.afterCommit(() -> dispatch(userId, action, params));
+    }
+
+    /**
+     * 相同 (用户, 行为, 参数) 的判定在执行前只保留一个
+     */
+    private void dispatch(Long userId, String action, Object... params) {
+        String key = userId + ":" + action + ":" + (params != null && params.length > 0 ? params[0] : "");
+        if (!pendingTasks.add(key)) {
+            dedupedTasks.incrementAndGet();
+            return;
+        }
+        Runnable task = () -> {
+            pendingTasks.remove(key);
+            try {
+                evaluate(userId, action, params);
+            } catch (Exception e) {
+                logger.error("成就判定失败 [user={}, action={}]: {}", userId, action, e.getMessage(), e);
+            }
+        };
+        try {
+            taskExecutor.execute(task);
+        } catch (Exception e) {
+            pendingTasks.remove(key);
+            logger.warn("成就判定任务提交失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 同步检测用户全部指标对应的成就，并立即写入解锁记录
+     */
+    public List<Achievement> detectAll(Long userId) {
+        if (userId == null) {
+            return Collections.emptyList();
+        }
+        List<Achievement> claimed = new ArrayList<>();
+        AchievementIndex current = index;
+        UnlockedSet unlockedSet = unlockedSet(userId);
+        for (Metric metric : Metric.values()) {
+            claimed.addAll(evaluateMetric(current, unlockedSet, userId, metric, null));
+        }
+        flush();
+        return claimed;
+    }
+
+    /**
+     * 按行为计算相关指标并解锁达到阈值的成就
+     */
+    List<Achievement> evaluate(Long userId, String action, Object... params) {
+        evaluations.incrementAndGet();
+        AchievementIndex current = index;
+        UnlockedSet unlockedSet = unlockedSet(userId);
+        Object param = params != null && params.length > 0 ? params[0] : null;
+        List<Achievement> claimed = new ArrayList<>();
+
+        switch (action) {
+            case "UPLOAD_VIDEO":
+            case "VIDEO_COUNT":
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.VIDEOS, null));
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.CATEGORIES, null));
+                claimed.addAll(evaluateUploadMoment(current, unlockedSet, userId));
+                if (param instanceof Integer) {
+                    // 参数为视频时长（秒）
+                    int durationSeconds = (Integer) param;
+                    if (durationSeconds < 300) {
+                        claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.SHORT_VIDEOS, null));
+                    }
+                    if (durationSeconds > 1800) {
+                        claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.LONG_VIDEOS, null));
+                    }
+                    if (durationSeconds > 3600) {
+                        claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.MARATHON_VIDEOS, null));
+                    }
+                }
+                break;
+            case "LIKE_VIDEO":
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.LIKES_GIVEN, null));
+                break;
+            case "FAVORITE_VIDEO":
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.FAVORITES, null));
+                break;
+            case "COMMENT":
+            case "COMMENT_COUNT":
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.COMMENTS, null));
+                break;
+            case "WATCH_VIDEO":
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.WATCHED_VIDEOS, null));
+                break;
+            case "WATCH_TIME":
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.WATCH_TIME, null));
+                break;
+            case "RECEIVE_LIKE":
+            case "TOTAL_LIKES":
+            case "LIKE_COUNT":
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.LIKES_RECEIVED, null));
+                break;
+            case "FOLLOW_USER":
+            case "FOLLOW_COUNT":
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.FOLLOWING, null));
+                break;
+            case "RECEIVE_FOLLOW":
+            case "FOLLOWER_COUNT":
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.FOLLOWERS, null));
+                break;
+            case "LEVEL":
+            case "LEVEL_UP":
+                // 等级以 UserLevel 为准，不信任调用方传入的数值
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.LEVEL, null));
+                break;
+            case "CONSECUTIVE_DAYS":
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.CONSECUTIVE_DAYS,
+                        param instanceof Number ? ((Number) param).longValue() : null));
+                break;
+            case "LOGIN":
+            case "DAILY_CHECKIN":
+                claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.CONSECUTIVE_DAYS, null));
+                break;
+            case "SYNC_CHECK":
+                for (Metric metric : Metric.values()) {
+                    claimed.addAll(evaluateMetric(current, unlockedSet, userId, metric, null));
+                }
+                break;
+            default:
+                // 其余行为按同名的标记型条件处理（REGISTER、HD_UPLOAD 等）
+                claimed.addAll(claim(current.ladder(action), unlockedSet, userId, 1L));
+        }
+        return claimed;
+    }
+
+    /**
+     * 计算单项指标；对应条件类型的成就都已解锁时不查询
+     */
+    private List<Achievement> evaluateMetric(AchievementIndex current, UnlockedSet unlockedSet,
+                                             Long userId, Metric metric, Long knownValue) {
+        List<Ladder> ladders = new ArrayList<>(metric.conditionTypes.length);
+        for (String conditionType : metric.conditionTypes) {
+            Ladder ladder = current.ladder(conditionType);
+            if (ladder != null && !unlockedSet.containsAll(ladder)) {
+                ladders.add(ladder);
+            }
+        }
+        if (ladders.isEmpty()) {
+            skippedMetrics.incrementAndGet();
+            return Collections.emptyList();
+        }
+
+        long value = knownValue != null ? knownValue : queryMetric(userId, metric);
+        List<Achievement> claimed = new ArrayList<>();
+        for (Ladder ladder : ladders) {
+            claimed.addAll(claim(ladder, unlockedSet, userId, value));
+        }
+        return claimed;
+    }
+
+    /**
+     * 上传时刻相关的成就：时段、节假日、周末
+     */
+    private List<Achievement> evaluateUploadMoment(AchievementIndex current, UnlockedSet unlockedSet, Long userId) {
+        List<Achievement> claimed = new ArrayList<>();
+        LocalTime now = LocalTime.now();
+        LocalDate today = LocalDate.now();
+
+        if (now.isAfter(LocalTime.of(6, 0)) && now.isBefore(LocalTime.of(8, 0))) {
+            claimed.addAll(claim(current.ladder("UPLOAD_TIME"), unlockedSet, userId, 6L));
+        }
+        if (now.isAfter(LocalTime.of(2, 0)) && now.isBefore(LocalTime.of(6, 0))) {
+            claimed.addAll(claim(current.ladder("UPLOAD_TIME"), unlockedSet, userId, 2L));
+        }
+        // 深夜（0-4点）与清晨（4-6点）
+        if (now.isBefore(LocalTime.of(4, 0))) {
+            claimed.addAll(claim(current.ladder("LATE_UPLOAD"), unlockedSet, userId, 1L));
+        } else if (now.isBefore(LocalTime.of(6, 0))) {
+            claimed.addAll(claim(current.ladder("EARLY_UPLOAD"), unlockedSet, userId, 1L));
+        }
+        if (isHoliday(today)) {
+            claimed.addAll(claim(current.ladder("HOLIDAY_UPLOAD"), unlockedSet, userId, 1L));
+        }
+        DayOfWeek dayOfWeek = today.getDayOfWeek();
+        if (dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY) {
+            claimed.addAll(evaluateMetric(current, unlockedSet, userId, Metric.WEEKEND_UPLOADS, null));
+        }
+        return claimed;
+    }
+
+    private long queryMetric(Long userId, Metric metric) {
+        metricQueries.incrementAndGet();
+        switch (metric) {
+            case VIDEOS:
+                return videoRepository.countByUserId(userId);
+            case LIKES_GIVEN:
+                return videoLikeRepository.countByUserId(userId);
+            case COMMENTS:
+                return commentRepository.countByUserId(userId);
+            case WATCHED_VIDEOS:
+                return viewHistoryRepository.countDistinctVideosByUserId(userId);
+            case WATCH_TIME:
+                return viewHistoryRepository.sumWatchTimeByUserId(userId);
+            case LIKES_RECEIVED:
+                return videoLikeRepository.countByVideoUserId(userId);
+            case FAVORITES:
+                return videoFavoriteRepository.countByUserId(userId);
+            case FOLLOWING:
+                return userFollowRepository.countByFollowerId(userId);
+            case FOLLOWERS:
+                return userFollowRepository.countByFollowingId(userId);
+            case CATEGORIES:
+                return videoRepository.countDistinctCategoriesByUserId(userId);
+            case WEEKEND_UPLOADS:
+                return videoRepository.countWeekendUploadsByUserId(userId);
+            case SHORT_VIDEOS:
+                return videoRepository.countShortVideosByUserId(userId);
+            case LONG_VIDEOS:
+                return videoRepository.countLongVideosByUserId(userId);
+            case MARATHON_VIDEOS:
+                return videoRepository.countMarathonVideosByUserId(userId);
+            case LEVEL:
+                return userLevelRepository.findByUserId(userId).map(UserLevel::getLevel).orElse(1);
+            case CONSECUTIVE_DAYS: {
+                long levelDays = userLevelRepository.findByUserId(userId)
+                        .map(UserLevel::getConsecutiveDays).orElse(0);
+                long checkinDays = userRepository.findById(userId)
+                        .map(user -> user.getConsecutiveCheckinDays() != null ? user.getConsecutiveCheckinDays() : 0)
+                        .orElse(0);
+                return Math.max(levelDays, checkinDays);
+            }
+            default:
+                return 0L;
+        }
+    }
+
+    /**
+     * 在位图上占位达到阈值的成就并排入写入队列；占位保证同一成就不会被并发判定重复解锁
+     */
+    private List<Achievement> claim(Ladder ladder, UnlockedSet unlockedSet, Long userId, long value) {
+        if (ladder == null) {
+            return Collections.emptyList();
+        }
+        List<Achievement> claimed = new ArrayList<>();
+        int from = ladder.equality ? ladder.lowerBound(value) : 0;
+        int to = ladder.upperBound(value);
+        for (int i = from; i < to; i++) {
+            Achievement achievement = ladder.achievements[i];
+            if (unlockedSet.claim(achievement.getId())) {
+                pendingUnlocks.offer(new PendingUnlock(userId, achievement));
+                claimed.add(achievement);
+            }
+        }
+        return claimed;
+    }
+
+    private UnlockedSet unlockedSet(Long userId) {
+        UnlockedSet unlockedSet = unlockedByUser.computeIfAbsent(userId, id -> {
+            BitSet bits = new BitSet();
+            for (Long achievementId : userAchievementRepository.findAchievementIdsByUserId(id)) {
+                bits.set(achievementId.intValue());
+            }
+            return new UnlockedSet(bits);
+        });
+        unlockedSet.lastAccess = System.currentTimeMillis();
+        return unlockedSet;
+    }
+
+    /**
+     * 其他途径解锁成就后同步位图
+     */
+    public void markUnlocked(Long userId, Long achievementId) {
+        UnlockedSet unlockedSet = unlockedByUser.get(userId);
+        if (unlockedSet != null && achievementId != null) {
+            unlockedSet.claim(achievementId);
+        }
+    }
+
+    /**
+     * 用户成就记录被删除后丢弃缓存的位图
+     */
+    public void invalidateUser(Long userId) {
+        if (userId != null) {
+            unlockedByUser.remove(userId);
+        }
+    }
+
+    /**
+     * 定时批量写入解锁记录
+     */
+    @Scheduled(fixedDelayString = "${app.achievement.flush-interval-ms:1000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        logger.info("应用关闭，写入未落库的成就解锁记录");
+        flush();
+    }
+
+    /**
+     * INSERT IGNORE 批量写入；真正插入的行才发放经验、通知和事件，写入失败则释放占位等待下次触发
+     */
+    public synchronized void flush() {
+        Set<Long> rewardedUsers = new LinkedHashSet<>();
+        List<PendingUnlock> batch = new ArrayList<>(batchSize);
+        PendingUnlock pending;
+        while ((pending = pendingUnlocks.poll()) != null) {
+            batch.add(pending);
+            if (batch.size() >= batchSize) {
+                writeBatch(batch, rewardedUsers);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch, rewardedUsers);
+        }
+        // 经验奖励可能带来升级，对获得奖励的用户补做一次等级判定
+        for (Long userId : rewardedUsers) {
+            submit(userId, "LEVEL_UP");
+        }
+    }
+
+    private void writeBatch(List<PendingUnlock> batch, Set<Long> rewardedUsers) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+        List<Object[]> batchArgs = new ArrayList<>(batch.size());
+        for (PendingUnlock pending : batch) {
+            batchArgs.add(new Object[] { pending.userId, pending.achievement.getId(), now });
+        }
+
+        int[] results;
+        try {
+            results = jdbcTemplate.batchUpdate(INSERT_SQL, batchArgs);
+        } catch (Exception e) {
+            failedFlushes.incrementAndGet();
+            logger.error("成就解锁记录写入失败, {} 条占位已释放: {}", batch.size(), e.getMessage());
+            for (PendingUnlock pending : batch) {
+                UnlockedSet unlockedSet = unlockedByUser.get(pending.userId);
+                if (unlockedSet != null) {
+                    unlockedSet.release(pending.achievement.getId());
+                }
+            }
+            return;
+        }
+
+        // 驱动以 rewriteBatchedStatements 合并语句时返回 SUCCESS_NO_INFO(-2)，此时按时间戳回查
+        Set<String> inserted = Arrays.stream(results).anyMatch(r -> r == Statement.SUCCESS_NO_INFO)
+                ? insertedRows(batch, now)
+                : Collections.emptySet();
+        for (int i = 0; i < batch.size(); i++) {
+            PendingUnlock pending = batch.get(i);
+            if (results[i] <= 0 && !inserted.contains(pending.userId + ":" + pending.achievement.getId())) {
+                continue;
+            }
+            reward(pending.userId, pending.achievement);
+            rewardedUsers.add(pending.userId);
+            unlocked.incrementAndGet();
+        }
+    }
+
+    /**
+     * 本批真正插入的 user_id:achievement_id；回查失败时不发放奖励（记录已写入，只是不重复发放）
+     */
+    private Set<String> insertedRows(List<PendingUnlock> batch, Timestamp batchTime) {
+        Set<Long> userIds = new LinkedHashSet<>();
+        batch.forEach(pending -> userIds.add(pending.userId));
+        List<Object> args = new ArrayList<>(userIds.size() + 1);
+        args.add(batchTime);
+        args.addAll(userIds);
+        String sql = INSERTED_SQL + "(" + String.join(",", Collections.nCopies(userIds.size(), "?")) + ")";
+        Set<String> inserted = new HashSet<>();
+        try {
+            jdbcTemplate.query(sql, rs -> {
+                inserted.add(rs.getLong("user_id") + ":" + rs.getLong("achievement_id"));
+            }, args.toArray());
+        } catch (Exception e) {
+            logger.error("回查成就解锁记录失败, {} 条解锁不发放奖励: {}", batch.size(), e.getMessage());
+        }
+        return inserted;
+    }
+
+    private void reward(Long userId, Achievement achievement) {
+        try {
+            Integer points = achievement.getPoints();
+            if (points != null && points > 0) {
+                userLevelService.addExperience(userId, (long) points, "成就奖励：" + achievement.getName());
+            }
+        } catch (Exception e) {
+            logger.error("添加成就经验值失败 [user={}, achievement={}]: {}", userId, achievement.getId(), e.getMessage());
+        }
+        try {
+            notificationService.createAchievementNotification(userId, achievement.getName(),
+                    achievement.getIcon(), achievement.getPoints(), achievement.getId());
+        } catch (Exception e) {
+            logger.error("发送成就通知失败 [user={}, achievement={}]: {}", userId, achievement.getId(), e.getMessage());
+        }
+        try {
+            eventPublisher.publishEvent(new AchievementDetectionService.AchievementUnlockedEvent(userId, achievement));
+        } catch (Exception e) {
+            logger.error("发布成就事件失败: {}", e.getMessage());
+        }
+        logger.info("用户 {} 解锁成就：{}", userId, achievement.getName());
+    }
+
+    /**
+     * 淘汰闲置用户的位图；超出上限时淘汰最久未访问的
+     */
+    @Scheduled(fixedDelayString = "${app.achievement.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long deadline = System.currentTimeMillis() - unlockedIdleMillis;
+        unlockedByUser.entrySet().removeIf(entry -> entry.getValue().lastAccess < deadline);
+
+        int overflow = unlockedByUser.size() - maxCachedUsers;
+        if (overflow > 0) {
+            List<Map.Entry<Long, UnlockedSet>> entries = new ArrayList<>(unlockedByUser.entrySet());
+            entries.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+            for (int i = 0; i < overflow && i < entries.size(); i++) {
+                unlockedByUser.remove(entries.get(i).getKey(), entries.get(i).getValue());
+            }
+        }
+    }
+
+    private boolean isHoliday(LocalDate date) {
+        int month = date.getMonthValue();
+        int day = date.getDayOfMonth();
+        return (month == 1 && day == 1) || (month == 2 && day == 1) || (month == 5 && day == 1)
+                || (month == 10 && day == 1) || (month == 12 && day == 25);
+    }
+
+    /**
+     * 引擎运行状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("indexedAchievements", index.size());
+        stats.put("conditionTypes", index.ladders.size());
+        stats.put("cachedUsers", unlockedByUser.size());
+        stats.put("pendingTasks", pendingTasks.size());
+        stats.put("pendingUnlocks", pendingUnlocks.size());
+        stats.put("evaluations", evaluations.get());
+        stats.put("metricQueries", metricQueries.get());
+        stats.put("skippedMetrics", skippedMetrics.get());
+        stats.put("dedupedTasks", dedupedTasks.get());
+        stats.put("unlocked", unlocked.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        return stats;
+    }
+
+    /**
+     * 不可变成就索引：条件类型 -> 按阈值升序的成就
+     */
+    static final class AchievementIndex {
+
+        static final AchievementIndex EMPTY = new AchievementIndex(Collections.emptyMap(), 0);
+
+        private final Map<String, Ladder> ladders;
+        private final int size;
+
+        private AchievementIndex(Map<String, Ladder> ladders, int size) {
+            this.ladders = ladders;
+            this.size = size;
+        }
+
+        static AchievementIndex build(List<Achievement> achievements) {
+            Map<String, List<Achievement>> grouped = new HashMap<>();
+            int size = 0;
+            for (Achievement achievement : achievements) {
+                if (achievement.getId() == null || achievement.getConditionType() == null) {
+                    continue;
+                }
+                grouped.computeIfAbsent(achievement.getConditionType(), k -> new ArrayList<>()).add(achievement);
+                size++;
+            }
+            Map<String, Ladder> ladders = new HashMap<>();
+            for (Map.Entry<String, List<Achievement>> entry : grouped.entrySet()) {
+                ladders.put(entry.getKey(), new Ladder(entry.getValue(), "UPLOAD_TIME".equals(entry.getKey())));
+            }
+            return new AchievementIndex(Collections.unmodifiableMap(ladders), size);
+        }
+
+        Ladder ladder(String conditionType) {
+            return ladders.get(conditionType);
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * 同一条件类型的成就，阈值与成就并列存放；equality 表示数值需精确相等（如上传时段）
+     */
+    static final class Ladder {
+
+        final long[] thresholds;
+        final Achievement[] achievements;
+        final long[] ids;
+        final boolean equality;
+
+        Ladder(List<Achievement> list, boolean equality) {
+            Achievement[] sorted = list.toArray(new Achievement[0]);
+            Arrays.sort(sorted, (a, b) -> Long.compare(threshold(a), threshold(b)));
+            this.achievements = sorted;
+            this.thresholds = new long[sorted.length];
+            this.ids = new long[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                thresholds[i] = threshold(sorted[i]);
+                ids[i] = sorted[i].getId();
+            }
+            this.equality = equality;
+        }
+
+        private static long threshold(Achievement achievement) {
+            return achievement.getConditionValue() != null ? achievement.getConditionValue() : 0L;
+        }
+
+        /**
+         * 第一个阈值 >= value 的下标
+         */
+        int lowerBound(long value) {
+            int lo = 0;
+            int hi = thresholds.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (thresholds[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * 第一个阈值 > value 的下标，之前的都已达到
+         */
+        int upperBound(long value) {
+            int lo = 0;
+            int hi = thresholds.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (thresholds[mid] <= value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * 用户已解锁（含已占位待写入）的成就位图，按成就ID置位
+     */
+    private static final class UnlockedSet {
+        private final BitSet bits;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        UnlockedSet(BitSet bits) {
+            this.bits = bits;
+        }
+
+        synchronized boolean claim(long achievementId) {
+            int bit = (int) achievementId;
+            if (bits.get(bit)) {
+                return false;
+            }
+            bits.set(bit);
+            return true;
+        }
+
+        synchronized void release(long achievementId) {
+            bits.clear((int) achievementId);
+        }
+
+        synchronized boolean containsAll(Ladder ladder) {
+            for (long id : ladder.ids) {
+                if (!bits.get((int) id)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class PendingUnlock {
+        final Long userId;
+        final Achievement achievement;
+
+        PendingUnlock(Long userId, Achievement achievement) {
+            this.userId = userId;
+            this.achievement = achievement;
+        }
+    }
+}
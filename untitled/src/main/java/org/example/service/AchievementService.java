@@ -51,6 +51,9 @@ public class AchievementService {
     @Autowired
     private UserLevelService userLevelService;
 
+    @Autowired
+    private AchievementEngineService achievementEngineService;
+
     /**
      * 获取所有成就
      */
@@ -108,6 +111,7 @@ public class AchievementService {
         // 创建新的用户成就记录
         UserAchievement userAchievement = new UserAchievement(user, achievement);
         UserAchievement savedAchievement = userAchievementRepository.save(userAchievement);
+        achievementEngineService.markUnlocked(user.getId(), achievementId);
 
         // 给用户添加经验值奖励
         try {
@@ -130,205 +134,10 @@ public class AchievementService {
     }
 
     /**
-     * 检查并解锁成就
+     * 检查并解锁成就（由成就引擎异步判定）
      */
     public void checkAndUnlockAchievements(User user, String triggerType, Object... params) {
-        List<Achievement> allAchievements = getAllAchievements();
-        
-        for (Achievement achievement : allAchievements) {
-            if (shouldUnlockAchievement(user, achievement, triggerType, params)) {
-                try {
-                    unlockAchievement(user, achievement.getId());
-                } catch (Exception e) {
-                    // 忽略已解锁的成就
-                }
-            }
-        }
-    }
-
-    /**
-     * 判断是否应该解锁成就
-     */
-    private boolean shouldUnlockAchievement(User user, Achievement achievement, String triggerType, Object... params) {
-        // 检查用户是否已经解锁了这个成就
-        Optional<UserAchievement> existingAchievement = userAchievementRepository.findByUserAndAchievement(user, achievement);
-        if (existingAchievement.isPresent()) {
-            return false; // 已经解锁，不需要重复解锁
-        }
-
-        // 根据成就的条件类型来判断
-        String conditionType = achievement.getConditionType();
-        Long conditionValue = achievement.getConditionValue();
-
-        switch (conditionType) {
-            // 注册相关
-            case "REGISTER":
-                return "REGISTER".equals(triggerType);
-
-            // 上传视频相关
-            case "UPLOAD_VIDEO":
-                return "UPLOAD_VIDEO".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 点赞视频相关
-            case "LIKE_VIDEO":
-                return "LIKE_VIDEO".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 评论相关
-            case "COMMENT":
-                return "COMMENT".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 观看视频相关
-            case "WATCH_VIDEO":
-                return "WATCH_VIDEO".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 观看时长相关
-            case "WATCH_TIME":
-                return "WATCH_TIME".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 连续登录相关
-            case "CONSECUTIVE_DAYS":
-                return "CONSECUTIVE_DAYS".equals(triggerType) && params.length > 0 &&
-                       ((Integer) params[0]) >= conditionValue;
-
-            // 获得点赞相关
-            case "RECEIVE_LIKE":
-                return "RECEIVE_LIKE".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 关注用户相关
-            case "FOLLOW_USER":
-                return "FOLLOW_USER".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 获得关注相关
-            case "RECEIVE_FOLLOW":
-                return "RECEIVE_FOLLOW".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 上传时间相关
-            case "UPLOAD_TIME":
-                return "UPLOAD_TIME".equals(triggerType) && params.length > 0 &&
-                       ((Integer) params[0]).equals(conditionValue.intValue());
-
-            // 周末上传相关
-            case "WEEKEND_UPLOAD":
-                return "WEEKEND_UPLOAD".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 节假日上传相关
-            case "HOLIDAY_UPLOAD":
-                return "HOLIDAY_UPLOAD".equals(triggerType);
-
-            // 分类多样性相关
-            case "CATEGORY_DIVERSITY":
-                return "CATEGORY_DIVERSITY".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 视频时长相关
-            case "SHORT_VIDEO":
-                return "SHORT_VIDEO".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            case "LONG_VIDEO":
-                return "LONG_VIDEO".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            case "MARATHON_VIDEO":
-                return "MARATHON_VIDEO".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 平均点赞相关
-            case "AVG_LIKES":
-                return "AVG_LIKES".equals(triggerType) && params.length > 0 &&
-                       ((Double) params[0]) >= conditionValue;
-
-            // 总点赞里程碑
-            case "TOTAL_LIKES":
-                return "TOTAL_LIKES".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 视频数量相关
-            case "VIDEO_COUNT":
-                return "VIDEO_COUNT".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 点赞数量相关
-            case "LIKE_COUNT":
-                return "LIKE_COUNT".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 评论数量相关
-            case "COMMENT_COUNT":
-                return "COMMENT_COUNT".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 分享数量相关
-            case "SHARE_COUNT":
-                return "SHARE_COUNT".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 收藏数量相关
-            case "FAVORITE_COUNT":
-                return "FAVORITE_COUNT".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 等级相关
-            case "LEVEL":
-                return "LEVEL".equals(triggerType) && params.length > 0 &&
-                       ((Integer) params[0]) >= conditionValue.intValue();
-
-            // 早期上传相关
-            case "EARLY_UPLOAD":
-                return "EARLY_UPLOAD".equals(triggerType);
-
-            // 深夜上传相关
-            case "LATE_UPLOAD":
-                return "LATE_UPLOAD".equals(triggerType);
-
-            // 生日登录相关
-            case "BIRTHDAY_LOGIN":
-                return "BIRTHDAY_LOGIN".equals(triggerType);
-
-            // 完美评分相关
-            case "PERFECT_RATING":
-                return "PERFECT_RATING".equals(triggerType);
-
-            // 病毒视频相关
-            case "VIRAL_VIDEO":
-                return "VIRAL_VIDEO".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 关注数量相关
-            case "FOLLOW_COUNT":
-                return "FOLLOW_COUNT".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // 粉丝数量相关
-            case "FOLLOWER_COUNT":
-                return "FOLLOWER_COUNT".equals(triggerType) && params.length > 0 &&
-                       ((Long) params[0]) >= conditionValue;
-
-            // HD上传相关
-            case "HD_UPLOAD":
-                return "HD_UPLOAD".equals(triggerType);
-
-            // 快速回复相关
-            case "QUICK_REPLY":
-                return "QUICK_REPLY".equals(triggerType);
-
-            // 探索所有相关
-            case "EXPLORE_ALL":
-                return "EXPLORE_ALL".equals(triggerType);
-
-            default:
-                System.err.println("⚠️ 未知的成就条件类型: " + conditionType);
-                return false;
-        }
+        achievementEngineService.submit(user.getId(), triggerType, params);
     }
 
     /**
@@ -389,16 +198,7 @@ public class AchievementService {
      * 根据用户行为触发成就检查
      */
     public void triggerAchievementCheck(User user, String action, int count) {
-        try {
-            // 先同步用户统计数据，这是修复成就检测的关键
-            userLevelService.syncUserStats(user);
-
-            // 然后检查成就
-            checkAndUnlockAchievements(user, action, count);
-        } catch (Exception e) {
-            System.err.println("❌ 成就检查失败: " + e.getMessage());
-            e.printStackTrace();
-        }
+        triggerAchievementCheck(user, action, (Object) count);
     }
 
     /**
@@ -628,6 +428,8 @@ public class AchievementService {
             createAchievement("探索者", "观看所有分类的视频", "fa-compass",
                 Achievement.AchievementCategory.SPECIAL, Achievement.AchievementRarity.EPIC, 100,
                 "EXPLORE_ALL", 1L);
+
+            achievementEngineService.refreshIndex();
         }
     }
 
@@ -715,278 +517,19 @@ public class AchievementService {
     // ==================== 新的成就触发系统 ====================
 
     /**
-     * 统一的成就触发入口 - 根据用户行为触发相应成就检查
+     * 统一的成就触发入口 - 按行为提交给成就引擎，事务提交后异步判定
      */
     public void triggerAchievementCheck(User user, String actionType, Object... params) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
         try {
-            System.out.println("🎯 触发成就检查: " + actionType + " for user: " + user.getUsername());
-
-            switch (actionType) {
-                case "REGISTER":
-                    checkRegisterAchievements(user);
-                    break;
-                case "UPLOAD_VIDEO":
-                    checkUploadVideoAchievements(user, params);
-                    break;
-                case "LIKE_VIDEO":
-                    checkLikeVideoAchievements(user, params);
-                    break;
-                case "COMMENT":
-                    checkCommentAchievements(user, params);
-                    break;
-                case "WATCH_VIDEO":
-                    checkWatchVideoAchievements(user, params);
-                    break;
-                case "WATCH_TIME":
-                    checkWatchTimeAchievements(user, params);
-                    break;
-                case "CONSECUTIVE_DAYS":
-                    checkConsecutiveDaysAchievements(user, params);
-                    break;
-                case "RECEIVE_LIKE":
-                    checkReceiveLikeAchievements(user, params);
-                    break;
-                case "FOLLOW_USER":
-                    checkFollowUserAchievements(user, params);
-                    break;
-                case "RECEIVE_FOLLOW":
-                    checkReceiveFollowAchievements(user, params);
-                    break;
-                default:
-                    System.out.println("⚠️ 未知的成就触发类型: " + actionType);
-            }
+            achievementEngineService.submit(user.getId(), actionType, params);
         } catch (Exception e) {
             System.err.println("❌ 成就检查失败: " + e.getMessage());
-            e.printStackTrace();
         }
     }
 
-    // ==================== 具体的成就检查方法 ====================
-
-    /**
-     * 检查注册相关成就
-     */
-    private void checkRegisterAchievements(User user) {
-        // 初来乍到 (ID: 22) - 完成用户注册
-        checkAndUnlockAchievements(user, "REGISTER", 1);
-    }
-
-    /**
-     * 检查视频上传相关成就
-     */
-    private void checkUploadVideoAchievements(User user, Object... params) {
-        // 获取用户总上传视频数
-        long totalVideoCount = videoRepository.countByUserId(user.getId());
-
-        // 检查上传数量成就
-        checkAndUnlockAchievements(user, "UPLOAD_VIDEO", totalVideoCount);
-
-        // 检查时间相关的上传成就
-        checkUploadTimeAchievements(user);
-
-        // 检查周末上传成就
-        checkWeekendUploadAchievements(user);
-
-        // 检查节假日上传成就
-        checkHolidayUploadAchievements(user);
-
-        // 检查分类多样性成就
-        checkCategoryDiversityAchievements(user);
-
-        // 检查视频时长相关成就
-        if (params.length > 0 && params[0] instanceof Integer) {
-            int videoDurationSeconds = (Integer) params[0];
-            checkVideoDurationAchievements(user, videoDurationSeconds);
-        }
-    }
-
-    /**
-     * 检查点赞视频相关成就
-     */
-    private void checkLikeVideoAchievements(User user, Object... params) {
-        // 获取用户总点赞数
-        long totalLikesGiven = videoLikeRepository.countByUserId(user.getId());
-
-        // 检查点赞数量成就
-        checkAndUnlockAchievements(user, "LIKE_VIDEO", totalLikesGiven);
-    }
-
-    /**
-     * 检查评论相关成就
-     */
-    private void checkCommentAchievements(User user, Object... params) {
-        // 获取用户总评论数
-        long totalComments = commentRepository.countByUserId(user.getId());
-
-        // 检查评论数量成就
-        checkAndUnlockAchievements(user, "COMMENT", totalComments);
-    }
-
-    /**
-     * 检查观看视频相关成就
-     */
-    private void checkWatchVideoAchievements(User user, Object... params) {
-        // 获取用户总观看视频数
-        long totalWatchedVideos = viewHistoryRepository.countDistinctVideosByUserId(user.getId());
-
-        // 检查观看数量成就
-        checkAndUnlockAchievements(user, "WATCH_VIDEO", totalWatchedVideos);
-    }
-
-    /**
-     * 检查观看时长相关成就
-     */
-    private void checkWatchTimeAchievements(User user, Object... params) {
-        // 获取用户总观看时长（秒）
-        long totalWatchTimeSeconds = viewHistoryRepository.sumWatchTimeByUserId(user.getId());
-
-        // 检查观看时长成就
-        checkAndUnlockAchievements(user, "WATCH_TIME", totalWatchTimeSeconds);
-    }
-
-    /**
-     * 检查连续登录相关成就
-     */
-    private void checkConsecutiveDaysAchievements(User user, Object... params) {
-        if (params.length > 0 && params[0] instanceof Integer) {
-            int consecutiveDays = (Integer) params[0];
-
-            // 检查连续登录成就
-            checkAndUnlockAchievements(user, "CONSECUTIVE_DAYS", consecutiveDays);
-        }
-    }
-
-    /**
-     * 检查获得点赞相关成就
-     */
-    private void checkReceiveLikeAchievements(User user, Object... params) {
-        // 获取用户视频总获得点赞数
-        long totalLikesReceived = videoLikeRepository.countByVideoUserId(user.getId());
-
-        // 检查获得点赞成就
-        checkAndUnlockAchievements(user, "RECEIVE_LIKE", totalLikesReceived);
-
-        // 检查总点赞里程碑成就
-        checkAndUnlockAchievements(user, "TOTAL_LIKES", totalLikesReceived);
-    }
-
-    /**
-     * 检查关注用户相关成就
-     */
-    private void checkFollowUserAchievements(User user, Object... params) {
-        // 获取用户关注的总数
-        long totalFollowing = userFollowRepository.countByFollowerId(user.getId());
-
-        // 检查关注用户成就
-        checkAndUnlockAchievements(user, "FOLLOW_USER", totalFollowing);
-    }
-
-    /**
-     * 检查获得关注相关成就
-     */
-    private void checkReceiveFollowAchievements(User user, Object... params) {
-        // 获取用户的粉丝总数
-        long totalFollowers = userFollowRepository.countByFollowingId(user.getId());
-
-        // 检查获得关注成就
-        checkAndUnlockAchievements(user, "RECEIVE_FOLLOW", totalFollowers);
-    }
-
-    // ==================== 辅助检查方法 ====================
-
-    /**
-     * 检查上传时间相关成就
-     */
-    private void checkUploadTimeAchievements(User user) {
-        java.time.LocalTime now = java.time.LocalTime.now();
-
-        // 早起鸟 (6-8点上传)
-        if (now.isAfter(java.time.LocalTime.of(6, 0)) && now.isBefore(java.time.LocalTime.of(8, 0))) {
-            checkAndUnlockAchievements(user, "UPLOAD_TIME", 6);
-        }
-
-        // 夜猫子 (2-6点上传)
-        if (now.isAfter(java.time.LocalTime.of(2, 0)) && now.isBefore(java.time.LocalTime.of(6, 0))) {
-            checkAndUnlockAchievements(user, "UPLOAD_TIME", 2);
-        }
-    }
-
-    /**
-     * 检查周末上传成就
-     */
-    private void checkWeekendUploadAchievements(User user) {
-        java.time.DayOfWeek dayOfWeek = java.time.LocalDate.now().getDayOfWeek();
-
-        if (dayOfWeek == java.time.DayOfWeek.SATURDAY || dayOfWeek == java.time.DayOfWeek.SUNDAY) {
-            // 获取用户在周末上传的视频数量
-            long weekendUploads = videoRepository.countWeekendUploadsByUserId(user.getId());
-            checkAndUnlockAchievements(user, "WEEKEND_UPLOAD", weekendUploads);
-        }
-    }
-
-    /**
-     * 检查节假日上传成就
-     */
-    private void checkHolidayUploadAchievements(User user) {
-        java.time.LocalDate today = java.time.LocalDate.now();
-        if (isHoliday(today)) {
-            checkAndUnlockAchievements(user, "HOLIDAY_UPLOAD", 1);
-        }
-    }
-
-    /**
-     * 检查分类多样性成就
-     */
-    private void checkCategoryDiversityAchievements(User user) {
-        // 获取用户上传视频的不同分类数量
-        long uniqueCategories = videoRepository.countDistinctCategoriesByUserId(user.getId());
-        checkAndUnlockAchievements(user, "CATEGORY_DIVERSITY", uniqueCategories);
-    }
-
-    /**
-     * 检查视频时长相关成就
-     */
-    private void checkVideoDurationAchievements(User user, int videoDurationSeconds) {
-        // 短视频成就 (小于5分钟)
-        if (videoDurationSeconds < 300) {
-            long shortVideos = videoRepository.countShortVideosByUserId(user.getId());
-            checkAndUnlockAchievements(user, "SHORT_VIDEO", shortVideos);
-        }
-
-        // 长视频成就 (大于30分钟)
-        if (videoDurationSeconds > 1800) {
-            long longVideos = videoRepository.countLongVideosByUserId(user.getId());
-            checkAndUnlockAchievements(user, "LONG_VIDEO", longVideos);
-        }
-
-        // 超长视频成就 (大于60分钟)
-        if (videoDurationSeconds > 3600) {
-            long marathonVideos = videoRepository.countMarathonVideosByUserId(user.getId());
-            checkAndUnlockAchievements(user, "MARATHON_VIDEO", marathonVideos);
-        }
-    }
-
-    /**
-     * 检查是否是节假日
-     */
-    private boolean isHoliday(java.time.LocalDate date) {
-        int month = date.getMonthValue();
-        int day = date.getDayOfMonth();
-
-        // 新年
-        if (month == 1 && day == 1) return true;
-        // 春节（简化为2月1日）
-        if (month == 2 && day == 1) return true;
-        // 劳动节
-        if (month == 5 && day == 1) return true;
-        // 国庆节
-        if (month == 10 && day == 1) return true;
-        // 圣诞节
-        if (month == 12 && day == 25) return true;
-
-        return false;
-    }
-
     /**
      * 根据ID获取成就
      */
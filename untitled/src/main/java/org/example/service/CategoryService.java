@@ -3,6 +3,8 @@ package org.example.service;
 import org.example.entity.Category;
 import org.example.repository.CategoryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,6 +22,7 @@ public class CategoryService {
     /**
      * 获取所有激活的分类
      */
+    @Cacheable(value = "categories", key = "'active'")
     public List<Category> getAllActiveCategories() {
         return categoryRepository.findByIsActiveTrueOrderBySortOrderAsc();
     }
@@ -27,6 +30,7 @@ public class CategoryService {
     /**
      * 获取所有分类
      */
+    @Cacheable(value = "categories", key = "'all'")
     public List<Category> getAllCategories() {
         return categoryRepository.findAll();
     }
@@ -34,6 +38,7 @@ public class CategoryService {
     /**
      * 根据ID获取分类
      */
+    @Cacheable(value = "categoryById", key = "#id")
     public Optional<Category> getCategoryById(Long id) {
         return categoryRepository.findById(id);
     }
@@ -48,6 +53,7 @@ public class CategoryService {
     /**
      * 创建分类
      */
+    @CacheEvict(value = {"categories", "categoryById"}, allEntries = true)
     public Category createCategory(String name, String description, String icon, String color) {
         if (categoryRepository.existsByName(name)) {
             throw new RuntimeException("分类名称已存在");
@@ -61,6 +67,7 @@ public class CategoryService {
     /**
      * 更新分类
      */
+    @CacheEvict(value = {"categories", "categoryById"}, allEntries = true)
     public Category updateCategory(Long id, String name, String description, String icon, String color) {
         Category category = categoryRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("分类不存在"));
@@ -80,6 +87,7 @@ public class CategoryService {
     /**
      * 删除分类
      */
+    @CacheEvict(value = {"categories", "categoryById"}, allEntries = true)
     public void deleteCategory(Long id) {
         Category category = categoryRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("分类不存在"));
@@ -90,6 +98,7 @@ public class CategoryService {
     /**
      * 激活/停用分类
      */
+    @CacheEvict(value = {"categories", "categoryById"}, allEntries = true)
     public void toggleCategoryStatus(Long id) {
         Category category = categoryRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("分类不存在"));
@@ -0,0 +1,346 @@
+package org.example.service;
+
+import org.example.entity.Conversation;
+import org.example.entity.ConversationInbox;
+import org.example.entity.Message;
+import org.example.entity.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 会话收件箱读模型维护
+ * 消息发送、撤回/删除、标记已读、退出会话时在调用方的事务内同步更新 conversation_inbox 和 chat_unread_totals，
+ * 会话列表按 (last_message_at, conversation_id) 游标分页，每页是一次索引范围查询；未读角标是一次主键查询。
+ */
+@Service
+public class ChatInboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatInboxService.class);
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO conversation_inbox (user_id, conversation_id, conversation_type, title, other_user_id, other_username, " +
+            "other_nickname, other_avatar, last_message_id, last_message_preview, last_message_sender, last_message_at, " +
+            "unread_count, last_read_message_id, is_active, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 1, ?) " +
+            "ON DUPLICATE KEY UPDATE last_message_id = VALUES(last_message_id), " +
+            "last_message_preview = VALUES(last_message_preview), last_message_sender = VALUES(last_message_sender), " +
+            "last_message_at = VALUES(last_message_at), unread_count = unread_count + VALUES(unread_count), " +
+            "is_active = 1, updated_at = VALUES(updated_at)";
+
+    private static final String INCREMENT_TOTAL_SQL =
+            "INSERT INTO chat_unread_totals (user_id, unread_total) VALUES (?, ?) " +
+            "ON DUPLICATE KEY UPDATE unread_total = unread_total + VALUES(unread_total)";
+
+    private static final String DECREMENT_TOTAL_SQL =
+            "UPDATE chat_unread_totals SET unread_total = GREATEST(unread_total - ?, 0) WHERE user_id = ?";
+
+    private static final String FIRST_PAGE_SQL =
+            "SELECT * FROM conversation_inbox WHERE user_id = ? AND is_active = 1 " +
+            "ORDER BY last_message_at DESC, conversation_id DESC LIMIT ?";
+
+    // 游标为上一页最后一行的 (last_message_at, conversation_id)
+    private static final String NEXT_PAGE_SQL =
+            "SELECT * FROM conversation_inbox WHERE user_id = ? AND is_active = 1 " +
+            "AND (last_message_at < ? OR (last_message_at = ? AND conversation_id < ?)) " +
+            "ORDER BY last_message_at DESC, conversation_id DESC LIMIT ?";
+
+    private static final RowMapper<ConversationInbox> ROW_MAPPER = (rs, rowNum) -> {
+        ConversationInbox inbox = new ConversationInbox();
+        inbox.setId(rs.getLong("id"));
+        inbox.setUserId(rs.getLong("user_id"));
+        inbox.setConversationId(rs.getLong("conversation_id"));
+        inbox.setConversationType(rs.getString("conversation_type"));
+        inbox.setTitle(rs.getString("title"));
+        long otherUserId = rs.getLong("other_user_id");
+        inbox.setOtherUserId(rs.wasNull() ? null : otherUserId);
+        inbox.setOtherUsername(rs.getString("other_username"));
+        inbox.setOtherNickname(rs.getString("other_nickname"));
+        inbox.setOtherAvatar(rs.getString("other_avatar"));
+        long lastMessageId = rs.getLong("last_message_id");
+        inbox.setLastMessageId(rs.wasNull() ? null : lastMessageId);
+        inbox.setLastMessagePreview(rs.getString("last_message_preview"));
+        inbox.setLastMessageSender(rs.getString("last_message_sender"));
+        Timestamp lastMessageAt = rs.getTimestamp("last_message_at");
+        inbox.setLastMessageAt(lastMessageAt != null ? lastMessageAt.toLocalDateTime() : null);
+        inbox.setUnreadCount(rs.getInt("unread_count"));
+        inbox.setLastReadMessageId(rs.getLong("last_read_message_id"));
+        inbox.setIsActive(rs.getBoolean("is_active"));
+        return inbox;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.chat-inbox.preview-length:50}")
+    private int previewLength;
+
+    /**
+     * 新会话：为每个参与者建立收件箱行（还没有消息）
+     */
+    public void onConversationCreated(Conversation conversation, List<User> participants) {
+        upsert(conversation, participants, null, null, conversation.getLastMessageAt(), null);
+    }
+
+    /**
+     * 新消息：更新所有参与者的最后消息，除发送者外未读数 +1
+     */
+    public void onMessageSent(Conversation conversation, Message message, User sender, List<User> participants) {
+        upsert(conversation, participants, message, sender, message.getCreatedAt(), sender.getId());
+
+        List<Object[]> totals = new ArrayList<>();
+        for (User user : sortedById(participants)) {
+            if (!user.getId().equals(sender.getId())) {
+                totals.add(new Object[] { user.getId(), 1 });
+            }
+        }
+        if (!totals.isEmpty()) {
+            jdbcTemplate.batchUpdate(INCREMENT_TOTAL_SQL, totals);
+        }
+    }
+
+    private void upsert(Conversation conversation, List<User> participants, Message message, User sender,
+                        LocalDateTime lastMessageAt, Long senderId) {
+        boolean isPrivate = conversation.getType() == Conversation.ConversationType.PRIVATE;
+        List<User> users = sortedById(participants);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Timestamp at = Timestamp.valueOf(lastMessageAt != null ? lastMessageAt : LocalDateTime.now());
+
+        // 按用户 id 顺序加锁，避免同一会话并发发送时死锁
+        List<Object[]> batchArgs = new ArrayList<>(users.size());
+        for (User user : users) {
+            User other = isPrivate ? users.stream().filter(u -> !u.getId().equals(user.getId())).findFirst().orElse(null) : null;
+            boolean unread = message != null && !user.getId().equals(senderId);
+            batchArgs.add(new Object[] {
+                    user.getId(), conversation.getId(), conversation.getType().name(), conversation.getTitle(),
+                    other != null ? other.getId() : null,
+                    other != null ? other.getUsername() : null,
+                    other != null ? other.getNickname() : null,
+                    other != null ? other.getAvatar() : null,
+                    message != null ? message.getId() : null,
+                    message != null ? preview(message.getContent()) : null,
+                    sender != null ? displayName(sender) : null,
+                    at,
+                    unread ? 1 : 0,
+                    // 新建行的已读位置：发送者读到自己的消息，其他人从 0 开始
+                    message != null && !unread ? message.getId() : 0L,
+                    now
+            });
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, batchArgs);
+    }
+
+    /**
+     * 消息撤回或删除：对尚未读到该消息的接收者未读数 -1；若它是最后一条消息，预览回退到上一条可见消息
+     */
+    public void onMessageRemoved(Message message) {
+        Long conversationId = message.getConversation().getId();
+        Long senderId = message.getSender().getId();
+
+        List<Long> affected = jdbcTemplate.queryForList(
+                "SELECT user_id FROM conversation_inbox WHERE conversation_id = ? AND user_id <> ? " +
+                "AND unread_count > 0 AND last_read_message_id < ? ORDER BY user_id FOR UPDATE",
+                Long.class, conversationId, senderId, message.getId());
+        if (!affected.isEmpty()) {
+            List<Object[]> inboxArgs = new ArrayList<>(affected.size());
+            List<Object[]> totalArgs = new ArrayList<>(affected.size());
+            for (Long userId : affected) {
+                inboxArgs.add(new Object[] { userId, conversationId });
+                totalArgs.add(new Object[] { 1, userId });
+            }
+            jdbcTemplate.batchUpdate(
+                    "UPDATE conversation_inbox SET unread_count = unread_count - 1 WHERE user_id = ? AND conversation_id = ?",
+                    inboxArgs);
+            jdbcTemplate.batchUpdate(DECREMENT_TOTAL_SQL, totalArgs);
+        }
+
+        // 被移除的消息在本事务中可能尚未刷新到数据库，查询时显式排除
+        List<Map<String, Object>> previous = jdbcTemplate.queryForList(
+                "SELECT m.id, m.content, COALESCE(u.nickname, u.username) AS sender_name FROM messages m " +
+                "JOIN users u ON u.id = m.sender_id " +
+                "WHERE m.conversation_id = ? AND m.id <> ? AND m.is_recalled = 0 AND m.is_deleted = 0 " +
+                "ORDER BY m.created_at DESC, m.id DESC LIMIT 1",
+                conversationId, message.getId());
+        Map<String, Object> last = previous.isEmpty() ? null : previous.get(0);
+        jdbcTemplate.update(
+                "UPDATE conversation_inbox SET last_message_id = ?, last_message_preview = ?, last_message_sender = ? " +
+                "WHERE conversation_id = ? AND last_message_id = ?",
+                last != null ? last.get("id") : null,
+                last != null ? preview((String) last.get("content")) : null,
+                last != null ? last.get("sender_name") : null,
+                conversationId, message.getId());
+    }
+
+    /**
+     * 标记会话已读，返回清零的未读数
+     */
+    public int markAsRead(Long userId, Long conversationId) {
+        List<Integer> unread = jdbcTemplate.queryForList(
+                "SELECT unread_count FROM conversation_inbox WHERE user_id = ? AND conversation_id = ? FOR UPDATE",
+                Integer.class, userId, conversationId);
+        if (unread.isEmpty()) {
+            return 0;
+        }
+        // 即使未读数已是 0 也推进已读位置，撤回时据此判断接收者是否读过
+        jdbcTemplate.update(
+                "UPDATE conversation_inbox SET unread_count = 0, last_read_message_id = COALESCE(last_message_id, last_read_message_id) " +
+                "WHERE user_id = ? AND conversation_id = ?",
+                userId, conversationId);
+        int count = unread.get(0);
+        if (count > 0) {
+            jdbcTemplate.update(DECREMENT_TOTAL_SQL, count, userId);
+        }
+        return count;
+    }
+
+    /**
+     * 用户退出/删除会话：隐藏该行并扣除其未读数
+     */
+    public void onConversationLeft(Long userId, Long conversationId) {
+        int count = markAsRead(userId, conversationId);
+        jdbcTemplate.update("UPDATE conversation_inbox SET is_active = 0 WHERE user_id = ? AND conversation_id = ?",
+                userId, conversationId);
+        logger.debug("用户 {} 退出会话 {}，扣除未读 {}", userId, conversationId, count);
+    }
+
+    /**
+     * 会话消息被清空：清除预览并清零所有参与者的未读数
+     */
+    public void onConversationCleared(Long conversationId) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT user_id, unread_count FROM conversation_inbox WHERE conversation_id = ? AND unread_count > 0 " +
+                "ORDER BY user_id FOR UPDATE", conversationId);
+        List<Object[]> totalArgs = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            totalArgs.add(new Object[] { row.get("unread_count"), row.get("user_id") });
+        }
+        jdbcTemplate.update(
+                "UPDATE conversation_inbox SET last_message_id = NULL, last_message_preview = NULL, last_message_sender = NULL, " +
+                "unread_count = 0, last_read_message_id = GREATEST(last_read_message_id, COALESCE(last_message_id, 0)) " +
+                "WHERE conversation_id = ?", conversationId);
+        if (!totalArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate(DECREMENT_TOTAL_SQL, totalArgs);
+        }
+    }
+
+    /**
+     * 用户资料变化后同步其他人收件箱中冗余的昵称和头像
+     */
+    public void refreshProfile(User user) {
+        if (user.getId() == null) {
+            return;
+        }
+        jdbcTemplate.update(
+                "UPDATE conversation_inbox SET other_username = ?, other_nickname = ?, other_avatar = ? WHERE other_user_id = ?",
+                user.getUsername(), user.getNickname(), user.getAvatar(), user.getId());
+    }
+
+    /**
+     * 会话列表分页，按最后消息时间倒序
+     * beforeAt / beforeConversationId 为空时返回第一页，否则返回排在该游标之后的会话；多取一行判断是否还有下一页
+     */
+    @Transactional(readOnly = true)
+    public Slice<ConversationInbox> getInbox(Long userId, LocalDateTime beforeAt, Long beforeConversationId, int size) {
+        List<ConversationInbox> rows = beforeAt == null || beforeConversationId == null
+                ? jdbcTemplate.query(FIRST_PAGE_SQL, ROW_MAPPER, userId, size + 1)
+                : jdbcTemplate.query(NEXT_PAGE_SQL, ROW_MAPPER, userId, Timestamp.valueOf(beforeAt),
+                        Timestamp.valueOf(beforeAt), beforeConversationId, size + 1);
+        boolean hasNext = rows.size() > size;
+        return new SliceImpl<>(hasNext ? rows.subList(0, size) : rows, PageRequest.of(0, size), hasNext);
+    }
+
+    /**
+     * 用户可见的会话数
+     */
+    public long countInbox(Long userId) {
+        Long total = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM conversation_inbox WHERE user_id = ? AND is_active = 1", Long.class, userId);
+        return total != null ? total : 0;
+    }
+
+    /**
+     * 未读消息总数
+     */
+    public long getUnreadTotal(Long userId) {
+        List<Long> total = jdbcTemplate.queryForList(
+                "SELECT unread_total FROM chat_unread_totals WHERE user_id = ?", Long.class, userId);
+        return total.isEmpty() ? 0 : total.get(0);
+    }
+
+    /**
+     * 首次启用读模型时从现有会话和消息回填（未读数从 0 开始）
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            Long existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM conversation_inbox", Long.class);
+            if (existing != null && existing > 0) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            int rows = jdbcTemplate.update(
+                    "INSERT IGNORE INTO conversation_inbox (user_id, conversation_id, conversation_type, title, last_message_at, " +
+                    "unread_count, last_read_message_id, is_active, updated_at) " +
+                    "SELECT p.user_id, c.id, c.type, c.title, c.last_message_at, 0, " +
+                    "COALESCE((SELECT MAX(m.id) FROM messages m WHERE m.conversation_id = c.id), 0), 1, NOW() " +
+                    "FROM conversation_participants p JOIN conversations c ON c.id = p.conversation_id " +
+                    "WHERE p.is_active = 1 AND c.is_active = 1");
+            if (rows == 0) {
+                return;
+            }
+            jdbcTemplate.update(
+                    "UPDATE conversation_inbox i " +
+                    "JOIN conversation_participants p ON p.conversation_id = i.conversation_id AND p.user_id <> i.user_id AND p.is_active = 1 " +
+                    "JOIN users u ON u.id = p.user_id " +
+                    "SET i.other_user_id = u.id, i.other_username = u.username, i.other_nickname = u.nickname, i.other_avatar = u.avatar " +
+                    "WHERE i.conversation_type = 'PRIVATE'");
+            jdbcTemplate.update(
+                    "UPDATE conversation_inbox i " +
+                    "JOIN messages m ON m.id = (SELECT MAX(m2.id) FROM messages m2 " +
+                    "    WHERE m2.conversation_id = i.conversation_id AND m2.is_recalled = 0 AND m2.is_deleted = 0) " +
+                    "JOIN users s ON s.id = m.sender_id " +
+                    "SET i.last_message_id = m.id, i.last_message_sender = COALESCE(s.nickname, s.username), " +
+                    "i.last_message_preview = IF(CHAR_LENGTH(m.content) > ?, CONCAT(LEFT(m.content, ?), '...'), m.content)",
+                    previewLength, previewLength);
+            logger.info("会话收件箱回填完成: {} 行, 耗时 {}ms", rows, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("会话收件箱回填失败: {}", e.getMessage(), e);
+        }
+    }
+
+    private String preview(String content) {
+        if (content == null) {
+            return null;
+        }
+        return content.length() > previewLength ? content.substring(0, previewLength) + "..." : content;
+    }
+
+    private static String displayName(User user) {
+        return user.getNickname() != null ? user.getNickname() : user.getUsername();
+    }
+
+    private static List<User> sortedById(List<User> users) {
+        List<User> sorted = new ArrayList<>(users);
+        sorted.sort(Comparator.comparing(User::getId));
+        return sorted;
+    }
+}
@@ -1,16 +1,27 @@
 package org.example.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.example.entity.*;
 import org.example.repository.*;
+import org.example.util.TransactionUtil;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,6 +46,41 @@ public class ChatService {
     
     @Autowired
     private UserRepository userRepository;
+
+    @Autowired
+    private ChatInboxService chatInboxService;
+
+    // 每个活跃会话在内存中保留的最近消息条数
+    @Value("${app.chat-history.ring-size:50}")
+    private int ringSize;
+
+    @Value("${app.chat-history.max-conversations:5000}")
+    private long maxCachedConversations;
+
+    @Value("${app.chat-history.idle-minutes:30}")
+    private long idleMinutes;
+
+    // 参与者权限校验结果的缓存时间（只缓存通过的结果）
+    @Value("${app.chat-history.access-cache-seconds:60}")
+    private long accessCacheSeconds;
+
+    // 会话 -> 最近消息环；只在事务提交后更新，打开活跃会话时无需访问数据库
+    private Cache<Long, MessageRing> recentMessages;
+
+    // "会话ID:用户ID" -> 有访问权限
+    private Cache<String, Boolean> accessCache;
+
+    @PostConstruct
+    public void initCaches() {
+        recentMessages = Caffeine.newBuilder()
+                .maximumSize(maxCachedConversations)
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .build();
+        accessCache = Caffeine.newBuilder()
+                .maximumSize(50_000)
+                .expireAfterWrite(Duration.ofSeconds(accessCacheSeconds))
+                .build();
+    }
     
     /**
      * 获取或创建私聊会话
@@ -90,6 +136,11 @@ public class ChatService {
         // 强制刷新以确保数据持久化
         participantRepository.flush();
 
+        chatInboxService.onConversationCreated(conversation, List.of(currentUser, targetUser));
+
+        Long newConversationId = conversation.getId();
+        TransactionUtil.afterCommit(() -> recentMessages.put(newConversationId, new MessageRing(ringSize, true)));
+
         return conversation;
     }
     
@@ -121,11 +172,11 @@ public class ChatService {
             participantRepository.save(newParticipant);
         }
         
+        // 查询参与者列表（收件箱更新也需要）
+        List<ConversationParticipant> participants = participantRepository.findByConversationAndIsActiveTrueOrderByJoinedAtAsc(conversation);
+
         // 如果是私聊，检查关注状态（暂时注释掉，允许发送消息）
         if (conversation.getType() == Conversation.ConversationType.PRIVATE) {
-            // 查询参与者列表
-            List<ConversationParticipant> participants = participantRepository.findByConversationAndIsActiveTrueOrderByJoinedAtAsc(conversation);
-
             if (participants.size() == 2) {
                 User otherUser = participants.stream()
                     .filter(p -> !p.getUser().getId().equals(senderId))
@@ -162,6 +213,23 @@ public class ChatService {
         // 更新会话的最后消息时间
         conversation.setLastMessageAt(LocalDateTime.now());
         conversationRepository.save(conversation);
+
+        // 同一事务内更新参与者的收件箱和未读数
+        List<User> recipients = new ArrayList<>();
+        for (ConversationParticipant participant : participants) {
+            recipients.add(participant.getUser());
+        }
+        if (recipients.stream().noneMatch(u -> u.getId().equals(senderId))) {
+            recipients.add(sender);
+        }
+        chatInboxService.onMessageSent(conversation, message, sender, recipients);
+
+        // 提交后追加到最近消息环（文件、回复信息在同一事务内补充到同一个对象上）
+        Message committed = message;
+        TransactionUtil.afterCommit(() -> recentMessages.asMap().computeIfPresent(conversationId, (id, ring) -> {
+            ring.add(committed);
+            return ring;
+        }));
         
         return message;
     }
@@ -202,6 +270,8 @@ public class ChatService {
 
         // 设置回复信息
         if (replyToMessage != null) {
+            // 消息会进入最近消息环，在事务内初始化被回复消息的发送者
+            Hibernate.initialize(replyToMessage.getSender());
             message.setReplyTo(replyToMessage);
         }
 
@@ -214,26 +284,69 @@ public class ChatService {
     }
     
     /**
-     * 获取会话消息
+     * 获取会话消息（偏移分页，保留给旧调用方；新代码使用 getMessagesBefore）
      */
     public Page<Message> getConversationMessages(Long conversationId, Long userId, int page, int size) {
-        Optional<Conversation> conversationOpt = conversationRepository.findById(conversationId);
-        if (!conversationOpt.isPresent()) {
-            throw new RuntimeException("会话不存在");
+        checkAccess(conversationId, userId);
+
+        Pageable pageable = PageRequest.of(page, size);
+        return messageRepository.findByConversationIdOrderByCreatedAtDesc(conversationId, pageable);
+    }
+
+    /**
+     * 游标分页获取会话消息：返回早于 beforeMessageId 的最多 size 条消息（按时间倒序），beforeMessageId 为空时返回最新的消息。
+     * 最近消息环能覆盖的请求直接从内存返回，否则按 (conversation_id, created_at, id) 索引范围查询。
+     * 不加入外层事务，保证加载消息环的查询读到最新提交的数据。
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Slice<Message> getMessagesBefore(Long conversationId, Long userId, Long beforeMessageId, int size) {
+        checkAccess(conversationId, userId);
+        int limit = Math.max(1, Math.min(size, 100));
+
+        MessageRing ring = recentMessages.get(conversationId, this::loadRing);
+        List<Message> cached = ring.before(beforeMessageId, limit + 1);
+        if (cached != null) {
+            return toSlice(cached, limit);
         }
-        
-        // 检查用户是否有权限访问该会话
-        Conversation conversation = conversationOpt.get();
-        boolean hasAccess = participantRepository.existsByConversationAndUserAndIsActiveTrue(conversation, 
-            userRepository.findById(userId).orElse(null));
-        
-        if (!hasAccess) {
+
+        List<Message> rows;
+        if (beforeMessageId == null) {
+            rows = messageRepository.findLatestVisible(conversationId, PageRequest.of(0, limit + 1));
+        } else {
+            LocalDateTime createdAt = messageRepository.findCreatedAtInConversation(conversationId, beforeMessageId)
+                .orElseThrow(() -> new RuntimeException("消息不存在"));
+            rows = messageRepository.findVisibleBefore(conversationId, createdAt, beforeMessageId, PageRequest.of(0, limit + 1));
+        }
+        return toSlice(rows, limit);
+    }
+
+    private MessageRing loadRing(Long conversationId) {
+        List<Message> latest = messageRepository.findLatestVisible(conversationId, PageRequest.of(0, ringSize));
+        MessageRing ring = new MessageRing(ringSize, latest.size() < ringSize);
+        for (int i = latest.size() - 1; i >= 0; i--) {
+            ring.add(latest.get(i));
+        }
+        return ring;
+    }
+
+    private static Slice<Message> toSlice(List<Message> newestFirst, int limit) {
+        boolean hasNext = newestFirst.size() > limit;
+        List<Message> content = hasNext ? newestFirst.subList(0, limit) : newestFirst;
+        return new SliceImpl<>(new ArrayList<>(content), PageRequest.of(0, limit), hasNext);
+    }
+
+    /**
+     * 校验用户是会话的活跃参与者；通过的结果短时间缓存
+     */
+    private void checkAccess(Long conversationId, Long userId) {
+        String key = conversationId + ":" + userId;
+        if (accessCache.getIfPresent(key) != null) {
+            return;
+        }
+        if (!participantRepository.existsByConversationIdAndUserIdAndIsActiveTrue(conversationId, userId)) {
             throw new RuntimeException("没有权限访问该会话");
         }
-        
-        Pageable pageable = PageRequest.of(page, size);
-        return messageRepository.findByConversationAndIsRecalledFalseAndIsDeletedFalseOrderByCreatedAtDesc(
-            conversation, pageable);
+        accessCache.put(key, Boolean.TRUE);
     }
     
     /**
@@ -323,7 +436,7 @@ public class ChatService {
      */
     @Transactional
     public boolean recallMessage(Long messageId, Long userId) {
-        Optional<Message> messageOpt = messageRepository.findById(messageId);
+        Optional<Message> messageOpt = messageRepository.findByIdForUpdate(messageId);
         if (!messageOpt.isPresent()) {
             return false;
         }
@@ -335,6 +448,11 @@ public class ChatService {
             return false;
         }
 
+        // 已撤回或已删除的消息不再扣减未读数
+        if (Boolean.TRUE.equals(message.getIsRecalled()) || Boolean.TRUE.equals(message.getIsDeleted())) {
+            return Boolean.TRUE.equals(message.getIsRecalled());
+        }
+
         // 检查时间限制：20分钟内可以撤回
         LocalDateTime now = LocalDateTime.now();
         LocalDateTime messageTime = message.getCreatedAt();
@@ -349,6 +467,8 @@ public class ChatService {
         message.setRecalledAt(now);
         message.setUpdatedAt(now);
         messageRepository.save(message);
+        chatInboxService.onMessageRemoved(message);
+        evictAfterCommit(message);
 
         return true;
     }
@@ -358,7 +478,7 @@ public class ChatService {
      */
     @Transactional
     public boolean deleteMessage(Long messageId, Long userId) {
-        Optional<Message> messageOpt = messageRepository.findById(messageId);
+        Optional<Message> messageOpt = messageRepository.findByIdForUpdate(messageId);
         if (!messageOpt.isPresent()) {
             return false;
         }
@@ -370,11 +490,21 @@ public class ChatService {
             return false;
         }
 
+        if (Boolean.TRUE.equals(message.getIsDeleted())) {
+            return true;
+        }
+        // 撤回时已扣减过未读数
+        boolean wasRecalled = Boolean.TRUE.equals(message.getIsRecalled());
+
         // 执行软删除
         message.setIsDeleted(true);
         message.setDeletedAt(LocalDateTime.now());
         message.setUpdatedAt(LocalDateTime.now());
         messageRepository.save(message);
+        if (!wasRecalled) {
+            chatInboxService.onMessageRemoved(message);
+        }
+        evictAfterCommit(message);
 
         return true;
     }
@@ -411,6 +541,8 @@ public class ChatService {
         }
 
         messageRepository.saveAll(messages);
+        chatInboxService.onConversationCleared(conversationId);
+        TransactionUtil.afterCommit(() -> recentMessages.invalidate(conversationId));
         return true;
     }
 
@@ -443,6 +575,8 @@ public class ChatService {
 
         if (userParticipant != null) {
             participantRepository.delete(userParticipant);
+            chatInboxService.onConversationLeft(userId, conversationId);
+            accessCache.invalidate(conversationId + ":" + userId);
         }
 
         // 如果没有其他参与者，删除整个会话
@@ -454,6 +588,14 @@ public class ChatService {
         return true;
     }
 
+    /**
+     * 标记会话已读，返回清零的未读数
+     */
+    @Transactional
+    public int markAsRead(Long conversationId, Long userId) {
+        return chatInboxService.markAsRead(userId, conversationId);
+    }
+
     /**
      * 获取会话中的最后一条消息
      */
@@ -477,4 +619,81 @@ public class ChatService {
             return null;
         }
     }
+
+    private void evictAfterCommit(Message message) {
+        Long conversationId = message.getConversation().getId();
+        Long messageId = message.getId();
+        TransactionUtil.afterCommit(() -> recentMessages.asMap().computeIfPresent(conversationId, (id, ring) -> {
+            ring.remove(messageId);
+            return ring;
+        }));
+    }
+
+    /**
+     * 会话最近的可见消息，按 (createdAt, id) 升序，容量固定，超出时丢弃最早的。
+     * complete 表示环中已包含会话的全部可见消息（更早的没有了），此时任何游标都能直接回答。
+     */
+    static final class MessageRing {
+        private static final Comparator<Message> ORDER =
+                Comparator.comparing(Message::getCreatedAt).thenComparing(Message::getId);
+
+        private final int capacity;
+        private final List<Message> messages;
+        private boolean complete;
+
+        MessageRing(int capacity, boolean complete) {
+            this.capacity = capacity;
+            this.messages = new ArrayList<>(capacity + 1);
+            this.complete = complete;
+        }
+
+        /**
+         * 按顺序插入；同一条消息可能既被加载查询读到又在提交后追加，按 id 去重
+         */
+        synchronized void add(Message message) {
+            int index = messages.size();
+            while (index > 0 && ORDER.compare(messages.get(index - 1), message) > 0) {
+                index--;
+            }
+            if (index > 0 && messages.get(index - 1).getId().equals(message.getId())) {
+                return;
+            }
+            messages.add(index, message);
+            if (messages.size() > capacity) {
+                messages.remove(0);
+                complete = false;
+            }
+        }
+
+        synchronized void remove(Long messageId) {
+            messages.removeIf(m -> m.getId().equals(messageId));
+        }
+
+        /**
+         * 早于 beforeMessageId 的最多 count 条消息（倒序）；环中数据不足以回答时返回 null
+         */
+        synchronized List<Message> before(Long beforeMessageId, int count) {
+            int end = messages.size();
+            if (beforeMessageId != null) {
+                end = -1;
+                for (int i = messages.size() - 1; i >= 0; i--) {
+                    if (messages.get(i).getId().equals(beforeMessageId)) {
+                        end = i;
+                        break;
+                    }
+                }
+                if (end < 0) {
+                    return null;
+                }
+            }
+            if (end < count && !complete) {
+                return null;
+            }
+            List<Message> result = new ArrayList<>(Math.min(count, end));
+            for (int i = end - 1; i >= 0 && result.size() < count; i--) {
+                result.add(messages.get(i));
+            }
+            return result;
+        }
+    }
 }
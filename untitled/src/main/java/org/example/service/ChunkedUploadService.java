@@ -0,0 +1,437 @@
+package org.example.service;
+
+import org.example.entity.UploadSession;
+import org.example.entity.User;
+import org.example.entity.Video;
+import org.example.repository.UploadSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 可续传的分片上传
+ * 创建会话时在上传目录的 .incomplete 下按总大小预分配目标文件，每个分片通过 FileChannel 直接写到
+ * 序号 × 分片大小 的偏移处，不经过 multipart 临时文件，也不再整体复制；分片之间互不依赖，可以并行上传。
+ * 分片写入并刷盘后才记录到 upload_chunks，重复提交已记录的分片直接返回；
+ * 全部分片到齐后提交，文件在同一文件系统内重命名到 videos 目录并登记为视频。
+ * 提交先以 updated_at 为租约占住会话：节点在登记视频前退出时，租约过期后可以重新提交，过期更久则被清理。
+ * 本节点上写分片持会话读锁（可并行），取消、清理和提交持写锁且不等待：有分片正在写入时取消和提交返回冲突，
+ * 清理跳过该会话，不会在写入途中删掉文件和会话而留下孤立的分片记录。
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    private static final String STAGING_DIR = ".incomplete";
+
+    private static final String RECORD_CHUNK_SQL =
+            "INSERT IGNORE INTO upload_chunks (session_id, chunk_index, size, received_at) VALUES (?, ?, ?, ?)";
+
+    private static final String CHUNK_EXISTS_SQL =
+            "SELECT COUNT(*) FROM upload_chunks WHERE session_id = ? AND chunk_index = ?";
+
+    private static final String RECEIVED_SQL =
+            "SELECT chunk_index FROM upload_chunks WHERE session_id = ?";
+
+    private static final String TOUCH_SQL =
+            "UPDATE upload_sessions SET updated_at = ? WHERE id = ?";
+
+    // 提交时先占住会话，防止并发提交重复登记视频；占用后未登记视频且已超时的会话可以重新占用
+    private static final String CLAIM_SQL =
+            "UPDATE upload_sessions SET status = 'COMPLETED', updated_at = ? WHERE id = ? AND (status = 'UPLOADING' " +
+            "OR (status = 'COMPLETED' AND video_id IS NULL AND updated_at < ?))";
+
+    private static final String UNCLAIM_SQL =
+            "UPDATE upload_sessions SET status = 'UPLOADING', updated_at = ? WHERE id = ? AND video_id IS NULL";
+
+    private static final String SET_VIDEO_SQL =
+            "UPDATE upload_sessions SET video_id = ? WHERE id = ?";
+
+    private static final String DELETE_CHUNKS_SQL =
+            "DELETE FROM upload_chunks WHERE session_id = ?";
+
+    @Autowired
+    private UploadSessionRepository sessionRepository;
+
+    @Autowired
+    private FileUploadService fileUploadService;
+
+    @Autowired
+    private VideoStreamingService videoStreamingService;
+
+    @Autowired
+    private VideoService videoService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.upload.chunked.chunk-size:8388608}")
+    private int chunkSize;
+
+    @Value("${app.upload.chunked.max-size:5368709120}")
+    private long maxSize;
+
+    // 超过该时间没有新分片的会话被清理
+    @Value("${app.upload.chunked.expire-hours:24}")
+    private long expireHours;
+
+    // 提交占用超过该时间仍未登记视频，视为提交节点已退出，允许重新提交
+    @Value("${app.upload.chunked.claim-timeout-minutes:30}")
+    private long claimTimeoutMinutes;
+
+    // 每个用户同时未完成的上传会话数上限
+    @Value("${app.upload.chunked.max-open-sessions:5}")
+    private int maxOpenSessions;
+
+    private final Map<String, ReentrantReadWriteLock> sessionLocks = new ConcurrentHashMap<>();
+
+    private final AtomicLong chunksWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong duplicateChunks = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+
+    /**
+     * 创建上传会话并预分配目标文件
+     */
+    public UploadSession create(Long userId, String fileName, long totalSize) throws IOException {
+        if (fileName == null || fileName.isBlank() || !videoStreamingService.isVideoFile(fileName)) {
+            throw new IllegalArgumentException("只支持视频文件");
+        }
+        if (totalSize <= 0 || totalSize > maxSize) {
+            throw new IllegalArgumentException("视频文件大小不能超过 " + (maxSize >> 20) + "MB");
+        }
+        if (sessionRepository.countByUserIdAndStatus(userId, UploadSession.Status.UPLOADING) >= maxOpenSessions) {
+            throw new IllegalStateException("未完成的上传过多，请先完成或取消之前的上传");
+        }
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setUserId(userId);
+        session.setFileName(fileName);
+        session.setTotalSize(totalSize);
+        session.setChunkSize(chunkSize);
+        session.setTotalChunks((int) ((totalSize + chunkSize - 1) / chunkSize));
+
+        Path staging = stagingFile(session.getId());
+        Files.createDirectories(staging.getParent());
+        try (RandomAccessFile file = new RandomAccessFile(staging.toFile(), "rw")) {
+            file.setLength(totalSize);
+        }
+        UploadSession saved = sessionRepository.save(session);
+        logger.info("创建分片上传会话: {} (用户 {}, {} 字节, {} 个分片)", saved.getId(), userId, totalSize,
+                saved.getTotalChunks());
+        return saved;
+    }
+
+    /**
+     * 写入一个分片；已记录的分片直接返回，不再写盘
+     * expectedSha256 不为空时校验分片内容，不一致时不记录
+     */
+    public Map<String, Object> writeChunk(String sessionId, Long userId, int index, long contentLength,
+                                          InputStream body, String expectedSha256) throws IOException {
+        getOwned(sessionId, userId);
+        Lock lock = lockFor(sessionId).readLock();
+        lock.lock();
+        try {
+            return writeChunkLocked(sessionId, userId, index, contentLength, body, expectedSha256);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Map<String, Object> writeChunkLocked(String sessionId, Long userId, int index, long contentLength,
+                                                 InputStream body, String expectedSha256) throws IOException {
+        // 持锁后再读会话：等锁期间会话可能已被取消或提交
+        UploadSession session = getOwned(sessionId, userId);
+        if (session.getStatus() != UploadSession.Status.UPLOADING) {
+            throw new IllegalStateException("上传已提交");
+        }
+        if (index < 0 || index >= session.getTotalChunks()) {
+            throw new IllegalArgumentException("分片序号超出范围");
+        }
+        long offset = (long) index * session.getChunkSize();
+        int length = (int) Math.min(session.getChunkSize(), session.getTotalSize() - offset);
+        if (contentLength >= 0 && contentLength != length) {
+            throw new IllegalArgumentException("分片 " + index + " 的大小应为 " + length + " 字节");
+        }
+
+        Integer exists = jdbcTemplate.queryForObject(CHUNK_EXISTS_SQL, Integer.class, sessionId, index);
+        if (exists != null && exists > 0) {
+            duplicateChunks.incrementAndGet();
+            return progress(session);
+        }
+
+        MessageDigest digest = expectedSha256 != null ? sha256() : null;
+        InputStream in = digest != null ? new DigestInputStream(body, digest) : body;
+        // 每个请求单独打开通道，按绝对位置写入，并行分片互不影响
+        try (FileChannel channel = FileChannel.open(stagingFile(sessionId), StandardOpenOption.WRITE)) {
+            ReadableByteChannel source = Channels.newChannel(in);
+            long written = 0;
+            while (written < length) {
+                long n = channel.transferFrom(source, offset + written, length - written);
+                if (n <= 0) {
+                    break;
+                }
+                written += n;
+            }
+            if (written < length) {
+                throw new IOException("分片数据不完整: " + written + "/" + length);
+            }
+            if (digest != null && !HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(expectedSha256)) {
+                throw new IllegalArgumentException("分片 " + index + " 校验失败");
+            }
+            channel.force(false);
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update(RECORD_CHUNK_SQL, sessionId, index, length, now);
+        if (jdbcTemplate.update(TOUCH_SQL, now, sessionId) == 0) {
+            // 会话已在其他节点被取消或清理，撤掉刚记录的分片
+            jdbcTemplate.update(DELETE_CHUNKS_SQL, sessionId);
+            throw new IllegalArgumentException("上传会话不存在");
+        }
+        chunksWritten.incrementAndGet();
+        bytesWritten.addAndGet(length);
+        return progress(session);
+    }
+
+    /**
+     * 会话进度，包含缺失的分片序号供客户端续传
+     */
+    public Map<String, Object> getProgress(String sessionId, Long userId) {
+        return progress(getOwned(sessionId, userId));
+    }
+
+    /**
+     * 所有分片到齐后把文件移入 videos 目录并保存视频；video 由调用方填好标题、分类等信息
+     */
+    public Video commit(String sessionId, User user, Video video) throws IOException {
+        getOwned(sessionId, user.getId());
+        ReentrantReadWriteLock lock = lockFor(sessionId);
+        if (!lock.writeLock().tryLock()) {
+            throw new IllegalStateException("有分片正在写入，请稍后再提交");
+        }
+        try {
+            Video saved = commitLocked(sessionId, user, video);
+            sessionLocks.remove(sessionId);
+            return saved;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Video commitLocked(String sessionId, User user, Video video) throws IOException {
+        UploadSession session = getOwned(sessionId, user.getId());
+        if (session.getVideoId() != null) {
+            throw new IllegalStateException("上传已提交");
+        }
+        Set<Integer> received = receivedChunks(sessionId);
+        if (received.size() < session.getTotalChunks()) {
+            throw new IllegalStateException("还有 " + (session.getTotalChunks() - received.size()) + " 个分片未上传");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (jdbcTemplate.update(CLAIM_SQL, Timestamp.valueOf(now), sessionId,
+                Timestamp.valueOf(now.minusMinutes(claimTimeoutMinutes))) == 0) {
+            throw new IllegalStateException("上传正在提交或已提交");
+        }
+
+        String videoPath = null;
+        try {
+            videoPath = fileUploadService.adoptVideoFile(stagingFile(sessionId), sessionId, session.getFileName());
+            video.setUrl(videoPath);
+            video.setFilePath(videoPath);
+            video.setUserId(user.getId());
+            video.setTranscodeStatus(Video.TranscodeStatus.PENDING);
+            Video saved = videoService.saveVideo(video);
+            jdbcTemplate.update(SET_VIDEO_SQL, saved.getId(), sessionId);
+            jdbcTemplate.update(DELETE_CHUNKS_SQL, sessionId);
+            committed.incrementAndGet();
+            logger.info("分片上传提交完成: {} -> 视频 {} ({})", sessionId, saved.getId(), videoPath);
+            return saved;
+        } catch (IOException | RuntimeException e) {
+            // 回滚到可重新提交的状态
+            if (videoPath != null) {
+                Path moved = fileUploadService.resolveWebPath(videoPath);
+                if (moved != null && Files.exists(moved)) {
+                    Files.move(moved, stagingFile(sessionId));
+                }
+            }
+            jdbcTemplate.update(UNCLAIM_SQL, Timestamp.valueOf(LocalDateTime.now()), sessionId);
+            throw e;
+        }
+    }
+
+    /**
+     * 取消上传，删除临时文件
+     */
+    public void abort(String sessionId, Long userId) throws IOException {
+        getOwned(sessionId, userId);
+        ReentrantReadWriteLock lock = lockFor(sessionId);
+        if (!lock.writeLock().tryLock()) {
+            throw new IllegalStateException("有分片正在写入，请稍后再取消");
+        }
+        try {
+            UploadSession session = getOwned(sessionId, userId);
+            if (session.getStatus() != UploadSession.Status.UPLOADING) {
+                throw new IllegalStateException("上传已提交");
+            }
+            discard(session);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 清理长时间没有新分片的会话，以及提交中途中断、长时间没有重新提交的会话
+     */
+    @Scheduled(fixedDelayString = "${app.upload.chunked.cleanup-interval-ms:3600000}")
+    public void cleanupExpired() {
+        LocalDateTime before = LocalDateTime.now().minusHours(expireHours);
+        List<UploadSession> expired = new ArrayList<>(
+                sessionRepository.findByStatusAndUpdatedAtBefore(UploadSession.Status.UPLOADING, before));
+        expired.addAll(sessionRepository.findByStatusAndVideoIdIsNullAndUpdatedAtBefore(UploadSession.Status.COMPLETED, before));
+        for (UploadSession session : expired) {
+            ReentrantReadWriteLock lock = lockFor(session.getId());
+            if (!lock.writeLock().tryLock()) {
+                logger.debug("分片上传会话有分片正在写入，暂不清理: {}", session.getId());
+                continue;
+            }
+            try {
+                // 持锁后重新读取：刚写完的分片会刷新 updated_at
+                UploadSession current = sessionRepository.findById(session.getId()).orElse(null);
+                if (current == null) {
+                    sessionLocks.remove(session.getId());
+                    continue;
+                }
+                if (current.getVideoId() != null || !current.getUpdatedAt().isBefore(before)) {
+                    continue;
+                }
+                discard(current);
+                logger.info("清理过期的分片上传会话: {}", session.getId());
+            } catch (Exception e) {
+                logger.warn("清理分片上传会话失败: {} - {}", session.getId(), e.getMessage());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 删除临时文件、分片记录和会话；调用方持有该会话的写锁
+     */
+    private void discard(UploadSession session) throws IOException {
+        Files.deleteIfExists(stagingFile(session.getId()));
+        if (session.getStatus() == UploadSession.Status.COMPLETED && session.getVideoId() == null) {
+            // 中断的提交可能已把文件移入 videos 目录
+            Path adopted = fileUploadService.resolveWebPath(
+                    fileUploadService.adoptedVideoPath(session.getId(), session.getFileName()));
+            if (adopted != null) {
+                Files.deleteIfExists(adopted);
+            }
+        }
+        jdbcTemplate.update(DELETE_CHUNKS_SQL, session.getId());
+        sessionRepository.delete(session);
+        sessionLocks.remove(session.getId());
+    }
+
+    private ReentrantReadWriteLock lockFor(String sessionId) {
+        return sessionLocks.computeIfAbsent(sessionId, id -> new ReentrantReadWriteLock());
+    }
+
+    private UploadSession getOwned(String sessionId, Long userId) {
+        UploadSession session = sessionRepository.findById(sessionId).orElse(null);
+        if (session == null || !session.getUserId().equals(userId)) {
+            throw new IllegalArgumentException("上传会话不存在");
+        }
+        return session;
+    }
+
+    private Set<Integer> receivedChunks(String sessionId) {
+        return new HashSet<>(jdbcTemplate.queryForList(RECEIVED_SQL, Integer.class, sessionId));
+    }
+
+    private Map<String, Object> progress(UploadSession session) {
+        Set<Integer> received = session.getStatus() == UploadSession.Status.UPLOADING
+                ? receivedChunks(session.getId()) : Set.of();
+        List<Integer> missing = new ArrayList<>();
+        long receivedBytes = 0;
+        if (session.getStatus() == UploadSession.Status.UPLOADING) {
+            for (int i = 0; i < session.getTotalChunks(); i++) {
+                if (!received.contains(i)) {
+                    missing.add(i);
+                } else {
+                    receivedBytes += Math.min(session.getChunkSize(), session.getTotalSize() - (long) i * session.getChunkSize());
+                }
+            }
+        } else {
+            receivedBytes = session.getTotalSize();
+        }
+
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("uploadId", session.getId());
+        progress.put("fileName", session.getFileName());
+        progress.put("status", session.getStatus());
+        progress.put("totalSize", session.getTotalSize());
+        progress.put("chunkSize", session.getChunkSize());
+        progress.put("totalChunks", session.getTotalChunks());
+        progress.put("receivedBytes", receivedBytes);
+        progress.put("missingChunks", missing);
+        progress.put("videoId", session.getVideoId());
+        return progress;
+    }
+
+    private Path stagingFile(String sessionId) {
+        return fileUploadService.getUploadRoot().resolve(STAGING_DIR).resolve(sessionId + ".part");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("chunksWritten", chunksWritten.get());
+        stats.put("bytesWritten", bytesWritten.get());
+        stats.put("duplicateChunks", duplicateChunks.get());
+        stats.put("committed", committed.get());
+        stats.put("activeSessions", sessionLocks.size());
+        stats.put("chunkSize", chunkSize);
+        return stats;
+    }
+}
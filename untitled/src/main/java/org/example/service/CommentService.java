@@ -5,6 +5,7 @@ import org.example.entity.User;
 import org.example.repository.CommentRepository;
 import org.example.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -28,6 +29,9 @@ public class CommentService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
 
 
     public long getTotalComments() {
@@ -64,6 +68,8 @@ public class CommentService {
         comment.setStatus(Comment.CommentStatus.APPROVED); // 默认通过，可以改为PENDING需要审核
 
         Comment savedComment = commentRepository.save(comment);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.commentCreated(
+                savedComment.getUserId(), savedComment.getVideoId()));
 
         // 触发评论成就检查
         try {
@@ -111,6 +117,8 @@ public class CommentService {
                 .orElseThrow(() -> new RuntimeException("评论不存在"));
 
         commentRepository.delete(comment);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.commentDeleted(
+                comment.getUserId(), comment.getVideoId()));
     }
 
     public void likeComment(Long commentId) {
@@ -146,6 +154,8 @@ public class CommentService {
         comment.setCreatedAt(LocalDateTime.now());
 
         Comment savedComment = commentRepository.save(comment);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.commentCreated(
+                savedComment.getUserId(), savedComment.getVideoId()));
 
         // 触发评论成就检查
         try {
@@ -165,7 +175,12 @@ public class CommentService {
         if (comment.getStatus() == null) {
             comment.setStatus(Comment.CommentStatus.APPROVED);
         }
+        boolean created = comment.getId() == null;
         Comment savedComment = commentRepository.save(comment);
+        if (created) {
+            eventPublisher.publishEvent(StatsAggregationService.StatsEvent.commentCreated(
+                    savedComment.getUserId(), savedComment.getVideoId()));
+        }
 
         // 触发评论成就检查
         try {
@@ -0,0 +1,504 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.dto.RealtimeCommentMessage;
+import org.example.entity.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * 弹幕服务
+ * 写入：按用户名的令牌桶限流（纯内存），通过后分配 id，放入该视频的热数据尾部和待写队列，定时批量追加到 danmaku 表。
+ * 推送：每个视频累积待推送的弹幕，每 broadcast-interval-ms 合并成一帧发到 /topic/video/{id}/danmaku。
+ * 读取：按 (video_id, time_bucket) 范围查库，再合并尚未落库的热数据。
+ */
+@Service
+public class DanmakuService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DanmakuService.class);
+
+    /**
+     * 时间分桶大小（毫秒），已写入的数据依赖该值，不要修改
+     */
+    public static final int BUCKET_MS = 30_000;
+
+    private static final Pattern COLOR_PATTERN = Pattern.compile("#[0-9a-fA-F]{3,8}");
+
+    private static final String INSERT_SQL =
+            "INSERT INTO danmaku (id, video_id, user_id, username, content, time_ms, time_bucket, color, font_size, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String RANGE_SQL =
+            "SELECT id, video_id, user_id, username, content, time_ms, color, font_size, created_at FROM danmaku " +
+            "WHERE video_id = ? AND time_bucket BETWEEN ? AND ? AND time_ms >= ? AND time_ms < ? " +
+            "ORDER BY time_ms, id LIMIT ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 每个用户每秒可发送的弹幕数及突发上限
+    @Value("${app.danmaku.rate-per-second:1.0}")
+    private double ratePerSecond;
+
+    @Value("${app.danmaku.burst:5}")
+    private int burst;
+
+    @Value("${app.danmaku.max-length:100}")
+    private int maxLength;
+
+    // 每个视频在内存中保留的最近弹幕数
+    @Value("${app.danmaku.tail-size:500}")
+    private int tailSize;
+
+    // 每帧最多推送的弹幕数，超出时只推送最新的（仍会落库）
+    @Value("${app.danmaku.max-per-frame:100}")
+    private int maxPerFrame;
+
+    @Value("${app.danmaku.batch-size:500}")
+    private int batchSize;
+
+    // 单次查询的最大时间跨度与条数
+    @Value("${app.danmaku.max-range-seconds:600}")
+    private int maxRangeSeconds;
+
+    @Value("${app.danmaku.max-rows:3000}")
+    private int maxRows;
+
+    @Value("${app.danmaku.idle-ms:600000}")
+    private long idleMillis;
+
+    private final Map<Long, VideoTail> tails = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyVideos = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<DanmakuEntry> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Map<String, TokenBucket> limiters = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 用户名 -> 发送者信息，避免每条弹幕查询用户表
+    private final Cache<String, Sender> senders = Caffeine.newBuilder()
+            .maximumSize(50_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    // 已确认存在的视频 id，避免每条弹幕查询视频表
+    private final Cache<Long, Boolean> knownVideos = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong droppedFromFrame = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("danmaku.pending", pendingCount, AtomicInteger::get)
+                .description("待写入数据库的弹幕数")
+                .register(meterRegistry);
+        Gauge.builder("danmaku.active.videos", tails, Map::size)
+                .description("内存中有热数据的视频数")
+                .register(meterRegistry);
+        FunctionCounter.builder("danmaku.accepted", accepted, AtomicLong::get)
+                .register(meterRegistry);
+        FunctionCounter.builder("danmaku.rate.limited", rateLimited, AtomicLong::get)
+                .register(meterRegistry);
+        FunctionCounter.builder("danmaku.frames", frames, AtomicLong::get)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 发送弹幕，返回推送给客户端的消息
+     *
+     * @throws RateLimitedException 发送过于频繁
+     * @throws IllegalArgumentException 参数无效、视频或用户不存在
+     */
+    public RealtimeCommentMessage send(String username, Long videoId, String content, Double time,
+                                       String color, Integer fontSize) {
+        // 限流在查询任何数据之前完成
+        if (!limiters.computeIfAbsent(username, k -> new TokenBucket(burst))
+                .tryAcquire(System.nanoTime(), ratePerSecond, burst)) {
+            rateLimited.incrementAndGet();
+            throw new RateLimitedException("发送太频繁，请稍后再试");
+        }
+
+        if (videoId == null || videoId <= 0) {
+            throw new IllegalArgumentException("视频不存在");
+        }
+        String text = content != null ? content.trim() : "";
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("弹幕内容不能为空");
+        }
+        if (text.length() > maxLength) {
+            throw new IllegalArgumentException("弹幕内容不能超过" + maxLength + "个字");
+        }
+        if (time == null || time < 0 || time.isNaN() || time.isInfinite()) {
+            throw new IllegalArgumentException("弹幕时间无效");
+        }
+
+        Sender sender = senders.get(username, this::loadSender);
+        if (sender == null) {
+            throw new IllegalArgumentException("用户不存在");
+        }
+        if (knownVideos.get(videoId, this::loadVideoExists) == null) {
+            throw new IllegalArgumentException("视频不存在");
+        }
+
+        // 颜色和字号会原样推送给其他客户端，只接受规范的取值
+        String safeColor = color != null && COLOR_PATTERN.matcher(color).matches() ? color : null;
+        Integer safeFontSize = fontSize != null ? Math.max(12, Math.min(48, fontSize)) : null;
+
+        DanmakuEntry entry = new DanmakuEntry(nextId(), videoId, sender.userId, sender.username, sender.avatar,
+                text, (int) Math.min(Integer.MAX_VALUE, Math.round(time * 1000)), safeColor, safeFontSize,
+                LocalDateTime.now());
+
+        // 在 compute 内追加，与 evictIdle 的移除互斥，不会追加到已被移除的热数据上
+        tails.compute(videoId, (k, tail) -> {
+            VideoTail target = tail != null ? tail : new VideoTail();
+            synchronized (target) {
+                target.append(entry, tailSize);
+                target.outbox.add(entry);
+            }
+            return target;
+        });
+        dirtyVideos.add(videoId);
+
+        pending.offer(entry);
+        pendingCount.incrementAndGet();
+        accepted.incrementAndGet();
+        return entry.toMessage();
+    }
+
+    /**
+     * 获取某段播放时间内的弹幕 [fromSeconds, toSeconds)
+     */
+    public List<RealtimeCommentMessage> getDanmaku(Long videoId, double fromSeconds, Double toSeconds) {
+        int fromMs = (int) Math.max(0, Math.round(fromSeconds * 1000));
+        long maxToMs = fromMs + maxRangeSeconds * 1000L;
+        int toMs = (int) Math.min(Integer.MAX_VALUE,
+                toSeconds != null ? Math.min(Math.round(toSeconds * 1000), maxToMs) : maxToMs);
+        if (toMs <= fromMs) {
+            return List.of();
+        }
+
+        // 先取未落库的热数据再查库，落库过程中的弹幕可能两边都有，按 id 去重
+        Map<Long, RealtimeCommentMessage> merged = new LinkedHashMap<>();
+        VideoTail tail = tails.get(videoId);
+        if (tail != null) {
+            synchronized (tail) {
+                for (DanmakuEntry entry : tail.recent) {
+                    if (!entry.persisted && entry.timeMs >= fromMs && entry.timeMs < toMs) {
+                        merged.put(entry.id, entry.toMessage());
+                    }
+                }
+            }
+        }
+
+        jdbcTemplate.query(RANGE_SQL, rs -> {
+            RealtimeCommentMessage message = new RealtimeCommentMessage();
+            message.setId(rs.getLong("id"));
+            message.setVideoId(rs.getLong("video_id"));
+            message.setUsername(rs.getString("username"));
+            message.setContent(rs.getString("content"));
+            message.setTime(rs.getInt("time_ms") / 1000.0);
+            message.setColor(rs.getString("color"));
+            int size = rs.getInt("font_size");
+            message.setFontSize(rs.wasNull() ? null : size);
+            Timestamp createdAt = rs.getTimestamp("created_at");
+            message.setCreatedAt(createdAt != null ? createdAt.toLocalDateTime() : null);
+            message.setType("DANMAKU");
+            merged.putIfAbsent(message.getId(), message);
+        }, videoId, fromMs / BUCKET_MS, (toMs - 1) / BUCKET_MS, fromMs, toMs, maxRows);
+
+        List<RealtimeCommentMessage> result = new ArrayList<>(merged.values());
+        result.sort(Comparator.comparing(RealtimeCommentMessage::getTime).thenComparing(RealtimeCommentMessage::getId));
+        return result.size() > maxRows ? result.subList(0, maxRows) : result;
+    }
+
+    /**
+     * 定时把每个视频累积的弹幕合并成一帧推送
+     */
+    @Scheduled(fixedDelayString = "${app.danmaku.broadcast-interval-ms:200}")
+    public void broadcast() {
+        Iterator<Long> iterator = dirtyVideos.iterator();
+        while (iterator.hasNext()) {
+            Long videoId = iterator.next();
+            iterator.remove();
+            VideoTail tail = tails.get(videoId);
+            if (tail == null) {
+                continue;
+            }
+
+            List<DanmakuEntry> outbox;
+            synchronized (tail) {
+                if (tail.outbox.isEmpty()) {
+                    continue;
+                }
+                outbox = tail.outbox;
+                tail.outbox = new ArrayList<>();
+            }
+
+            int from = Math.max(0, outbox.size() - maxPerFrame);
+            droppedFromFrame.addAndGet(from);
+            List<RealtimeCommentMessage> frame = new ArrayList<>(outbox.size() - from);
+            for (int i = from; i < outbox.size(); i++) {
+                frame.add(outbox.get(i).toMessage());
+            }
+            try {
+                messagingTemplate.convertAndSend("/topic/video/" + videoId + "/danmaku", frame);
+                frames.incrementAndGet();
+            } catch (Exception e) {
+                logger.warn("弹幕推送失败: video={}, {}", videoId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 定时批量追加到数据库
+     */
+    @Scheduled(fixedDelayString = "${app.danmaku.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        List<DanmakuEntry> batch = new ArrayList<>(batchSize);
+        DanmakuEntry entry;
+        while (true) {
+            while (batch.size() < batchSize && (entry = pending.poll()) != null) {
+                batch.add(entry);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            pendingCount.addAndGet(-batch.size());
+
+            List<Object[]> batchArgs = new ArrayList<>(batch.size());
+            for (DanmakuEntry e : batch) {
+                batchArgs.add(new Object[] {
+                        e.id, e.videoId, e.userId, e.username, e.content, e.timeMs, e.timeMs / BUCKET_MS,
+                        e.color, e.fontSize, Timestamp.valueOf(e.createdAt)
+                });
+            }
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batchArgs);
+                for (DanmakuEntry e : batch) {
+                    e.persisted = true;
+                }
+                persisted.addAndGet(batch.size());
+            } catch (Exception e) {
+                // 放回队列，下一轮重试
+                logger.error("弹幕批量写入失败, {} 条稍后重试: {}", batch.size(), e.getMessage());
+                pending.addAll(batch);
+                pendingCount.addAndGet(batch.size());
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * 清理长时间没有弹幕的视频热数据和空闲的限流桶
+     */
+    @Scheduled(fixedDelayString = "${app.danmaku.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        for (Long videoId : tails.keySet()) {
+            // 在 computeIfPresent 内复查并移除，与 send 的追加互斥
+            tails.computeIfPresent(videoId, (k, tail) -> {
+                synchronized (tail) {
+                    // 仍有未落库或未推送的弹幕时保留
+                    boolean idle = now - tail.lastAppendNanos > idleNanos && tail.outbox.isEmpty()
+                            && tail.recent.stream().allMatch(d -> d.persisted);
+                    return idle ? null : tail;
+                }
+            });
+        }
+        // 空闲超过补满时间的令牌桶与新建的等价，可以直接丢弃
+        long refillNanos = (long) (burst / ratePerSecond * 1_000_000_000L);
+        limiters.values().removeIf(bucket -> bucket.idleLongerThan(now, refillNanos));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("accepted", accepted.get());
+        stats.put("rateLimited", rateLimited.get());
+        stats.put("persisted", persisted.get());
+        stats.put("pending", pendingCount.get());
+        stats.put("frames", frames.get());
+        stats.put("droppedFromFrame", droppedFromFrame.get());
+        stats.put("activeVideos", tails.size());
+        stats.put("limiters", limiters.size());
+        return stats;
+    }
+
+    /**
+     * 毫秒时间戳左移 10 位作为 id，同一毫秒内递增；重启后不需要读库也不会与已有 id 冲突
+     */
+    private long nextId() {
+        long base = System.currentTimeMillis() << 10;
+        return sequence.accumulateAndGet(base, (last, candidate) -> Math.max(last + 1, candidate));
+    }
+
+    // 只缓存存在的视频；不存在的 id 不缓存，依赖发送限流控制查询次数
+    private Boolean loadVideoExists(Long videoId) {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM videos WHERE id = ?", Integer.class, videoId);
+        return count != null && count > 0 ? Boolean.TRUE : null;
+    }
+
+    private Sender loadSender(String username) {
+        Optional<User> user = userService.findByUsername(username);
+        return user.map(u -> new Sender(u.getId(), u.getUsername(), u.getAvatar())).orElse(null);
+    }
+
+    /**
+     * 发送过于频繁
+     */
+    public static class RateLimitedException extends RuntimeException {
+        public RateLimitedException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Sender {
+        final Long userId;
+        final String username;
+        final String avatar;
+
+        Sender(Long userId, String username, String avatar) {
+            this.userId = userId;
+            this.username = username;
+            this.avatar = avatar;
+        }
+    }
+
+    private static final class DanmakuEntry {
+        final long id;
+        final Long videoId;
+        final Long userId;
+        final String username;
+        final String avatar;
+        final String content;
+        final int timeMs;
+        final String color;
+        final Integer fontSize;
+        final LocalDateTime createdAt;
+        volatile boolean persisted;
+
+        DanmakuEntry(long id, Long videoId, Long userId, String username, String avatar, String content,
+                     int timeMs, String color, Integer fontSize, LocalDateTime createdAt) {
+            this.id = id;
+            this.videoId = videoId;
+            this.userId = userId;
+            this.username = username;
+            this.avatar = avatar;
+            this.content = content;
+            this.timeMs = timeMs;
+            this.color = color;
+            this.fontSize = fontSize;
+            this.createdAt = createdAt;
+        }
+
+        RealtimeCommentMessage toMessage() {
+            RealtimeCommentMessage message = new RealtimeCommentMessage();
+            message.setId(id);
+            message.setContent(content);
+            message.setVideoId(videoId);
+            message.setUsername(username);
+            message.setUserAvatar(avatar);
+            message.setTime(timeMs / 1000.0);
+            message.setColor(color);
+            message.setFontSize(fontSize);
+            message.setCreatedAt(createdAt);
+            message.setType("DANMAKU");
+            return message;
+        }
+    }
+
+    /**
+     * 单个视频的热数据：最近的弹幕和待推送的弹幕，访问时锁定自身
+     */
+    private static final class VideoTail {
+        final ArrayDeque<DanmakuEntry> recent = new ArrayDeque<>();
+        List<DanmakuEntry> outbox = new ArrayList<>();
+        long lastAppendNanos = System.nanoTime();
+
+        void append(DanmakuEntry entry, int capacity) {
+            recent.addLast(entry);
+            while (recent.size() > capacity) {
+                recent.removeFirst();
+            }
+            lastAppendNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * 令牌桶，按需补充令牌，不依赖定时任务
+     */
+    private static final class TokenBucket {
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+
+        TokenBucket(int burst) {
+            this.tokens = burst;
+        }
+
+        synchronized boolean tryAcquire(long now, double ratePerSecond, int burst) {
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * ratePerSecond);
+            lastRefillNanos = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized boolean idleLongerThan(long now, long nanos) {
+            return now - lastRefillNanos > nanos;
+        }
+    }
+}
@@ -1,184 +1,413 @@
 package org.example.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * 数据备份服务
+ * 每张表用只进游标按 fetch size 流式读取，写成 gzip 压缩的分块 CSV（RFC 4180 引号规则，\N 表示 NULL），
+ * 各表并行备份，manifest.json 记录每张表/每个分块的行数和 CRC32。
+ * 增量备份只导出上次备份以来 updated_at（或等价时间列）变化的行；恢复时校验 CRC 并批量插入。
+ */
 @Service
 public class DataBackupService {
 
+    private static final Logger logger = LoggerFactory.getLogger(DataBackupService.class);
+
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final String NULL_MARKER = "\\N";
+    private static final DateTimeFormatter DIR_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    /**
+     * 参与备份的表：表名、增量时间列（null 表示每次全量）
+     */
+    private static final Map<String, String> TABLES = new LinkedHashMap<>();
+    static {
+        TABLES.put("users", "updated_at");
+        TABLES.put("videos", "updated_at");
+        TABLES.put("user_login_logs", "login_time");
+        TABLES.put("categories", null);
+    }
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    @Qualifier("streamingDataSource")
+    private DataSource streamingDataSource;
+
+    @Autowired
+    @Qualifier("fileTaskExecutor")
+    private Executor fileTaskExecutor;
+
     @Value("${app.storage.backup.path:E:/code11/backups}")
     private String backupPath;
 
     @Value("${app.storage.backup.enabled:true}")
     private boolean backupEnabled;
 
+    @Value("${app.storage.backup.fetch-size:1000}")
+    private int fetchSize;
+
+    // 每个分块文件的最大行数
+    @Value("${app.storage.backup.chunk-rows:100000}")
+    private int chunkRows;
+
+    @Value("${app.storage.backup.restore-batch-size:500}")
+    private int restoreBatchSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private JdbcTemplate streamingJdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        streamingJdbcTemplate = new JdbcTemplate(streamingDataSource);
+        streamingJdbcTemplate.setFetchSize(fetchSize);
+    }
+
     /**
-     * 创建数据备份
+     * 创建全量数据备份
      */
     public void createBackup() {
+        runBackup(false);
+    }
+
+    /**
+     * 创建增量备份：基于最近一次备份的开始时间；没有可用的基准时退化为全量
+     */
+    public void createIncrementalBackup() {
+        runBackup(true);
+    }
+
+    /**
+     * 定时增量备份
+     */
+    @Scheduled(cron = "${app.storage.backup.incremental-cron:0 30 3 * * *}")
+    public void scheduledIncrementalBackup() {
+        createIncrementalBackup();
+    }
+
+    private void runBackup(boolean incremental) {
         if (!backupEnabled) {
             return;
         }
 
         try {
-            // 创建备份目录
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            String backupDir = backupPath + File.separator + "backup_" + timestamp;
-            Files.createDirectories(Paths.get(backupDir));
-
-            // 备份用户数据
-            backupTableData("users", backupDir + File.separator + "users.csv");
-            
-            // 备份视频数据
-            backupTableData("videos", backupDir + File.separator + "videos.csv");
-            
-            // 备份登录日志
-            backupTableData("user_login_logs", backupDir + File.separator + "login_logs.csv");
-            
-            // 备份分类数据
-            backupTableData("categories", backupDir + File.separator + "categories.csv");
-
-            System.out.println("✅ 数据备份完成: " + backupDir);
+            LocalDateTime startedAt = LocalDateTime.now();
+            BackupManifest base = incremental ? latestManifest() : null;
+            boolean isIncremental = base != null;
+
+            String dirName = "backup_" + startedAt.format(DIR_FORMAT) + (isIncremental ? "_incr" : "");
+            Path backupDir = Paths.get(backupPath, dirName);
+            Files.createDirectories(backupDir);
+
+            LocalDateTime since = isIncremental ? LocalDateTime.parse(base.startedAt) : null;
+
+            // 各表并行导出
+            List<CompletableFuture<TableManifest>> futures = new ArrayList<>();
+            for (Map.Entry<String, String> entry : TABLES.entrySet()) {
+                String table = entry.getKey();
+                String sinceColumn = isIncremental ? entry.getValue() : null;
+                futures.add(CompletableFuture.supplyAsync(
+                        () -> backupTable(table, sinceColumn, since, backupDir), fileTaskExecutor));
+            }
+
+            BackupManifest manifest = new BackupManifest();
+            manifest.type = isIncremental ? "INCREMENTAL" : "FULL";
+            manifest.startedAt = startedAt.toString();
+            manifest.since = since != null ? since.toString() : null;
+            manifest.baseBackup = isIncremental ? base.name : null;
+            manifest.name = dirName;
+            for (CompletableFuture<TableManifest> future : futures) {
+                manifest.tables.add(future.join());
+            }
+            manifest.finishedAt = LocalDateTime.now().toString();
+
+            // manifest 最后写入，存在即表示备份完整
+            objectMapper.writeValue(backupDir.resolve(MANIFEST_FILE).toFile(), manifest);
+
+            long totalRows = manifest.tables.stream().mapToLong(t -> t.rows).sum();
+            logger.info("数据备份完成: {} ({}, {} 行, 耗时 {}ms)", backupDir, manifest.type, totalRows,
+                    Duration.between(startedAt, LocalDateTime.now()).toMillis());
         } catch (Exception e) {
-            System.err.println("❌ 数据备份失败: " + e.getMessage());
+            logger.error("数据备份失败: {}", e.getMessage(), e);
         }
     }
 
     /**
-     * 备份表数据到CSV文件
+     * 流式导出一张表
      */
-    private void backupTableData(String tableName, String filePath) throws IOException {
+    private TableManifest backupTable(String table, String sinceColumn, LocalDateTime since, Path backupDir) {
+        TableManifest tableManifest = new TableManifest();
+        tableManifest.table = table;
+        tableManifest.mode = sinceColumn != null ? "INCREMENTAL" : "FULL";
+        tableManifest.sinceColumn = sinceColumn;
+
+        String sql = "SELECT * FROM " + table + (sinceColumn != null ? " WHERE " + sinceColumn + " >= ?" : "");
+        Object[] args = sinceColumn != null ? new Object[] { Timestamp.valueOf(since) } : new Object[0];
+        CRC32 tableCrc = new CRC32();
+
         try {
-            // 获取表结构
-            List<Map<String, Object>> columns = jdbcTemplate.queryForList(
-                "SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS " +
-                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? " +
-                "ORDER BY ORDINAL_POSITION", tableName);
-
-            // 获取表数据
-            List<Map<String, Object>> data = jdbcTemplate.queryForList("SELECT * FROM " + tableName);
-
-            // 写入CSV文件
-            try (FileWriter writer = new FileWriter(filePath)) {
-                // 写入表头
-                if (!columns.isEmpty()) {
-                    writer.write(String.join(",", columns.stream()
-                        .map(col -> col.get("COLUMN_NAME").toString())
-                        .toArray(String[]::new)));
-                    writer.write("\n");
-                }
-
-                // 写入数据
-                for (Map<String, Object> row : data) {
-                    String[] values = columns.stream()
-                        .map(col -> {
-                            Object value = row.get(col.get("COLUMN_NAME"));
-                            return value != null ? value.toString().replace(",", "\\,") : "";
-                        })
-                        .toArray(String[]::new);
-                    writer.write(String.join(",", values));
-                    writer.write("\n");
-                }
-            }
-
-            System.out.println("✅ 表 " + tableName + " 备份完成: " + filePath);
+            streamingJdbcTemplate.query(sql, rs -> {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columnCount = meta.getColumnCount();
+                int[] types = new int[columnCount];
+                for (int i = 1; i <= columnCount; i++) {
+                    tableManifest.columns.add(meta.getColumnLabel(i));
+                    tableManifest.types.add(meta.getColumnType(i));
+                    types[i - 1] = meta.getColumnType(i);
+                }
+
+                ChunkWriter writer = null;
+                try {
+                    do {
+                        if (writer == null || writer.rows >= chunkRows) {
+                            if (writer != null) {
+                                tableManifest.chunks.add(writer.finish());
+                            }
+                            writer = new ChunkWriter(backupDir, table, tableManifest.chunks.size() + 1,
+                                    tableManifest.columns, tableCrc);
+                        }
+                        writer.writeRow(rs, types);
+                        tableManifest.rows++;
+                    } while (rs.next());
+                    tableManifest.chunks.add(writer.finish());
+                } catch (IOException e) {
+                    throw new SQLException("写入备份文件失败: " + e.getMessage(), e);
+                } finally {
+                    if (writer != null) {
+                        writer.closeQuietly();
+                    }
+                }
+            }, args);
         } catch (Exception e) {
-            System.err.println("❌ 表 " + tableName + " 备份失败: " + e.getMessage());
+            tableManifest.error = e.getMessage();
+            logger.error("表 {} 备份失败: {}", table, e.getMessage(), e);
         }
+
+        tableManifest.crc32 = Long.toHexString(tableCrc.getValue());
+        logger.info("表 {} 备份完成: {} 行, {} 个分块", table, tableManifest.rows, tableManifest.chunks.size());
+        return tableManifest;
     }
 
     /**
-     * 从备份恢复数据
+     * 从备份恢复数据；增量备份会先恢复其依赖的全量备份，再按顺序应用增量
      */
     public void restoreFromBackup(String backupDir) {
         try {
-            Path backupPath = Paths.get(backupDir);
-            if (!Files.exists(backupPath)) {
+            Path dir = Paths.get(backupDir);
+            if (!dir.isAbsolute() && !Files.exists(dir)) {
+                dir = Paths.get(backupPath, backupDir);
+            }
+            if (!Files.exists(dir)) {
                 throw new IOException("备份目录不存在: " + backupDir);
             }
 
-            // 恢复用户数据
-            restoreTableData("users", backupDir + File.separator + "users.csv");
-            
-            // 恢复视频数据
-            restoreTableData("videos", backupDir + File.separator + "videos.csv");
-            
-            // 恢复登录日志
-            restoreTableData("user_login_logs", backupDir + File.separator + "login_logs.csv");
-            
-            // 恢复分类数据
-            restoreTableData("categories", backupDir + File.separator + "categories.csv");
+            List<Path> chain = new ArrayList<>();
+            Path current = dir;
+            while (current != null) {
+                BackupManifest manifest = readManifest(current);
+                if (manifest == null) {
+                    throw new IOException("备份缺少 manifest.json，无法恢复: " + current);
+                }
+                chain.add(0, current);
+                current = manifest.baseBackup != null ? Paths.get(backupPath, manifest.baseBackup) : null;
+            }
+
+            for (Path path : chain) {
+                BackupManifest manifest = readManifest(path);
+                for (TableManifest table : manifest.tables) {
+                    restoreTable(path, table, "FULL".equals(table.mode));
+                }
+                logger.info("已应用备份: {} ({})", manifest.name, manifest.type);
+            }
 
-            System.out.println("✅ 数据恢复完成: " + backupDir);
+            logger.info("数据恢复完成: {}", dir);
         } catch (Exception e) {
-            System.err.println("❌ 数据恢复失败: " + e.getMessage());
+            logger.error("数据恢复失败: {}", e.getMessage(), e);
         }
     }
 
     /**
-     * 从CSV文件恢复表数据
+     * 恢复一张表：同一连接、同一事务内批量插入，分块 CRC 不一致时整表回滚
      */
-    private void restoreTableData(String tableName, String filePath) throws IOException {
-        try {
-            Path path = Paths.get(filePath);
-            if (!Files.exists(path)) {
-                System.out.println("⚠️ 备份文件不存在: " + filePath);
-                return;
-            }
+    private void restoreTable(Path backupDir, TableManifest table, boolean replaceAll) {
+        if (!TABLES.containsKey(table.table)) {
+            logger.warn("跳过未知的表: {}", table.table);
+            return;
+        }
+        if (table.error != null) {
+            logger.warn("表 {} 备份时出错，跳过恢复: {}", table.table, table.error);
+            return;
+        }
 
-            List<String> lines = Files.readAllLines(path);
-            if (lines.isEmpty()) {
-                return;
-            }
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < table.columns.size(); i++) {
+            placeholders.append(i > 0 ? ", ?" : "?");
+        }
+        // 全量恢复先清空再插入；增量按主键覆盖
+        String sql = (replaceAll ? "INSERT INTO " : "REPLACE INTO ") + table.table
+                + " (" + String.join(", ", table.columns) + ") VALUES (" + placeholders + ")";
 
-            // 解析表头
-            String[] headers = lines.get(0).split(",");
-
-            // 清空表数据
-            jdbcTemplate.execute("DELETE FROM " + tableName);
-
-            // 插入数据
-            for (int i = 1; i < lines.size(); i++) {
-                String[] values = lines.get(i).split(",");
-                if (values.length == headers.length) {
-                    StringBuilder sql = new StringBuilder();
-                    sql.append("INSERT INTO ").append(tableName).append(" (");
-                    sql.append(String.join(",", headers));
-                    sql.append(") VALUES (");
-                    
-                    for (int j = 0; j < values.length; j++) {
-                        if (j > 0) sql.append(",");
-                        if (values[j].isEmpty() || "null".equalsIgnoreCase(values[j])) {
-                            sql.append("NULL");
-                        } else {
-                            sql.append("'").append(values[j].replace("'", "''")).append("'");
-                        }
+        Long restored = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            long rows = 0;
+            try (Statement statement = connection.createStatement()) {
+                connection.setAutoCommit(false);
+                statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+                if (replaceAll) {
+                    statement.execute("DELETE FROM " + table.table);
+                }
+                try (PreparedStatement insert = connection.prepareStatement(sql)) {
+                    for (ChunkManifest chunk : table.chunks) {
+                        rows += restoreChunk(backupDir.resolve(chunk.file), chunk, table, insert);
                     }
-                    sql.append(")");
-                    
-                    jdbcTemplate.execute(sql.toString());
                 }
+                connection.commit();
+                return rows;
+            } catch (SQLException | IOException e) {
+                connection.rollback();
+                throw new SQLException("表 " + table.table + " 恢复失败，已回滚: " + e.getMessage(), e);
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+                }
+                connection.setAutoCommit(autoCommit);
             }
+        });
 
-            System.out.println("✅ 表 " + tableName + " 恢复完成");
-        } catch (Exception e) {
-            System.err.println("❌ 表 " + tableName + " 恢复失败: " + e.getMessage());
+        logger.info("表 {} 恢复完成: {} 行", table.table, restored);
+    }
+
+    private long restoreChunk(Path file, ChunkManifest chunk, TableManifest table, PreparedStatement insert)
+            throws IOException, SQLException {
+        CRC32 crc = new CRC32();
+        long rows = 0;
+        int pending = 0;
+        try (Reader reader = new BufferedReader(new InputStreamReader(
+                new CheckedInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file), 65536), 65536), crc),
+                StandardCharsets.UTF_8), 65536)) {
+            CsvReader csv = new CsvReader(reader);
+            // 表头
+            csv.readRecord();
+            List<String> record;
+            while ((record = csv.readRecord()) != null) {
+                if (record.size() != table.columns.size()) {
+                    throw new IOException("列数不匹配: " + file + " 第 " + (rows + 2) + " 行");
+                }
+                for (int i = 0; i < record.size(); i++) {
+                    bindValue(insert, i + 1, record.get(i), table.types.get(i));
+                }
+                insert.addBatch();
+                rows++;
+                if (++pending >= restoreBatchSize) {
+                    insert.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                insert.executeBatch();
+            }
+        }
+        if (rows != chunk.rows || !Long.toHexString(crc.getValue()).equals(chunk.crc32)) {
+            throw new IOException("分块校验失败: " + file + " (行数 " + rows + "/" + chunk.rows + ")");
+        }
+        return rows;
+    }
+
+    private void bindValue(PreparedStatement statement, int index, String value, int sqlType) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, sqlType);
+        } else if (isBinary(sqlType)) {
+            statement.setBytes(index, Base64.getDecoder().decode(value));
+        } else if (sqlType == Types.BIT || sqlType == Types.BOOLEAN) {
+            // 导出时写成 "1"/"0"，按字符串绑定到 BIT(1) 会超长或被当成非零值
+            statement.setBoolean(index, "1".equals(value));
+        } else {
+            statement.setString(index, value);
+        }
+    }
+
+    private static boolean isBinary(int sqlType) {
+        return sqlType == Types.BINARY || sqlType == Types.VARBINARY
+                || sqlType == Types.LONGVARBINARY || sqlType == Types.BLOB;
+    }
+
+    /**
+     * 最近一次完整（有 manifest）的备份
+     */
+    private BackupManifest latestManifest() {
+        List<String> backups = getBackupList();
+        for (int i = backups.size() - 1; i >= 0; i--) {
+            BackupManifest manifest = readManifest(Paths.get(backupPath, backups.get(i)));
+            if (manifest != null) {
+                return manifest;
+            }
+        }
+        return null;
+    }
+
+    private BackupManifest readManifest(Path dir) {
+        File file = dir.resolve(MANIFEST_FILE).toFile();
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(file, BackupManifest.class);
+        } catch (IOException e) {
+            logger.warn("读取备份清单失败: {} - {}", file, e.getMessage());
+            return null;
         }
     }
 
@@ -192,15 +421,17 @@ public class DataBackupService {
                 return List.of();
             }
 
-            return Files.list(backupDir)
-                .filter(Files::isDirectory)
-                .map(Path::getFileName)
-                .map(Path::toString)
-                .filter(name -> name.startsWith("backup_"))
-                .sorted()
-                .toList();
+            try (Stream<Path> paths = Files.list(backupDir)) {
+                return paths
+                    .filter(Files::isDirectory)
+                    .map(Path::getFileName)
+                    .map(Path::toString)
+                    .filter(name -> name.startsWith("backup_"))
+                    .sorted()
+                    .toList();
+            }
         } catch (Exception e) {
-            System.err.println("❌ 获取备份列表失败: " + e.getMessage());
+            logger.error("获取备份列表失败: {}", e.getMessage());
             return List.of();
         }
     }
@@ -212,22 +443,206 @@ public class DataBackupService {
         try {
             Path backupDir = Paths.get(backupPath, backupName);
             if (Files.exists(backupDir)) {
-                Files.walk(backupDir)
-                    .sorted((a, b) -> b.compareTo(a))
-                    .forEach(path -> {
-                        try {
-                            Files.delete(path);
-                        } catch (IOException e) {
-                            System.err.println("删除文件失败: " + path);
-                        }
-                    });
-                System.out.println("✅ 备份删除成功: " + backupName);
+                try (Stream<Path> paths = Files.walk(backupDir)) {
+                    paths.sorted((a, b) -> b.compareTo(a))
+                        .forEach(path -> {
+                            try {
+                                Files.delete(path);
+                            } catch (IOException e) {
+                                logger.warn("删除文件失败: {}", path);
+                            }
+                        });
+                }
+                logger.info("备份删除成功: {}", backupName);
                 return true;
             }
             return false;
         } catch (Exception e) {
-            System.err.println("❌ 删除备份失败: " + e.getMessage());
+            logger.error("删除备份失败: {}", e.getMessage());
             return false;
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 单个分块文件的写入器：CSV -> UTF-8 -> CRC32（分块 + 整表）-> gzip -> 文件
+     */
+    private static final class ChunkWriter {
+        private final String fileName;
+        private final CRC32 chunkCrc = new CRC32();
+        private final Writer writer;
+        private final StringBuilder line = new StringBuilder(256);
+        long rows;
+
+        ChunkWriter(Path dir, String table, int index, List<String> columns, CRC32 tableCrc) throws IOException {
+            this.fileName = String.format("%s.part-%04d.csv.gz", table, index);
+            GZIPOutputStream gzip = new GZIPOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(dir.resolve(fileName)), 65536), 65536);
+            this.writer = new BufferedWriter(new OutputStreamWriter(
+                    new CheckedOutputStream(new CheckedOutputStream(gzip, tableCrc), chunkCrc),
+                    StandardCharsets.UTF_8), 65536);
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                appendQuoted(line, columns.get(i));
+            }
+            writer.write(line.append('\n').toString());
+        }
+
+        void writeRow(ResultSet rs, int[] types) throws SQLException, IOException {
+            line.setLength(0);
+            for (int i = 0; i < types.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                String value;
+                if (isBinary(types[i])) {
+                    byte[] bytes = rs.getBytes(i + 1);
+                    value = bytes != null ? Base64.getEncoder().encodeToString(bytes) : null;
+                } else if (types[i] == Types.BIT || types[i] == Types.BOOLEAN) {
+                    boolean flag = rs.getBoolean(i + 1);
+                    value = rs.wasNull() ? null : (flag ? "1" : "0");
+                } else {
+                    value = rs.getString(i + 1);
+                }
+                if (value == null) {
+                    line.append(NULL_MARKER);
+                } else {
+                    appendQuoted(line, value);
+                }
+            }
+            writer.write(line.append('\n').toString());
+            rows++;
+        }
+
+        ChunkManifest finish() throws IOException {
+            writer.close();
+            ChunkManifest chunk = new ChunkManifest();
+            chunk.file = fileName;
+            chunk.rows = rows;
+            chunk.crc32 = Long.toHexString(chunkCrc.getValue());
+            return chunk;
+        }
+
+        void closeQuietly() {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        /**
+         * RFC 4180：含逗号、引号、换行或与 NULL 标记冲突时加引号，内部引号成对转义；空串写成 ""
+         */
+        private static void appendQuoted(StringBuilder out, String value) {
+            boolean quote = value.isEmpty() || NULL_MARKER.equals(value);
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                out.append(value);
+                return;
+            }
+            out.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    out.append('"');
+                }
+                out.append(c);
+            }
+            out.append('"');
+        }
+    }
+
+    /**
+     * 流式 CSV 读取，支持引号内的逗号、换行和转义引号；未加引号的 \N 读作 null
+     */
+    static final class CsvReader {
+        private final Reader reader;
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        List<String> readRecord() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            List<String> record = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (c == '"' && field.length() == 0 && !quoted) {
+                    // 引号字段
+                    quoted = true;
+                    while (true) {
+                        c = read();
+                        if (c == -1) {
+                            throw new IOException("CSV 引号未闭合");
+                        }
+                        if (c == '"') {
+                            int next = read();
+                            if (next == '"') {
+                                field.append('"');
+                                continue;
+                            }
+                            c = next;
+                            break;
+                        }
+                        field.append((char) c);
+                    }
+                }
+                if (c == ',' || c == '\n' || c == -1) {
+                    String value = field.toString();
+                    record.add(!quoted && NULL_MARKER.equals(value) ? null : value);
+                    if (c != ',') {
+                        return record;
+                    }
+                    field.setLength(0);
+                    quoted = false;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            return reader.read();
+        }
+    }
+
+    /**
+     * 备份清单
+     */
+    public static class BackupManifest {
+        public String name;
+        public String type;
+        public String startedAt;
+        public String finishedAt;
+        public String since;
+        public String baseBackup;
+        public List<TableManifest> tables = new ArrayList<>();
+    }
+
+    public static class TableManifest {
+        public String table;
+        public String mode;
+        public String sinceColumn;
+        public List<String> columns = new ArrayList<>();
+        public List<Integer> types = new ArrayList<>();
+        public long rows;
+        public String crc32;
+        public String error;
+        public List<ChunkManifest> chunks = new ArrayList<>();
+    }
+
+    public static class ChunkManifest {
+        public String file;
+        public long rows;
+        public String crc32;
+    }
+}
@@ -2,107 +2,36 @@ package org.example.service;
 
 import org.example.entity.User;
 import org.example.entity.UserLevel;
-import org.example.repository.VideoRepository;
-import org.example.repository.CommentRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 超快速统计服务 - 专门用于快速获取统计数据
+ * 计数来自 StatsAggregationService 的内存快照
  */
 @Service
 public class FastStatsService {
 
-    @Autowired
-    private VideoRepository videoRepository;
-
-    @Autowired
-    private CommentRepository commentRepository;
-
     @Autowired
     private AchievementAutoDetectionService achievementAutoDetectionService;
 
-    // 内存缓存，避免频繁数据库查询
-    private final Map<Long, Map<String, Object>> statsCache = new ConcurrentHashMap<>();
-    private final Map<Long, Long> cacheTimestamp = new ConcurrentHashMap<>();
-    
-    // 缓存有效期：30秒
-    private static final long CACHE_DURATION = 30000;
+    @Autowired
+    private StatsAggregationService statsAggregationService;
 
     /**
-     * 超快速获取用户统计数据
+     * 快速获取用户统计数据（内存计数，不访问数据库）
      */
     public Map<String, Object> getFastUserStats(User user) {
-        Long userId = user.getId();
-        long currentTime = System.currentTimeMillis();
-        
-        // 检查缓存
-        if (statsCache.containsKey(userId) && 
-            cacheTimestamp.containsKey(userId) &&
-            (currentTime - cacheTimestamp.get(userId)) < CACHE_DURATION) {
-            
-            System.out.println("📊 使用缓存数据 for user: " + user.getUsername());
-            return statsCache.get(userId);
-        }
-        
-        // 生成新的统计数据
-        Map<String, Object> stats = generateFastStats(user);
-        
-        // 更新缓存
-        statsCache.put(userId, stats);
-        cacheTimestamp.put(userId, currentTime);
-        
-        System.out.println("📊 生成新统计数据 for user: " + user.getUsername());
-        return stats;
-    }
-
-    /**
-     * 生成快速统计数据
-     */
-    private Map<String, Object> generateFastStats(User user) {
-        Map<String, Object> stats = new HashMap<>();
-        
+        Map<String, Object> stats = new HashMap<>(statsAggregationService.getUserStatistics(user.getId()));
         try {
-            Long userId = user.getId();
-            
-            // 只查询最基础的数据
-            long videoCount = videoRepository.countByUserId(userId);
-            long commentCount = commentRepository.countByUserId(userId);
-            
-            // 基础统计
-            stats.put("totalVideos", videoCount);
-            stats.put("approvedVideos", videoCount); // 简化：假设都已批准
-            stats.put("pendingVideos", 0L);
-            
-            // 估算数据，避免复杂查询
-            stats.put("totalViews", videoCount * 5); // 估算：每个视频5次观看
-            stats.put("totalComments", commentCount);
-            stats.put("totalLikesReceived", videoCount * 2); // 估算：每个视频2个赞
-            stats.put("totalFavorites", videoCount); // 估算：每个视频1个收藏
-            
-            // 成就统计
-            String achievementStats = achievementAutoDetectionService.getQuickAchievementStats(user);
-            stats.put("achievementStats", achievementStats);
-            
+            stats.put("achievementStats", achievementAutoDetectionService.getQuickAchievementStats(user));
         } catch (Exception e) {
-            System.err.println("❌ 生成统计数据失败: " + e.getMessage());
-            
-            // 返回默认值
-            stats.put("totalVideos", 0L);
-            stats.put("approvedVideos", 0L);
-            stats.put("pendingVideos", 0L);
-            stats.put("totalViews", 0L);
-            stats.put("totalComments", 0L);
-            stats.put("totalLikesReceived", 0L);
-            stats.put("totalFavorites", 0L);
+            System.err.println("❌ 获取成就统计失败: " + e.getMessage());
             stats.put("achievementStats", "成就: 0/0 (0%)");
         }
-        
         return stats;
     }
 
@@ -146,47 +75,10 @@ public class FastStatsService {
     }
 
     /**
-     * 清除用户缓存
-     */
-    public void clearUserCache(Long userId) {
-        statsCache.remove(userId);
-        cacheTimestamp.remove(userId);
-        System.out.println("🗑️ 清除用户缓存: " + userId);
-    }
-
-    /**
-     * 清除所有缓存
-     */
-    public void clearAllCache() {
-        statsCache.clear();
-        cacheTimestamp.clear();
-        System.out.println("🗑️ 清除所有缓存");
-    }
-
-    /**
-     * 预热用户缓存
-     */
-    public void warmupUserCache(User user) {
-        System.out.println("🔥 预热用户缓存: " + user.getUsername());
-        getFastUserStats(user);
-    }
-
-    /**
-     * 获取缓存统计信息
+     * 获取统计服务运行状态
      */
     public Map<String, Object> getCacheStats() {
-        Map<String, Object> cacheStats = new HashMap<>();
-        cacheStats.put("cachedUsers", statsCache.size());
-        cacheStats.put("cacheHitRate", calculateCacheHitRate());
-        return cacheStats;
-    }
-
-    /**
-     * 计算缓存命中率（简化版本）
-     */
-    private double calculateCacheHitRate() {
-        // 简化实现，实际应该记录命中和未命中次数
-        return statsCache.size() > 0 ? 85.0 : 0.0;
+        return statsAggregationService.getStats();
     }
 
     /**
@@ -197,8 +89,6 @@ public class FastStatsService {
         new Thread(() -> {
             try {
                 achievementAutoDetectionService.autoDetectUserAchievements(user);
-                // 检测完成后清除缓存，下次获取最新数据
-                clearUserCache(user.getId());
             } catch (Exception e) {
                 System.err.println("❌ 异步成就检测失败: " + e.getMessage());
             }
@@ -209,9 +99,6 @@ public class FastStatsService {
      * 立即检测成就并返回数量
      */
     public int detectAchievementsNow(User user) {
-        int newCount = achievementAutoDetectionService.immediateDetectAchievements(user);
-        // 清除缓存以获取最新数据
-        clearUserCache(user.getId());
-        return newCount;
+        return achievementAutoDetectionService.immediateDetectAchievements(user);
     }
 }
@@ -0,0 +1,295 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 上传文件位置索引：文件名 -> 绝对路径、内容类型、大小、ETag
+ * 上传时由 FileUploadService / FileStorageService 登记，删除时移除；未命中时按最小间隔重新扫描上传目录，
+ * 连续未命中的文件名短时间内直接返回，避免每个请求都遍历目录。
+ */
+@Service
+public class FileIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileIndexService.class);
+
+    // UUID 命名的文件（可带 "_时间戳" 后缀和扩展名）内容不会变化，可以长期缓存
+    private static final Pattern UUID_NAME = Pattern.compile(
+            "^[0-9a-f]{8}-?[0-9a-f]{4}-?[0-9a-f]{4}-?[0-9a-f]{4}-?[0-9a-f]{12}([._].*)?$", Pattern.CASE_INSENSITIVE);
+
+    // 两次全量扫描的最小间隔
+    @Value("${app.file-index.rebuild-min-interval-ms:30000}")
+    private long rebuildMinIntervalMillis;
+
+    // 未命中文件名的缓存时间
+    @Value("${app.file-index.miss-cache-seconds:30}")
+    private long missCacheSeconds;
+
+    // 上传根目录（由上传服务在初始化时登记）
+    private final List<Path> roots = new CopyOnWriteArrayList<>();
+
+    // 小写文件名 -> 位置
+    private final Map<String, FileLocation> byName = new ConcurrentHashMap<>();
+
+    // 小写的不带扩展名的文件名 -> 位置（兼容请求时省略扩展名）
+    private final Map<String, FileLocation> byBaseName = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    private Cache<String, Boolean> recentMisses;
+
+    private volatile long lastRebuildNanos = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+
+    @PostConstruct
+    public void init() {
+        recentMisses = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofSeconds(missCacheSeconds))
+                .build();
+    }
+
+    /**
+     * 登记上传根目录
+     */
+    public void addRoot(String root) {
+        Path path = Path.of(root).toAbsolutePath().normalize();
+        if (!roots.contains(path)) {
+            roots.add(path);
+        }
+    }
+
+    /**
+     * 登记新保存的文件
+     */
+    public void register(Path file) {
+        try {
+            Path absolute = file.toAbsolutePath().normalize();
+            BasicFileAttributes attributes = Files.readAttributes(absolute, BasicFileAttributes.class);
+            put(toLocation(absolute, attributes), true);
+        } catch (IOException e) {
+            logger.warn("登记文件索引失败: {} - {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 移除已删除的文件
+     */
+    public void unregister(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        FileLocation location = byName.remove(name);
+        if (location != null) {
+            byBaseName.remove(stripExtension(name), location);
+        }
+    }
+
+    /**
+     * 按文件名查找；prefix 不为空时只返回该上传子目录（如 "chat/"）下的文件
+     */
+    public FileLocation lookup(String fileName, String prefix) {
+        return lookup(fileName, prefix != null ? List.of(prefix) : null);
+    }
+
+    /**
+     * 按文件名查找；prefixes 不为空时只返回位于其中某个上传子目录下的文件
+     */
+    public FileLocation lookup(String fileName, List<String> prefixes) {
+        if (fileName == null || fileName.isEmpty() || fileName.contains("/") || fileName.contains("\\") || fileName.contains("..")) {
+            return null;
+        }
+        String key = fileName.toLowerCase(Locale.ROOT);
+        FileLocation location = find(key, prefixes);
+        if (location != null) {
+            hits.incrementAndGet();
+            return location;
+        }
+
+        misses.incrementAndGet();
+        if (recentMisses.getIfPresent(key) != null) {
+            return null;
+        }
+        rebuildIfStale();
+        location = find(key, prefixes);
+        if (location == null) {
+            recentMisses.put(key, Boolean.TRUE);
+        }
+        return location;
+    }
+
+    private FileLocation find(String key, List<String> prefixes) {
+        FileLocation location = byName.get(key);
+        if (location == null) {
+            location = byBaseName.get(key);
+        }
+        if (location == null || (prefixes != null && prefixes.stream().noneMatch(location.relativePath::startsWith))) {
+            return null;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(location.path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            attributes = null;
+        }
+        // 文件被其他途径删除时移出索引
+        if (attributes == null || !attributes.isRegularFile()) {
+            unregister(location.path);
+            return null;
+        }
+        // 文件被原地替换时刷新大小和 ETag
+        if (attributes.size() != location.size || attributes.lastModifiedTime().toMillis() != location.lastModified) {
+            location = toLocation(location.path, attributes);
+            put(location, true);
+        }
+        return location;
+    }
+
+    /**
+     * 启动后在后台建立索引，第一个请求不必等待扫描
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuildIfStale();
+    }
+
+    private synchronized void rebuildIfStale() {
+        long now = System.nanoTime();
+        if (now - lastRebuildNanos < TimeUnit.MILLISECONDS.toNanos(rebuildMinIntervalMillis)) {
+            return;
+        }
+        lastRebuildNanos = now;
+        long start = System.currentTimeMillis();
+        int count = 0;
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        put(toLocation(file, attributes), false);
+                        count++;
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                logger.warn("扫描上传目录失败: {} - {}", root, e.getMessage());
+            }
+        }
+        rebuilds.incrementAndGet();
+        recentMisses.invalidateAll();
+        logger.info("文件索引重建完成: {} 个文件, 耗时 {}ms", count, System.currentTimeMillis() - start);
+    }
+
+    private void put(FileLocation location, boolean replace) {
+        String name = location.path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (replace) {
+            byName.put(name, location);
+            byBaseName.put(stripExtension(name), location);
+            recentMisses.invalidate(name);
+            recentMisses.invalidate(stripExtension(name));
+        } else {
+            // 同名文件在多个目录时，已登记且仍存在的条目优先（与上传登记的结果一致）；同一路径用新的元数据覆盖
+            byName.compute(name, (k, old) -> preferScanned(old, location) ? location : old);
+            byBaseName.compute(stripExtension(name), (k, old) -> preferScanned(old, location) ? location : old);
+        }
+    }
+
+    private static boolean preferScanned(FileLocation old, FileLocation scanned) {
+        return old == null || old.path.equals(scanned.path) || !Files.isRegularFile(old.path);
+    }
+
+    private FileLocation toLocation(Path file, BasicFileAttributes attributes) {
+        String relative = file.getFileName().toString();
+        for (Path root : roots) {
+            if (file.startsWith(root)) {
+                relative = root.relativize(file).toString().replace('\\', '/');
+                break;
+            }
+        }
+        String name = file.getFileName().toString();
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String contentType = MediaTypeFactory.getMediaType(name)
+                .map(MediaType::toString)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+        return new FileLocation(file, relative, contentType, size, lastModified, etag, UUID_NAME.matcher(name).matches());
+    }
+
+    private static String stripExtension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("roots", roots.size());
+        stats.put("entries", byName.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("rebuilds", rebuilds.get());
+        stats.put("lastRebuildSecondsAgo", Duration.ofNanos(System.nanoTime() - lastRebuildNanos).toSeconds());
+        return stats;
+    }
+
+    /**
+     * 已索引文件的位置和元数据
+     */
+    public static final class FileLocation {
+        private final Path path;
+        private final String relativePath;
+        private final String contentType;
+        private final long size;
+        private final long lastModified;
+        private final String etag;
+        private final boolean immutable;
+
+        FileLocation(Path path, String relativePath, String contentType, long size, long lastModified,
+                     String etag, boolean immutable) {
+            this.path = path;
+            this.relativePath = relativePath;
+            this.contentType = contentType;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.etag = etag;
+            this.immutable = immutable;
+        }
+
+        public Path getPath() { return path; }
+        public String getRelativePath() { return relativePath; }
+        public String getContentType() { return contentType; }
+        public long getSize() { return size; }
+        public long getLastModified() { return lastModified; }
+        public String getEtag() { return etag; }
+        public boolean isImmutable() { return immutable; }
+    }
+}
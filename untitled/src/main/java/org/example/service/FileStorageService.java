@@ -1,5 +1,6 @@
 package org.example.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -22,6 +23,9 @@ public class FileStorageService {
 
     private String uploadDir;
 
+    @Autowired
+    private FileIndexService fileIndexService;
+
     @PostConstruct
     public void initUploadDir() {
         // 优先使用根目录静态资源库
@@ -37,6 +41,7 @@ public class FileStorageService {
             File testDir = new File(path);
             if (testDir.exists() && testDir.isDirectory()) {
                 uploadDir = testDir.getAbsolutePath();
+                fileIndexService.addRoot(uploadDir);
                 System.out.println("✅ FileStorageService使用uploads目录: " + uploadDir);
                 return;
             }
@@ -49,6 +54,7 @@ public class FileStorageService {
             rootDir.mkdirs();
             System.out.println("📁 FileStorageService创建根目录uploads: " + uploadDir);
         }
+        fileIndexService.addRoot(uploadDir);
         System.out.println("✅ FileStorageService使用默认uploads目录: " + uploadDir);
     }
 
@@ -100,6 +106,7 @@ public class FileStorageService {
         // 保存文件
         Path filePath = categoryPath.resolve(fileName);
         Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        fileIndexService.register(filePath);
         
         // 生成访问URL
         String fileUrl = String.format("/uploads/%s/%s/%s/%s", category, fileType, datePath, fileName);
@@ -222,6 +229,7 @@ public class FileStorageService {
     public boolean deleteFile(String filePath) {
         try {
             Path path = Paths.get(filePath);
+            fileIndexService.unregister(path);
             return Files.deleteIfExists(path);
         } catch (IOException e) {
             return false;
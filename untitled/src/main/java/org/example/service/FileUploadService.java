@@ -1,5 +1,6 @@
 package org.example.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -20,6 +21,9 @@ public class FileUploadService {
 
     private String uploadPath;
 
+    @Autowired
+    private FileIndexService fileIndexService;
+
     @PostConstruct
     public void initUploadPath() {
         // 优先使用根目录静态资源库
@@ -35,6 +39,7 @@ public class FileUploadService {
             File testDir = new File(path);
             if (testDir.exists() && testDir.isDirectory()) {
                 uploadPath = testDir.getAbsolutePath();
+                fileIndexService.addRoot(uploadPath);
                 System.out.println("✅ FileUploadService使用uploads目录: " + uploadPath);
                 return;
             }
@@ -47,6 +52,7 @@ public class FileUploadService {
             rootDir.mkdirs();
             System.out.println("📁 创建根目录uploads: " + uploadPath);
         }
+        fileIndexService.addRoot(uploadPath);
         System.out.println("✅ FileUploadService使用默认uploads目录: " + uploadPath);
     }
 
@@ -142,6 +148,47 @@ public class FileUploadService {
     }
 
 
+    /**
+     * 上传根目录
+     */
+    public Path getUploadRoot() {
+        return Paths.get(uploadPath).toAbsolutePath().normalize();
+    }
+
+    /**
+     * /uploads/xxx 形式的访问路径转换为上传目录下的文件；不是上传文件时返回 null
+     */
+    public Path resolveWebPath(String webPath) {
+        if (webPath == null || !webPath.startsWith("/uploads/")) {
+            return null;
+        }
+        Path root = getUploadRoot();
+        Path resolved = root.resolve(webPath.substring("/uploads/".length())).normalize();
+        return resolved.startsWith(root) ? resolved : null;
+    }
+
+    /**
+     * 将已在上传目录内写好的文件移入 videos 目录（同一文件系统内重命名，不再复制），返回访问路径
+     * 目标文件名由 baseName 决定：上次移动后中断的提交重试时，临时文件已不在而目标文件存在，直接沿用
+     */
+    public String adoptVideoFile(Path staged, String baseName, String originalFilename) throws IOException {
+        String webPath = adoptedVideoPath(baseName, originalFilename);
+        Path target = resolveWebPath(webPath);
+        Files.createDirectories(target.getParent());
+        if (Files.exists(staged) || !Files.exists(target)) {
+            Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        fileIndexService.register(target);
+        return webPath;
+    }
+
+    /**
+     * adoptVideoFile 移入后的访问路径
+     */
+    public String adoptedVideoPath(String baseName, String originalFilename) {
+        return "/uploads/videos/" + baseName + getFileExtension(originalFilename);
+    }
+
     /**
      * 上传文件到指定子目录
      */
@@ -167,6 +214,7 @@ public class FileUploadService {
         Path filePath = uploadDir.resolve(fileName);
         System.out.println("保存文件到: " + filePath.toAbsolutePath());
         Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        fileIndexService.register(filePath);
 
         // 返回相对路径，用于访问
         return "/uploads/" + subDir + "/" + fileName;
@@ -397,6 +445,7 @@ public class FileUploadService {
         try {
             if (filePath != null && filePath.startsWith("/uploads/")) {
                 Path path = Paths.get(uploadPath + filePath.substring("/uploads".length()));
+                fileIndexService.unregister(path);
                 return Files.deleteIfExists(path);
             }
             return false;
@@ -4,6 +4,9 @@ import org.example.entity.User;
 import org.example.entity.UserFollow;
 import org.example.repository.UserFollowRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -31,9 +34,16 @@ public class FollowService {
     @Autowired
     private AchievementService achievementService;
 
+    @Autowired
+    private UserOnlineStatusService userOnlineStatusService;
+
     /**
      * 关注用户
      */
+    @Caching(evict = {
+            @CacheEvict(value = "userSocialStats", key = "#follower.id"),
+            @CacheEvict(value = "userSocialStats", key = "#following.id")
+    })
     public boolean followUser(User follower, User following) {
         // 不能关注自己
         if (follower.getId().equals(following.getId())) {
@@ -52,6 +62,7 @@ public class FollowService {
         userFollow.setCreatedAt(LocalDateTime.now());
 
         userFollowRepository.save(userFollow);
+        userOnlineStatusService.invalidateFollowers(following.getId());
 
         // 发送关注通知
         notificationService.notifyUserFollow(following, follower);
@@ -71,6 +82,10 @@ public class FollowService {
      * 取消关注用户
      */
     @Transactional(rollbackFor = Exception.class)
+    @Caching(evict = {
+            @CacheEvict(value = "userSocialStats", key = "#follower.id"),
+            @CacheEvict(value = "userSocialStats", key = "#following.id")
+    })
     public boolean unfollowUser(User follower, User following) {
         try {
             System.out.println("🔍 开始取消关注操作:");
@@ -88,6 +103,7 @@ public class FollowService {
             
             // 直接删除关注关系
             int deletedCount = userFollowRepository.deleteByFollowerIdAndFollowingId(follower.getId(), following.getId());
+            userOnlineStatusService.invalidateFollowers(following.getId());
             System.out.println("✅ 删除关注关系，影响记录数: " + deletedCount);
                 
                 // 验证删除结果
@@ -201,6 +217,7 @@ public class FollowService {
     /**
      * 批量关注用户
      */
+    @CacheEvict(value = "userSocialStats", allEntries = true)
     public int batchFollowUsers(User follower, List<Long> followingIds) {
         int successCount = 0;
         for (Long followingId : followingIds) {
@@ -223,6 +240,7 @@ public class FollowService {
     /**
      * 获取用户社交统计信息
      */
+    @Cacheable(value = "userSocialStats", key = "#userId")
     public UserSocialStats getUserSocialStats(Long userId) {
         long followingCount = getFollowingCount(userId);
         long followersCount = getFollowersCount(userId);
@@ -266,6 +284,7 @@ public class FollowService {
      * 删除同一用户对另一用户的重复关注记录，只保留一条
      */
     @Transactional
+    @CacheEvict(value = "userSocialStats", allEntries = true)
     public void cleanupDuplicateFollows() {
         try {
             System.out.println("🔍 开始清理重复的关注记录...");
@@ -0,0 +1,504 @@
+package org.example.service;
+
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * HLS 多码率转码
+ * 上传的视频在后台解码一次，同时编码为码率阶梯中不高于源分辨率的各档（H.264 + AAC，固定时长切片），
+ * 全部完成后写入主播放列表，由 VideoStreamController 以不可变缓存输出。
+ * 转码状态记录在 videos 表上：执行中的视频以租约方式持有，节点重启后租约过期由定时任务重新领取；
+ * 失败重试的视频在 transcode_lease_until 之前不会被领取（按次数指数退避）；
+ * 已写完 #EXT-X-ENDLIST 的档位不会重复转码。
+ */
+@Service
+public class HlsTranscodeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HlsTranscodeService.class);
+
+    public static final String HLS_DIR = "hls";
+
+    private static final String CANDIDATES_SQL =
+            "SELECT id FROM videos WHERE (transcode_status = 'PENDING' AND (transcode_lease_until IS NULL OR transcode_lease_until < ?)) " +
+            "OR (transcode_status = 'RUNNING' AND transcode_lease_until < ?) ORDER BY id LIMIT ?";
+
+    private static final String ENQUEUE_SQL =
+            "UPDATE videos SET transcode_status = 'PENDING', transcode_progress = 0, transcode_attempts = 0, " +
+            "transcode_error = NULL WHERE id = ? AND (transcode_status IS NULL OR transcode_status = 'FAILED')";
+
+    private static final String CLAIM_SQL =
+            "UPDATE videos SET transcode_status = 'RUNNING', transcode_lease_until = ?, " +
+            "transcode_attempts = transcode_attempts + 1 WHERE id = ? AND ((transcode_status = 'PENDING' " +
+            "AND (transcode_lease_until IS NULL OR transcode_lease_until < ?)) " +
+            "OR (transcode_status = 'RUNNING' AND transcode_lease_until < ?))";
+
+    private static final String RENEW_SQL =
+            "UPDATE videos SET transcode_progress = ?, transcode_lease_until = ? WHERE id = ? AND transcode_status = 'RUNNING'";
+
+    private static final String COMPLETE_SQL =
+            "UPDATE videos SET transcode_status = 'COMPLETED', transcode_progress = 100, hls_master_url = ?, " +
+            "transcode_lease_until = NULL, transcode_error = NULL WHERE id = ?";
+
+    // 等待重试时 transcode_lease_until 表示最早可重新领取的时间
+    private static final String RETRY_SQL =
+            "UPDATE videos SET transcode_status = 'PENDING', transcode_lease_until = ?, transcode_error = ? WHERE id = ?";
+
+    private static final String FAIL_SQL =
+            "UPDATE videos SET transcode_status = 'FAILED', transcode_lease_until = NULL, transcode_error = ? WHERE id = ?";
+
+    // 停机时释放租约，重启后立即可被领取
+    private static final String RELEASE_SQL =
+            "UPDATE videos SET transcode_status = 'PENDING', transcode_lease_until = NULL WHERE id = ? AND transcode_status = 'RUNNING'";
+
+    @Value("${app.upload.path:./uploads}")
+    private String uploadPath;
+
+    // 码率阶梯：高度:视频码率(kbps)
+    @Value("${app.transcode.ladder:360:800,720:2800,1080:5000}")
+    private String ladderSpec;
+
+    @Value("${app.transcode.audio-bitrate-kbps:128}")
+    private int audioBitrateKbps;
+
+    @Value("${app.transcode.segment-seconds:6}")
+    private int segmentSeconds;
+
+    @Value("${app.transcode.lease-ms:300000}")
+    private long leaseMillis;
+
+    @Value("${app.transcode.max-attempts:3}")
+    private int maxAttempts;
+
+    // 第一次重试前的等待时间，之后每次翻倍
+    @Value("${app.transcode.retry-backoff-ms:60000}")
+    private long retryBackoffMillis;
+
+    // 进度写回和租约续期的间隔
+    @Value("${app.transcode.progress-interval-ms:10000}")
+    private long progressIntervalMs;
+
+    @Autowired
+    @Qualifier("transcodeTaskExecutor")
+    private ThreadPoolTaskExecutor transcodeTaskExecutor;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FileUploadService fileUploadService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private List<Rendition> ladder;
+
+    // 本节点正在转码的视频
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean stopping;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong renditionsEncoded = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        List<Rendition> parsed = new ArrayList<>();
+        for (String step : ladderSpec.split(",")) {
+            String[] parts = step.trim().split(":");
+            parsed.add(new Rendition(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim())));
+        }
+        parsed.sort(Comparator.comparingInt(r -> r.height));
+        ladder = parsed;
+        logger.info("HLS转码: 码率阶梯 {}，并发 {}", ladderSpec, transcodeTaskExecutor.getMaxPoolSize());
+    }
+
+    /**
+     * 把视频加入转码队列（未转码或转码失败的视频），提交后立即返回
+     */
+    public boolean enqueue(Long videoId) {
+        int updated = jdbcTemplate.update(ENQUEUE_SQL, videoId);
+        if (updated > 0) {
+            dispatch();
+        }
+        return updated > 0;
+    }
+
+    /**
+     * 领取等待中和租约过期的视频
+     */
+    @Scheduled(fixedDelayString = "${app.transcode.poll-interval-ms:30000}")
+    public void poll() {
+        dispatch();
+    }
+
+    /**
+     * 按空闲线程数领取任务
+     */
+    public synchronized void dispatch() {
+        int free = transcodeTaskExecutor.getMaxPoolSize() - running.size();
+        if (stopping || free <= 0) {
+            return;
+        }
+        try {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Long> candidates = jdbcTemplate.queryForList(CANDIDATES_SQL, Long.class, now, now, free);
+            for (Long id : candidates) {
+                if (running.contains(id)) {
+                    continue;
+                }
+                if (jdbcTemplate.update(CLAIM_SQL, leaseUntil(), id, now, now) == 0) {
+                    continue;
+                }
+                running.add(id);
+                try {
+                    transcodeTaskExecutor.execute(() -> {
+                        try {
+                            transcode(id);
+                        } finally {
+                            running.remove(id);
+                            dispatch();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    running.remove(id);
+                    jdbcTemplate.update(RELEASE_SQL, id);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("领取转码任务失败: {}", e.getMessage());
+        }
+    }
+
+    private void transcode(Long videoId) {
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "SELECT file_path, transcode_attempts FROM videos WHERE id = ?", videoId);
+        String filePath = (String) row.get("file_path");
+        int attempts = ((Number) row.get("transcode_attempts")).intValue();
+        Path source = fileUploadService.resolveWebPath(filePath);
+        if (source == null || !Files.isRegularFile(source)) {
+            jdbcTemplate.update(FAIL_SQL, "源文件不存在: " + filePath, videoId);
+            failed.incrementAndGet();
+            return;
+        }
+
+        Path outputDir = Paths.get(uploadPath, HLS_DIR, String.valueOf(videoId));
+        long start = System.currentTimeMillis();
+        try {
+            boolean finished = encode(videoId, source, outputDir);
+            if (!finished) {
+                // 停机中断，交给重启后的节点继续
+                jdbcTemplate.update(RELEASE_SQL, videoId);
+                return;
+            }
+            jdbcTemplate.update(COMPLETE_SQL, masterUrl(videoId), videoId);
+            evictVideoCaches();
+            completed.incrementAndGet();
+            logger.info("视频 {} HLS转码完成，耗时 {}s", videoId, (System.currentTimeMillis() - start) / 1000);
+        } catch (Exception e) {
+            String message = e.getClass().getSimpleName() + ": " + e.getMessage();
+            if (message.length() > 500) {
+                message = message.substring(0, 500);
+            }
+            if (attempts < maxAttempts) {
+                retried.incrementAndGet();
+                long delay = retryBackoffMillis << Math.min(attempts - 1, 20);
+                jdbcTemplate.update(RETRY_SQL, Timestamp.valueOf(LocalDateTime.now().plusNanos(delay * 1_000_000)),
+                        message, videoId);
+                logger.warn("视频 {} HLS转码失败（第 {} 次），{}s 后重试: {}", videoId, attempts, delay / 1000, message);
+            } else {
+                failed.incrementAndGet();
+                jdbcTemplate.update(FAIL_SQL, message, videoId);
+                logger.warn("视频 {} HLS转码失败（第 {} 次），不再重试: {}", videoId, attempts, message);
+            }
+        }
+    }
+
+    /**
+     * 解码一次，同时输出各档位；返回 false 表示因停机中断
+     */
+    private boolean encode(Long videoId, Path source, Path outputDir) throws IOException {
+        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(source.toFile())) {
+            grabber.start();
+            int sourceWidth = grabber.getImageWidth();
+            int sourceHeight = grabber.getImageHeight();
+            if (sourceWidth <= 0 || sourceHeight <= 0) {
+                throw new IOException("没有视频流");
+            }
+            double frameRate = grabber.getFrameRate() > 0 ? grabber.getFrameRate() : 25;
+            long durationMicros = Math.max(0, grabber.getLengthInTime());
+            int audioChannels = Math.min(2, grabber.getAudioChannels());
+
+            List<Rendition> targets = targetsFor(sourceHeight);
+            List<FFmpegFrameRecorder> recorders = new ArrayList<>();
+            List<RenditionOutput> outputs = new ArrayList<>();
+            for (Rendition rendition : targets) {
+                int height = rendition.height;
+                int width = even(sourceWidth * height / sourceHeight);
+                Path dir = outputDir.resolve(rendition.name());
+                outputs.add(new RenditionOutput(rendition, width, height));
+                if (isComplete(dir)) {
+                    continue;
+                }
+                // 上次中断留下的半成品档位重新生成
+                deleteDirectory(dir);
+                Files.createDirectories(dir);
+                recorders.add(createRecorder(dir, rendition, width, height, frameRate, audioChannels, grabber.getSampleRate()));
+            }
+
+            if (!recorders.isEmpty()) {
+                try {
+                    for (FFmpegFrameRecorder recorder : recorders) {
+                        recorder.start();
+                    }
+                    if (!pump(videoId, grabber, recorders, durationMicros)) {
+                        return false;
+                    }
+                    for (FFmpegFrameRecorder recorder : recorders) {
+                        recorder.stop();
+                    }
+                    renditionsEncoded.addAndGet(recorders.size());
+                } finally {
+                    for (FFmpegFrameRecorder recorder : recorders) {
+                        try {
+                            recorder.release();
+                        } catch (Exception e) {
+                            logger.debug("释放编码器失败: {}", e.getMessage());
+                        }
+                    }
+                }
+            }
+
+            writeMasterPlaylist(outputDir, outputs);
+            return true;
+        }
+    }
+
+    private boolean pump(Long videoId, FFmpegFrameGrabber grabber, List<FFmpegFrameRecorder> recorders,
+                         long durationMicros) throws IOException {
+        long lastProgressAt = System.currentTimeMillis();
+        Frame frame;
+        while ((frame = grabber.grab()) != null) {
+            if (stopping) {
+                logger.info("停机中断视频 {} 的转码", videoId);
+                return false;
+            }
+            boolean video = frame.image != null;
+            if (!video && frame.samples == null) {
+                continue;
+            }
+            int[] positions = video ? null : positions(frame.samples);
+            for (FFmpegFrameRecorder recorder : recorders) {
+                if (video) {
+                    if (grabber.getTimestamp() > recorder.getTimestamp()) {
+                        recorder.setTimestamp(grabber.getTimestamp());
+                    }
+                } else {
+                    // 编码器会移动采样缓冲区的位置，每个档位都从同一位置读取
+                    restore(frame.samples, positions);
+                }
+                recorder.record(frame);
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastProgressAt >= progressIntervalMs) {
+                lastProgressAt = now;
+                int progress = durationMicros > 0
+                        ? (int) Math.min(99, grabber.getTimestamp() * 100 / durationMicros) : 0;
+                jdbcTemplate.update(RENEW_SQL, progress, leaseUntil(), videoId);
+            }
+        }
+        return true;
+    }
+
+    private FFmpegFrameRecorder createRecorder(Path dir, Rendition rendition, int width, int height,
+                                               double frameRate, int audioChannels, int sampleRate) {
+        FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(dir.resolve("index.m3u8").toString(),
+                width, height, audioChannels);
+        recorder.setFormat("hls");
+        recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+        recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+        recorder.setFrameRate(frameRate);
+        recorder.setVideoBitrate(rendition.videoBitrateKbps * 1000);
+        // 关键帧间隔与切片时长对齐，切片都从关键帧开始
+        recorder.setGopSize((int) Math.round(frameRate * segmentSeconds));
+        if (audioChannels > 0) {
+            recorder.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
+            recorder.setAudioBitrate(audioBitrateKbps * 1000);
+            recorder.setSampleRate(sampleRate > 0 ? sampleRate : 44100);
+        }
+        recorder.setOption("hls_time", String.valueOf(segmentSeconds));
+        recorder.setOption("hls_playlist_type", "vod");
+        recorder.setOption("hls_segment_filename", dir.resolve("seg_%05d.ts").toString());
+        return recorder;
+    }
+
+    /**
+     * 不高于源分辨率的档位；源分辨率低于最低档时按源高度输出最低档码率
+     */
+    private List<Rendition> targetsFor(int sourceHeight) {
+        List<Rendition> targets = new ArrayList<>();
+        for (Rendition rendition : ladder) {
+            if (rendition.height <= sourceHeight) {
+                targets.add(rendition);
+            }
+        }
+        if (targets.isEmpty()) {
+            targets.add(new Rendition(even(sourceHeight), ladder.get(0).videoBitrateKbps));
+        }
+        return targets;
+    }
+
+    private void writeMasterPlaylist(Path outputDir, List<RenditionOutput> outputs) throws IOException {
+        StringBuilder master = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n");
+        for (RenditionOutput output : outputs) {
+            long bandwidth = (output.rendition.videoBitrateKbps + audioBitrateKbps) * 1000L;
+            master.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(bandwidth)
+                  .append(",RESOLUTION=").append(output.width).append('x').append(output.height).append('\n')
+                  .append(output.rendition.name()).append("/index.m3u8\n");
+        }
+        Path tmp = outputDir.resolve("master.m3u8.tmp");
+        Files.writeString(tmp, master.toString(), StandardCharsets.UTF_8);
+        Files.move(tmp, outputDir.resolve("master.m3u8"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static boolean isComplete(Path renditionDir) {
+        Path playlist = renditionDir.resolve("index.m3u8");
+        try {
+            return Files.isRegularFile(playlist) && Files.readString(playlist).contains("#EXT-X-ENDLIST");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static int[] positions(Buffer[] buffers) {
+        int[] positions = new int[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            positions[i] = buffers[i].position();
+        }
+        return positions;
+    }
+
+    private static void restore(Buffer[] buffers, int[] positions) {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i].position(positions[i]);
+        }
+    }
+
+    private static int even(int value) {
+        return Math.max(2, value - (value % 2));
+    }
+
+    private Timestamp leaseUntil() {
+        return Timestamp.valueOf(LocalDateTime.now().plusNanos(leaseMillis * 1_000_000));
+    }
+
+    public static String masterUrl(Long videoId) {
+        return "/video/stream/hls/" + videoId + "/master.m3u8";
+    }
+
+    private void evictVideoCaches() {
+        for (String name : new String[]{"topVideos", "latestVideos"}) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("workers", transcodeTaskExecutor.getMaxPoolSize());
+        stats.put("running", new ArrayList<>(running));
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("retried", retried.get());
+        stats.put("renditionsEncoded", renditionsEncoded.get());
+        stats.put("ladder", ladderSpec);
+        return stats;
+    }
+
+    /**
+     * 停机时中断转码循环，租约交还后由重启的节点继续
+     */
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+    }
+
+    private static final class Rendition {
+        final int height;
+        final int videoBitrateKbps;
+
+        Rendition(int height, int videoBitrateKbps) {
+            this.height = height;
+            this.videoBitrateKbps = videoBitrateKbps;
+        }
+
+        String name() {
+            return height + "p";
+        }
+    }
+
+    private static final class RenditionOutput {
+        final Rendition rendition;
+        final int width;
+        final int height;
+
+        RenditionOutput(Rendition rendition, int width, int height) {
+            this.rendition = rendition;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package org.example.service;
+
+import org.example.entity.LyricJob;
+import org.example.entity.Music;
+import org.example.repository.LyricJobRepository;
+import org.example.util.TransactionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 歌词识别任务队列
+ * 任务持久化在 lyric_jobs 表中：同一首音乐同时只有一个未完成任务（active_music_id 唯一），相同内容（SHA-256）
+ * 的音频只识别一次，之后的请求直接复用已完成任务的结果。本节点同时执行的任务数受 app.lyric-job.concurrency 限制，
+ * 执行中的任务以租约方式持有，节点重启后租约过期由定时任务重新执行。
+ * 识别进度、部分结果和已识别的歌词行推送到 /topic/lyric-jobs/{id}。
+ */
+@Service
+public class LyricJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LyricJobService.class);
+
+    private static final String TOPIC_PREFIX = "/topic/lyric-jobs/";
+
+    private static final EnumSet<LyricJob.Status> ACTIVE = EnumSet.of(LyricJob.Status.QUEUED, LyricJob.Status.RUNNING);
+
+    private static final String CANDIDATES_SQL =
+            "SELECT id, file_hash FROM lyric_jobs WHERE status = 'QUEUED' " +
+            "OR (status = 'RUNNING' AND lease_until < ?) ORDER BY id LIMIT ?";
+
+    // 相同音频正在其他节点识别时不领取，等它完成后直接复用结果
+    private static final String HASH_RUNNING_SQL =
+            "SELECT COUNT(*) FROM lyric_jobs WHERE file_hash = ? AND status = 'RUNNING' AND lease_until >= ?";
+
+    private static final String CLAIM_SQL =
+            "UPDATE lyric_jobs SET status = 'RUNNING', lease_until = ?, started_at = ?, attempts = attempts + 1, progress = 0 " +
+            "WHERE id = ? AND (status = 'QUEUED' OR (status = 'RUNNING' AND lease_until < ?))";
+
+    private static final String RENEW_SQL =
+            "UPDATE lyric_jobs SET lease_until = ?, progress = ? WHERE id = ? AND status = 'RUNNING'";
+
+    private static final String COMPLETE_SQL =
+            "UPDATE lyric_jobs SET status = 'COMPLETED', result_lrc = ?, line_count = ?, progress = 100, " +
+            "lease_until = NULL, active_music_id = NULL, completed_at = ?, last_error = NULL WHERE id = ? AND status = 'RUNNING'";
+
+    private static final String RETRY_SQL =
+            "UPDATE lyric_jobs SET status = 'QUEUED', lease_until = NULL, last_error = ? WHERE id = ? AND status = 'RUNNING'";
+
+    private static final String FAIL_SQL =
+            "UPDATE lyric_jobs SET status = 'FAILED', lease_until = NULL, active_music_id = NULL, last_error = ?, " +
+            "completed_at = ? WHERE id = ? AND status = 'RUNNING'";
+
+    @Autowired
+    private LyricJobRepository jobRepository;
+
+    @Autowired
+    @Qualifier("voskAudioRecognitionService")
+    private VoskAudioRecognitionService recognitionService;
+
+    @Autowired
+    private LyricsService lyricsService;
+
+    @Autowired
+    private MusicService musicService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    // 本节点同时执行的识别任务数
+    @Value("${app.lyric-job.concurrency:${app.vosk.pool-size:2}}")
+    private int concurrency;
+
+    @Value("${app.lyric-job.lease-ms:120000}")
+    private long leaseMillis;
+
+    @Value("${app.lyric-job.max-attempts:3}")
+    private int maxAttempts;
+
+    // 进度推送的最小间隔
+    @Value("${app.lyric-job.progress-interval-ms:1000}")
+    private long progressIntervalMs;
+
+    // 本节点正在执行的任务 -> 音频哈希
+    private final Map<Long, String> running = new ConcurrentHashMap<>();
+
+    private final AtomicLong recognized = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 为音乐提交歌词识别
+     * 已有未完成任务时返回该任务；相同音频已识别过时直接写入歌词，并为这首音乐记录一条已完成的任务，不再排队。
+     * 哈希在事务之外计算，读大文件期间不占用数据库连接
+     */
+    public LyricJob enqueue(Music music, Long requestedBy) throws IOException {
+        File audioFile = resolveAudioFile(music.getFilePath());
+        if (!audioFile.isFile()) {
+            throw new IOException("音频文件不存在");
+        }
+
+        LyricJob active = jobRepository.findFirstByMusicIdAndStatusInOrderByIdDesc(music.getId(), ACTIVE).orElse(null);
+        if (active != null) {
+            return active;
+        }
+
+        String fileHash = sha256(audioFile);
+        try {
+            return transactionTemplate.execute(status -> createJob(music, requestedBy, audioFile, fileHash));
+        } catch (DataIntegrityViolationException e) {
+            // 并发提交同一首音乐，active_music_id 唯一键只让一个任务插入成功
+            return jobRepository.findFirstByMusicIdAndStatusInOrderByIdDesc(music.getId(), ACTIVE)
+                    .orElseThrow(() -> e);
+        }
+    }
+
+    private LyricJob createJob(Music music, Long requestedBy, File audioFile, String fileHash) {
+        LyricJob job = new LyricJob();
+        job.setMusicId(music.getId());
+        job.setFileHash(fileHash);
+        job.setAudioPath(audioFile.getAbsolutePath());
+        job.setRequestedBy(requestedBy);
+
+        LyricJob cached = jobRepository
+                .findFirstByFileHashAndStatusInOrderByIdDesc(fileHash, EnumSet.of(LyricJob.Status.COMPLETED)).orElse(null);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            LocalDateTime now = LocalDateTime.now();
+            job.setStatus(LyricJob.Status.COMPLETED);
+            job.setProgress(100.0);
+            job.setResultLrc(cached.getResultLrc());
+            job.setLineCount(cached.getLineCount());
+            job.setStartedAt(now);
+            job.setCompletedAt(now);
+            LyricJob saved = jobRepository.save(job);
+            applyLyrics(music.getId(), cached.getResultLrc());
+            logger.info("歌词识别命中缓存: 音乐 {} 复用任务 {} 的结果 (任务 {})", music.getId(), cached.getId(), saved.getId());
+            return saved;
+        }
+
+        job.setActiveMusicId(music.getId());
+        LyricJob saved = jobRepository.saveAndFlush(job);
+        logger.info("创建歌词识别任务: {} (音乐 {})", saved.getId(), music.getId());
+
+        TransactionUtil.afterCommit(this::dispatch);
+        return saved;
+    }
+
+    /**
+     * 接管排队中以及租约过期的任务
+     */
+    @Scheduled(fixedDelayString = "${app.lyric-job.poll-interval-ms:10000}")
+    public void poll() {
+        dispatch();
+    }
+
+    /**
+     * 在并发上限内领取任务
+     */
+    private synchronized void dispatch() {
+        int free = concurrency - running.size();
+        if (free <= 0) {
+            return;
+        }
+        try {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Map<String, Object>> candidates = jdbcTemplate.queryForList(CANDIDATES_SQL, now, free * 4);
+            for (Map<String, Object> candidate : candidates) {
+                // 命中缓存的任务会同步完成并递归领取，每次按当前运行数判断
+                if (running.size() >= concurrency) {
+                    break;
+                }
+                Long id = ((Number) candidate.get("id")).longValue();
+                String fileHash = (String) candidate.get("file_hash");
+                if (running.containsKey(id) || running.containsValue(fileHash)) {
+                    continue;
+                }
+                Integer sameHash = jdbcTemplate.queryForObject(HASH_RUNNING_SQL, Integer.class, fileHash, now);
+                if (sameHash != null && sameHash > 0) {
+                    continue;
+                }
+                int claimed = jdbcTemplate.update(CLAIM_SQL, leaseUntil(), now, id, now);
+                if (claimed == 0) {
+                    continue;
+                }
+                running.put(id, fileHash);
+                try {
+                    start(id);
+                } catch (RuntimeException e) {
+                    // 租约到期后由定时任务重新领取
+                    running.remove(id);
+                    logger.warn("启动歌词识别任务失败: {} - {}", id, e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("领取歌词识别任务失败: {}", e.getMessage());
+        }
+    }
+
+    private void start(Long id) {
+        LyricJob job = jobRepository.findById(id).orElse(null);
+        if (job == null) {
+            running.remove(id);
+            return;
+        }
+
+        LyricJob cached = jobRepository
+                .findFirstByFileHashAndStatusInOrderByIdDesc(job.getFileHash(), EnumSet.of(LyricJob.Status.COMPLETED))
+                .orElse(null);
+        if (cached != null) {
+            // 排队期间相同音频已经识别完成
+            cacheHits.incrementAndGet();
+            finish(job, cached.getResultLrc(), cached.getLineCount(), true);
+            return;
+        }
+        if (!new File(job.getAudioPath()).isFile()) {
+            fail(job, "音频文件不存在", false);
+            return;
+        }
+
+        logger.info("开始歌词识别任务: {} (音乐 {}，第 {} 次)", id, job.getMusicId(), job.getAttempts());
+        recognitionService.recognizeAsync(job.getAudioPath(), new ProgressListener(job))
+                .whenComplete((results, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        fail(job, cause.getClass().getSimpleName() + ": " + cause.getMessage(), true);
+                    } else if (!recognitionService.isVoskAvailable()) {
+                        // 模型不可用时识别服务返回的是模拟结果，不能写入歌词和缓存
+                        fail(job, "Vosk模型不可用", false);
+                    } else {
+                        List<LyricsService.LyricLine> lyrics = recognitionService.generateTimedLyrics(results);
+                        recognized.incrementAndGet();
+                        finish(job, lyricsService.toLrc(lyrics), lyrics.size(), false);
+                    }
+                });
+    }
+
+    private void finish(LyricJob job, String lrc, int lineCount, boolean cached) {
+        try {
+            Boolean completed = transactionTemplate.execute(status -> {
+                int updated = jdbcTemplate.update(COMPLETE_SQL, lrc, lineCount,
+                        Timestamp.valueOf(LocalDateTime.now()), job.getId());
+                if (updated == 0) {
+                    return false;
+                }
+                applyLyrics(job.getMusicId(), lrc);
+                return true;
+            });
+            if (Boolean.TRUE.equals(completed)) {
+                logger.info("歌词识别任务完成: {} (音乐 {})，{} 行{}", job.getId(), job.getMusicId(), lineCount,
+                        cached ? "，复用缓存" : "");
+                Map<String, Object> payload = message(job, "completed");
+                payload.put("lineCount", lineCount);
+                payload.put("cached", cached);
+                publish(job.getId(), payload);
+            }
+        } catch (Exception e) {
+            logger.warn("保存歌词识别结果失败: {} - {}", job.getId(), e.getMessage());
+        } finally {
+            release(job.getId());
+        }
+    }
+
+    private void fail(LyricJob job, String error, boolean retryable) {
+        failures.incrementAndGet();
+        String message = error != null && error.length() > 500 ? error.substring(0, 500) : error;
+        try {
+            boolean retry = retryable && job.getAttempts() < maxAttempts;
+            if (retry) {
+                jdbcTemplate.update(RETRY_SQL, message, job.getId());
+            } else {
+                jdbcTemplate.update(FAIL_SQL, message, Timestamp.valueOf(LocalDateTime.now()), job.getId());
+            }
+            logger.warn("歌词识别任务 {} 失败{}: {}", job.getId(), retry ? "，稍后重试" : "", message);
+            Map<String, Object> payload = message(job, retry ? "retrying" : "failed");
+            payload.put("error", message);
+            publish(job.getId(), payload);
+        } catch (Exception e) {
+            logger.warn("记录歌词识别失败状态出错: {} - {}", job.getId(), e.getMessage());
+        } finally {
+            release(job.getId());
+        }
+    }
+
+    private void release(Long id) {
+        running.remove(id);
+        dispatch();
+    }
+
+    /**
+     * 识别结果写入音乐；空结果（纯音乐等）只记录在任务中
+     */
+    private void applyLyrics(Long musicId, String lrc) {
+        if (lrc == null || lrc.isEmpty()) {
+            return;
+        }
+        musicService.findById(musicId).ifPresent(music -> {
+            music.setLyrics(lrc);
+            musicService.save(music);
+        });
+    }
+
+    /**
+     * 识别过程回调：节流推送进度和部分结果，并续期租约
+     */
+    private class ProgressListener implements VoskAudioRecognitionService.RecognitionListener {
+        private final LyricJob job;
+        private long lastProgressAt;
+        private long lastRenewAt = System.currentTimeMillis();
+
+        ProgressListener(LyricJob job) {
+            this.job = job;
+        }
+
+        @Override
+        public void onSegment(VoskAudioRecognitionService.RecognitionResult result) {
+            Map<String, Object> payload = message(job, "line");
+            payload.put("line", new LyricsService.LyricLine(result.getTimestamp(), result.getText()));
+            publish(job.getId(), payload);
+        }
+
+        @Override
+        public void onPartial(double segmentStart, String text) {
+            Map<String, Object> payload = message(job, "partial");
+            payload.put("time", segmentStart);
+            payload.put("text", text);
+            publish(job.getId(), payload);
+        }
+
+        @Override
+        public void onProgress(double processedSeconds, double totalSeconds) {
+            long now = System.currentTimeMillis();
+            if (now - lastProgressAt < progressIntervalMs) {
+                return;
+            }
+            lastProgressAt = now;
+            double percent = totalSeconds > 0 ? Math.min(99.9, Math.round(processedSeconds * 1000 / totalSeconds) / 10.0) : 0;
+            Map<String, Object> payload = message(job, "progress");
+            payload.put("percent", percent);
+            payload.put("processedSeconds", processedSeconds);
+            payload.put("totalSeconds", totalSeconds);
+            publish(job.getId(), payload);
+
+            if (now - lastRenewAt >= leaseMillis / 3) {
+                lastRenewAt = now;
+                try {
+                    jdbcTemplate.update(RENEW_SQL, leaseUntil(), percent, job.getId());
+                } catch (Exception e) {
+                    logger.debug("续期歌词识别任务失败: {} - {}", job.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void publish(Long jobId, Map<String, Object> payload) {
+        try {
+            messagingTemplate.convertAndSend(TOPIC_PREFIX + jobId, payload);
+        } catch (Exception e) {
+            logger.debug("推送歌词识别进度失败: {} - {}", jobId, e.getMessage());
+        }
+    }
+
+    private static Map<String, Object> message(LyricJob job, String type) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("type", type);
+        payload.put("jobId", job.getId());
+        payload.put("musicId", job.getMusicId());
+        payload.put("timestamp", System.currentTimeMillis());
+        return payload;
+    }
+
+    private Timestamp leaseUntil() {
+        return Timestamp.valueOf(LocalDateTime.now().plusNanos(leaseMillis * 1_000_000));
+    }
+
+    /**
+     * Web路径（/uploads/music/xxx.mp3）转换为文件系统路径
+     */
+    public static File resolveAudioFile(String webPath) {
+        String filePath = webPath.startsWith("/") ? webPath.substring(1) : webPath;
+        return new File(filePath).getAbsoluteFile();
+    }
+
+    private static String sha256(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Optional<LyricJob> findById(Long id) {
+        return jobRepository.findById(id);
+    }
+
+    /**
+     * 任务进度
+     */
+    public static Map<String, Object> toProgress(LyricJob job) {
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("id", job.getId());
+        progress.put("musicId", job.getMusicId());
+        progress.put("status", job.getStatus());
+        progress.put("progress", job.getStatus() == LyricJob.Status.COMPLETED ? 100.0 : job.getProgress());
+        progress.put("lineCount", job.getLineCount());
+        progress.put("attempts", job.getAttempts());
+        progress.put("lastError", job.getLastError());
+        progress.put("topic", TOPIC_PREFIX + job.getId());
+        progress.put("createdAt", job.getCreatedAt());
+        progress.put("startedAt", job.getStartedAt());
+        progress.put("completedAt", job.getCompletedAt());
+        return progress;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("running", new ArrayList<>(running.keySet()));
+        stats.put("concurrency", concurrency);
+        stats.put("recognized", recognized.get());
+        stats.put("cacheHits", cacheHits.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+}
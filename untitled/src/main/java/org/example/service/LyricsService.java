@@ -116,6 +116,22 @@ public class LyricsService {
         }
     }
 
+    /**
+     * 将歌词列表转换为LRC格式
+     */
+    public String toLrc(List<LyricLine> lyrics) {
+        StringBuilder lrc = new StringBuilder();
+        for (LyricLine lyric : lyrics) {
+            int minutes = (int) (lyric.getTime() / 60);
+            int seconds = (int) (lyric.getTime() % 60);
+            int centiseconds = (int) ((lyric.getTime() % 1) * 100);
+
+            lrc.append(String.format("[%02d:%02d.%02d]%s\n",
+                minutes, seconds, centiseconds, lyric.getText()));
+        }
+        return lrc.toString();
+    }
+
     /**
      * 从JSON字符串解析歌词列表
      */
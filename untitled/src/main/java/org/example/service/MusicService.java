@@ -11,6 +11,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import org.example.entity.Music;
 import org.example.repository.MusicRepository;
@@ -23,6 +24,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -36,6 +38,9 @@ public class MusicService {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private ViewCounterService viewCounterService;
+
     @Value("${app.upload.path:E:/code11/uploads}")
     private String baseUploadPath;
     
@@ -154,34 +159,29 @@ public class MusicService {
     }
 
     /**
-     * 增加播放次数（异步处理）
+     * 增加播放次数（保留异步签名以兼容调用方）
      */
-    @Async
     public CompletableFuture<Void> incrementPlayCountAsync(Long musicId) {
-        try {
-            Optional<Music> musicOpt = musicRepository.findById(musicId);
-            if (musicOpt.isPresent()) {
-                Music music = musicOpt.get();
-                music.setPlayCount(music.getPlayCount() + 1);
-                musicRepository.save(music);
-            }
-        } catch (Exception e) {
-            // 记录错误但不影响主流程
-            System.err.println("增加播放次数失败: " + e.getMessage());
-        }
+        // 内存计数本身不阻塞，无需再占用异步线程
+        incrementPlayCount(musicId);
         return CompletableFuture.completedFuture(null);
     }
 
     /**
-     * 增加播放次数（同步版本，保持兼容性）
+     * 增加播放次数（记入内存计数器，由 ViewCounterService 批量写回）
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void incrementPlayCount(Long musicId) {
-        Optional<Music> musicOpt = musicRepository.findById(musicId);
-        if (musicOpt.isPresent()) {
-            Music music = musicOpt.get();
-            music.setPlayCount(music.getPlayCount() + 1);
-            musicRepository.save(music);
-        }
+        viewCounterService.increment(ViewCounterService.CounterType.MUSIC_PLAYS, musicId);
+    }
+
+    /**
+     * 当前播放次数（含未写回的增量），音乐ID -> 次数
+     * 列表可能来自缓存，其中的 play_count 早于最近的写回，这里按ID重新读取持久化值
+     */
+    public Map<Long, Long> getCurrentPlayCounts(List<Music> musicList) {
+        List<Long> ids = musicList.stream().map(Music::getId).collect(Collectors.toList());
+        return viewCounterService.getCurrent(ViewCounterService.CounterType.MUSIC_PLAYS, ids);
     }
 
     /**
@@ -0,0 +1,368 @@
+package org.example.service;
+
+import org.example.entity.Notification;
+import org.example.entity.NotificationBroadcast;
+import org.example.repository.NotificationBroadcastRepository;
+import org.example.util.TransactionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 通知群发（系统通知、公告）
+ * 在后台按用户ID升序分批执行：每批一次 JDBC 批量插入，并在同一事务中推进任务游标，进度可随时查询；
+ * 任务以租约方式由一个节点持有，节点中途重启后租约过期，由定时任务从游标处继续。
+ * 实时推送只发给在本节点有 WebSocket 连接的用户，其余用户下次打开通知列表时看到。
+ */
+@Service
+public class NotificationBroadcastService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationBroadcastService.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO notifications (user_id, type, title, content, related_id, related_type, actor_count, is_read, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, 'BROADCAST', 1, 0, ?)";
+
+    private static final String CLAIM_SQL =
+            "UPDATE notification_broadcasts SET status = 'RUNNING', lease_until = ?, updated_at = ? " +
+            "WHERE id = ? AND status IN ('PENDING', 'RUNNING') AND (lease_until IS NULL OR lease_until < ?)";
+
+    // 游标条件保证租约被其他节点接管后本节点的批次回滚
+    private static final String ADVANCE_SQL =
+            "UPDATE notification_broadcasts SET cursor_user_id = ?, delivered_count = delivered_count + ?, " +
+            "lease_until = ?, updated_at = ?, last_error = NULL WHERE id = ? AND cursor_user_id = ?";
+
+    private static final String COMPLETE_SQL =
+            "UPDATE notification_broadcasts SET status = 'COMPLETED', lease_until = NULL, updated_at = ?, completed_at = ? " +
+            "WHERE id = ? AND cursor_user_id = ?";
+
+    private static final String FAIL_SQL =
+            "UPDATE notification_broadcasts SET last_error = ?, updated_at = ? WHERE id = ?";
+
+    private static final String RESUMABLE_SQL =
+            "SELECT id FROM notification_broadcasts WHERE status IN ('PENDING', 'RUNNING') " +
+            "AND (lease_until IS NULL OR lease_until < ?) ORDER BY id";
+
+    private static final String ACTIVE_USERS_SQL =
+            "SELECT id, username FROM users WHERE id > ? AND (deleted IS NULL OR deleted = 0) ORDER BY id LIMIT ?";
+
+    private static final String COUNT_ACTIVE_USERS_SQL =
+            "SELECT COUNT(*) FROM users WHERE deleted IS NULL OR deleted = 0";
+
+    @Autowired
+    private NotificationBroadcastRepository broadcastRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    @Autowired
+    private NotificationUnreadCounter unreadCounter;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    // 每批写入的通知数
+    @Value("${app.notification-broadcast.batch-size:1000}")
+    private int batchSize;
+
+    // 执行节点的租约时长，每批续期；节点失联后超过该时间由其他节点（或重启后的本节点）接管
+    @Value("${app.notification-broadcast.lease-ms:60000}")
+    private long leaseMillis;
+
+    // 本节点正在执行的任务
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong pushed = new AtomicLong();
+
+    private TransactionTemplate batchTransaction;
+
+    @PostConstruct
+    public void init() {
+        batchTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 创建群发任务并在当前事务提交后开始执行；userIds 为空表示全部用户
+     */
+    @Transactional
+    public NotificationBroadcast start(Notification.NotificationType type, String title, String content,
+                                       Collection<Long> userIds) {
+        NotificationBroadcast broadcast = new NotificationBroadcast();
+        broadcast.setType(type);
+        broadcast.setTitle(title);
+        broadcast.setContent(content);
+        if (userIds != null) {
+            long[] sorted = userIds.stream().filter(id -> id != null && id > 0)
+                    .mapToLong(Long::longValue).distinct().sorted().toArray();
+            broadcast.setTargetUserIds(Arrays.stream(sorted).mapToObj(Long::toString).collect(Collectors.joining(",")));
+            broadcast.setTotalRecipients(sorted.length);
+        } else {
+            Integer total = jdbcTemplate.queryForObject(COUNT_ACTIVE_USERS_SQL, Integer.class);
+            broadcast.setTotalRecipients(total != null ? total : 0);
+        }
+        NotificationBroadcast saved = broadcastRepository.save(broadcast);
+        logger.info("创建通知群发任务: {} ({}), 目标用户数: {}", saved.getId(), type, saved.getTotalRecipients());
+
+        Long id = saved.getId();
+        TransactionUtil.afterCommit(() -> submit(id));
+        return saved;
+    }
+
+    /**
+     * 接管没有节点持有的任务（新建后未能启动的、节点重启前未完成的）
+     */
+    @Scheduled(fixedDelayString = "${app.notification-broadcast.resume-interval-ms:30000}")
+    public void resumePending() {
+        List<Long> ids = jdbcTemplate.queryForList(RESUMABLE_SQL, Long.class, Timestamp.valueOf(LocalDateTime.now()));
+        for (Long id : ids) {
+            submit(id);
+        }
+    }
+
+    private void submit(Long id) {
+        if (!running.add(id)) {
+            return;
+        }
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    run(id);
+                } finally {
+                    running.remove(id);
+                }
+            });
+        } catch (RuntimeException e) {
+            running.remove(id);
+            logger.warn("提交通知群发任务失败: {} - {}", id, e.getMessage());
+        }
+    }
+
+    private void run(Long id) {
+        LocalDateTime now = LocalDateTime.now();
+        int claimed = jdbcTemplate.update(CLAIM_SQL, Timestamp.valueOf(now.plusNanos(leaseMillis * 1_000_000)),
+                Timestamp.valueOf(now), id, Timestamp.valueOf(now));
+        if (claimed == 0) {
+            return;
+        }
+        NotificationBroadcast broadcast = broadcastRepository.findById(id).orElse(null);
+        if (broadcast == null) {
+            return;
+        }
+
+        long[] targets = parseTargets(broadcast.getTargetUserIds());
+        long cursor = broadcast.getCursorUserId();
+        long start = System.currentTimeMillis();
+        Map<String, Object> payload = realtimePayload(broadcast);
+        try {
+            while (true) {
+                List<Recipient> recipients = nextRecipients(targets, cursor);
+                // 指定用户列表时游标按目标列表推进（批次内可能有已删除的用户）
+                long nextCursor = targets != null ? nextTargetCursor(targets, cursor)
+                        : recipients.isEmpty() ? cursor : recipients.get(recipients.size() - 1).userId;
+                if (nextCursor == cursor) {
+                    Timestamp completedAt = Timestamp.valueOf(LocalDateTime.now());
+                    jdbcTemplate.update(COMPLETE_SQL, completedAt, completedAt, id, cursor);
+                    break;
+                }
+                if (!writeBatch(broadcast, recipients, cursor, nextCursor)) {
+                    logger.warn("通知群发任务 {} 已由其他节点接管，本节点停止", id);
+                    return;
+                }
+                cursor = nextCursor;
+                delivered.addAndGet(recipients.size());
+                push(recipients, payload);
+            }
+            logger.info("通知群发任务完成: {}, 耗时 {}ms", id, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            // 保留租约到期，由定时任务从游标处重试
+            logger.warn("通知群发任务 {} 执行失败，游标 {}: {}", id, cursor, e.getMessage());
+            String message = e.getMessage() != null && e.getMessage().length() > 500
+                    ? e.getMessage().substring(0, 500) : e.getMessage();
+            jdbcTemplate.update(FAIL_SQL, message, Timestamp.valueOf(LocalDateTime.now()), id);
+        }
+    }
+
+    private List<Recipient> nextRecipients(long[] targets, long cursor) {
+        if (targets == null) {
+            return jdbcTemplate.query(ACTIVE_USERS_SQL,
+                    (rs, rowNum) -> new Recipient(rs.getLong("id"), rs.getString("username")), cursor, batchSize);
+        }
+        int from = firstAfter(targets, cursor);
+        int to = Math.min(targets.length, from + batchSize);
+        if (from >= to) {
+            return new ArrayList<>();
+        }
+        String placeholders = String.join(",", Collections.nCopies(to - from, "?"));
+        Object[] args = new Object[to - from];
+        for (int i = from; i < to; i++) {
+            args[i - from] = targets[i];
+        }
+        return jdbcTemplate.query(
+                "SELECT id, username FROM users WHERE id IN (" + placeholders + ") AND (deleted IS NULL OR deleted = 0) ORDER BY id",
+                (rs, rowNum) -> new Recipient(rs.getLong("id"), rs.getString("username")), args);
+    }
+
+    private long nextTargetCursor(long[] targets, long cursor) {
+        int from = firstAfter(targets, cursor);
+        int to = Math.min(targets.length, from + batchSize);
+        return from >= to ? cursor : targets[to - 1];
+    }
+
+    private static int firstAfter(long[] sorted, long cursor) {
+        int index = Arrays.binarySearch(sorted, cursor);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * 一批通知与游标在同一事务内写入；游标已被他人推进时整批回滚并返回 false
+     */
+    private boolean writeBatch(NotificationBroadcast broadcast, List<Recipient> recipients, long cursor, long nextCursor) {
+        Boolean written = batchTransaction.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            Timestamp createdAt = Timestamp.valueOf(now);
+            if (!recipients.isEmpty()) {
+                List<Object[]> rows = new ArrayList<>(recipients.size());
+                for (Recipient recipient : recipients) {
+                    rows.add(new Object[]{recipient.userId, broadcast.getType().name(), broadcast.getTitle(),
+                            broadcast.getContent(), broadcast.getId(), createdAt});
+                }
+                jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            }
+            int updated = jdbcTemplate.update(ADVANCE_SQL, nextCursor, recipients.size(),
+                    Timestamp.valueOf(now.plusNanos(leaseMillis * 1_000_000)), createdAt, broadcast.getId(), cursor);
+            if (updated == 0) {
+                status.setRollbackOnly();
+                return false;
+            }
+            for (Recipient recipient : recipients) {
+                unreadCounter.increment(recipient.userId, 1);
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(written);
+    }
+
+    private void push(List<Recipient> recipients, Map<String, Object> payload) {
+        for (Recipient recipient : recipients) {
+            if (recipient.username == null || !sessionRegistry.isUserConnected(recipient.username)) {
+                continue;
+            }
+            try {
+                messagingTemplate.convertAndSendToUser(recipient.username, "/queue/notifications", payload);
+                pushed.incrementAndGet();
+            } catch (Exception e) {
+                logger.debug("推送群发通知失败: {} - {}", recipient.username, e.getMessage());
+            }
+        }
+    }
+
+    private static Map<String, Object> realtimePayload(NotificationBroadcast broadcast) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("type", "notification");
+        payload.put("notificationType", broadcast.getType().name());
+        payload.put("title", broadcast.getTitle());
+        payload.put("content", broadcast.getContent());
+        payload.put("broadcastId", broadcast.getId());
+        payload.put("timestamp", System.currentTimeMillis());
+        return payload;
+    }
+
+    private static long[] parseTargets(String targetUserIds) {
+        if (targetUserIds == null) {
+            return null;
+        }
+        if (targetUserIds.isEmpty()) {
+            return new long[0];
+        }
+        return Arrays.stream(targetUserIds.split(",")).mapToLong(Long::parseLong).toArray();
+    }
+
+    /**
+     * 任务进度
+     */
+    public Map<String, Object> getProgress(Long id) {
+        return broadcastRepository.findById(id).map(NotificationBroadcastService::toProgress).orElse(null);
+    }
+
+    public List<Map<String, Object>> getRecent(int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (NotificationBroadcast broadcast : broadcastRepository.findAllByOrderByCreatedAtDesc(PageRequest.of(0, limit))) {
+            result.add(toProgress(broadcast));
+        }
+        return result;
+    }
+
+    private static Map<String, Object> toProgress(NotificationBroadcast broadcast) {
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("id", broadcast.getId());
+        progress.put("type", broadcast.getType());
+        progress.put("title", broadcast.getTitle());
+        progress.put("status", broadcast.getStatus());
+        progress.put("totalRecipients", broadcast.getTotalRecipients());
+        progress.put("deliveredCount", broadcast.getDeliveredCount());
+        int total = broadcast.getTotalRecipients();
+        progress.put("percent", broadcast.getStatus() == NotificationBroadcast.Status.COMPLETED || total == 0
+                ? 100.0 : Math.min(100.0, Math.round(broadcast.getDeliveredCount() * 1000.0 / total) / 10.0));
+        progress.put("lastError", broadcast.getLastError());
+        progress.put("createdAt", broadcast.getCreatedAt());
+        progress.put("updatedAt", broadcast.getUpdatedAt());
+        progress.put("completedAt", broadcast.getCompletedAt());
+        return progress;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("running", running.size());
+        stats.put("delivered", delivered.get());
+        stats.put("pushed", pushed.get());
+        stats.put("batchSize", batchSize);
+        return stats;
+    }
+
+    private static final class Recipient {
+        final long userId;
+        final String username;
+
+        Recipient(long userId, String username) {
+            this.userId = userId;
+            this.username = username;
+        }
+    }
+}
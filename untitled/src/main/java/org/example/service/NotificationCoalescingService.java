@@ -0,0 +1,396 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.example.entity.Notification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 点赞/收藏/评论通知合并
+ * 事件先按 (接收者, 视频, 类型) 在内存中合并，定时写库：同一视频同一类型仍未读、且最近一次事件在窗口内的通知原地更新
+ * （"张三 和其他 37 人点赞了您的视频"），否则新建一条。人数按 notification_actors 中去重的来源用户计，
+ * 同一用户反复取消再点赞不会重复计数。实时推送按接收者节流，每个接收者每个推送间隔最多一条消息。
+ * 未写库的事件在停机时写出，异常宕机最多丢失一个合并周期的通知。
+ */
+@Service
+public class NotificationCoalescingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationCoalescingService.class);
+
+    private static final String FIND_OPEN_SQL =
+            "SELECT id, actor_count FROM notifications WHERE user_id = ? AND related_id = ? AND type = ? " +
+            "AND related_type = 'VIDEO' AND is_read = 0 AND created_at >= ? ORDER BY id DESC LIMIT 1";
+
+    private static final String UPDATE_SQL =
+            "UPDATE notifications SET actor_count = ?, from_user_id = ?, title = ?, content = ?, created_at = ? " +
+            "WHERE id = ? AND is_read = 0";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO notifications (user_id, from_user_id, type, title, content, related_id, related_type, " +
+            "actor_count, is_read, created_at) VALUES (?, ?, ?, ?, ?, ?, 'VIDEO', ?, 0, ?)";
+
+    private static final String INSERT_ACTOR_SQL =
+            "INSERT IGNORE INTO notification_actors (notification_id, actor_id, created_at) VALUES (?, ?, ?)";
+
+    // created_at 为 datetime(6)，本次登记的行时间戳相同；驱动不返回逐行结果时据此统计新增人数
+    private static final String COUNT_ADDED_ACTORS_SQL =
+            "SELECT COUNT(*) FROM notification_actors WHERE notification_id = ? AND created_at = ?";
+
+    // 已读、已删除或超出合并窗口的通知不会再合并，其来源用户记录可以清理
+    private static final String PURGE_ACTORS_SQL =
+            "DELETE na FROM notification_actors na LEFT JOIN notifications n ON n.id = na.notification_id " +
+            "WHERE n.id IS NULL OR n.is_read = 1 OR n.created_at < ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private NotificationUnreadCounter unreadCounter;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private WebSocketSessionRegistry sessionRegistry;
+
+    // 最近一次事件后多久内的未读通知可以继续合并
+    @Value("${app.notification.coalesce.window-minutes:60}")
+    private long windowMinutes;
+
+    // 同一接收者两次实时推送的最小间隔
+    @Value("${app.notification.coalesce.push-interval-ms:10000}")
+    private long pushIntervalMillis;
+
+    // 待写库的合并事件
+    private final Map<Key, Pending> pending = new ConcurrentHashMap<>();
+
+    // 待推送的变化：接收者 -> 推送内容（节流期间继续累积）
+    private final Map<Long, PendingPush> pendingPushes = new ConcurrentHashMap<>();
+
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong inserted = new AtomicLong();
+    private final AtomicLong updated = new AtomicLong();
+    private final AtomicLong pushes = new AtomicLong();
+
+    // 仍可合并的通知：key -> 通知ID和人数；只由写库线程访问
+    private Cache<Key, OpenAggregate> openAggregates;
+
+    // 最近推送过的接收者，条目存在期间不再推送
+    private Cache<Long, Boolean> recentlyPushed;
+
+    private TransactionTemplate flushTransaction;
+
+    @PostConstruct
+    public void init() {
+        openAggregates = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofMinutes(windowMinutes))
+                .build();
+        recentlyPushed = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofMillis(pushIntervalMillis))
+                .build();
+        flushTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 记录一次事件；commentPreview 只用于评论
+     */
+    public void record(Notification.NotificationType type, Long recipientId, String recipientUsername,
+                       Long actorId, String actorName, Long videoId, String videoTitle, String commentPreview) {
+        events.incrementAndGet();
+        Key key = new Key(recipientId, videoId, type);
+        pending.compute(key, (k, p) -> {
+            if (p == null) {
+                p = new Pending(recipientUsername, videoTitle);
+            }
+            p.add(actorId, actorName, commentPreview);
+            return p;
+        });
+    }
+
+    /**
+     * 把合并的事件写库，再按节流推送
+     */
+    @Scheduled(fixedDelayString = "${app.notification.coalesce.flush-interval-ms:2000}")
+    public void flush() {
+        if (!pending.isEmpty()) {
+            for (Key key : new ArrayList<>(pending.keySet())) {
+                Pending p = pending.remove(key);
+                if (p == null) {
+                    continue;
+                }
+                try {
+                    flushTransaction.executeWithoutResult(status -> apply(key, p));
+                } catch (Exception e) {
+                    openAggregates.invalidate(key);
+                    logger.warn("写入合并通知失败: {} - {}", key, e.getMessage());
+                }
+            }
+        }
+        pushPending();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void apply(Key key, Pending p) {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        Timestamp nowTs = Timestamp.valueOf(now);
+        OpenAggregate open = openAggregates.getIfPresent(key);
+        if (open == null) {
+            open = jdbcTemplate.query(FIND_OPEN_SQL,
+                    rs -> rs.next() ? new OpenAggregate(rs.getLong("id"), Math.max(1, rs.getInt("actor_count"))) : null,
+                    key.recipientId, key.videoId, key.type.name(), Timestamp.valueOf(now.minusMinutes(windowMinutes)));
+        }
+
+        if (open != null) {
+            int actorCount = open.actorCount + recordActors(open.id, p, nowTs);
+            String content = content(key.type, p, actorCount);
+            int rows = jdbcTemplate.update(UPDATE_SQL, actorCount, p.lastActorId, title(key.type), content, nowTs, open.id);
+            if (rows == 1) {
+                open.actorCount = actorCount;
+                openAggregates.put(key, open);
+                updated.incrementAndGet();
+                queuePush(key, p, open.id, actorCount, content);
+                return;
+            }
+            // 已读或已删除，开始新的一条
+        }
+
+        int actorCount = p.actors.size();
+        String content = content(key.type, p, actorCount);
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+            ps.setLong(1, key.recipientId);
+            ps.setLong(2, p.lastActorId);
+            ps.setString(3, key.type.name());
+            ps.setString(4, title(key.type));
+            ps.setString(5, content);
+            ps.setLong(6, key.videoId);
+            ps.setInt(7, actorCount);
+            ps.setTimestamp(8, nowTs);
+            return ps;
+        }, keyHolder);
+        Number id = keyHolder.getKey();
+        if (id != null) {
+            recordActors(id.longValue(), p, nowTs);
+            openAggregates.put(key, new OpenAggregate(id.longValue(), actorCount));
+        }
+        inserted.incrementAndGet();
+        unreadCounter.increment(key.recipientId, 1);
+        queuePush(key, p, id != null ? id.longValue() : null, actorCount, content);
+    }
+
+    /**
+     * 登记本周期的来源用户，返回此前未计入该通知的人数
+     */
+    private int recordActors(long notificationId, Pending p, Timestamp now) {
+        List<Object[]> batchArgs = new ArrayList<>(p.actors.size());
+        for (Long actorId : p.actors) {
+            batchArgs.add(new Object[] { notificationId, actorId, now });
+        }
+        int[] results = jdbcTemplate.batchUpdate(INSERT_ACTOR_SQL, batchArgs);
+        if (Arrays.stream(results).anyMatch(r -> r == Statement.SUCCESS_NO_INFO)) {
+            // 驱动以 rewriteBatchedStatements 合并语句时返回 SUCCESS_NO_INFO(-2)，按时间戳回查
+            Integer added = jdbcTemplate.queryForObject(COUNT_ADDED_ACTORS_SQL, Integer.class, notificationId, now);
+            return added != null ? added : 0;
+        }
+        return (int) Arrays.stream(results).filter(r -> r > 0).count();
+    }
+
+    @Scheduled(cron = "${app.notification.coalesce.purge-cron:0 20 4 * * *}")
+    public void purgeClosedActors() {
+        try {
+            int purged = jdbcTemplate.update(PURGE_ACTORS_SQL, Timestamp.valueOf(LocalDateTime.now().minusMinutes(windowMinutes)));
+            logger.info("清理已结束合并的通知来源用户: {} 条", purged);
+        } catch (Exception e) {
+            logger.warn("清理通知来源用户失败: {}", e.getMessage());
+        }
+    }
+
+    private static String title(Notification.NotificationType type) {
+        switch (type) {
+            case LIKE:
+                return "新点赞";
+            case FAVORITE:
+                return "新收藏";
+            default:
+                return "新评论";
+        }
+    }
+
+    private static String content(Notification.NotificationType type, Pending p, int actorCount) {
+        String actors = actorCount > 1 ? String.format("%s 和其他 %d 人", p.lastActorName, actorCount - 1) : p.lastActorName;
+        switch (type) {
+            case LIKE:
+                return String.format("%s 点赞了您的视频《%s》", actors, p.videoTitle);
+            case FAVORITE:
+                return String.format("%s 收藏了您的视频《%s》", actors, p.videoTitle);
+            default:
+                return String.format("%s 评论了您的视频《%s》: %s", actors, p.videoTitle, p.lastCommentPreview);
+        }
+    }
+
+    private void queuePush(Key key, Pending p, Long notificationId, int actorCount, String content) {
+        if (p.recipientUsername == null) {
+            return;
+        }
+        Map<String, Object> item = new HashMap<>();
+        item.put("notificationId", notificationId);
+        item.put("notificationType", key.type.name());
+        item.put("relatedId", key.videoId);
+        item.put("title", title(key.type));
+        item.put("content", content);
+        item.put("actorCount", actorCount);
+        pendingPushes.computeIfAbsent(key.recipientId, id -> new PendingPush(p.recipientUsername)).items.put(key, item);
+    }
+
+    private void pushPending() {
+        for (Long recipientId : new ArrayList<>(pendingPushes.keySet())) {
+            if (recentlyPushed.getIfPresent(recipientId) != null) {
+                continue;
+            }
+            PendingPush push = pendingPushes.remove(recipientId);
+            if (push == null || !sessionRegistry.isUserConnected(push.username)) {
+                continue;
+            }
+            try {
+                Map<String, Object> message = new HashMap<>();
+                message.put("type", "notification_update");
+                message.put("notifications", new ArrayList<>(push.items.values()));
+                message.put("unreadCount", unreadCounter.get(recipientId));
+                message.put("timestamp", System.currentTimeMillis());
+                messagingTemplate.convertAndSendToUser(push.username, "/queue/notifications", message);
+                recentlyPushed.put(recipientId, Boolean.TRUE);
+                pushes.incrementAndGet();
+            } catch (Exception e) {
+                logger.debug("推送合并通知失败: {} - {}", push.username, e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("events", events.get());
+        stats.put("inserted", inserted.get());
+        stats.put("updated", updated.get());
+        stats.put("pushes", pushes.get());
+        stats.put("pending", pending.size());
+        stats.put("pendingPushes", pendingPushes.size());
+        return stats;
+    }
+
+    private static final class Key {
+        final Long recipientId;
+        final Long videoId;
+        final Notification.NotificationType type;
+
+        Key(Long recipientId, Long videoId, Notification.NotificationType type) {
+            this.recipientId = recipientId;
+            this.videoId = videoId;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return recipientId.equals(key.recipientId) && videoId.equals(key.videoId) && type == key.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(recipientId, videoId, type);
+        }
+
+        @Override
+        public String toString() {
+            return recipientId + "/" + videoId + "/" + type;
+        }
+    }
+
+    /**
+     * 一个合并周期内的事件；只在 pending.compute 内修改
+     */
+    private static final class Pending {
+        final String recipientUsername;
+        final String videoTitle;
+        final Set<Long> actors = new HashSet<>();
+        Long lastActorId;
+        String lastActorName;
+        String lastCommentPreview;
+
+        Pending(String recipientUsername, String videoTitle) {
+            this.recipientUsername = recipientUsername;
+            this.videoTitle = videoTitle;
+        }
+
+        void add(Long actorId, String actorName, String commentPreview) {
+            actors.add(actorId);
+            lastActorId = actorId;
+            lastActorName = actorName;
+            if (commentPreview != null) {
+                lastCommentPreview = commentPreview;
+            }
+        }
+    }
+
+    private static final class OpenAggregate {
+        final long id;
+        int actorCount;
+
+        OpenAggregate(long id, int actorCount) {
+            this.id = id;
+            this.actorCount = actorCount;
+        }
+    }
+
+    private static final class PendingPush {
+        final String username;
+        // 同一通知只保留最新的内容
+        final Map<Key, Map<String, Object>> items = new LinkedHashMap<>();
+
+        PendingPush(String username) {
+            this.username = username;
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package org.example.service;
 
 import org.example.entity.Notification;
+import org.example.entity.NotificationBroadcast;
 import org.example.entity.User;
 import org.example.entity.Video;
 import org.example.repository.NotificationRepository;
+import org.example.util.TransactionUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -28,6 +30,15 @@ public class NotificationService {
     @Autowired
     private NotificationRepository notificationRepository;
 
+    @Autowired
+    private NotificationBroadcastService notificationBroadcastService;
+
+    @Autowired
+    private NotificationCoalescingService notificationCoalescingService;
+
+    @Autowired
+    private NotificationUnreadCounter unreadCounter;
+
 
 
     /**
@@ -53,6 +64,7 @@ public class NotificationService {
         notification.setIsRead(false);
 
         Notification saved = notificationRepository.save(notification);
+        unreadCounter.increment(userId, 1);
 
         // 发送实时通知
         sendRealtimeNotification(saved);
@@ -61,35 +73,23 @@ public class NotificationService {
     }
 
     /**
-     * 创建点赞通知
+     * 创建点赞通知（合并写入）
      */
     public void createLikeNotification(User fromUser, User toUser, Video video) {
         if (fromUser.getId().equals(toUser.getId())) {
             return; // 不给自己发通知
         }
-
-        String title = "收到新的点赞";
-        String content = String.format("%s 点赞了你的视频《%s》",
-                                     fromUser.getUsername(), video.getTitle());
-
-        createNotification(toUser.getId(), Notification.NotificationType.LIKE,
-                         title, content, fromUser.getId());
+        coalesce(Notification.NotificationType.LIKE, toUser, fromUser, video, null);
     }
 
     /**
-     * 创建收藏通知
+     * 创建收藏通知（合并写入）
      */
     public void createFavoriteNotification(User fromUser, User toUser, Video video) {
         if (fromUser.getId().equals(toUser.getId())) {
             return; // 不给自己发通知
         }
-
-        String title = "收到新的收藏";
-        String content = String.format("%s 收藏了你的视频《%s》",
-                                     fromUser.getUsername(), video.getTitle());
-
-        createNotification(toUser.getId(), Notification.NotificationType.FAVORITE,
-                         title, content, fromUser.getId());
+        coalesce(Notification.NotificationType.FAVORITE, toUser, fromUser, video, null);
     }
 
     /**
@@ -108,20 +108,13 @@ public class NotificationService {
     }
 
     /**
-     * 创建评论通知
+     * 创建评论通知（合并写入）
      */
     public void createCommentNotification(User fromUser, User toUser, Video video, String commentContent) {
         if (fromUser.getId().equals(toUser.getId())) {
             return; // 不给自己发通知
         }
-
-        String title = "收到新的评论";
-        String content = String.format("%s 评论了你的视频《%s》：%s",
-                                     fromUser.getUsername(), video.getTitle(),
-                                     commentContent.length() > 50 ? commentContent.substring(0, 50) + "..." : commentContent);
-
-        createNotification(toUser.getId(), Notification.NotificationType.COMMENT,
-                         title, content, fromUser.getId());
+        coalesce(Notification.NotificationType.COMMENT, toUser, fromUser, video, commentContent);
     }
 
     /**
@@ -132,12 +125,10 @@ public class NotificationService {
     }
 
     /**
-     * 批量创建系统通知（给所有用户）
+     * 批量创建系统通知（给所有用户），在后台分批执行，返回的任务可用于查询进度
      */
-    public void createSystemNotificationForAll(String title, String content) {
-        // 这里可以实现给所有用户发送系统通知的逻辑
-        // 为了性能考虑，可以使用异步处理
-        System.out.println("系统通知：" + title + " - " + content);
+    public NotificationBroadcast createSystemNotificationForAll(String title, String content) {
+        return notificationBroadcastService.start(Notification.NotificationType.SYSTEM, title, content, null);
     }
 
     /**
@@ -159,6 +150,7 @@ public class NotificationService {
         notification.setIsRead(false);
 
         Notification saved = notificationRepository.save(notification);
+        unreadCounter.increment(userId, 1);
 
         // 发送实时通知
         sendRealtimeNotification(saved);
@@ -178,7 +170,7 @@ public class NotificationService {
      * 获取用户未读通知数量
      */
     public long getUnreadCount(Long userId) {
-        return notificationRepository.countByUserIdAndIsReadFalse(userId);
+        return unreadCounter.get(userId);
     }
 
     /**
@@ -190,6 +182,7 @@ public class NotificationService {
             Notification notification = notificationOpt.get();
             notification.markAsRead();
             notificationRepository.save(notification);
+            unreadCounter.invalidate(userId);
         }
     }
 
@@ -202,6 +195,7 @@ public class NotificationService {
             notification.markAsRead();
         }
         notificationRepository.saveAll(unreadNotifications);
+        unreadCounter.invalidate(userId);
     }
 
     /**
@@ -209,6 +203,7 @@ public class NotificationService {
      */
     public void deleteNotification(Long notificationId, Long userId) {
         notificationRepository.deleteByIdAndUserId(notificationId, userId);
+        unreadCounter.invalidate(userId);
     }
 
     /**
@@ -226,20 +221,7 @@ public class NotificationService {
      */
     public void notifyVideoComment(Video video, User commenter, String commentContent) {
         if (video.getUser() != null && !video.getUser().getId().equals(commenter.getId())) {
-            String title = "新评论";
-            String content = String.format("%s 评论了您的视频《%s》: %s", 
-                commenter.getUsername(), video.getTitle(), 
-                commentContent.length() > 50 ? commentContent.substring(0, 50) + "..." : commentContent);
-            
-            createNotification(
-                video.getUser().getId(),
-                commenter.getId(),
-                Notification.NotificationType.COMMENT,
-                title,
-                content,
-                video.getId(),
-                "VIDEO"
-            );
+            coalesce(Notification.NotificationType.COMMENT, video.getUser(), commenter, video, commentContent);
         }
     }
 
@@ -248,19 +230,7 @@ public class NotificationService {
      */
     public void notifyVideoLike(Video video, User liker) {
         if (video.getUser() != null && !video.getUser().getId().equals(liker.getId())) {
-            String title = "新点赞";
-            String content = String.format("%s 点赞了您的视频《%s》", 
-                liker.getUsername(), video.getTitle());
-            
-            createNotification(
-                video.getUser().getId(),
-                liker.getId(),
-                Notification.NotificationType.LIKE,
-                title,
-                content,
-                video.getId(),
-                "VIDEO"
-            );
+            coalesce(Notification.NotificationType.LIKE, video.getUser(), liker, video, null);
         }
     }
 
@@ -269,22 +239,26 @@ public class NotificationService {
      */
     public void notifyVideoFavorite(Video video, User favoriter) {
         if (video.getUser() != null && !video.getUser().getId().equals(favoriter.getId())) {
-            String title = "新收藏";
-            String content = String.format("%s 收藏了您的视频《%s》", 
-                favoriter.getUsername(), video.getTitle());
-            
-            createNotification(
-                video.getUser().getId(),
-                favoriter.getId(),
-                Notification.NotificationType.FAVORITE,
-                title,
-                content,
-                video.getId(),
-                "VIDEO"
-            );
+            coalesce(Notification.NotificationType.FAVORITE, video.getUser(), favoriter, video, null);
         }
     }
 
+    /**
+     * 点赞/收藏/评论按 (接收者, 视频, 类型) 合并，调用方事务提交后才记录
+     */
+    private void coalesce(Notification.NotificationType type, User recipient, User actor, Video video, String commentContent) {
+        Long recipientId = recipient.getId();
+        String recipientUsername = recipient.getUsername();
+        Long actorId = actor.getId();
+        String actorName = actor.getUsername();
+        Long videoId = video.getId();
+        String videoTitle = video.getTitle();
+        String preview = commentContent == null ? null
+                : commentContent.length() > 50 ? commentContent.substring(0, 50) + "..." : commentContent;
+        TransactionUtil.afterCommit(() -> notificationCoalescingService.record(type, recipientId, recipientUsername,
+                actorId, actorName, videoId, videoTitle, preview));
+    }
+
     /**
      * 发送关注通知
      */
@@ -418,19 +392,17 @@ public class NotificationService {
     }
 
     /**
-     * 批量发送公告通知
+     * 批量发送公告通知，在后台分批执行；userIds 为 null 表示全部用户
      */
-    public void broadcastAnnouncement(List<Long> userIds, String title, String content) {
-        for (Long userId : userIds) {
-            sendAnnouncementNotification(userId, title, content);
-        }
+    public NotificationBroadcast broadcastAnnouncement(List<Long> userIds, String title, String content) {
+        return notificationBroadcastService.start(Notification.NotificationType.ANNOUNCEMENT, title, content, userIds);
     }
 
     /**
      * 获取未读通知数量
      */
     public long getUnreadNotificationCount(Long userId) {
-        return notificationRepository.countByUserIdAndIsReadFalse(userId);
+        return unreadCounter.get(userId);
     }
 
     /**
@@ -452,6 +424,7 @@ public class NotificationService {
             notification.setReadAt(LocalDateTime.now());
         }
         notificationRepository.saveAll(unreadNotifications);
+        unreadCounter.invalidate(userId);
     }
 
     /**
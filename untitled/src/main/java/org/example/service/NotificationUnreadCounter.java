@@ -0,0 +1,64 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.example.repository.NotificationRepository;
+import org.example.util.TransactionUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 通知未读数缓存
+ * 未命中时按 (user_id, is_read) 索引计数一次；新增通知在事务提交后加一，标记已读、删除后失效重算。
+ * 条目按写入时间过期，即使有遗漏的写入路径，偏差也只持续一个过期周期。
+ */
+@Service
+public class NotificationUnreadCounter {
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Value("${app.notification.unread-cache-seconds:300}")
+    private long cacheSeconds;
+
+    @Value("${app.notification.unread-cache-size:100000}")
+    private long cacheSize;
+
+    private LoadingCache<Long, AtomicLong> counts;
+
+    @PostConstruct
+    public void init() {
+        counts = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofSeconds(cacheSeconds))
+                .build(userId -> new AtomicLong(notificationRepository.countByUserIdAndIsReadFalse(userId)));
+    }
+
+    public long get(Long userId) {
+        return counts.get(userId).get();
+    }
+
+    /**
+     * 新增未读通知（提交后生效）
+     */
+    public void increment(Long userId, int delta) {
+        TransactionUtil.afterCommit(() -> {
+            AtomicLong count = counts.getIfPresent(userId);
+            if (count != null) {
+                count.addAndGet(delta);
+            }
+        });
+    }
+
+    /**
+     * 已读、删除等使未读数减少的操作之后调用（提交后生效）
+     */
+    public void invalidate(Long userId) {
+        TransactionUtil.afterCommit(() -> counts.invalidate(userId));
+    }
+}
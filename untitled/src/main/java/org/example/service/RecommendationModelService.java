@@ -0,0 +1,632 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 视频相似度推荐模型
+ * 定时从 view_history 批量计算物品-物品共现相似度（余弦），每个视频保留前 N 个近邻，
+ * 以原始类型数组常驻内存；在线推荐只需查用户近期观看、累加近邻分数并与热门列表合并
+ */
+@Service
+public class RecommendationModelService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecommendationModelService.class);
+
+    private static final String USER_ITEMS_SQL =
+            "SELECT vh.user_id, vh.video_id FROM view_history vh " +
+            "JOIN videos v ON v.id = vh.video_id " +
+            "WHERE v.status = 'APPROVED' " +
+            "ORDER BY vh.user_id, vh.updated_at DESC";
+
+    private static final String POPULAR_SQL =
+            "SELECT vh.video_id FROM view_history vh " +
+            "JOIN videos v ON v.id = vh.video_id " +
+            "WHERE v.status = 'APPROVED' AND vh.updated_at >= ? " +
+            "GROUP BY vh.video_id ORDER BY COUNT(*) DESC LIMIT ?";
+
+    private static final String POPULAR_FALLBACK_SQL =
+            "SELECT id FROM videos WHERE status = 'APPROVED' ORDER BY views DESC LIMIT ?";
+
+    @Autowired
+    @Qualifier("streamingDataSource")
+    private DataSource streamingDataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.recommendation.neighbors-per-video:50}")
+    private int neighborsPerVideo;
+
+    @Value("${app.recommendation.max-items-per-user:200}")
+    private int maxItemsPerUser;
+
+    @Value("${app.recommendation.seed-items:20}")
+    private int seedItems;
+
+    @Value("${app.recommendation.popular-size:200}")
+    private int popularSize;
+
+    @Value("${app.recommendation.popular-days:7}")
+    private int popularDays;
+
+    @Value("${app.recommendation.fetch-size:1000}")
+    private int fetchSize;
+
+    @Value("${app.recommendation.max-live-users:100000}")
+    private int maxLiveUsers;
+
+    private JdbcTemplate streamingJdbcTemplate;
+    private Timer recomputeTimer;
+    private Timer serveTimer;
+
+    private final AtomicBoolean recomputing = new AtomicBoolean(false);
+    private volatile Model model = Model.EMPTY;
+
+    // 全量计算之后的增量观看（用户ID -> 最近观看的视频ID，新的在前）；
+    // 计算开始时当前代转为上一代，计算成功后丢弃上一代
+    private volatile Map<Long, long[]> liveHistory = new ConcurrentHashMap<>();
+    private volatile Map<Long, long[]> previousLiveHistory = Collections.emptyMap();
+
+    @PostConstruct
+    public void init() {
+        streamingJdbcTemplate = new JdbcTemplate(streamingDataSource);
+        streamingJdbcTemplate.setFetchSize(fetchSize);
+
+        recomputeTimer = Timer.builder("recommendation.model.recompute")
+                .description("推荐模型全量计算耗时")
+                .register(meterRegistry);
+        serveTimer = Timer.builder("recommendation.serve")
+                .description("个性化推荐在线计算耗时")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("recommendation.model.videos", this, s -> s.model.videoIds.length)
+                .description("模型中的视频数")
+                .register(meterRegistry);
+        Gauge.builder("recommendation.model.users", this, s -> s.model.userItems.length)
+                .description("模型中的用户数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 应用启动完成后异步计算
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void onApplicationReady() {
+        recompute();
+    }
+
+    /**
+     * 定时全量重算
+     */
+    @Scheduled(initialDelayString = "${app.recommendation.recompute-interval-ms:1800000}",
+               fixedDelayString = "${app.recommendation.recompute-interval-ms:1800000}")
+    public void scheduledRecompute() {
+        recompute();
+    }
+
+    public boolean isReady() {
+        return model != Model.EMPTY;
+    }
+
+    /**
+     * 全量计算模型并原子替换
+     */
+    public void recompute() {
+        if (!recomputing.compareAndSet(false, true)) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        previousLiveHistory = liveHistory;
+        liveHistory = new ConcurrentHashMap<>();
+        try {
+            Model fresh = build();
+            model = fresh;
+            // 全量数据已包含计算开始前的增量观看
+            previousLiveHistory = Collections.emptyMap();
+            long elapsed = System.nanoTime() - startTime;
+            recomputeTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            logger.info("推荐模型计算完成: {} 个视频, {} 个用户, 耗时 {}ms",
+                    fresh.videoIds.length, fresh.userItems.length, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        } catch (Exception e) {
+            logger.error("推荐模型计算失败: {}", e.getMessage(), e);
+            Map<Long, long[]> retained = previousLiveHistory;
+            retained.forEach(liveHistory::putIfAbsent);
+            previousLiveHistory = Collections.emptyMap();
+        } finally {
+            recomputing.set(false);
+        }
+    }
+
+    /**
+     * 记录一次观看，使推荐在下次全量计算前即可排除已看视频并使用最新种子
+     */
+    public void recordView(Long userId, Long videoId) {
+        if (userId == null || videoId == null) {
+            return;
+        }
+        if (liveHistory.size() >= maxLiveUsers && !liveHistory.containsKey(userId)) {
+            return;
+        }
+        liveHistory.compute(userId, (k, current) -> {
+            long[] recent = current != null ? current : previousLiveHistory.get(userId);
+            if (recent == null) {
+                return new long[] { videoId };
+            }
+            int size = Math.min(recent.length + 1, seedItems);
+            long[] updated = new long[size];
+            updated[0] = videoId;
+            int n = 1;
+            for (int i = 0; i < recent.length && n < size; i++) {
+                if (recent[i] != videoId) {
+                    updated[n++] = recent[i];
+                }
+            }
+            return n == size ? updated : Arrays.copyOf(updated, n);
+        });
+    }
+
+    /**
+     * 用户观看历史被清除（全量模型中的记录在下次计算后消失）
+     */
+    public void clearUser(Long userId) {
+        if (userId != null) {
+            liveHistory.remove(userId);
+            previousLiveHistory.remove(userId);
+        }
+    }
+
+    /**
+     * 个性化推荐：基于近邻相似度排序，不足部分用热门视频补齐
+     */
+    public List<Long> recommend(Long userId, int limit, boolean fillWithPopular) {
+        long startTime = System.nanoTime();
+        try {
+            Model current = model;
+            Set<Long> watched = new HashSet<>();
+            List<Long> seeds = new ArrayList<>(seedItems);
+
+            if (userId != null) {
+                for (Map<Long, long[]> generation : List.of(liveHistory, previousLiveHistory)) {
+                    long[] live = generation.get(userId);
+                    if (live != null) {
+                        for (long videoId : live) {
+                            if (watched.add(videoId) && seeds.size() < seedItems) {
+                                seeds.add(videoId);
+                            }
+                        }
+                    }
+                }
+            }
+            int userSlot = userId != null ? current.userIndex.get(userId) : -1;
+            if (userSlot >= 0) {
+                for (int item : current.userItems[userSlot]) {
+                    long videoId = current.videoIds[item];
+                    if (watched.add(videoId) && seeds.size() < seedItems) {
+                        seeds.add(videoId);
+                    }
+                }
+            }
+
+            // 近期观看的种子权重更高
+            Map<Integer, Float> scores = new HashMap<>();
+            float weight = 1.0f;
+            for (Long seed : seeds) {
+                int item = current.videoIndex.get(seed);
+                if (item >= 0) {
+                    int[] neighbors = current.neighbors[item];
+                    float[] similarities = current.similarities[item];
+                    for (int i = 0; i < neighbors.length; i++) {
+                        scores.merge(neighbors[i], similarities[i] * weight, Float::sum);
+                    }
+                }
+                weight *= 0.9f;
+            }
+
+            List<Map.Entry<Integer, Float>> ranked = new ArrayList<>(scores.entrySet());
+            ranked.sort((a, b) -> Float.compare(b.getValue(), a.getValue()));
+
+            List<Long> result = new ArrayList<>(limit);
+            Set<Long> included = new HashSet<>();
+            for (Map.Entry<Integer, Float> entry : ranked) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                long videoId = current.videoIds[entry.getKey()];
+                if (!watched.contains(videoId) && included.add(videoId)) {
+                    result.add(videoId);
+                }
+            }
+            if (fillWithPopular) {
+                for (long videoId : current.popular) {
+                    if (result.size() >= limit) {
+                        break;
+                    }
+                    if (!watched.contains(videoId) && included.add(videoId)) {
+                        result.add(videoId);
+                    }
+                }
+            }
+            return result;
+        } finally {
+            serveTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 热门视频ID（计算时按近期观看人数排序）
+     */
+    public List<Long> getPopular(int limit) {
+        long[] popular = model.popular;
+        List<Long> result = new ArrayList<>(Math.min(limit, popular.length));
+        for (int i = 0; i < popular.length && i < limit; i++) {
+            result.add(popular[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 模型与指标概览
+     */
+    public Map<String, Object> getStats() {
+        Model current = model;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("ready", isReady());
+        stats.put("videos", current.videoIds.length);
+        stats.put("users", current.userItems.length);
+        stats.put("popular", current.popular.length);
+        stats.put("builtAt", current.builtAt);
+        stats.put("liveUsers", liveHistory.size());
+        stats.put("recomputeCount", recomputeTimer.count());
+        stats.put("recomputeLastMaxMillis", recomputeTimer.max(TimeUnit.MILLISECONDS));
+        stats.put("recomputeMeanMillis", recomputeTimer.mean(TimeUnit.MILLISECONDS));
+        stats.put("serveCount", serveTimer.count());
+        stats.put("serveMeanMicros", serveTimer.mean(TimeUnit.MICROSECONDS));
+        stats.put("serveMaxMicros", serveTimer.max(TimeUnit.MICROSECONDS));
+        return stats;
+    }
+
+    // ==================== 批量计算 ====================
+
+    private Model build() {
+        LongIntMap videoIndex = new LongIntMap(1024);
+        LongIntMap userIndex = new LongIntMap(1024);
+        List<long[]> videoIdChunks = new ArrayList<>();
+        List<IntList> userItemLists = new ArrayList<>();
+
+        // 1. 顺序读取（用户, 视频），每个用户只保留最近的 maxItemsPerUser 条
+        streamingJdbcTemplate.query(USER_ITEMS_SQL, rs -> {
+            long userId = rs.getLong(1);
+            long videoId = rs.getLong(2);
+            int user = userIndex.get(userId);
+            if (user < 0) {
+                user = userItemLists.size();
+                userIndex.put(userId, user);
+                userItemLists.add(new IntList());
+            }
+            IntList items = userItemLists.get(user);
+            if (items.size >= maxItemsPerUser) {
+                return;
+            }
+            int item = videoIndex.get(videoId);
+            if (item < 0) {
+                item = videoIndex.size();
+                videoIndex.put(videoId, item);
+                if (item % 1024 == 0) {
+                    videoIdChunks.add(new long[1024]);
+                }
+                videoIdChunks.get(item / 1024)[item % 1024] = videoId;
+            }
+            items.add(item);
+        });
+
+        int itemCount = videoIndex.size();
+        long[] videoIds = new long[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            videoIds[i] = videoIdChunks.get(i / 1024)[i % 1024];
+        }
+        int[][] userItems = new int[userItemLists.size()][];
+        for (int u = 0; u < userItems.length; u++) {
+            userItems[u] = userItemLists.get(u).toArray();
+        }
+
+        // 2. 倒排：视频 -> 观看过的用户
+        int[] degree = new int[itemCount];
+        for (int[] items : userItems) {
+            for (int item : items) {
+                degree[item]++;
+            }
+        }
+        int[][] itemUsers = new int[itemCount][];
+        for (int i = 0; i < itemCount; i++) {
+            itemUsers[i] = new int[degree[i]];
+        }
+        int[] fill = new int[itemCount];
+        for (int u = 0; u < userItems.length; u++) {
+            for (int item : userItems[u]) {
+                itemUsers[item][fill[item]++] = u;
+            }
+        }
+
+        // 3. 共现计数 + 余弦相似度，保留前 N 个近邻
+        int[][] neighbors = new int[itemCount][];
+        float[][] similarities = new float[itemCount][];
+        int[] coCounts = new int[itemCount];
+        int[] touched = new int[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            int touchedCount = 0;
+            for (int user : itemUsers[i]) {
+                for (int j : userItems[user]) {
+                    if (j != i && coCounts[j]++ == 0) {
+                        touched[touchedCount++] = j;
+                    }
+                }
+            }
+            TopN top = new TopN(Math.min(neighborsPerVideo, touchedCount));
+            for (int t = 0; t < touchedCount; t++) {
+                int j = touched[t];
+                float similarity = (float) (coCounts[j] / Math.sqrt((double) degree[i] * degree[j]));
+                top.offer(j, similarity);
+                coCounts[j] = 0;
+            }
+            neighbors[i] = top.items();
+            similarities[i] = top.scores();
+        }
+
+        return new Model(videoIndex, videoIds, neighbors, similarities, userIndex, userItems,
+                loadPopular(), LocalDateTime.now());
+    }
+
+    private long[] loadPopular() {
+        Timestamp since = Timestamp.valueOf(LocalDateTime.now().minusDays(popularDays));
+        List<Long> ids = streamingJdbcTemplate.queryForList(POPULAR_SQL, Long.class, since, popularSize);
+        if (ids.size() < popularSize) {
+            Set<Long> merged = new LinkedHashSet<>(ids);
+            merged.addAll(streamingJdbcTemplate.queryForList(POPULAR_FALLBACK_SQL, Long.class, popularSize));
+            ids = new ArrayList<>(merged);
+        }
+        long[] popular = new long[Math.min(ids.size(), popularSize)];
+        for (int i = 0; i < popular.length; i++) {
+            popular[i] = ids.get(i);
+        }
+        return popular;
+    }
+
+    // ==================== 模型结构 ====================
+
+    private static final class Model {
+        static final Model EMPTY = new Model(new LongIntMap(1), new long[0], new int[0][], new float[0][],
+                new LongIntMap(1), new int[0][], new long[0], null);
+
+        final LongIntMap videoIndex;
+        final long[] videoIds;
+        final int[][] neighbors;
+        final float[][] similarities;
+        final LongIntMap userIndex;
+        final int[][] userItems;
+        final long[] popular;
+        final LocalDateTime builtAt;
+
+        Model(LongIntMap videoIndex, long[] videoIds, int[][] neighbors, float[][] similarities,
+              LongIntMap userIndex, int[][] userItems, long[] popular, LocalDateTime builtAt) {
+            this.videoIndex = videoIndex;
+            this.videoIds = videoIds;
+            this.neighbors = neighbors;
+            this.similarities = similarities;
+            this.userIndex = userIndex;
+            this.userItems = userItems;
+            this.popular = popular;
+            this.builtAt = builtAt;
+        }
+    }
+
+    /**
+     * long -> int 开放寻址哈希表（线性探测，不支持删除），构建完成后只读
+     */
+    private static final class LongIntMap {
+        private long[] keys;
+        private int[] values;
+        private boolean[] used;
+        private int size;
+
+        LongIntMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            used = new boolean[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return -1;
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (used[slot]) {
+                if (keys[slot] == key) {
+                    values[slot] = value;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    private static final class IntList {
+        int[] data = new int[8];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * 按分数保留前 N 个（小顶堆），输出按分数降序
+     */
+    private static final class TopN {
+        private final int[] items;
+        private final float[] scores;
+        private int size;
+        private boolean sorted;
+
+        TopN(int capacity) {
+            items = new int[capacity];
+            scores = new float[capacity];
+        }
+
+        void offer(int item, float score) {
+            if (items.length == 0) {
+                return;
+            }
+            if (size < items.length) {
+                items[size] = item;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (score > scores[0]) {
+                items[0] = item;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        int[] items() {
+            sortDescending();
+            return Arrays.copyOf(items, size);
+        }
+
+        float[] scores() {
+            sortDescending();
+            return Arrays.copyOf(scores, size);
+        }
+
+        private void sortDescending() {
+            if (sorted) {
+                return;
+            }
+            sorted = true;
+            // 反复弹出堆顶（最小值）放到末尾，得到降序
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                int saved = size;
+                size = end;
+                siftDown(0);
+                size = saved;
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (scores[i] >= scores[parent]) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                int right = left + 1;
+                int smallest = i;
+                if (left < size && scores[left] < scores[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && scores[right] < scores[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int item = items[a];
+            items[a] = items[b];
+            items[b] = item;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.example.service;
 import org.example.entity.User;
 import org.example.entity.Video;
 import org.example.entity.ViewHistory;
+import org.example.repository.VideoRepository;
 import org.example.repository.ViewHistoryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
@@ -31,6 +32,12 @@ public class RecommendationService {
     @Autowired
     private TagService tagService;
 
+    @Autowired
+    private RecommendationModelService recommendationModelService;
+
+    @Autowired
+    private VideoRepository videoRepository;
+
     /**
      * 记录用户观看历史
      */
@@ -39,6 +46,8 @@ public class RecommendationService {
             return;
         }
 
+        recommendationModelService.recordView(user.getId(), video.getId());
+
         Optional<ViewHistory> existingHistory = viewHistoryRepository.findByUserAndVideo(user, video);
         
         if (existingHistory.isPresent()) {
@@ -90,6 +99,11 @@ public class RecommendationService {
             return getPopularVideos(limit);
         }
 
+        // 预计算模型就绪后，推荐只需内存查找 + 一次按ID批量加载
+        if (recommendationModelService.isReady()) {
+            return loadApprovedVideos(recommendationModelService.recommend(user.getId(), limit, true));
+        }
+
         List<Video> recommendations = new ArrayList<>();
         
         // 1. 基于协同过滤的推荐 (30%)
@@ -115,6 +129,10 @@ public class RecommendationService {
      * 基于协同过滤的推荐
      */
     public List<Video> getCollaborativeFilteringRecommendations(User user, int limit) {
+        if (recommendationModelService.isReady()) {
+            return loadApprovedVideos(recommendationModelService.recommend(user.getId(), limit, false));
+        }
+
         Pageable pageable = PageRequest.of(0, limit * 2); // 获取更多候选，然后筛选
         
         List<Object[]> results = viewHistoryRepository.findCollaborativeFilteringRecommendations(user, pageable);
@@ -169,6 +187,13 @@ public class RecommendationService {
      * 获取热门视频推荐
      */
     public List<Video> getPopularVideos(int limit) {
+        if (recommendationModelService.isReady()) {
+            List<Video> popular = loadApprovedVideos(recommendationModelService.getPopular(limit));
+            if (!popular.isEmpty()) {
+                return popular;
+            }
+        }
+
         LocalDateTime startDate = LocalDateTime.now().minusDays(7); // 最近7天
         Pageable pageable = PageRequest.of(0, limit);
         
@@ -185,6 +210,22 @@ public class RecommendationService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 按推荐顺序批量加载视频，并过滤掉已不再是审核通过状态的视频
+     */
+    private List<Video> loadApprovedVideos(List<Long> videoIds) {
+        if (videoIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Video> videosById = videoRepository.findByIdInWithUser(videoIds).stream()
+                .collect(Collectors.toMap(Video::getId, v -> v, (a, b) -> a));
+        return videoIds.stream()
+                .map(videosById::get)
+                .filter(Objects::nonNull)
+                .filter(video -> video.getStatus() == Video.VideoStatus.APPROVED)
+                .collect(Collectors.toList());
+    }
+
     /**
      * 获取用户观看历史
      */
@@ -244,6 +285,7 @@ public class RecommendationService {
      */
     public void clearUserViewHistory(User user) {
         viewHistoryRepository.deleteByUser(user);
+        recommendationModelService.clearUser(user.getId());
     }
 
     /**
@@ -0,0 +1,501 @@
+package org.example.service;
+
+import org.example.document.VideoDocument;
+import org.example.entity.Tag;
+import org.example.entity.Video;
+import org.example.repository.VideoRepository;
+import org.example.util.TransactionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * 视频搜索倒排索引
+ * 对标题/描述/标签做 CJK 二元分词，BM25 打分，启动时全量构建，
+ * 由 VideoService 的写操作在事务提交后增量更新，并定时全量校准
+ */
+@Service
+public class SearchIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchIndexService.class);
+
+    // 前缀扩展的最大词项数，避免单字母查询展开整个词典
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    private static final Comparator<VideoDocument> LATEST_FIRST = Comparator
+            .comparing(VideoDocument::getCreatedAt, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+            .thenComparing(VideoDocument::getVideoId)
+            .reversed();
+
+    @Autowired
+    private VideoRepository videoRepository;
+
+    @Value("${app.search.bm25.k1:1.2}")
+    private double k1;
+
+    @Value("${app.search.bm25.b:0.75}")
+    private double b;
+
+    @Value("${app.search.weight.title:3.0}")
+    private float titleWeight;
+
+    @Value("${app.search.weight.tag:2.0}")
+    private float tagWeight;
+
+    @Value("${app.search.weight.description:1.0}")
+    private float descriptionWeight;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private volatile boolean ready = false;
+
+    // 以下字段均由 lock 保护
+    private Index index = new Index();
+    private final List<Consumer<Index>> pendingDuringRebuild = new ArrayList<>();
+
+    /**
+     * 应用启动完成后异步构建索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * 定时全量校准（覆盖绕过 VideoService 直接写库的路径）
+     */
+    @Scheduled(initialDelayString = "${app.search.rebuild-interval-ms:600000}",
+               fixedDelayString = "${app.search.rebuild-interval-ms:600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * 全量重建索引，构建期间的增量更新会在切换后重放
+     */
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            lock.writeLock().lock();
+            try {
+                pendingDuringRebuild.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Index fresh = new Index();
+            for (Video video : videoRepository.findAllWithUserAndTags()) {
+                fresh.put(toDocument(video));
+            }
+
+            lock.writeLock().lock();
+            try {
+                for (Consumer<Index> op : pendingDuringRebuild) {
+                    op.accept(fresh);
+                }
+                pendingDuringRebuild.clear();
+                index = fresh;
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            logger.info("搜索索引构建完成: {} 个视频, {} 个词项, 耗时 {}ms",
+                    fresh.docs.size(), fresh.postings.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            logger.error("搜索索引构建失败: {}", e.getMessage(), e);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 新增或更新视频索引；需在持有会话的事务内调用，以便读取懒加载的标签与用户
+     */
+    public void indexVideo(Video video) {
+        if (video == null || video.getId() == null) {
+            return;
+        }
+        VideoDocument document = toDocument(video);
+        applyAfterCommit(idx -> idx.put(document));
+    }
+
+    /**
+     * 从索引中移除视频
+     */
+    public void removeVideo(Long videoId) {
+        if (videoId == null) {
+            return;
+        }
+        applyAfterCommit(idx -> idx.remove(videoId));
+    }
+
+    /**
+     * 关键词检索，多个词项取交集并按 BM25 排序；关键词为空时按创建时间倒序
+     */
+    public Page<VideoDocument> search(String keyword, Predicate<VideoDocument> filter, Pageable pageable) {
+        List<QueryTerm> terms = keyword == null ? Collections.emptyList() : tokenizeQuery(keyword);
+        lock.readLock().lock();
+        try {
+            if (terms.isEmpty()) {
+                return index.latest(index.docs.keySet(), filter, pageable);
+            }
+            return index.rank(terms, filter, pageable);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按用户名检索（忽略大小写），按创建时间倒序
+     */
+    public Page<VideoDocument> searchByUsername(String username, Predicate<VideoDocument> filter, Pageable pageable) {
+        String key = username == null ? "" : username.trim().toLowerCase();
+        lock.readLock().lock();
+        try {
+            Set<Long> ids = index.byUsername.getOrDefault(key, Collections.emptySet());
+            return index.latest(ids, filter, pageable);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void applyAfterCommit(Consumer<Index> op) {
+        TransactionUtil.afterCommit(() -> apply(op));
+    }
+
+    private void apply(Consumer<Index> op) {
+        lock.writeLock().lock();
+        try {
+            op.accept(index);
+            if (rebuilding.get()) {
+                pendingDuringRebuild.add(op);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private VideoDocument toDocument(Video video) {
+        String[] tags = video.getTags() != null && !video.getTags().isEmpty() ?
+                video.getTags().stream().map(Tag::getName).toArray(String[]::new) : new String[0];
+
+        return new VideoDocument(
+                video.getId(),
+                video.getTitle(),
+                video.getDescription(),
+                tags,
+                video.getUser() != null ? video.getUser().getUsername() : "unknown",
+                video.getViews(),
+                video.getLikeCount(),
+                video.getFavoriteCount(),
+                video.getCreatedAt(),
+                video.getStatus() != null ? video.getStatus().toString() : null,
+                video.getThumbnailPath(),
+                video.getUrl()
+        );
+    }
+
+    // ==================== 分词 ====================
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 切分为连续的 CJK 段与字母数字段
+     * @param consumer 接收 (段文本, 是否CJK)
+     */
+    private static void segment(String text, SegmentConsumer consumer) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        String lower = text.toLowerCase();
+        StringBuilder run = new StringBuilder();
+        boolean runCjk = false;
+        for (int i = 0; i < lower.length(); ) {
+            int cp = lower.codePointAt(i);
+            i += Character.charCount(cp);
+            boolean cjk = isCjk(cp);
+            boolean word = cjk || Character.isLetterOrDigit(cp);
+            if (!word || (run.length() > 0 && cjk != runCjk)) {
+                if (run.length() > 0) {
+                    consumer.accept(run.toString(), runCjk);
+                    run.setLength(0);
+                }
+            }
+            if (word) {
+                run.appendCodePoint(cp);
+                runCjk = cjk;
+            }
+        }
+        if (run.length() > 0) {
+            consumer.accept(run.toString(), runCjk);
+        }
+    }
+
+    /**
+     * 索引分词：CJK 段输出单字与相邻二元组，其余按整词输出
+     */
+    static void tokenizeForIndex(String text, Consumer<String> sink) {
+        segment(text, (run, cjk) -> {
+            if (!cjk) {
+                sink.accept(run);
+                return;
+            }
+            int[] cps = run.codePoints().toArray();
+            for (int i = 0; i < cps.length; i++) {
+                sink.accept(new String(cps, i, 1));
+                if (i + 1 < cps.length) {
+                    sink.accept(new String(cps, i, 2));
+                }
+            }
+        });
+    }
+
+    /**
+     * 查询分词：CJK 单字段用单字，多字段用二元组；字母数字词按前缀匹配
+     */
+    static List<QueryTerm> tokenizeQuery(String text) {
+        Map<String, QueryTerm> terms = new LinkedHashMap<>();
+        segment(text, (run, cjk) -> {
+            if (!cjk) {
+                terms.putIfAbsent(run, new QueryTerm(run, true));
+                return;
+            }
+            int[] cps = run.codePoints().toArray();
+            if (cps.length == 1) {
+                String unigram = new String(cps, 0, 1);
+                terms.putIfAbsent(unigram, new QueryTerm(unigram, false));
+                return;
+            }
+            for (int i = 0; i + 1 < cps.length; i++) {
+                String bigram = new String(cps, i, 2);
+                terms.putIfAbsent(bigram, new QueryTerm(bigram, false));
+            }
+        });
+        return new ArrayList<>(terms.values());
+    }
+
+    @FunctionalInterface
+    private interface SegmentConsumer {
+        void accept(String run, boolean cjk);
+    }
+
+    static final class QueryTerm {
+        final String text;
+        final boolean prefix;
+
+        QueryTerm(String text, boolean prefix) {
+            this.text = text;
+            this.prefix = prefix;
+        }
+    }
+
+    // ==================== 索引结构 ====================
+
+    private final class Index {
+        // 词项 -> (视频ID -> 加权词频)，有序以支持前缀扩展
+        final NavigableMap<String, Map<Long, Float>> postings = new TreeMap<>();
+        final Map<Long, VideoDocument> docs = new HashMap<>();
+        final Map<Long, Float> docLengths = new HashMap<>();
+        final Map<Long, Set<String>> docTerms = new HashMap<>();
+        final Map<String, Set<Long>> byUsername = new HashMap<>();
+        double totalLength = 0;
+
+        void put(VideoDocument document) {
+            Long id = document.getVideoId();
+            VideoDocument existing = docs.get(id);
+            // 实体未加载用户关联时沿用旧文档的用户名
+            if (existing != null && "unknown".equals(document.getUsername())) {
+                document.setUsername(existing.getUsername());
+            }
+            remove(id);
+
+            Map<String, Float> frequencies = new HashMap<>();
+            tokenizeForIndex(document.getTitle(), t -> frequencies.merge(t, titleWeight, Float::sum));
+            tokenizeForIndex(document.getDescription(), t -> frequencies.merge(t, descriptionWeight, Float::sum));
+            if (document.getTags() != null) {
+                for (String tag : document.getTags()) {
+                    tokenizeForIndex(tag, t -> frequencies.merge(t, tagWeight, Float::sum));
+                }
+            }
+
+            float length = 0;
+            for (Map.Entry<String, Float> entry : frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(id, entry.getValue());
+                length += entry.getValue();
+            }
+            docs.put(id, document);
+            docLengths.put(id, length);
+            docTerms.put(id, frequencies.keySet());
+            totalLength += length;
+            if (document.getUsername() != null) {
+                byUsername.computeIfAbsent(document.getUsername().toLowerCase(), k -> new HashSet<>()).add(id);
+            }
+        }
+
+        void remove(Long id) {
+            VideoDocument existing = docs.remove(id);
+            if (existing == null) {
+                return;
+            }
+            for (String term : docTerms.remove(id)) {
+                Map<Long, Float> posting = postings.get(term);
+                if (posting != null) {
+                    posting.remove(id);
+                    if (posting.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+            totalLength -= docLengths.remove(id);
+            if (existing.getUsername() != null) {
+                String key = existing.getUsername().toLowerCase();
+                Set<Long> ids = byUsername.get(key);
+                if (ids != null) {
+                    ids.remove(id);
+                    if (ids.isEmpty()) {
+                        byUsername.remove(key);
+                    }
+                }
+            }
+        }
+
+        Page<VideoDocument> rank(List<QueryTerm> terms, Predicate<VideoDocument> filter, Pageable pageable) {
+            int docCount = docs.size();
+            double avgLength = docCount == 0 ? 1 : Math.max(totalLength / docCount, 1e-6);
+
+            Map<Long, double[]> scores = null;
+            for (QueryTerm term : terms) {
+                Map<Long, Double> termScores = new HashMap<>();
+                for (Map<Long, Float> posting : expand(term)) {
+                    double idf = Math.log(1 + (docCount - posting.size() + 0.5) / (posting.size() + 0.5));
+                    for (Map.Entry<Long, Float> entry : posting.entrySet()) {
+                        if (scores != null && !scores.containsKey(entry.getKey())) {
+                            continue;
+                        }
+                        double tf = entry.getValue();
+                        double norm = k1 * (1 - b + b * docLengths.get(entry.getKey()) / avgLength);
+                        termScores.merge(entry.getKey(), idf * tf * (k1 + 1) / (tf + norm), Double::sum);
+                    }
+                }
+                // 多个词项取交集
+                Map<Long, double[]> next = new HashMap<>();
+                for (Map.Entry<Long, Double> entry : termScores.entrySet()) {
+                    double previous = scores == null ? 0 : scores.get(entry.getKey())[0];
+                    next.put(entry.getKey(), new double[] { previous + entry.getValue() });
+                }
+                scores = next;
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+
+            Comparator<Map.Entry<Long, double[]>> byScore = Comparator
+                    .<Map.Entry<Long, double[]>>comparingDouble(e -> e.getValue()[0])
+                    .thenComparing(e -> docs.get(e.getKey()), LATEST_FIRST.reversed());
+            List<Map.Entry<Long, double[]>> matches = new ArrayList<>();
+            for (Map.Entry<Long, double[]> entry : scores.entrySet()) {
+                if (filter == null || filter.test(docs.get(entry.getKey()))) {
+                    matches.add(entry);
+                }
+            }
+            List<VideoDocument> page = topK(matches, byScore, pageable).stream()
+                    .map(e -> docs.get(e.getKey()))
+                    .collect(Collectors.toList());
+            return new PageImpl<>(page, pageable, matches.size());
+        }
+
+        Page<VideoDocument> latest(Set<Long> ids, Predicate<VideoDocument> filter, Pageable pageable) {
+            List<VideoDocument> matches = new ArrayList<>();
+            for (Long id : ids) {
+                VideoDocument document = docs.get(id);
+                if (document != null && (filter == null || filter.test(document))) {
+                    matches.add(document);
+                }
+            }
+            return new PageImpl<>(topK(matches, LATEST_FIRST.reversed(), pageable), pageable, matches.size());
+        }
+
+        private List<Map<Long, Float>> expand(QueryTerm term) {
+            if (!term.prefix) {
+                Map<Long, Float> posting = postings.get(term.text);
+                return posting == null ? Collections.emptyList() : Collections.singletonList(posting);
+            }
+            List<Map<Long, Float>> expanded = new ArrayList<>();
+            for (Map<Long, Float> posting : postings.subMap(term.text, true, term.text + Character.MAX_VALUE, false).values()) {
+                expanded.add(posting);
+                if (expanded.size() >= MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+            }
+            return expanded;
+        }
+
+        /**
+         * 用大小为 offset+pageSize 的小顶堆取前 K 个，只对当前页排序
+         * @param ascending 升序比较器（越大越靠前）
+         */
+        private <T> List<T> topK(List<T> items, Comparator<T> ascending, Pageable pageable) {
+            long k = pageable.getOffset() + pageable.getPageSize();
+            if (pageable.getOffset() >= items.size()) {
+                return Collections.emptyList();
+            }
+            PriorityQueue<T> heap = new PriorityQueue<>(ascending);
+            for (T item : items) {
+                if (heap.size() < k) {
+                    heap.offer(item);
+                } else if (ascending.compare(item, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.offer(item);
+                }
+            }
+            List<T> sorted = new ArrayList<>(heap);
+            sorted.sort(ascending.reversed());
+            int from = (int) pageable.getOffset();
+            return new ArrayList<>(sorted.subList(from, Math.min(sorted.size(), from + pageable.getPageSize())));
+        }
+    }
+}
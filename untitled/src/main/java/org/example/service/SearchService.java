@@ -20,6 +20,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -39,38 +40,51 @@ public class SearchService {
     @Autowired
     private SearchHistoryRepository searchHistoryRepository;
 
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private SearchSuggestionService searchSuggestionService;
+
+    private static final Predicate<VideoDocument> APPROVED_ONLY =
+            doc -> Video.VideoStatus.APPROVED.toString().equals(doc.getStatus());
+
 
 
     /**
      * 智能搜索 - 多字段匹配
      */
     public Page<VideoDocument> smartSearch(String keyword, Pageable pageable) {
-        return searchWithDatabase(keyword, pageable);
+        return searchWithIndex(keyword, APPROVED_ONLY, pageable);
     }
 
     /**
      * 高级搜索 - 支持多条件
      */
     public Page<VideoDocument> advancedSearch(String keyword, String status, Long minViews, Pageable pageable) {
-        return searchWithDatabase(keyword, pageable);
+        String statusFilter = status == null || status.trim().isEmpty()
+                ? Video.VideoStatus.APPROVED.toString() : status.trim();
+        Predicate<VideoDocument> filter = doc -> statusFilter.equalsIgnoreCase(doc.getStatus())
+                && (minViews == null || (doc.getViews() != null && doc.getViews() >= minViews));
+        return searchWithIndex(keyword, filter, pageable);
     }
 
     /**
      * 按用户搜索
      */
     public Page<VideoDocument> searchByUser(String username, Pageable pageable) {
-        return searchWithDatabase(username, pageable);
+        if (!searchIndexService.isReady()) {
+            return searchWithDatabase(null, APPROVED_ONLY.and(doc -> username != null
+                    && username.trim().equalsIgnoreCase(doc.getUsername())), pageable);
+        }
+        return searchIndexService.searchByUsername(username, APPROVED_ONLY, pageable);
     }
 
     /**
      * 获取最新视频
      */
     public Page<VideoDocument> getLatestVideos(Pageable pageable) {
-        List<Video> videos = videoService.getAllVideos().stream()
-                .filter(v -> v.getStatus() == Video.VideoStatus.APPROVED)
-                .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
-                .collect(Collectors.toList());
-        return convertToDocumentPage(videos, pageable);
+        return searchWithIndex(null, APPROVED_ONLY, pageable);
     }
 
 
@@ -79,51 +93,53 @@ public class SearchService {
      * 搜索建议 - 自动补全
      */
     public List<String> getSearchSuggestions(String prefix) {
-        return videoService.getAllVideos().stream()
-                .filter(v -> v.getTitle().toLowerCase().contains(prefix.toLowerCase()))
-                .map(Video::getTitle)
-                .distinct()
-                .limit(10)
-                .collect(Collectors.toList());
+        return searchSuggestionService.complete(prefix, 10);
+    }
+
+    /**
+     * 倒排索引搜索，索引尚未构建完成时降级为数据库搜索
+     */
+    private Page<VideoDocument> searchWithIndex(String keyword, Predicate<VideoDocument> filter, Pageable pageable) {
+        if (!searchIndexService.isReady()) {
+            return searchWithDatabase(keyword, filter, pageable);
+        }
+        return searchIndexService.search(keyword, filter, pageable);
     }
 
     /**
      * 数据库搜索降级方法
      */
-    private Page<VideoDocument> searchWithDatabase(String keyword, Pageable pageable) {
+    private Page<VideoDocument> searchWithDatabase(String keyword, Predicate<VideoDocument> filter, Pageable pageable) {
         List<Video> allVideos = videoService.getAllVideos();
         List<Video> filteredVideos;
 
         if (keyword == null || keyword.trim().isEmpty()) {
             filteredVideos = allVideos.stream()
-                    .filter(v -> v.getStatus() == Video.VideoStatus.APPROVED)
                     .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
                     .collect(Collectors.toList());
         } else {
             String lowerKeyword = keyword.toLowerCase();
             filteredVideos = allVideos.stream()
-                    .filter(v -> v.getStatus() == Video.VideoStatus.APPROVED)
                     .filter(v -> v.getTitle().toLowerCase().contains(lowerKeyword) ||
                                (v.getDescription() != null && v.getDescription().toLowerCase().contains(lowerKeyword)) ||
                                (v.getTags() != null && v.getTags().stream().anyMatch(tag -> tag.getName().toLowerCase().contains(lowerKeyword))))
                     .collect(Collectors.toList());
         }
 
-        return convertToDocumentPage(filteredVideos, pageable);
+        List<VideoDocument> documents = filteredVideos.stream()
+                .map(this::convertToDocument)
+                .filter(filter)
+                .collect(Collectors.toList());
+        return convertToPage(documents, pageable);
     }
 
     /**
-     * 将Video列表转换为VideoDocument分页对象
+     * 对已转换的文档列表分页
      */
-    private Page<VideoDocument> convertToDocumentPage(List<Video> videos, Pageable pageable) {
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), videos.size());
-
-        List<VideoDocument> documents = videos.subList(start, end).stream()
-                .map(this::convertToDocument)
-                .collect(Collectors.toList());
-
-        return new PageImpl<>(documents, pageable, videos.size());
+    private Page<VideoDocument> convertToPage(List<VideoDocument> documents, Pageable pageable) {
+        int start = (int) Math.min(pageable.getOffset(), documents.size());
+        int end = Math.min((start + pageable.getPageSize()), documents.size());
+        return new PageImpl<>(documents.subList(start, end), pageable, documents.size());
     }
 
     /**
@@ -220,8 +236,8 @@ public class SearchService {
             }
         }
 
-        // 返回全局搜索建议
-        return searchHistoryRepository.findSearchSuggestions(prefix, pageable);
+        // 返回全局搜索建议（标题、标签、热门搜索词的前缀索引）
+        return searchSuggestionService.complete(prefix, limit);
     }
 
     /**
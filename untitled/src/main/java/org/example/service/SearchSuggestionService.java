@@ -0,0 +1,307 @@
+package org.example.service;
+
+import org.example.entity.Tag;
+import org.example.repository.SearchHistoryRepository;
+import org.example.repository.TagRepository;
+import org.example.repository.VideoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 搜索建议（自动补全）服务
+ * 将视频标题、标签和热门搜索词按热度构建为不可变的前缀索引，
+ * 后台定时重建并原子替换，查询只做二分定位和区间最大值提取。
+ * 中文等不以空格分词的标题从每个汉字（假名、谚文）处各建一个键，输入标题中间的一段也能命中
+ */
+@Service
+public class SearchSuggestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchSuggestionService.class);
+
+    @Autowired
+    private VideoRepository videoRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private SearchHistoryRepository searchHistoryRepository;
+
+    @Value("${app.search.suggestion.history-days:30}")
+    private int historyDays;
+
+    @Value("${app.search.suggestion.history-limit:5000}")
+    private int historyLimit;
+
+    @Value("${app.search.suggestion.tag-boost:10}")
+    private long tagBoost;
+
+    @Value("${app.search.suggestion.history-boost:20}")
+    private long historyBoost;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    // 当前生效的索引，重建完成后整体替换
+    private volatile CompletionIndex index = CompletionIndex.builder().build();
+
+    /**
+     * 应用启动完成后异步构建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * 后台定时重建
+     */
+    @Scheduled(initialDelayString = "${app.search.suggestion.rebuild-interval-ms:300000}",
+               fixedDelayString = "${app.search.suggestion.rebuild-interval-ms:300000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            CompletionIndex.Builder builder = CompletionIndex.builder();
+
+            for (Object[] row : videoRepository.findApprovedTitlesAndViews()) {
+                long views = row[1] != null ? ((Number) row[1]).longValue() : 0L;
+                builder.addWithWordStarts((String) row[0], views + 1);
+            }
+
+            for (Tag tag : tagRepository.findByIsActiveTrueOrderByVideoCountDescNameAsc()) {
+                long videoCount = tag.getVideoCount() != null ? tag.getVideoCount() : 0L;
+                builder.add(tag.getName(), videoCount * tagBoost + 1);
+            }
+
+            LocalDateTime startDate = LocalDateTime.now().minusDays(historyDays);
+            for (Object[] row : searchHistoryRepository.findHotSearchKeywords(startDate, PageRequest.of(0, historyLimit))) {
+                long searchCount = row[1] != null ? ((Number) row[1]).longValue() : 0L;
+                builder.add((String) row[0], searchCount * historyBoost + 1);
+            }
+
+            CompletionIndex fresh = builder.build();
+            index = fresh;
+            logger.info("搜索建议索引构建完成: {} 个词条, 耗时 {}ms",
+                    fresh.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            logger.error("搜索建议索引构建失败: {}", e.getMessage(), e);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * 前缀补全，按热度降序返回
+     */
+    public List<String> complete(String prefix, int limit) {
+        if (prefix == null || prefix.trim().isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        return index.complete(prefix.trim(), limit);
+    }
+
+    /**
+     * 不可变前缀补全索引
+     * 词条按小写键排序存放在并列数组中，前缀对应一段连续区间；
+     * 区间内按权重取前 K 通过线段树（存最大值下标）逐段拆分完成，复杂度 O(K log N)
+     */
+    static final class CompletionIndex {
+
+        // 从汉字处开始的键只保留这么多字符；更长的输入用前几个字符定位，再按包含关系过滤
+        static final int CJK_KEY_LENGTH = 16;
+
+        private final String[] keys;
+        private final String[] displays;
+        private final long[] weights;
+        // tree[n + i] = i，内部节点存子树中权重最大的下标
+        private final int[] tree;
+
+        private CompletionIndex(String[] keys, String[] displays, long[] weights) {
+            this.keys = keys;
+            this.displays = displays;
+            this.weights = weights;
+            int n = keys.length;
+            this.tree = new int[2 * n];
+            for (int i = 0; i < n; i++) {
+                tree[n + i] = i;
+            }
+            for (int i = n - 1; i > 0; i--) {
+                tree[i] = better(tree[2 * i], tree[2 * i + 1]);
+            }
+        }
+
+        static Builder builder() {
+            return new Builder();
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        List<String> complete(String prefix, int limit) {
+            String query = prefix.toLowerCase();
+            String key = query.length() > CJK_KEY_LENGTH ? query.substring(0, CJK_KEY_LENGTH) : query;
+            boolean filter = key.length() < query.length();
+            int from = lowerBound(key);
+            int to = lowerBound(key + Character.MAX_VALUE);
+            if (from >= to) {
+                return Collections.emptyList();
+            }
+
+            List<String> result = new ArrayList<>(limit);
+            Set<String> seen = new HashSet<>();
+            // 候选区间按区间最大权重出堆：{from, to, argmax}
+            PriorityQueue<int[]> ranges = new PriorityQueue<>(
+                    (a, b) -> Long.compare(weights[b[2]], weights[a[2]]));
+            ranges.offer(new int[] { from, to, argMax(from, to) });
+            while (!ranges.isEmpty() && result.size() < limit) {
+                int[] range = ranges.poll();
+                int best = range[2];
+                if ((!filter || displays[best].toLowerCase().contains(query)) && seen.add(displays[best])) {
+                    result.add(displays[best]);
+                }
+                if (range[0] < best) {
+                    ranges.offer(new int[] { range[0], best, argMax(range[0], best) });
+                }
+                if (best + 1 < range[1]) {
+                    ranges.offer(new int[] { best + 1, range[1], argMax(best + 1, range[1]) });
+                }
+            }
+            return result;
+        }
+
+        private int lowerBound(String key) {
+            int lo = 0;
+            int hi = keys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid].compareTo(key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * 区间 [from, to) 内权重最大的下标
+         */
+        private int argMax(int from, int to) {
+            int n = keys.length;
+            int best = from;
+            for (int l = from + n, r = to + n; l < r; l >>= 1, r >>= 1) {
+                if ((l & 1) == 1) {
+                    best = better(best, tree[l++]);
+                }
+                if ((r & 1) == 1) {
+                    best = better(best, tree[--r]);
+                }
+            }
+            return best;
+        }
+
+        private int better(int a, int b) {
+            return weights[a] >= weights[b] ? a : b;
+        }
+
+        static final class Builder {
+            private final List<Entry> entries = new ArrayList<>();
+
+            /**
+             * 添加词条，键为整个文本
+             */
+            Builder add(String text, long weight) {
+                if (text != null && !text.trim().isEmpty()) {
+                    String display = text.trim();
+                    entries.add(new Entry(display.toLowerCase(), display, weight));
+                }
+                return this;
+            }
+
+            /**
+             * 添加词条，同时以每个词的起始位置作为额外的键，使中间的词也能命中；
+             * 汉字之间没有分隔符，每个汉字处都作为起始位置，键截取 CJK_KEY_LENGTH 个字符
+             */
+            Builder addWithWordStarts(String text, long weight) {
+                if (text == null || text.trim().isEmpty()) {
+                    return this;
+                }
+                String display = text.trim();
+                String lower = display.toLowerCase();
+                entries.add(new Entry(lower, display, weight));
+                for (int i = 1; i < lower.length(); i++) {
+                    char previous = lower.charAt(i - 1);
+                    char current = lower.charAt(i);
+                    if (isCjk(current)) {
+                        entries.add(new Entry(lower.substring(i, Math.min(lower.length(), i + CJK_KEY_LENGTH)),
+                                display, weight));
+                    } else if (Character.isLetterOrDigit(current)
+                            && (!Character.isLetterOrDigit(previous) || isCjk(previous))) {
+                        entries.add(new Entry(lower.substring(i), display, weight));
+                    }
+                }
+                return this;
+            }
+
+            private static boolean isCjk(char c) {
+                Character.UnicodeScript script = Character.UnicodeScript.of(c);
+                return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                        || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+            }
+
+            CompletionIndex build() {
+                Entry[] sorted = entries.toArray(new Entry[0]);
+                Arrays.sort(sorted, (a, b) -> a.key.compareTo(b.key));
+                String[] keys = new String[sorted.length];
+                String[] displays = new String[sorted.length];
+                long[] weights = new long[sorted.length];
+                for (int i = 0; i < sorted.length; i++) {
+                    keys[i] = sorted[i].key;
+                    // 相同展示文本复用同一个实例
+                    displays[i] = i > 0 && sorted[i].display.equals(displays[i - 1])
+                            ? displays[i - 1] : sorted[i].display;
+                    weights[i] = sorted[i].weight;
+                }
+                return new CompletionIndex(keys, displays, weights);
+            }
+        }
+
+        private static final class Entry {
+            final String key;
+            final String display;
+            final long weight;
+
+            Entry(String key, String display, long weight) {
+                this.key = key;
+                this.display = display;
+                this.weight = weight;
+            }
+        }
+    }
+}
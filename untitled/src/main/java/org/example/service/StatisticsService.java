@@ -2,163 +2,47 @@ package org.example.service;
 
 import org.example.entity.Video;
 import org.example.entity.User;
-import org.example.entity.Comment;
-import org.example.entity.VideoLike;
 import org.example.repository.VideoRepository;
-import org.example.repository.UserRepository;
-import org.example.repository.CommentRepository;
-import org.example.repository.VideoLikeRepository;
-import org.example.repository.VideoFavoriteRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
 
 /**
  * 智能统计服务
- * 提供真实的数据统计和分析
+ * 提供真实的数据统计和分析，计数由 StatsAggregationService 在内存中增量维护
  */
 @Service
-@Transactional(readOnly = false)
+@Transactional(readOnly = true)
 public class StatisticsService {
 
     @Autowired
     private VideoRepository videoRepository;
 
     @Autowired
-    private UserRepository userRepository;
-
-    @Autowired
-    private CommentRepository commentRepository;
-
-    @Autowired
-    private VideoLikeRepository videoLikeRepository;
-
-    @Autowired
-    private VideoFavoriteRepository videoFavoriteRepository;
+    private StatsAggregationService statsAggregationService;
 
     /**
      * 获取系统总体统计
      */
     public Map<String, Object> getSystemStatistics() {
-        Map<String, Object> stats = new HashMap<>();
-        
-        // 视频统计
-        long totalVideos = videoRepository.count();
-        long approvedVideos = videoRepository.countByStatus(Video.VideoStatus.APPROVED);
-        long pendingVideos = videoRepository.countByStatus(Video.VideoStatus.PENDING);
-        long bannedVideos = videoRepository.countByStatus(Video.VideoStatus.BANNED);
-        long rejectedVideos = videoRepository.countByStatus(Video.VideoStatus.REJECTED);
-        
-        stats.put("totalVideos", totalVideos);
-        stats.put("approvedVideos", approvedVideos);
-        stats.put("pendingVideos", pendingVideos);
-        stats.put("bannedVideos", bannedVideos);
-        stats.put("rejectedVideos", rejectedVideos);
-        
-        // 用户统计
-        long totalUsers = userRepository.count();
-        long activeUsers = userRepository.countByEnabledTrue();
-        long bannedUsers = userRepository.countByBannedTrue();
-        
-        stats.put("totalUsers", totalUsers);
-        stats.put("activeUsers", activeUsers);
-        stats.put("bannedUsers", bannedUsers);
-        
-        // 评论统计
-        long totalComments = commentRepository.count();
-        
-        stats.put("totalComments", totalComments);
-        
-        // 总观看次数
-        List<Video> allVideos = videoRepository.findAll();
-        long totalViews = allVideos.stream()
-                .mapToLong(video -> video.getViews() != null ? video.getViews() : 0)
-                .sum();
-        
-        stats.put("totalViews", totalViews);
-        
-        return stats;
+        return statsAggregationService.getSystemStatistics();
     }
 
     /**
-     * 获取用户个人统计（超级优化版本）
+     * 获取用户个人统计
      */
     public Map<String, Object> getUserStatistics(User user) {
-        Map<String, Object> stats = new HashMap<>();
-
-        try {
-            Long userId = user.getId();
-
-            // 基础统计 - 只查询最必要的数据
-            long totalUserVideos = videoRepository.countByUserId(userId);
-            stats.put("totalVideos", totalUserVideos);
-            stats.put("approvedVideos", totalUserVideos); // 简化：假设大部分视频都是已批准的
-            stats.put("pendingVideos", 0L); // 简化：暂时设为0
-
-            // 简化观看次数统计
-            stats.put("totalViews", totalUserVideos * 2); // 简化：估算观看次数
-
-            // 基础评论统计
-            long userComments = commentRepository.countByUserId(userId);
-            stats.put("totalComments", userComments);
-
-            // 基础点赞统计
-            stats.put("totalLikesReceived", totalUserVideos); // 简化：估算点赞数
-            stats.put("totalFavorites", 0L); // 简化：暂时设为0
-
-        } catch (Exception e) {
-            System.err.println("获取用户统计数据失败: " + e.getMessage());
-
-            // 返回默认值
-            stats.put("totalVideos", 0L);
-            stats.put("approvedVideos", 0L);
-            stats.put("pendingVideos", 0L);
-            stats.put("totalViews", 0L);
-            stats.put("totalComments", 0L);
-            stats.put("totalLikesReceived", 0L);
-            stats.put("totalFavorites", 0L);
-        }
-
-        return stats;
+        return statsAggregationService.getUserStatistics(user.getId());
     }
 
     /**
      * 获取今日统计
      */
     public Map<String, Object> getTodayStatistics() {
-        Map<String, Object> stats = new HashMap<>();
-        LocalDateTime startOfDay = LocalDateTime.now().truncatedTo(ChronoUnit.DAYS);
-        
-        // 今日新增视频
-        List<Video> allVideos = videoRepository.findAll();
-        long todayVideos = allVideos.stream()
-                .filter(video -> video.getCreatedAt().isAfter(startOfDay))
-                .count();
-        
-        stats.put("todayVideos", todayVideos);
-        
-        // 今日新增用户
-        List<User> allUsers = userRepository.findAll();
-        long todayUsers = allUsers.stream()
-                .filter(user -> user.getCreatedAt() != null && user.getCreatedAt().isAfter(startOfDay))
-                .count();
-        
-        stats.put("todayUsers", todayUsers);
-        
-        // 今日新增评论
-        List<Comment> allComments = commentRepository.findAll();
-        long todayComments = allComments.stream()
-                .filter(comment -> comment.getCreatedAt().isAfter(startOfDay))
-                .count();
-        
-        stats.put("todayComments", todayComments);
-        
-        return stats;
+        return statsAggregationService.getTodayStatistics();
     }
 
     /**
@@ -188,136 +72,27 @@ public class StatisticsService {
      * 获取活跃用户统计
      */
     public List<Map<String, Object>> getActiveUserStatistics(int limit) {
-        List<User> allUsers = userRepository.findAll();
-        
-        return allUsers.stream()
-                .filter(user -> user.isEnabled() && !user.isBanned())
-                .map(user -> {
-                    Map<String, Object> userStats = new HashMap<>();
-                    userStats.put("id", user.getId());
-                    userStats.put("username", user.getUsername());
-                    
-                    // 计算用户视频数量
-                    long videoCount = videoRepository.countByUserId(user.getId());
-                    userStats.put("videoCount", videoCount);
-                    
-                    // 计算用户总观看次数
-                    List<Video> userVideos = videoRepository.findByUserId(user.getId());
-                    long totalViews = userVideos.stream()
-                            .mapToLong(video -> video.getViews() != null ? video.getViews() : 0)
-                            .sum();
-                    userStats.put("totalViews", totalViews);
-                    
-                    // 计算用户评论数量
-                    long commentCount = commentRepository.countByUserId(user.getId());
-                    userStats.put("commentCount", commentCount);
-                    
-                    return userStats;
-                })
-                .sorted((a, b) -> Long.compare((Long) b.get("totalViews"), (Long) a.get("totalViews")))
-                .limit(limit)
-                .collect(Collectors.toList());
+        return statsAggregationService.getActiveUserStatistics(limit);
     }
 
     /**
      * 获取视频状态分布
      */
     public Map<String, Long> getVideoStatusDistribution() {
-        Map<String, Long> distribution = new HashMap<>();
-        
-        distribution.put("APPROVED", videoRepository.countByStatus(Video.VideoStatus.APPROVED));
-        distribution.put("PENDING", videoRepository.countByStatus(Video.VideoStatus.PENDING));
-        distribution.put("REJECTED", videoRepository.countByStatus(Video.VideoStatus.REJECTED));
-        distribution.put("BANNED", videoRepository.countByStatus(Video.VideoStatus.BANNED));
-        
-        return distribution;
+        return statsAggregationService.getVideoStatusDistribution();
     }
 
     /**
      * 获取用户增长趋势（最近7天）
      */
     public Map<String, Long> getUserGrowthTrend() {
-        Map<String, Long> trend = new HashMap<>();
-        LocalDateTime now = LocalDateTime.now();
-        
-        for (int i = 6; i >= 0; i--) {
-            LocalDateTime date = now.minusDays(i).truncatedTo(ChronoUnit.DAYS);
-            LocalDateTime nextDate = date.plusDays(1);
-            
-            List<User> allUsers = userRepository.findAll();
-            long count = allUsers.stream()
-                    .filter(user -> user.getCreatedAt() != null)
-                    .filter(user -> user.getCreatedAt().isAfter(date) && user.getCreatedAt().isBefore(nextDate))
-                    .count();
-            
-            String dateKey = date.toLocalDate().toString();
-            trend.put(dateKey, count);
-        }
-        
-        return trend;
+        return statsAggregationService.getDailyTrend(StatsAggregationService.Metric.USERS, 7);
     }
 
     /**
      * 获取用户视频趋势数据（最近7个月）
      */
     public Map<String, Object> getUserTrendData(User user) {
-        Map<String, Object> trendData = new HashMap<>();
-
-        // 获取用户的所有视频
-        List<Video> userVideos = videoRepository.findByUserId(user.getId());
-
-        // 计算最近7个月的数据
-        LocalDateTime now = LocalDateTime.now();
-        List<String> monthLabels = new ArrayList<>();
-        List<Integer> viewsData = new ArrayList<>();
-        List<Integer> likesData = new ArrayList<>();
-        List<Integer> commentsData = new ArrayList<>();
-
-        for (int i = 6; i >= 0; i--) {
-            LocalDateTime monthStart = now.minusMonths(i).withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0);
-            LocalDateTime monthEnd = monthStart.plusMonths(1).minusSeconds(1);
-
-            // 月份标签
-            monthLabels.add((monthStart.getMonthValue()) + "月");
-
-            // 计算该月新增的观看量（模拟数据，因为我们没有观看历史记录）
-            // 这里我们使用一个简化的方法：根据视频的创建时间和当前观看量来估算
-            int monthViews = 0;
-            for (Video video : userVideos) {
-                if (video.getCreatedAt().isBefore(monthEnd)) {
-                    // 为每个存在的视频分配一些观看量到这个月
-                    // 这是一个简化的模拟，实际应用中需要记录观看历史
-                    int videoAge = (int) ChronoUnit.DAYS.between(video.getCreatedAt(), now);
-                    if (videoAge > 0) {
-                        int avgViewsPerMonth = (int)(video.getViewCount() / Math.max(1, videoAge / 30));
-                        monthViews += Math.max(0, avgViewsPerMonth + (int)(Math.random() * 10 - 5));
-                    }
-                }
-            }
-            viewsData.add(monthViews);
-
-            // 计算该月的点赞量
-            int monthLikes = 0;
-            for (Video video : userVideos) {
-                monthLikes += videoLikeRepository.countByVideoIdAndCreatedAtBetween(
-                    video.getId(), monthStart, monthEnd);
-            }
-            likesData.add(monthLikes);
-
-            // 计算该月的评论量
-            int monthComments = 0;
-            for (Video video : userVideos) {
-                monthComments += commentRepository.countByVideoIdAndCreatedAtBetween(
-                    video.getId(), monthStart, monthEnd);
-            }
-            commentsData.add(monthComments);
-        }
-
-        trendData.put("labels", monthLabels);
-        trendData.put("viewsData", viewsData);
-        trendData.put("likesData", likesData);
-        trendData.put("commentsData", commentsData);
-
-        return trendData;
+        return statsAggregationService.getUserTrendData(user.getId(), 7);
     }
 }
@@ -0,0 +1,1060 @@
+package org.example.service;
+
+import org.example.entity.User;
+import org.example.entity.Video;
+import org.example.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 统计聚合服务
+ * 全站计数和按用户计数常驻内存，由领域事件（StatsEvent）在事务提交后增量维护，读取不访问数据库；
+ * 每日新增量按 (日期, 指标, 视频作者) 累加，定时批量写入 stats_daily_rollup 表。
+ * 后台定时用聚合 SQL 重建内存快照，修正批量删除等不发事件的路径造成的偏差
+ */
+@Service
+public class StatsAggregationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsAggregationService.class);
+
+    // 全站汇总行的 owner_id
+    private static final long GLOBAL_OWNER = 0L;
+
+    // 按用户计数的槽位：前几个为各审核状态的视频数（按 VideoStatus 序号），其后为观看、评论、获赞、被收藏
+    private static final int STATUS_SLOTS = Video.VideoStatus.values().length;
+    private static final int SLOT_VIEWS = STATUS_SLOTS;
+    private static final int SLOT_COMMENTS = STATUS_SLOTS + 1;
+    private static final int SLOT_LIKES_RECEIVED = STATUS_SLOTS + 2;
+    private static final int SLOT_FAVORITES_RECEIVED = STATUS_SLOTS + 3;
+    private static final int USER_SLOTS = STATUS_SLOTS + 4;
+
+    private static final String UPSERT_ROLLUP_SQL =
+            "INSERT INTO stats_daily_rollup (stat_date, metric, owner_id, metric_value) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE metric_value = metric_value + VALUES(metric_value)";
+
+    /**
+     * 日汇总指标；ownerScoped 表示同时按视频作者汇总
+     */
+    public enum Metric {
+        VIDEOS(false),
+        USERS(false),
+        COMMENTS(true),
+        VIEWS(true),
+        LIKES(true),
+        FAVORITES(true);
+
+        private final boolean ownerScoped;
+
+        Metric(boolean ownerScoped) {
+            this.ownerScoped = ownerScoped;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    @Qualifier("streamingDataSource")
+    private DataSource streamingDataSource;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ViewCounterService viewCounterService;
+
+    @Value("${app.stats.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.stats.fetch-size:1000}")
+    private int fetchSize;
+
+    // 内存中保留的全站日汇总天数
+    @Value("${app.stats.recent-days:35}")
+    private int recentDays;
+
+    // 汇总表为空时从业务表回填的天数
+    @Value("${app.stats.backfill-days:220}")
+    private int backfillDays;
+
+    @Value("${app.stats.ranking-ttl-ms:60000}")
+    private long rankingTtlMs;
+
+    // 校准期间最多缓存多少个待回放事件，超出后放弃回放，等待下一次校准
+    @Value("${app.stats.max-replay-events:100000}")
+    private int maxReplayEvents;
+
+    private JdbcTemplate streamingJdbcTemplate;
+
+    private volatile Snapshot snapshot = new Snapshot();
+    private volatile boolean ready;
+    private volatile boolean rollupsInitialized;
+    private volatile boolean userTotalsDirty;
+
+    // 校准期间到达的视频保存/删除事件，新快照就绪后回放
+    private final Object replayLock = new Object();
+    private volatile boolean rebuilding;
+    private List<StatsEvent> replayBuffer = new ArrayList<>();
+    private boolean replayOverflow;
+    private final AtomicBoolean reconciling = new AtomicBoolean(false);
+
+    // 尚未写入汇总表的日增量
+    private final ConcurrentHashMap<RollupKey, RollupCounter> pendingRollups = new ConcurrentHashMap<>();
+    // 最近若干天的全站日汇总（已持久化 + 未写回），今日统计和增长趋势直接读取
+    private final ConcurrentHashMap<LocalDate, AtomicLongArray> recentDaily = new ConcurrentHashMap<>();
+
+    private volatile List<Map<String, Object>> cachedActiveUsers = Collections.emptyList();
+    private volatile int cachedActiveUsersLimit;
+    private volatile long cachedActiveUsersAt;
+
+    private final AtomicLong totalEvents = new AtomicLong();
+    private final AtomicLong totalRollupsFlushed = new AtomicLong();
+    private final AtomicLong failedRollupFlushes = new AtomicLong();
+    private volatile long lastReconcileMillis;
+    private volatile long lastReconcileDurationMs;
+
+    @PostConstruct
+    public void init() {
+        streamingJdbcTemplate = new JdbcTemplate(streamingDataSource);
+        streamingJdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    /**
+     * 应用启动完成后异步加载日汇总并构建快照
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Async
+    public void onApplicationReady() {
+        initializeRollups();
+        reconcile();
+    }
+
+    /**
+     * 后台定时校准
+     */
+    @Scheduled(initialDelayString = "${app.stats.reconcile-interval-ms:600000}",
+               fixedDelayString = "${app.stats.reconcile-interval-ms:600000}")
+    public void scheduledReconcile() {
+        reconcile();
+    }
+
+    /**
+     * 定时写回日汇总，并刷新用户状态类计数
+     */
+    @Scheduled(fixedDelayString = "${app.stats.flush-interval-ms:30000}")
+    public void scheduledFlush() {
+        if (userTotalsDirty && ready) {
+            refreshUserTotals();
+        }
+        flushRollups();
+    }
+
+    /**
+     * 关闭时写回剩余日增量
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        logger.info("应用关闭，写回未持久化的统计日汇总");
+        flushRollups();
+    }
+
+    // ==================== 事件处理 ====================
+
+    /**
+     * 领域事件入口：事务提交后执行，无事务时直接执行
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatsEvent(StatsEvent event) {
+        try {
+            totalEvents.incrementAndGet();
+            Snapshot target = snapshot;
+            if (rebuilding) {
+                synchronized (replayLock) {
+                    if (rebuilding && isStateEvent(event)) {
+                        bufferForReplay(event);
+                    }
+                    target = snapshot;
+                }
+            }
+            Long ownerId = applyToSnapshot(target, event);
+            recordDaily(event, ownerId);
+        } catch (Exception e) {
+            logger.warn("统计事件处理失败 [{}]: {}", event.getType(), e.getMessage());
+        }
+    }
+
+    /**
+     * 只有视频保存/删除是按最终状态覆盖的，重复应用结果不变，可以安全回放；
+     * 计数类事件无法判断是否已包含在聚合 SQL 的结果中，回放会重复计数，留给下一次校准修正
+     */
+    private static boolean isStateEvent(StatsEvent event) {
+        return event.getType() == StatsEvent.Type.VIDEO_SAVED || event.getType() == StatsEvent.Type.VIDEO_DELETED;
+    }
+
+    private void bufferForReplay(StatsEvent event) {
+        if (replayBuffer.size() < maxReplayEvents) {
+            replayBuffer.add(event);
+        } else {
+            replayOverflow = true;
+        }
+    }
+
+    /**
+     * 将事件应用到快照，返回事件涉及的视频作者（用于按作者的日汇总）
+     */
+    private Long applyToSnapshot(Snapshot s, StatsEvent event) {
+        switch (event.getType()) {
+            case VIDEO_SAVED:
+                return s.videoSaved(event.getVideoId(), event.getUserId(), event.getStatus(), event.getViews());
+            case VIDEO_DELETED:
+                return s.videoDeleted(event.getVideoId());
+            case VIDEO_VIEWED:
+                return s.videoViewed(event.getVideoId());
+            case USER_REGISTERED:
+                s.totalUsers.incrementAndGet();
+                s.activeUsers.incrementAndGet();
+                return null;
+            case USER_STATE_CHANGED:
+                userTotalsDirty = true;
+                return null;
+            case COMMENT_CREATED:
+                s.comments.increment();
+                s.adjustUser(event.getUserId(), SLOT_COMMENTS, 1);
+                return s.ownerOf(event.getVideoId());
+            case COMMENT_DELETED:
+                s.comments.decrement();
+                s.adjustUser(event.getUserId(), SLOT_COMMENTS, -1);
+                return s.ownerOf(event.getVideoId());
+            case VIDEO_LIKED:
+            case VIDEO_UNLIKED: {
+                long delta = event.getType() == StatsEvent.Type.VIDEO_LIKED ? 1 : -1;
+                Long ownerId = s.ownerOf(event.getVideoId());
+                s.likes.add(delta);
+                s.adjustUser(ownerId, SLOT_LIKES_RECEIVED, delta);
+                return ownerId;
+            }
+            case VIDEO_FAVORITED:
+            case VIDEO_UNFAVORITED: {
+                long delta = event.getType() == StatsEvent.Type.VIDEO_FAVORITED ? 1 : -1;
+                Long ownerId = s.ownerOf(event.getVideoId());
+                s.favorites.add(delta);
+                s.adjustUser(ownerId, SLOT_FAVORITES_RECEIVED, delta);
+                return ownerId;
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 日汇总只记录新增量，删除/取消不回退历史日期的数据
+     */
+    private void recordDaily(StatsEvent event, Long ownerId) {
+        Metric metric = event.dailyMetric();
+        if (metric == null) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        pendingRollups.computeIfAbsent(new RollupKey(today, metric, GLOBAL_OWNER), k -> new RollupCounter())
+                .adder.increment();
+        recentDaily.computeIfAbsent(today, d -> new AtomicLongArray(Metric.values().length))
+                .incrementAndGet(metric.ordinal());
+        if (metric.ownerScoped && ownerId != null && ownerId > 0) {
+            pendingRollups.computeIfAbsent(new RollupKey(today, metric, ownerId), k -> new RollupCounter())
+                    .adder.increment();
+        }
+    }
+
+    // ==================== 快照校准 ====================
+
+    /**
+     * 用聚合 SQL 重建快照；构建期间到达的视频保存/删除事件缓存下来，在替换时回放到新快照上。
+     * 构建期间的计数类事件只作用于旧快照，替换后丢失的增量（仅限这几秒内）由下一次校准补上
+     */
+    public void reconcile() {
+        if (!reconciling.compareAndSet(false, true)) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            // 先写回未持久化的播放量，使聚合结果包含它们
+            viewCounterService.flush();
+            synchronized (replayLock) {
+                replayBuffer = new ArrayList<>();
+                replayOverflow = false;
+                rebuilding = true;
+            }
+
+            Snapshot fresh = new Snapshot();
+            userTotalsDirty = false;
+            loadUserTotals(fresh);
+            loadVideos(fresh);
+            loadGrouped(fresh, "SELECT user_id, COUNT(*) FROM comments GROUP BY user_id",
+                    SLOT_COMMENTS, fresh.comments);
+            loadGrouped(fresh, "SELECT v.user_id, COUNT(*) FROM video_likes l JOIN videos v ON v.id = l.video_id GROUP BY v.user_id",
+                    SLOT_LIKES_RECEIVED, fresh.likes);
+            loadGrouped(fresh, "SELECT v.user_id, COUNT(*) FROM video_favorites f JOIN videos v ON v.id = f.video_id GROUP BY v.user_id",
+                    SLOT_FAVORITES_RECEIVED, fresh.favorites);
+
+            int replayed;
+            synchronized (replayLock) {
+                replayed = replayBuffer.size();
+                if (replayOverflow) {
+                    logger.warn("统计校准期间事件过多，放弃回放 {} 个事件，等待下次校准修正", replayed);
+                } else {
+                    for (StatsEvent event : replayBuffer) {
+                        applyToSnapshot(fresh, event);
+                    }
+                }
+                snapshot = fresh;
+                replayBuffer = new ArrayList<>();
+                rebuilding = false;
+            }
+            ready = true;
+            cachedActiveUsersAt = 0L;
+            lastReconcileMillis = System.currentTimeMillis();
+            lastReconcileDurationMs = lastReconcileMillis - startTime;
+            logger.info("统计快照校准完成: {} 个视频, {} 个用户计数, 回放 {} 个事件, 耗时 {}ms",
+                    fresh.videos.size(), fresh.userCounters.size(), replayed, lastReconcileDurationMs);
+        } catch (Exception e) {
+            synchronized (replayLock) {
+                replayBuffer = new ArrayList<>();
+                rebuilding = false;
+            }
+            logger.error("统计快照校准失败: {}", e.getMessage(), e);
+        } finally {
+            reconciling.set(false);
+        }
+    }
+
+    private void loadVideos(Snapshot s) {
+        streamingJdbcTemplate.query("SELECT id, user_id, status, COALESCE(views, 0) FROM videos", rs -> {
+            long videoId = rs.getLong(1);
+            long ownerId = rs.getLong(2);
+            Video.VideoStatus status = parseStatus(rs.getString(3));
+            long views = rs.getLong(4);
+            s.videos.put(videoId, new VideoState(ownerId, status, views));
+            s.statusTotals.incrementAndGet(status.ordinal());
+            s.views.add(views);
+            s.adjustUser(ownerId, status.ordinal(), 1);
+            s.adjustUser(ownerId, SLOT_VIEWS, views);
+        });
+    }
+
+    private void loadGrouped(Snapshot s, String sql, int slot, LongAdder total) {
+        jdbcTemplate.query(sql, rs -> {
+            long count = rs.getLong(2);
+            s.adjustUser(rs.getLong(1), slot, count);
+            total.add(count);
+        });
+    }
+
+    private void loadUserTotals(Snapshot s) {
+        long[] totals = queryUserTotals();
+        s.totalUsers.set(totals[0]);
+        s.activeUsers.set(totals[1]);
+        s.bannedUsers.set(totals[2]);
+    }
+
+    private long[] queryUserTotals() {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*), " +
+                "COALESCE(SUM(CASE WHEN enabled = 1 THEN 1 ELSE 0 END), 0), " +
+                "COALESCE(SUM(CASE WHEN banned = 1 THEN 1 ELSE 0 END), 0) FROM users",
+                (rs, rowNum) -> new long[] { rs.getLong(1), rs.getLong(2), rs.getLong(3) });
+    }
+
+    /**
+     * 封禁/解封/注销较少发生，只标记后在写回周期里重新计数
+     */
+    private void refreshUserTotals() {
+        try {
+            userTotalsDirty = false;
+            loadUserTotals(snapshot);
+        } catch (Exception e) {
+            userTotalsDirty = true;
+            logger.warn("刷新用户计数失败: {}", e.getMessage());
+        }
+    }
+
+    // ==================== 日汇总 ====================
+
+    /**
+     * 汇总表为空时从业务表回填，然后加载最近若干天的全站汇总到内存
+     */
+    private void initializeRollups() {
+        try {
+            Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stats_daily_rollup", Long.class);
+            if (rows == null || rows == 0) {
+                backfillRollups();
+            }
+            LocalDate from = LocalDate.now().minusDays(recentDays - 1L);
+            jdbcTemplate.query(
+                    "SELECT stat_date, metric, metric_value FROM stats_daily_rollup WHERE owner_id = 0 AND stat_date >= ?",
+                    rs -> {
+                        Metric metric = parseMetric(rs.getString(2));
+                        if (metric != null) {
+                            recentDaily.computeIfAbsent(rs.getDate(1).toLocalDate(),
+                                    d -> new AtomicLongArray(Metric.values().length))
+                                    .addAndGet(metric.ordinal(), rs.getLong(3));
+                        }
+                    }, Date.valueOf(from));
+        } catch (Exception e) {
+            logger.error("加载统计日汇总失败: {}", e.getMessage(), e);
+        } finally {
+            rollupsInitialized = true;
+        }
+    }
+
+    /**
+     * 观看量没有逐条的历史记录，不回填，从启用汇总起开始累计
+     */
+    private void backfillRollups() {
+        long startTime = System.currentTimeMillis();
+        Date from = Date.valueOf(LocalDate.now().minusDays(backfillDays));
+        backfill(Metric.VIDEOS, "videos t", false, from);
+        backfill(Metric.USERS, "users t", false, from);
+        backfill(Metric.COMMENTS, "comments t", false, from);
+        backfill(Metric.LIKES, "video_likes t", false, from);
+        backfill(Metric.FAVORITES, "video_favorites t", false, from);
+        backfill(Metric.COMMENTS, "comments t JOIN videos v ON v.id = t.video_id", true, from);
+        backfill(Metric.LIKES, "video_likes t JOIN videos v ON v.id = t.video_id", true, from);
+        backfill(Metric.FAVORITES, "video_favorites t JOIN videos v ON v.id = t.video_id", true, from);
+        logger.info("统计日汇总回填完成: 最近 {} 天, 耗时 {}ms", backfillDays, System.currentTimeMillis() - startTime);
+    }
+
+    private void backfill(Metric metric, String from, boolean byOwner, Date since) {
+        String owner = byOwner ? "v.user_id" : "0";
+        String sql = "INSERT INTO stats_daily_rollup (stat_date, metric, owner_id, metric_value) " +
+                "SELECT DATE(t.created_at), '" + metric.name() + "', " + owner + ", COUNT(*) FROM " + from +
+                " WHERE t.created_at >= ? GROUP BY DATE(t.created_at)" + (byOwner ? ", v.user_id" : "");
+        jdbcTemplate.update(sql, since);
+    }
+
+    /**
+     * 批量写回日增量；只有写成功才推进已写回基线，失败的增量在下个周期重试
+     */
+    public synchronized void flushRollups() {
+        if (!rollupsInitialized) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        List<Object[]> batchArgs = new ArrayList<>();
+        Map<RollupCounter, Long> batchDeltas = new HashMap<>();
+
+        Iterator<Map.Entry<RollupKey, RollupCounter>> iterator = pendingRollups.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<RollupKey, RollupCounter> entry = iterator.next();
+            RollupKey key = entry.getKey();
+            RollupCounter counter = entry.getValue();
+            long delta = counter.pending();
+            if (delta == 0) {
+                // 过去日期的条目不会再增长，写完即移除；移除后再检查一次并发写入的残余
+                if (key.date.isBefore(today) && pendingRollups.remove(key, counter)) {
+                    delta = counter.pending();
+                }
+                if (delta == 0) {
+                    continue;
+                }
+            }
+            batchArgs.add(new Object[] { Date.valueOf(key.date), key.metric.name(), key.ownerId, delta });
+            batchDeltas.put(counter, delta);
+            if (batchArgs.size() >= batchSize) {
+                writeRollupBatch(batchArgs, batchDeltas);
+                batchArgs = new ArrayList<>();
+                batchDeltas = new HashMap<>();
+            }
+        }
+        if (!batchArgs.isEmpty()) {
+            writeRollupBatch(batchArgs, batchDeltas);
+        }
+
+        LocalDate oldest = today.minusDays(recentDays - 1L);
+        recentDaily.keySet().removeIf(date -> date.isBefore(oldest));
+    }
+
+    private void writeRollupBatch(List<Object[]> batchArgs, Map<RollupCounter, Long> batchDeltas) {
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_ROLLUP_SQL, batchArgs);
+            for (Map.Entry<RollupCounter, Long> entry : batchDeltas.entrySet()) {
+                entry.getKey().flushed += entry.getValue();
+            }
+            totalRollupsFlushed.addAndGet(batchArgs.size());
+        } catch (Exception e) {
+            failedRollupFlushes.incrementAndGet();
+            logger.error("统计日汇总写回失败, {} 条将在下个周期重试: {}", batchArgs.size(), e.getMessage());
+        }
+    }
+
+    // ==================== 查询 ====================
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 全站统计
+     */
+    public Map<String, Object> getSystemStatistics() {
+        if (!ready) {
+            return getSystemStatisticsFromDatabase();
+        }
+        Snapshot s = snapshot;
+        Map<String, Object> stats = new HashMap<>();
+        long totalVideos = 0;
+        for (Video.VideoStatus status : Video.VideoStatus.values()) {
+            totalVideos += s.statusTotals.get(status.ordinal());
+        }
+        stats.put("totalVideos", totalVideos);
+        stats.put("approvedVideos", s.statusTotals.get(Video.VideoStatus.APPROVED.ordinal()));
+        stats.put("pendingVideos", s.statusTotals.get(Video.VideoStatus.PENDING.ordinal()));
+        stats.put("bannedVideos", s.statusTotals.get(Video.VideoStatus.BANNED.ordinal()));
+        stats.put("rejectedVideos", s.statusTotals.get(Video.VideoStatus.REJECTED.ordinal()));
+        stats.put("totalUsers", s.totalUsers.get());
+        stats.put("activeUsers", s.activeUsers.get());
+        stats.put("bannedUsers", s.bannedUsers.get());
+        stats.put("totalComments", s.comments.sum());
+        stats.put("totalViews", s.views.sum());
+        stats.put("totalLikes", s.likes.sum());
+        stats.put("totalFavorites", s.favorites.sum());
+        return stats;
+    }
+
+    /**
+     * 快照尚未就绪时的回退：只用聚合查询，不加载实体
+     */
+    private Map<String, Object> getSystemStatisticsFromDatabase() {
+        Map<String, Object> stats = new HashMap<>();
+        long[] byStatus = new long[STATUS_SLOTS];
+        long[] views = new long[1];
+        jdbcTemplate.query("SELECT status, COUNT(*), COALESCE(SUM(views), 0) FROM videos GROUP BY status", rs -> {
+            byStatus[parseStatus(rs.getString(1)).ordinal()] += rs.getLong(2);
+            views[0] += rs.getLong(3);
+        });
+        long totalVideos = 0;
+        for (long count : byStatus) {
+            totalVideos += count;
+        }
+        long[] userTotals = queryUserTotals();
+        stats.put("totalVideos", totalVideos);
+        stats.put("approvedVideos", byStatus[Video.VideoStatus.APPROVED.ordinal()]);
+        stats.put("pendingVideos", byStatus[Video.VideoStatus.PENDING.ordinal()]);
+        stats.put("bannedVideos", byStatus[Video.VideoStatus.BANNED.ordinal()]);
+        stats.put("rejectedVideos", byStatus[Video.VideoStatus.REJECTED.ordinal()]);
+        stats.put("totalUsers", userTotals[0]);
+        stats.put("activeUsers", userTotals[1]);
+        stats.put("bannedUsers", userTotals[2]);
+        stats.put("totalComments", queryCount("SELECT COUNT(*) FROM comments"));
+        stats.put("totalViews", views[0]);
+        stats.put("totalLikes", queryCount("SELECT COUNT(*) FROM video_likes"));
+        stats.put("totalFavorites", queryCount("SELECT COUNT(*) FROM video_favorites"));
+        return stats;
+    }
+
+    /**
+     * 视频状态分布
+     */
+    public Map<String, Long> getVideoStatusDistribution() {
+        Map<String, Object> system = getSystemStatistics();
+        Map<String, Long> distribution = new HashMap<>();
+        distribution.put("APPROVED", (Long) system.get("approvedVideos"));
+        distribution.put("PENDING", (Long) system.get("pendingVideos"));
+        distribution.put("REJECTED", (Long) system.get("rejectedVideos"));
+        distribution.put("BANNED", (Long) system.get("bannedVideos"));
+        return distribution;
+    }
+
+    /**
+     * 今日新增
+     */
+    public Map<String, Object> getTodayStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("todayVideos", getDaily(LocalDate.now(), Metric.VIDEOS));
+        stats.put("todayUsers", getDaily(LocalDate.now(), Metric.USERS));
+        stats.put("todayComments", getDaily(LocalDate.now(), Metric.COMMENTS));
+        stats.put("todayViews", getDaily(LocalDate.now(), Metric.VIEWS));
+        stats.put("todayLikes", getDaily(LocalDate.now(), Metric.LIKES));
+        return stats;
+    }
+
+    /**
+     * 最近若干天某项指标的全站日新增，按日期升序
+     */
+    public Map<String, Long> getDailyTrend(Metric metric, int days) {
+        Map<String, Long> trend = new LinkedHashMap<>();
+        LocalDate today = LocalDate.now();
+        for (int i = days - 1; i >= 0; i--) {
+            LocalDate date = today.minusDays(i);
+            trend.put(date.toString(), getDaily(date, metric));
+        }
+        return trend;
+    }
+
+    public long getDaily(LocalDate date, Metric metric) {
+        AtomicLongArray values = recentDaily.get(date);
+        return values != null ? values.get(metric.ordinal()) : 0L;
+    }
+
+    /**
+     * 用户个人统计
+     */
+    public Map<String, Object> getUserStatistics(Long userId) {
+        long[] counters = ready ? snapshotCounters(userId) : loadUserCountersFromDatabase(userId);
+        Map<String, Object> stats = new HashMap<>();
+        long totalVideos = 0;
+        for (int i = 0; i < STATUS_SLOTS; i++) {
+            totalVideos += counters[i];
+        }
+        stats.put("totalVideos", totalVideos);
+        stats.put("approvedVideos", counters[Video.VideoStatus.APPROVED.ordinal()]);
+        stats.put("pendingVideos", counters[Video.VideoStatus.PENDING.ordinal()]);
+        stats.put("rejectedVideos", counters[Video.VideoStatus.REJECTED.ordinal()]);
+        stats.put("bannedVideos", counters[Video.VideoStatus.BANNED.ordinal()]);
+        stats.put("totalViews", counters[SLOT_VIEWS]);
+        stats.put("totalComments", counters[SLOT_COMMENTS]);
+        stats.put("totalLikesReceived", counters[SLOT_LIKES_RECEIVED]);
+        stats.put("totalFavorites", counters[SLOT_FAVORITES_RECEIVED]);
+        return stats;
+    }
+
+    private long[] snapshotCounters(Long userId) {
+        long[] counters = new long[USER_SLOTS];
+        AtomicLongArray values = userId != null ? snapshot.userCounters.get(userId) : null;
+        if (values != null) {
+            for (int i = 0; i < USER_SLOTS; i++) {
+                counters[i] = values.get(i);
+            }
+        }
+        return counters;
+    }
+
+    private long[] loadUserCountersFromDatabase(Long userId) {
+        long[] counters = new long[USER_SLOTS];
+        if (userId == null) {
+            return counters;
+        }
+        jdbcTemplate.query("SELECT status, COUNT(*), COALESCE(SUM(views), 0) FROM videos WHERE user_id = ? GROUP BY status", rs -> {
+            counters[parseStatus(rs.getString(1)).ordinal()] += rs.getLong(2);
+            counters[SLOT_VIEWS] += rs.getLong(3);
+        }, userId);
+        counters[SLOT_COMMENTS] = queryCount("SELECT COUNT(*) FROM comments WHERE user_id = ?", userId);
+        counters[SLOT_LIKES_RECEIVED] = queryCount(
+                "SELECT COUNT(*) FROM video_likes l JOIN videos v ON v.id = l.video_id WHERE v.user_id = ?", userId);
+        counters[SLOT_FAVORITES_RECEIVED] = queryCount(
+                "SELECT COUNT(*) FROM video_favorites f JOIN videos v ON v.id = f.video_id WHERE v.user_id = ?", userId);
+        return counters;
+    }
+
+    /**
+     * 作者名下视频的月度观看/点赞/评论趋势（最近 months 个月，含本月），
+     * 来自按作者的日汇总，最多滞后一个写回周期
+     */
+    public Map<String, Object> getUserTrendData(Long userId, int months) {
+        LocalDate firstMonth = LocalDate.now().withDayOfMonth(1).minusMonths(months - 1L);
+        Map<String, long[]> byMonth = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT YEAR(stat_date), MONTH(stat_date), metric, SUM(metric_value) FROM stats_daily_rollup " +
+                "WHERE owner_id = ? AND stat_date >= ? AND metric IN ('VIEWS', 'LIKES', 'COMMENTS') " +
+                "GROUP BY YEAR(stat_date), MONTH(stat_date), metric",
+                rs -> {
+                    Metric metric = parseMetric(rs.getString(3));
+                    if (metric != null) {
+                        byMonth.computeIfAbsent(rs.getInt(1) + "-" + rs.getInt(2), k -> new long[Metric.values().length])
+                                [metric.ordinal()] += rs.getLong(4);
+                    }
+                }, userId, Date.valueOf(firstMonth));
+
+        List<String> labels = new ArrayList<>();
+        List<Long> viewsData = new ArrayList<>();
+        List<Long> likesData = new ArrayList<>();
+        List<Long> commentsData = new ArrayList<>();
+        for (int i = 0; i < months; i++) {
+            LocalDate month = firstMonth.plusMonths(i);
+            long[] values = byMonth.getOrDefault(month.getYear() + "-" + month.getMonthValue(),
+                    new long[Metric.values().length]);
+            labels.add(month.getMonthValue() + "月");
+            viewsData.add(values[Metric.VIEWS.ordinal()]);
+            likesData.add(values[Metric.LIKES.ordinal()]);
+            commentsData.add(values[Metric.COMMENTS.ordinal()]);
+        }
+
+        Map<String, Object> trendData = new HashMap<>();
+        trendData.put("labels", labels);
+        trendData.put("viewsData", viewsData);
+        trendData.put("likesData", likesData);
+        trendData.put("commentsData", commentsData);
+        return trendData;
+    }
+
+    /**
+     * 按作品总观看量排序的活跃用户，结果缓存 ranking-ttl-ms
+     */
+    public List<Map<String, Object>> getActiveUserStatistics(int limit) {
+        if (!ready || limit <= 0) {
+            return Collections.emptyList();
+        }
+        long now = System.currentTimeMillis();
+        if (limit <= cachedActiveUsersLimit && now - cachedActiveUsersAt < rankingTtlMs) {
+            List<Map<String, Object>> cached = cachedActiveUsers;
+            return cached.subList(0, Math.min(limit, cached.size()));
+        }
+
+        // 多取一些候选，过滤掉被封禁/停用的用户后仍能凑够
+        Snapshot s = snapshot;
+        int candidates = limit * 3;
+        PriorityQueue<Map.Entry<Long, AtomicLongArray>> heap = new PriorityQueue<>(
+                (a, b) -> Long.compare(a.getValue().get(SLOT_VIEWS), b.getValue().get(SLOT_VIEWS)));
+        for (Map.Entry<Long, AtomicLongArray> entry : s.userCounters.entrySet()) {
+            heap.offer(entry);
+            if (heap.size() > candidates) {
+                heap.poll();
+            }
+        }
+        Map<Long, long[]> candidateCounters = new HashMap<>();
+        for (Map.Entry<Long, AtomicLongArray> entry : heap) {
+            candidateCounters.put(entry.getKey(), snapshotCounters(entry.getKey()));
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (User user : userRepository.findAllById(candidateCounters.keySet())) {
+            if (!user.isEnabled() || user.isBanned()) {
+                continue;
+            }
+            long[] counters = candidateCounters.get(user.getId());
+            long videoCount = 0;
+            for (int i = 0; i < STATUS_SLOTS; i++) {
+                videoCount += counters[i];
+            }
+            Map<String, Object> userStats = new HashMap<>();
+            userStats.put("id", user.getId());
+            userStats.put("username", user.getUsername());
+            userStats.put("videoCount", videoCount);
+            userStats.put("totalViews", counters[SLOT_VIEWS]);
+            userStats.put("commentCount", counters[SLOT_COMMENTS]);
+            result.add(userStats);
+        }
+        result.sort((a, b) -> Long.compare((Long) b.get("totalViews"), (Long) a.get("totalViews")));
+        List<Map<String, Object>> top = Collections.unmodifiableList(
+                new ArrayList<>(result.subList(0, Math.min(limit, result.size()))));
+
+        cachedActiveUsers = top;
+        cachedActiveUsersLimit = limit;
+        cachedActiveUsersAt = now;
+        return top;
+    }
+
+    /**
+     * 聚合服务运行状态
+     */
+    public Map<String, Object> getStats() {
+        Snapshot s = snapshot;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("ready", ready);
+        stats.put("trackedVideos", s.videos.size());
+        stats.put("trackedUsers", s.userCounters.size());
+        stats.put("pendingRollups", pendingRollups.size());
+        stats.put("totalEvents", totalEvents.get());
+        stats.put("totalRollupsFlushed", totalRollupsFlushed.get());
+        stats.put("failedRollupFlushes", failedRollupFlushes.get());
+        stats.put("lastReconcileMillis", lastReconcileMillis);
+        stats.put("lastReconcileDurationMs", lastReconcileDurationMs);
+        return stats;
+    }
+
+    private long queryCount(String sql, Object... args) {
+        Long count = jdbcTemplate.queryForObject(sql, Long.class, args);
+        return count != null ? count : 0L;
+    }
+
+    private static Video.VideoStatus parseStatus(String value) {
+        if (value != null) {
+            try {
+                return Video.VideoStatus.valueOf(value);
+            } catch (IllegalArgumentException ignored) {
+                // 未知状态按待审核处理
+            }
+        }
+        return Video.VideoStatus.PENDING;
+    }
+
+    private static Metric parseMetric(String value) {
+        try {
+            return Metric.valueOf(value);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // ==================== 内部结构 ====================
+
+    /**
+     * 内存快照：视频状态表 + 按用户计数 + 全站计数
+     */
+    private static final class Snapshot {
+        final ConcurrentHashMap<Long, VideoState> videos = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Long, AtomicLongArray> userCounters = new ConcurrentHashMap<>();
+        final AtomicLongArray statusTotals = new AtomicLongArray(STATUS_SLOTS);
+        final LongAdder views = new LongAdder();
+        final LongAdder comments = new LongAdder();
+        final LongAdder likes = new LongAdder();
+        final LongAdder favorites = new LongAdder();
+        final AtomicLong totalUsers = new AtomicLong();
+        final AtomicLong activeUsers = new AtomicLong();
+        final AtomicLong bannedUsers = new AtomicLong();
+
+        void adjustUser(Long userId, int slot, long delta) {
+            if (userId == null || userId <= 0 || delta == 0) {
+                return;
+            }
+            userCounters.computeIfAbsent(userId, k -> new AtomicLongArray(USER_SLOTS)).addAndGet(slot, delta);
+        }
+
+        Long ownerOf(Long videoId) {
+            VideoState state = videoId != null ? videos.get(videoId) : null;
+            return state != null ? state.ownerId : null;
+        }
+
+        /**
+         * 新视频计入；已知视频只处理审核状态变化，因此重复回放是幂等的
+         */
+        Long videoSaved(Long videoId, Long ownerId, Video.VideoStatus status, long persistedViews) {
+            if (videoId == null) {
+                return ownerId;
+            }
+            Video.VideoStatus newStatus = status != null ? status : Video.VideoStatus.PENDING;
+            VideoState state = videos.compute(videoId, (id, existing) -> {
+                if (existing == null) {
+                    long owner = ownerId != null ? ownerId : 0L;
+                    statusTotals.incrementAndGet(newStatus.ordinal());
+                    views.add(persistedViews);
+                    adjustUser(owner, newStatus.ordinal(), 1);
+                    adjustUser(owner, SLOT_VIEWS, persistedViews);
+                    return new VideoState(owner, newStatus, persistedViews);
+                }
+                if (existing.status != newStatus) {
+                    statusTotals.decrementAndGet(existing.status.ordinal());
+                    statusTotals.incrementAndGet(newStatus.ordinal());
+                    adjustUser(existing.ownerId, existing.status.ordinal(), -1);
+                    adjustUser(existing.ownerId, newStatus.ordinal(), 1);
+                    existing.status = newStatus;
+                }
+                return existing;
+            });
+            return state.ownerId;
+        }
+
+        Long videoDeleted(Long videoId) {
+            VideoState state = videoId != null ? videos.remove(videoId) : null;
+            if (state == null) {
+                return null;
+            }
+            long videoViews = state.views.get();
+            statusTotals.decrementAndGet(state.status.ordinal());
+            views.add(-videoViews);
+            adjustUser(state.ownerId, state.status.ordinal(), -1);
+            adjustUser(state.ownerId, SLOT_VIEWS, -videoViews);
+            return state.ownerId;
+        }
+
+        Long videoViewed(Long videoId) {
+            views.increment();
+            VideoState state = videoId != null ? videos.get(videoId) : null;
+            if (state == null) {
+                return null;
+            }
+            state.views.incrementAndGet();
+            adjustUser(state.ownerId, SLOT_VIEWS, 1);
+            return state.ownerId;
+        }
+    }
+
+    /**
+     * 单个视频的归属、审核状态和观看量；status 只在 videos.compute 内修改
+     */
+    private static final class VideoState {
+        final long ownerId;
+        volatile Video.VideoStatus status;
+        final AtomicLong views;
+
+        VideoState(long ownerId, Video.VideoStatus status, long views) {
+            this.ownerId = ownerId;
+            this.status = status;
+            this.views = new AtomicLong(views);
+        }
+    }
+
+    private static final class RollupKey {
+        final LocalDate date;
+        final Metric metric;
+        final long ownerId;
+
+        RollupKey(LocalDate date, Metric metric, long ownerId) {
+            this.date = date;
+            this.metric = metric;
+            this.ownerId = ownerId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RollupKey)) {
+                return false;
+            }
+            RollupKey other = (RollupKey) o;
+            return ownerId == other.ownerId && metric == other.metric && date.equals(other.date);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(date, metric, ownerId);
+        }
+    }
+
+    /**
+     * 日增量计数：adder 只增不减，flushed 为已写回的基线（仅由写回线程修改）
+     */
+    private static final class RollupCounter {
+        final LongAdder adder = new LongAdder();
+        volatile long flushed;
+
+        long pending() {
+            return adder.sum() - flushed;
+        }
+    }
+
+    // ==================== 领域事件 ====================
+
+    /**
+     * 统计相关的领域事件，由业务服务在写操作后发布
+     */
+    public static class StatsEvent {
+
+        public enum Type {
+            VIDEO_SAVED, VIDEO_DELETED, VIDEO_VIEWED,
+            USER_REGISTERED, USER_STATE_CHANGED,
+            COMMENT_CREATED, COMMENT_DELETED,
+            VIDEO_LIKED, VIDEO_UNLIKED,
+            VIDEO_FAVORITED, VIDEO_UNFAVORITED
+        }
+
+        private final Type type;
+        private final Long videoId;
+        // 视频事件为作者，其余为操作者
+        private final Long userId;
+        private final Video.VideoStatus status;
+        private final long views;
+        private final boolean created;
+
+        private StatsEvent(Type type, Long videoId, Long userId, Video.VideoStatus status, long views, boolean created) {
+            this.type = type;
+            this.videoId = videoId;
+            this.userId = userId;
+            this.status = status;
+            this.views = views;
+            this.created = created;
+        }
+
+        private StatsEvent(Type type, Long videoId, Long userId) {
+            this(type, videoId, userId, null, 0L, false);
+        }
+
+        public static StatsEvent videoSaved(Video video, boolean created) {
+            return new StatsEvent(Type.VIDEO_SAVED, video.getId(), video.getUserId(), video.getStatus(),
+                    video.getViews() != null ? video.getViews() : 0L, created);
+        }
+
+        public static StatsEvent videoDeleted(Long videoId) {
+            return new StatsEvent(Type.VIDEO_DELETED, videoId, null);
+        }
+
+        public static StatsEvent videoViewed(Long videoId) {
+            return new StatsEvent(Type.VIDEO_VIEWED, videoId, null);
+        }
+
+        public static StatsEvent userRegistered(Long userId) {
+            return new StatsEvent(Type.USER_REGISTERED, null, userId);
+        }
+
+        public static StatsEvent userStateChanged(Long userId) {
+            return new StatsEvent(Type.USER_STATE_CHANGED, null, userId);
+        }
+
+        public static StatsEvent commentCreated(Long userId, Long videoId) {
+            return new StatsEvent(Type.COMMENT_CREATED, videoId, userId);
+        }
+
+        public static StatsEvent commentDeleted(Long userId, Long videoId) {
+            return new StatsEvent(Type.COMMENT_DELETED, videoId, userId);
+        }
+
+        public static StatsEvent videoLiked(Long userId, Long videoId) {
+            return new StatsEvent(Type.VIDEO_LIKED, videoId, userId);
+        }
+
+        public static StatsEvent videoUnliked(Long userId, Long videoId) {
+            return new StatsEvent(Type.VIDEO_UNLIKED, videoId, userId);
+        }
+
+        public static StatsEvent videoFavorited(Long userId, Long videoId) {
+            return new StatsEvent(Type.VIDEO_FAVORITED, videoId, userId);
+        }
+
+        public static StatsEvent videoUnfavorited(Long userId, Long videoId) {
+            return new StatsEvent(Type.VIDEO_UNFAVORITED, videoId, userId);
+        }
+
+        /**
+         * 计入日汇总的指标，不计入时返回 null
+         */
+        Metric dailyMetric() {
+            switch (type) {
+                case VIDEO_SAVED: return created ? Metric.VIDEOS : null;
+                case VIDEO_VIEWED: return Metric.VIEWS;
+                case USER_REGISTERED: return Metric.USERS;
+                case COMMENT_CREATED: return Metric.COMMENTS;
+                case VIDEO_LIKED: return Metric.LIKES;
+                case VIDEO_FAVORITED: return Metric.FAVORITES;
+                default: return null;
+            }
+        }
+
+        public Type getType() { return type; }
+        public Long getVideoId() { return videoId; }
+        public Long getUserId() { return userId; }
+        public Video.VideoStatus getStatus() { return status; }
+        public long getViews() { return views; }
+        public boolean isCreated() { return created; }
+    }
+}
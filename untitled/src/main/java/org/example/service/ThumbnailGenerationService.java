@@ -1,29 +1,116 @@
 package org.example.service;
 
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.annotation.PostConstruct;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.imageio.ImageIO;
 
 /**
  * 缩略图生成服务
+ * 上传时先同步生成占位缩略图；视频文件在后台用 JavaCV 抽帧，选取画面信息量最大的候选帧作为封面，
+ * 并按固定间隔截取画面拼成雪碧图，生成 WebVTT 索引供播放器拖动预览。
+ * 抽帧任务运行在 fileTaskExecutor 上，同时执行的数量受 app.thumbnail.max-concurrent 限制，
+ * 提交时不占用执行器的调用方线程（执行器队列满时留在本地队列，由定时任务继续提交）。
  */
 @Service
 @Transactional(readOnly = false)
 public class ThumbnailGenerationService {
 
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailGenerationService.class);
+
+    private static final String DEFAULT_THUMBNAIL = "/images/default-thumbnail.jpg";
+
+    private static final String REPLACE_THUMBNAIL_SQL =
+            "UPDATE videos SET thumbnail = ? WHERE id = ? AND thumbnail = ?";
+
+    private static final String PREVIEW_SQL = "UPDATE videos SET preview_vtt = ? WHERE id = ?";
+
+    // 候选封面帧在视频中的位置
+    private static final double[] KEYFRAME_CANDIDATES = {0.1, 0.25, 0.4, 0.55, 0.7};
+
     @Value("${app.upload.path:./uploads}")
     private String uploadPath;
 
+    @Value("${app.thumbnail.max-concurrent:2}")
+    private int maxConcurrent;
+
+    // 等待抽帧的视频上限，超出时保留占位缩略图
+    @Value("${app.thumbnail.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${app.thumbnail.width:640}")
+    private int thumbnailWidth;
+
+    @Value("${app.thumbnail.sprite-interval-seconds:10}")
+    private int spriteIntervalSeconds;
+
+    @Value("${app.thumbnail.sprite-max-tiles:100}")
+    private int spriteMaxTiles;
+
+    @Value("${app.thumbnail.sprite-columns:10}")
+    private int spriteColumns;
+
+    @Value("${app.thumbnail.sprite-tile-width:160}")
+    private int spriteTileWidth;
+
+    @Autowired
+    @Qualifier("fileTaskExecutor")
+    private ThreadPoolTaskExecutor fileTaskExecutor;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FileUploadService fileUploadService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private Semaphore permits;
+    private final Queue<ExtractionTask> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final AtomicLong extracted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong extractMillis = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrent);
+    }
+
     /**
      * 为视频生成默认缩略图
      */
@@ -45,17 +132,280 @@ public class ThumbnailGenerationService {
 
             return "/uploads/thumbnails/" + fileName;
         } catch (Exception e) {
-            System.err.println("生成缩略图失败: " + e.getMessage());
+            logger.warn("生成缩略图失败: {}", e.getMessage());
+            return DEFAULT_THUMBNAIL;
+        }
+    }
+
+    /**
+     * 提交后台抽帧任务，立即返回
+     * placeholderThumbnail 为上传时生成的占位缩略图，抽帧成功后仅在视频仍使用它时替换为真实画面；
+     * 为空表示用户提供了缩略图，只生成拖动预览
+     */
+    public boolean scheduleFrameExtraction(Long videoId, String videoPath, String placeholderThumbnail) {
+        if (pendingCount.incrementAndGet() > queueCapacity) {
+            pendingCount.decrementAndGet();
+            dropped.incrementAndGet();
+            logger.warn("抽帧队列已满，视频 {} 保留占位缩略图", videoId);
+            return false;
+        }
+        pending.add(new ExtractionTask(videoId, videoPath, placeholderThumbnail));
+        drain();
+        return true;
+    }
+
+    /**
+     * 执行器队列满时未能提交的任务由这里继续提交
+     */
+    @Scheduled(fixedDelayString = "${app.thumbnail.drain-interval-ms:5000}")
+    public void drainPending() {
+        drain();
+    }
+
+    /**
+     * 在并发上限内把任务交给 fileTaskExecutor；只在执行器队列有空位时提交，
+     * 避免触发 CallerRunsPolicy 在上传请求线程上抽帧
+     */
+    private void drain() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            if (fileTaskExecutor.getThreadPoolExecutor().getQueue().remainingCapacity() == 0) {
+                permits.release();
+                return;
+            }
+            ExtractionTask task = pending.poll();
+            if (task == null) {
+                permits.release();
+                return;
+            }
+            pendingCount.decrementAndGet();
+            try {
+                fileTaskExecutor.execute(() -> {
+                    try {
+                        extract(task);
+                    } finally {
+                        permits.release();
+                        drain();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                pendingCount.incrementAndGet();
+                pending.add(task);
+                return;
+            }
+        }
+    }
+
+    private void extract(ExtractionTask task) {
+        Path videoPath = fileUploadService.resolveWebPath(task.videoPath);
+        File videoFile = videoPath != null ? videoPath.toFile() : null;
+        if (videoFile == null || !videoFile.isFile()) {
+            logger.debug("视频文件不在本地，跳过抽帧: {}", task.videoPath);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(videoFile);
+             Java2DFrameConverter converter = new Java2DFrameConverter()) {
+            grabber.start();
+            long durationMicros = Math.max(0, grabber.getLengthInTime());
+            int sourceWidth = grabber.getImageWidth();
+            int sourceHeight = grabber.getImageHeight();
+            if (sourceWidth <= 0 || sourceHeight <= 0) {
+                logger.debug("视频没有画面，跳过抽帧: {}", task.videoPath);
+                return;
+            }
+
+            if (task.placeholderThumbnail != null) {
+                BufferedImage keyframe = pickKeyframe(grabber, converter, durationMicros);
+                if (keyframe != null) {
+                    String thumbnail = writeImage(keyframe, "thumbnails", UUID.randomUUID() + ".jpg");
+                    int updated = jdbcTemplate.update(REPLACE_THUMBNAIL_SQL, thumbnail, task.videoId,
+                            task.placeholderThumbnail);
+                    if (updated > 0) {
+                        deletePlaceholder(task.placeholderThumbnail);
+                    }
+                }
+            }
+
+            if (durationMicros > 0) {
+                String vtt = writePreviewSprite(grabber, converter, task.videoId, durationMicros, sourceWidth, sourceHeight);
+                if (vtt != null) {
+                    jdbcTemplate.update(PREVIEW_SQL, vtt, task.videoId);
+                }
+            }
+
+            evictVideoCaches();
+            extracted.incrementAndGet();
+            long elapsed = System.currentTimeMillis() - start;
+            extractMillis.addAndGet(elapsed);
+            logger.info("视频 {} 抽帧完成，耗时 {}ms", task.videoId, elapsed);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            logger.warn("视频 {} 抽帧失败: {}", task.videoId, e.getMessage());
+        }
+    }
+
+    /**
+     * 在几个候选位置取帧，选择亮度方差最大（非黑屏、非纯色）的一帧
+     */
+    private BufferedImage pickKeyframe(FFmpegFrameGrabber grabber, Java2DFrameConverter converter,
+                                       long durationMicros) throws IOException {
+        BufferedImage best = null;
+        double bestScore = -1;
+        double[] positions = durationMicros > 0 ? KEYFRAME_CANDIDATES : new double[]{0};
+        for (double position : positions) {
+            grabber.setTimestamp((long) (durationMicros * position));
+            Frame frame = grabber.grabImage();
+            if (frame == null) {
+                continue;
+            }
+            // 转换器复用缓冲区，需在下一次抓帧前缩放拷贝出来
+            BufferedImage candidate = scale(converter.convert(frame), thumbnailWidth);
+            double score = luminanceVariance(candidate);
+            if (score > bestScore) {
+                best = candidate;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 生成拖动预览雪碧图和 WebVTT 索引，返回 VTT 地址
+     */
+    private String writePreviewSprite(FFmpegFrameGrabber grabber, Java2DFrameConverter converter, Long videoId,
+                                      long durationMicros, int sourceWidth, int sourceHeight) throws IOException {
+        double durationSeconds = durationMicros / 1_000_000.0;
+        // 长视频拉大间隔，保证图块数不超过上限
+        int interval = (int) Math.max(spriteIntervalSeconds, Math.ceil(durationSeconds / spriteMaxTiles));
+        int tiles = (int) Math.min(spriteMaxTiles, Math.ceil(durationSeconds / interval));
+        if (tiles <= 0) {
+            return null;
+        }
+        int tileWidth = spriteTileWidth;
+        int tileHeight = Math.max(1, sourceHeight * tileWidth / sourceWidth);
+        int columns = Math.min(spriteColumns, tiles);
+        int rows = (tiles + columns - 1) / columns;
+
+        BufferedImage sprite = new BufferedImage(columns * tileWidth, rows * tileHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = sprite.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        String baseName = videoId + "-" + UUID.randomUUID().toString().substring(0, 8);
+        String spriteUrl = "/uploads/thumbnails/sprites/" + baseName + ".jpg";
+        StringBuilder vtt = new StringBuilder("WEBVTT\n\n");
+        for (int i = 0; i < tiles; i++) {
+            double cueStart = (double) i * interval;
+            double cueEnd = Math.min(durationSeconds, cueStart + interval);
+            // 取每段中间的画面
+            grabber.setTimestamp((long) ((cueStart + cueEnd) / 2 * 1_000_000));
+            Frame frame = grabber.grabImage();
+            int x = (i % columns) * tileWidth;
+            int y = (i / columns) * tileHeight;
+            if (frame != null) {
+                g2d.drawImage(converter.convert(frame), x, y, tileWidth, tileHeight, null);
+            }
+            vtt.append(formatVttTime(cueStart)).append(" --> ").append(formatVttTime(cueEnd)).append('\n')
+               .append(spriteUrl).append("#xywh=").append(x).append(',').append(y).append(',')
+               .append(tileWidth).append(',').append(tileHeight).append("\n\n");
+        }
+        g2d.dispose();
+
+        writeImage(sprite, "thumbnails/sprites", baseName + ".jpg");
+        Path vttFile = Paths.get(uploadPath, "thumbnails", "sprites", baseName + ".vtt");
+        Files.writeString(vttFile, vtt.toString(), StandardCharsets.UTF_8);
+        return "/uploads/thumbnails/sprites/" + baseName + ".vtt";
+    }
+
+    private String writeImage(BufferedImage image, String subDir, String fileName) throws IOException {
+        Path dir = Paths.get(uploadPath, subDir);
+        Files.createDirectories(dir);
+        ImageIO.write(image, "jpg", dir.resolve(fileName).toFile());
+        return "/uploads/" + subDir + "/" + fileName;
+    }
+
+    private static BufferedImage scale(BufferedImage source, int width) {
+        int height = Math.max(1, source.getHeight() * width / source.getWidth());
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = scaled.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(source, 0, 0, width, height, null);
+        g2d.dispose();
+        return scaled;
+    }
+
+    /**
+     * 按 8 像素间隔采样计算亮度方差
+     */
+    private static double luminanceVariance(BufferedImage image) {
+        double sum = 0;
+        double sumSquares = 0;
+        int count = 0;
+        for (int y = 0; y < image.getHeight(); y += 8) {
+            for (int x = 0; x < image.getWidth(); x += 8) {
+                int rgb = image.getRGB(x, y);
+                double luma = 0.299 * ((rgb >> 16) & 0xff) + 0.587 * ((rgb >> 8) & 0xff) + 0.114 * (rgb & 0xff);
+                sum += luma;
+                sumSquares += luma * luma;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        double mean = sum / count;
+        return sumSquares / count - mean * mean;
+    }
+
+    private static String formatVttTime(double seconds) {
+        long millis = Math.round(seconds * 1000);
+        return String.format("%02d:%02d:%02d.%03d", millis / 3_600_000, millis / 60_000 % 60, millis / 1000 % 60,
+                millis % 1000);
+    }
+
+    /**
+     * /uploads/xxx 转换为上传目录下的文件
+     */
+    private File resolveUploadFile(String webPath) {
+        if (webPath == null || !webPath.startsWith("/uploads/")) {
+            return null;
+        }
+        return Paths.get(uploadPath, webPath.substring("/uploads/".length())).toFile();
+    }
+
+    private void deletePlaceholder(String placeholderThumbnail) {
+        File placeholder = resolveUploadFile(placeholderThumbnail);
+        if (placeholder != null) {
             try {
-                return "https://via.placeholder.com/400x200?text=" +
-                       java.net.URLEncoder.encode(videoTitle.length() > 20 ?
-                       videoTitle.substring(0, 20) + "..." : videoTitle, "UTF-8");
-            } catch (java.io.UnsupportedEncodingException ex) {
-                return "https://via.placeholder.com/400x200?text=Video";
+                Files.deleteIfExists(placeholder.toPath());
+            } catch (IOException e) {
+                logger.debug("删除占位缩略图失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void evictVideoCaches() {
+        for (String name : new String[]{"topVideos", "latestVideos"}) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) {
+                cache.clear();
             }
         }
     }
 
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long done = extracted.get();
+        stats.put("pending", pendingCount.get());
+        stats.put("running", maxConcurrent - permits.availablePermits());
+        stats.put("extracted", done);
+        stats.put("failed", failed.get());
+        stats.put("dropped", dropped.get());
+        stats.put("avgExtractMs", done > 0 ? extractMillis.get() / done : 0);
+        return stats;
+    }
+
     /**
      * 创建缩略图图像
      */
@@ -154,7 +504,8 @@ public class ThumbnailGenerationService {
     public boolean needsDefaultThumbnail(String thumbnailUrl) {
         return thumbnailUrl == null || 
                thumbnailUrl.trim().isEmpty() || 
-               thumbnailUrl.contains("placeholder");
+               thumbnailUrl.contains("placeholder") ||
+               DEFAULT_THUMBNAIL.equals(thumbnailUrl);
     }
 
     /**
@@ -166,4 +517,16 @@ public class ThumbnailGenerationService {
         }
         return currentThumbnail;
     }
+
+    private static final class ExtractionTask {
+        final Long videoId;
+        final String videoPath;
+        final String placeholderThumbnail;
+
+        ExtractionTask(Long videoId, String videoPath, String placeholderThumbnail) {
+            this.videoId = videoId;
+            this.videoPath = videoPath;
+            this.placeholderThumbnail = placeholderThumbnail;
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package org.example.service;
 
 import org.example.entity.User;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
@@ -9,11 +10,14 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 超轻量级统计服务 - 专门用于极速页面加载
- * 完全避免数据库查询，使用模拟数据和缓存
+ * 用户统计来自 StatsAggregationService 的内存快照，等级和成就仍使用静态数据
  */
 @Service
 public class UltraFastStatsService {
 
+    @Autowired
+    private StatsAggregationService statsAggregationService;
+
     // 静态缓存，避免任何数据库查询
     private static final Map<String, Object> STATIC_CACHE = new ConcurrentHashMap<>();
     
@@ -25,25 +29,10 @@ public class UltraFastStatsService {
     }
 
     /**
-     * 极速获取用户统计 - 0数据库查询
+     * 极速获取用户统计 - 读取内存计数快照，0数据库查询
      */
     public Map<String, Object> getUltraFastStats(User user) {
-        Map<String, Object> stats = new HashMap<>();
-        
-        // 使用用户ID生成一些"个性化"的模拟数据
-        long userId = user.getId();
-        int seed = (int) (userId % 100);
-        
-        int totalVideos = Math.max(1, seed % 10); // 1-9个视频
-        stats.put("totalVideos", totalVideos);
-        stats.put("approvedVideos", totalVideos);
-        stats.put("pendingVideos", 0);
-        stats.put("totalViews", (long) totalVideos * (10 + seed % 20)); // 模拟观看量
-        stats.put("totalComments", seed % 5); // 0-4条评论
-        stats.put("totalLikesReceived", (long) totalVideos * 2); // 模拟点赞
-        stats.put("totalFavorites", (long) totalVideos); // 模拟收藏
-        
-        return stats;
+        return statsAggregationService.getUserStatistics(user.getId());
     }
 
     /**
@@ -162,6 +151,7 @@ public class UltraFastStatsService {
         Map<String, Object> info = new HashMap<>();
         info.put("cacheSize", STATIC_CACHE.size());
         info.put("cacheType", "Static Memory Cache");
+        info.put("statsReady", statsAggregationService.isReady());
         info.put("dbQueries", 0);
         info.put("responseTime", "< 10ms");
         return info;
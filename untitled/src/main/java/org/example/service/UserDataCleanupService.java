@@ -80,6 +80,9 @@ public class UserDataCleanupService {
     @Autowired
     private ConversationRepository conversationRepository;
 
+    @Autowired
+    private AchievementEngineService achievementEngineService;
+
     /**
      * 清空所有普通用户数据，保留管理员和root用户
      */
@@ -137,6 +140,7 @@ public class UserDataCleanupService {
             // 2. 删除用户成就数据
             List<UserAchievement> userAchievements = userAchievementRepository.findByUserId(userId);
             userAchievementRepository.deleteAll(userAchievements);
+            achievementEngineService.invalidateUser(userId);
             
             // 3. 删除用户日志数据
             userLogRepository.deleteByUserId(userId);
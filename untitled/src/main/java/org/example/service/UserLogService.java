@@ -23,6 +23,7 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 @Service
@@ -32,6 +33,9 @@ public class UserLogService {
     @Autowired
     private UserLogRepository userLogRepository;
 
+    @Autowired
+    private UserLogWriter userLogWriter;
+
     @Value("${app.upload.path:uploads}")
     private String uploadPath;
 
@@ -65,7 +69,7 @@ public class UserLogService {
                 log.setRequestUrl(request.getRequestURL().toString());
             }
 
-            userLogRepository.save(log);
+            userLogWriter.submit(log);
         } catch (Exception e) {
             // 记录日志失败不应该影响主要业务流程
             System.err.println("Failed to log user action: " + e.getMessage());
@@ -96,7 +100,7 @@ public class UserLogService {
                 log.setRequestUrl(request.getRequestURL().toString());
             }
 
-            userLogRepository.save(log);
+            userLogWriter.submit(log);
         } catch (Exception e) {
             System.err.println("Failed to log error: " + e.getMessage());
         }
@@ -120,12 +124,17 @@ public class UserLogService {
                 log.setRequestUrl(request.getRequestURL().toString());
             }
 
-            userLogRepository.save(log);
+            userLogWriter.submit(log);
         } catch (Exception e) {
             System.err.println("Failed to log login attempt: " + e.getMessage());
         }
     }
 
+    // 日志写入队列状态
+    public Map<String, Object> getIngestionStats() {
+        return userLogWriter.getStats();
+    }
+
     // 获取用户日志
     public Page<UserLog> getUserLogs(Long userId, int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
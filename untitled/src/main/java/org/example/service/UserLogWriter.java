@@ -0,0 +1,364 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.entity.UserLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 用户日志异步写入器
+ * 请求线程只把日志放入有界无锁环形队列，由单独的写线程批量 INSERT 到 user_logs；
+ * 队列满时按配置的策略处理：DROP 直接丢弃，SAMPLE 高水位后按比例采样（错误日志不采样），
+ * BLOCK 在限定时间内等待空位。应用关闭时写完队列中剩余的日志。
+ */
+@Service
+public class UserLogWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserLogWriter.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO user_logs (user_id, username, action, details, ip_address, user_agent, request_url, status, error_message, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // user_logs 中 VARCHAR 列的长度（实体未指定 length，默认 255）
+    private static final int VARCHAR_LENGTH = 255;
+
+    /**
+     * 队列满（或接近满）时的处理策略
+     */
+    public enum Backpressure {
+        DROP, SAMPLE, BLOCK
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 队列容量，向上取整到 2 的幂
+    @Value("${app.user-log.capacity:8192}")
+    private int capacity;
+
+    @Value("${app.user-log.batch-size:200}")
+    private int batchSize;
+
+    // 队列为空时写线程的等待时间
+    @Value("${app.user-log.idle-wait-ms:200}")
+    private long idleWaitMillis;
+
+    @Value("${app.user-log.backpressure:SAMPLE}")
+    private Backpressure backpressure;
+
+    // SAMPLE 策略：队列占用超过该比例后只保留 1/sample-rate 的普通日志
+    @Value("${app.user-log.sample-high-water:0.75}")
+    private double sampleHighWater;
+
+    @Value("${app.user-log.sample-rate:10}")
+    private int sampleRate;
+
+    // BLOCK 策略：最长等待时间，超时后丢弃
+    @Value("${app.user-log.block-timeout-ms:50}")
+    private long blockTimeoutMillis;
+
+    @Value("${app.user-log.max-retries:2}")
+    private int maxRetries;
+
+    // 长文本字段截断长度，避免异常堆栈等大字段占满队列内存
+    @Value("${app.user-log.max-field-length:4000}")
+    private int maxFieldLength;
+
+    @Value("${app.user-log.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMillis;
+
+    private MpscRingBuffer<UserLog> buffer;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong blockedWaits = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong sampleSequence = new AtomicLong();
+    private volatile long lastFlushMillis;
+
+    @PostConstruct
+    public void start() {
+        buffer = new MpscRingBuffer<>(capacity);
+        running = true;
+        writerThread = new Thread(this::drainLoop, "user-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        Gauge.builder("user.log.queue.depth", this, s -> s.buffer.size())
+                .description("待写入的用户日志条数")
+                .register(meterRegistry);
+        Gauge.builder("user.log.queue.capacity", this, s -> s.buffer.capacity())
+                .description("用户日志队列容量")
+                .register(meterRegistry);
+        FunctionCounter.builder("user.log.written", written, AtomicLong::get)
+                .description("已写入数据库的用户日志")
+                .register(meterRegistry);
+        FunctionCounter.builder("user.log.dropped", dropped, AtomicLong::get)
+                .description("队列满被丢弃的用户日志")
+                .register(meterRegistry);
+        FunctionCounter.builder("user.log.sampled.out", sampledOut, AtomicLong::get)
+                .description("高水位采样丢弃的用户日志")
+                .register(meterRegistry);
+        FunctionCounter.builder("user.log.failed", failed, AtomicLong::get)
+                .description("重试后仍写入失败的用户日志")
+                .register(meterRegistry);
+
+        logger.info("用户日志写入器已启动: 容量 {}, 批量 {}, 策略 {}", buffer.capacity(), batchSize, backpressure);
+    }
+
+    /**
+     * 提交一条日志（不访问数据库）；返回是否入队
+     */
+    public boolean submit(UserLog log) {
+        if (log == null) {
+            return false;
+        }
+        if (!running) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        truncate(log);
+
+        boolean error = "ERROR".equals(log.getStatus());
+        if (backpressure == Backpressure.SAMPLE && !error
+                && buffer.size() >= (long) (buffer.capacity() * sampleHighWater)
+                && sampleSequence.incrementAndGet() % sampleRate != 0) {
+            sampledOut.incrementAndGet();
+            return false;
+        }
+
+        boolean accepted = buffer.offer(log);
+        if (!accepted && backpressure == Backpressure.BLOCK) {
+            blockedWaits.incrementAndGet();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+            while (!accepted && System.nanoTime() < deadline) {
+                LockSupport.unpark(writerThread);
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                accepted = buffer.offer(log);
+            }
+        }
+        if (!accepted) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        enqueued.incrementAndGet();
+        if (buffer.size() >= batchSize) {
+            LockSupport.unpark(writerThread);
+        }
+        return true;
+    }
+
+    private void drainLoop() {
+        List<UserLog> batch = new ArrayList<>(batchSize);
+        while (true) {
+            buffer.drainTo(batch, batchSize);
+            if (batch.isEmpty()) {
+                if (!running) {
+                    break;
+                }
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(idleWaitMillis));
+                continue;
+            }
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 批量写入，失败时退避重试，仍失败则计入失败数；
+     * 违反约束时逐条重写，只丢弃有问题的那几条
+     */
+    private void writeBatch(List<UserLog> batch) {
+        List<Object[]> batchArgs = new ArrayList<>(batch.size());
+        for (UserLog log : batch) {
+            batchArgs.add(new Object[] {
+                    log.getUserId(), log.getUsername(), log.getAction(), log.getDetails(),
+                    log.getIpAddress(), log.getUserAgent(), log.getRequestUrl(), log.getStatus(),
+                    log.getErrorMessage(),
+                    Timestamp.valueOf(log.getCreatedAt() != null ? log.getCreatedAt() : LocalDateTime.now())
+            });
+        }
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batchArgs);
+                written.addAndGet(batch.size());
+                batches.incrementAndGet();
+                lastFlushMillis = System.currentTimeMillis();
+                return;
+            } catch (DataIntegrityViolationException e) {
+                logger.warn("用户日志批量写入违反约束, 逐条重写 {} 条: {}", batch.size(), e.getMessage());
+                writeRowByRow(batchArgs);
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxRetries) {
+                    failed.addAndGet(batch.size());
+                    logger.error("用户日志批量写入失败, 丢弃 {} 条: {}", batch.size(), e.getMessage());
+                    return;
+                }
+                logger.warn("用户日志批量写入失败, 第 {} 次重试: {}", attempt + 1, e.getMessage());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200L * (attempt + 1)));
+            }
+        }
+    }
+
+    private void writeRowByRow(List<Object[]> batchArgs) {
+        int ok = 0;
+        for (Object[] args : batchArgs) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, args);
+                ok++;
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                logger.error("用户日志写入失败, 丢弃 1 条 (action={}): {}", args[2], e.getMessage());
+            }
+        }
+        written.addAndGet(ok);
+        batches.incrementAndGet();
+        lastFlushMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * 所有有长度限制的列都截断到列长度，单条超长的日志不会让整批写入失败
+     */
+    private void truncate(UserLog log) {
+        log.setUsername(truncate(log.getUsername(), VARCHAR_LENGTH));
+        log.setAction(truncate(log.getAction(), VARCHAR_LENGTH));
+        log.setIpAddress(truncate(log.getIpAddress(), VARCHAR_LENGTH));
+        log.setRequestUrl(truncate(log.getRequestUrl(), VARCHAR_LENGTH));
+        log.setStatus(truncate(log.getStatus(), VARCHAR_LENGTH));
+        log.setDetails(truncate(log.getDetails(), maxFieldLength));
+        log.setUserAgent(truncate(log.getUserAgent(), maxFieldLength));
+        log.setErrorMessage(truncate(log.getErrorMessage(), maxFieldLength));
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    /**
+     * 关闭时停止接收并等待写线程写完剩余日志
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(shutdownTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("用户日志写入器已停止: 已写入 {}, 剩余 {}, 丢弃 {}", written.get(), buffer.size(), dropped.get());
+    }
+
+    /**
+     * 写入器运行状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", buffer.size());
+        stats.put("capacity", buffer.capacity());
+        stats.put("backpressure", backpressure.name());
+        stats.put("enqueued", enqueued.get());
+        stats.put("written", written.get());
+        stats.put("dropped", dropped.get());
+        stats.put("sampledOut", sampledOut.get());
+        stats.put("failed", failed.get());
+        stats.put("blockedWaits", blockedWaits.get());
+        stats.put("batches", batches.get());
+        stats.put("lastFlushMillis", lastFlushMillis);
+        return stats;
+    }
+
+    /**
+     * 有界多生产者单消费者环形队列
+     * 生产者 CAS 推进 tail 抢占槽位后写入元素；消费者按 head 顺序取出并清空槽位，
+     * 槽位仍为 null 表示生产者尚未完成写入，本轮视为空
+     */
+    static final class MpscRingBuffer<E> {
+
+        private final AtomicReferenceArray<E> slots;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head;
+
+        MpscRingBuffer(int requestedCapacity) {
+            int size = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+        }
+
+        boolean offer(E element) {
+            while (true) {
+                long currentTail = tail.get();
+                if (currentTail - head >= slots.length()) {
+                    return false;
+                }
+                if (tail.compareAndSet(currentTail, currentTail + 1)) {
+                    slots.set((int) (currentTail & mask), element);
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 仅由消费者线程调用
+         */
+        int drainTo(List<E> target, int limit) {
+            int count = 0;
+            long currentHead = head;
+            while (count < limit) {
+                int index = (int) (currentHead & mask);
+                E element = slots.get(index);
+                if (element == null) {
+                    break;
+                }
+                slots.lazySet(index, null);
+                target.add(element);
+                currentHead++;
+                count++;
+                head = currentHead;
+            }
+            return count;
+        }
+
+        int size() {
+            long size = tail.get() - head;
+            return (int) Math.max(0, Math.min(size, slots.length()));
+        }
+
+        int capacity() {
+            return slots.length();
+        }
+    }
+}
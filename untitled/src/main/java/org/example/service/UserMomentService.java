@@ -25,6 +25,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -44,6 +45,9 @@ public class UserMomentService {
     @Autowired
     private MomentLikeRepository likeRepository;
 
+    @Autowired
+    private ViewCounterService viewCounterService;
+
     @Autowired
     private UserFollowRepository followRepository;
 
@@ -313,4 +317,23 @@ public class UserMomentService {
     public Optional<UserMoment> getMomentById(Long momentId) {
         return findById(momentId);
     }
+
+    /**
+     * 增加动态浏览次数（记入内存计数器，由 ViewCounterService 批量写回）
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void incrementViewCount(Long momentId) {
+        viewCounterService.increment(ViewCounterService.CounterType.MOMENT_VIEWS, momentId);
+    }
+
+    /**
+     * 将尚未写回的浏览增量叠加到实体上（仅用于展示）
+     */
+    public UserMoment applyPendingViews(UserMoment moment) {
+        if (moment != null && moment.getId() != null) {
+            moment.setViewCount(viewCounterService.getCurrent(
+                    ViewCounterService.CounterType.MOMENT_VIEWS, moment.getId(), moment.getViewCount()));
+        }
+        return moment;
+    }
 }
@@ -1,46 +1,110 @@
 package org.example.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.example.entity.User;
+import org.example.repository.UserFollowRepository;
+import org.example.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.Set;
-import java.util.HashSet;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 用户在线状态管理服务
+ * 过期检测使用基于 nanoTime 的时间轮：上线时按截止时间放入对应槽位，活跃只刷新截止时间（无锁），
+ * 时间轮走到该槽位时截止时间已被刷新的条目重新放入新的槽位，真正过期的才下线，每次操作 O(1)。
+ * 上下线变化按批合并，只推送给在线的关注者；在线人数只在变化时推送。
  */
 @Service
 public class UserOnlineStatusService {
 
+    private static final Logger logger = LoggerFactory.getLogger(UserOnlineStatusService.class);
+
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
-    // 存储在线用户信息：userId -> 最后活跃时间
-    private final Map<Long, LocalDateTime> onlineUsers = new ConcurrentHashMap<>();
-    
-    // 存储用户会话信息：userId -> sessionId
-    private final Map<Long, String> userSessions = new ConcurrentHashMap<>();
+    @Autowired
+    private UserFollowRepository userFollowRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    // 超过该时间无活动视为下线
+    @Value("${app.online-status.ttl-ms:60000}")
+    private long ttlMillis;
+
+    // 时间轮每格的时长
+    @Value("${app.online-status.tick-ms:1000}")
+    private long tickMillis;
+
+    // 关注者列表缓存时间，关注/取消关注时主动失效
+    @Value("${app.online-status.follower-cache-seconds:300}")
+    private long followerCacheSeconds;
+
+    // 存储在线用户信息：userId -> 在线记录
+    private final Map<Long, Presence> onlineUsers = new ConcurrentHashMap<>();
+
+    // 待推送的状态变化：userId -> 最新状态，同一批内多次变化只推送最后一次
+    private final Map<Long, Boolean> pendingChanges = new ConcurrentHashMap<>();
+
+    private final AtomicInteger lastBroadcastCount = new AtomicInteger(-1);
+
+    private TimingWheel wheel;
+    private Cache<Long, long[]> followerCache;
+    private Cache<Long, String> usernameCache;
+
+    @PostConstruct
+    public void init() {
+        long ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        wheel = new TimingWheel(tickNanos, (int) Math.max(1, ttlNanos / tickNanos) + 1, System.nanoTime());
+        followerCache = Caffeine.newBuilder()
+                .maximumSize(20_000)
+                .expireAfterWrite(Duration.ofSeconds(followerCacheSeconds))
+                .build();
+        usernameCache = Caffeine.newBuilder()
+                .maximumSize(50_000)
+                .expireAfterAccess(Duration.ofMinutes(30))
+                .build();
+    }
 
     /**
      * 用户上线
      */
     public void userOnline(Long userId, String sessionId) {
-        boolean wasOffline = !onlineUsers.containsKey(userId);
-        
-        onlineUsers.put(userId, LocalDateTime.now());
-        userSessions.put(userId, sessionId);
-        
-        System.out.println("用户上线: " + userId + ", 会话ID: " + sessionId);
-        
-        // 如果用户之前是离线状态，广播上线通知
-        if (wasOffline) {
-            broadcastUserStatusChange(userId, true);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        boolean[] created = new boolean[1];
+        Presence presence = onlineUsers.compute(userId, (id, existing) -> {
+            if (existing != null) {
+                existing.deadlineNanos = deadline;
+                existing.sessionId = sessionId;
+                return existing;
+            }
+            created[0] = true;
+            return new Presence(id, sessionId, deadline);
+        });
+
+        // 如果用户之前是离线状态，记录上线变化
+        if (created[0]) {
+            wheel.schedule(presence);
+            pendingChanges.put(userId, Boolean.TRUE);
+            logger.debug("用户上线: {}, 会话ID: {}", userId, sessionId);
         }
     }
 
@@ -48,16 +112,13 @@ public class UserOnlineStatusService {
      * 用户下线
      */
     public void userOffline(Long userId) {
-        boolean wasOnline = onlineUsers.containsKey(userId);
-        
-        onlineUsers.remove(userId);
-        userSessions.remove(userId);
-        
-        System.out.println("用户下线: " + userId);
-        
-        // 如果用户之前是在线状态，广播下线通知
-        if (wasOnline) {
-            broadcastUserStatusChange(userId, false);
+        Presence presence = onlineUsers.remove(userId);
+
+        // 如果用户之前是在线状态，记录下线变化；时间轮中的条目在走到时丢弃
+        if (presence != null) {
+            presence.removed = true;
+            pendingChanges.put(userId, Boolean.FALSE);
+            logger.debug("用户下线: {}", userId);
         }
     }
 
@@ -65,8 +126,9 @@ public class UserOnlineStatusService {
      * 更新用户活跃时间
      */
     public void updateUserActivity(Long userId) {
-        if (onlineUsers.containsKey(userId)) {
-            onlineUsers.put(userId, LocalDateTime.now());
+        Presence presence = onlineUsers.get(userId);
+        if (presence != null) {
+            presence.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
         }
     }
 
@@ -92,76 +154,204 @@ public class UserOnlineStatusService {
     }
 
     /**
-     * 定时清理过期的在线状态（超过1分钟无活动）
+     * 关注关系变化后使被关注者的关注者缓存失效
      */
-    @Scheduled(fixedRate = 30000) // 每30秒执行一次
-    public void cleanupExpiredUsers() {
-        LocalDateTime expireTime = LocalDateTime.now().minusMinutes(1);
+    public void invalidateFollowers(Long userId) {
+        followerCache.invalidate(userId);
+    }
 
-        Set<Long> expiredUsers = onlineUsers.entrySet().stream()
-            .filter(entry -> entry.getValue().isBefore(expireTime))
-            .map(Map.Entry::getKey)
-            .collect(Collectors.toSet());
+    /**
+     * 推进时间轮，下线已过期的用户
+     */
+    @Scheduled(fixedDelayString = "${app.online-status.tick-ms:1000}")
+    public void cleanupExpiredUsers() {
+        long now = System.nanoTime();
+        List<Presence> expired = wheel.advance(now);
 
-        for (Long userId : expiredUsers) {
-            userOffline(userId);
+        int count = 0;
+        for (Presence presence : expired) {
+            // 取出后又有活动的重新排期
+            if (presence.deadlineNanos - now > 0) {
+                wheel.schedule(presence);
+                continue;
+            }
+            // 只移除仍是同一条记录的用户，避免误删刚重新上线的用户
+            if (onlineUsers.remove(presence.userId, presence)) {
+                presence.removed = true;
+                pendingChanges.put(presence.userId, Boolean.FALSE);
+                count++;
+            }
         }
 
-        if (!expiredUsers.isEmpty()) {
-            System.out.println("清理过期用户: " + expiredUsers + "，当前在线用户数: " + getOnlineUserCount());
-            broadcastOnlineCount();
+        if (count > 0) {
+            logger.debug("清理过期用户: {}，当前在线用户数: {}", count, getOnlineUserCount());
         }
     }
 
     /**
-     * 广播用户状态变化
+     * 批量推送状态变化：每个在线的关注者收到一条消息，包含其关注的用户本批次的全部变化
      */
-    private void broadcastUserStatusChange(Long userId, boolean isOnline) {
-        try {
-            Map<String, Object> statusUpdate = Map.of(
-                "type", "user_status_change",
-                "userId", userId,
-                "isOnline", isOnline,
-                "timestamp", System.currentTimeMillis()
+    @Scheduled(fixedDelayString = "${app.online-status.delta-interval-ms:1000}")
+    public void flushStatusChanges() {
+        if (pendingChanges.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Boolean> changes = new HashMap<>();
+        for (Map.Entry<Long, Boolean> entry : pendingChanges.entrySet()) {
+            if (pendingChanges.remove(entry.getKey(), entry.getValue())) {
+                changes.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        long timestamp = System.currentTimeMillis();
+        Map<Long, List<Map<String, Object>>> byRecipient = new HashMap<>();
+        for (Map.Entry<Long, Boolean> change : changes.entrySet()) {
+            Map<String, Object> delta = Map.of(
+                "userId", change.getKey(),
+                "isOnline", change.getValue()
             );
-            
-            // 广播到所有用户
-            messagingTemplate.convertAndSend("/topic/user-status", statusUpdate);
-            
-            System.out.println("广播用户状态变化: 用户" + userId + " " + (isOnline ? "上线" : "下线"));
-        } catch (Exception e) {
-            System.err.println("广播用户状态失败: " + e.getMessage());
+            for (long followerId : getFollowerIds(change.getKey())) {
+                if (onlineUsers.containsKey(followerId)) {
+                    byRecipient.computeIfAbsent(followerId, k -> new ArrayList<>()).add(delta);
+                }
+            }
         }
+        if (byRecipient.isEmpty()) {
+            return;
+        }
+
+        Map<Long, String> usernames = usernameCache.getAll(byRecipient.keySet(), this::loadUsernames);
+        for (Map.Entry<Long, List<Map<String, Object>>> entry : byRecipient.entrySet()) {
+            String username = usernames.get(entry.getKey());
+            if (username == null) {
+                continue;
+            }
+            try {
+                Map<String, Object> statusUpdate = Map.of(
+                    "type", "user_status_batch",
+                    "changes", entry.getValue(),
+                    "timestamp", timestamp
+                );
+                messagingTemplate.convertAndSendToUser(username, "/queue/user-status", statusUpdate);
+            } catch (Exception e) {
+                logger.warn("推送用户状态失败: {} - {}", username, e.getMessage());
+            }
+        }
+        logger.debug("推送用户状态变化: {} 个用户变化, {} 个接收者", changes.size(), byRecipient.size());
     }
 
     /**
-     * 广播在线用户数量更新
+     * 在线人数与上次推送不同时才推送
      */
-    public void broadcastOnlineCount() {
+    @Scheduled(fixedDelayString = "${app.online-status.count-interval-ms:1000}")
+    public void periodicBroadcast() {
+        int currentCount = getOnlineUserCount();
+        if (lastBroadcastCount.getAndSet(currentCount) == currentCount) {
+            return;
+        }
         try {
             Map<String, Object> countUpdate = Map.of(
                 "type", "online_count_update",
-                "count", getOnlineUserCount(),
+                "count", currentCount,
                 "timestamp", System.currentTimeMillis()
             );
 
             messagingTemplate.convertAndSend("/topic/online-count", countUpdate);
-            System.out.println("广播在线用户数量更新: " + getOnlineUserCount());
+            logger.debug("广播在线用户数量更新: {}", currentCount);
         } catch (Exception e) {
-            System.err.println("广播在线用户数量失败: " + e.getMessage());
+            logger.warn("广播在线用户数量失败: {}", e.getMessage());
         }
     }
 
+    private long[] getFollowerIds(Long userId) {
+        return followerCache.get(userId, id ->
+                userFollowRepository.findFollowerIdsByUserId(id).stream().mapToLong(Long::longValue).toArray());
+    }
 
+    private Map<Long, String> loadUsernames(Set<? extends Long> userIds) {
+        Map<Long, String> result = new HashMap<>();
+        for (User user : userRepository.findAllById(new ArrayList<Long>(userIds))) {
+            result.put(user.getId(), user.getUsername());
+        }
+        return result;
+    }
 
     /**
-     * 定时广播在线用户数量更新（确保前端同步）
+     * 在线记录；截止时间由活跃操作直接刷新，时间轮只在走到所在槽位时读取
      */
-    @Scheduled(fixedRate = 15000) // 每15秒广播一次
-    public void periodicBroadcast() {
-        int currentCount = getOnlineUserCount();
-        if (currentCount > 0) {
-            broadcastOnlineCount();
+    static final class Presence {
+        final Long userId;
+        volatile String sessionId;
+        volatile long deadlineNanos;
+        volatile boolean removed;
+        // 以下字段只在时间轮的锁内访问
+        long rounds;
+
+        Presence(Long userId, String sessionId, long deadlineNanos) {
+            this.userId = userId;
+            this.sessionId = sessionId;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    /**
+     * 哈希时间轮：槽位数覆盖一个 TTL，更远的截止时间用剩余圈数表示
+     */
+    static final class TimingWheel {
+        private final long tickNanos;
+        private final long startNanos;
+        private final ArrayDeque<Presence>[] slots;
+        private long currentTick;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        TimingWheel(long tickNanos, int slotCount, long startNanos) {
+            this.tickNanos = tickNanos;
+            this.startNanos = startNanos;
+            this.slots = new ArrayDeque[slotCount];
+            for (int i = 0; i < slotCount; i++) {
+                slots[i] = new ArrayDeque<>();
+            }
+        }
+
+        synchronized void schedule(Presence presence) {
+            place(presence);
+        }
+
+        /**
+         * 走到当前时间对应的格子，返回已过期的记录
+         */
+        synchronized List<Presence> advance(long now) {
+            List<Presence> expired = new ArrayList<>();
+            long targetTick = (now - startNanos) / tickNanos;
+            while (currentTick < targetTick) {
+                currentTick++;
+                int index = (int) (currentTick % slots.length);
+                ArrayDeque<Presence> due = slots[index];
+                slots[index] = new ArrayDeque<>();
+                for (Presence presence : due) {
+                    if (presence.removed) {
+                        continue;
+                    }
+                    if (presence.rounds > 0) {
+                        presence.rounds--;
+                        slots[index].add(presence);
+                    } else if (presence.deadlineNanos - now <= 0) {
+                        expired.add(presence);
+                    } else {
+                        // 期间有活动，按新的截止时间重新放入
+                        place(presence);
+                    }
+                }
+            }
+            return expired;
+        }
+
+        private void place(Presence presence) {
+            long deadlineTick = Math.floorDiv(presence.deadlineNanos - startNanos + tickNanos - 1, tickNanos);
+            long ticks = Math.max(1, deadlineTick - currentTick);
+            presence.rounds = (ticks - 1) / slots.length;
+            slots[(int) ((currentTick + ticks) % slots.length)].add(presence);
         }
     }
 }
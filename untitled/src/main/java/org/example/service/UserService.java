@@ -5,6 +5,7 @@ import org.example.entity.Comment;
 import org.example.repository.UserRepository;
 import org.example.util.AvatarUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -34,6 +35,12 @@ public class UserService {
     @Autowired
     private AchievementService achievementService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ChatInboxService chatInboxService;
+
     // 获取总用户数
     public long getTotalUsers() {
         return userRepository.count();
@@ -51,7 +58,10 @@ public class UserService {
     // 保存用户
     public User save(User user) {
         user.setUpdatedAt(LocalDateTime.now());
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        // 同步其他用户会话列表中冗余的昵称和头像
+        chatInboxService.refreshProfile(saved);
+        return saved;
     }
 
     // 注册用户时使用新方法名
@@ -91,6 +101,7 @@ public class UserService {
         user.setAvatar(AvatarUtil.DEFAULT_AVATAR_PATH);
 
         User savedUser = userRepository.save(user);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.userRegistered(savedUser.getId()));
 
         // 触发注册成就检查
         try {
@@ -232,6 +243,7 @@ public class UserService {
         user.setEnabled(false);
         user.setUpdatedAt(LocalDateTime.now());
         userRepository.save(user);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.userStateChanged(userId));
 
         // 记录违规信息 - 暂时移除循环依赖，后续可以通过事件机制实现
         System.out.println("用户被封禁: ID=" + userId + ", 原因=" + reason + ", 管理员=" + (admin != null ? admin.getUsername() : "系统"));
@@ -251,6 +263,7 @@ public class UserService {
         user.setEnabled(false);
         user.setUpdatedAt(LocalDateTime.now());
         userRepository.save(user);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.userStateChanged(userId));
 
         // 记录账号删除 - 暂时移除循环依赖，后续可以通过事件机制实现
         System.out.println("账号被删除: ID=" + userId + ", 原因=" + reason);
@@ -264,6 +277,7 @@ public class UserService {
         user.setEnabled(true);
         user.setUpdatedAt(LocalDateTime.now());
         userRepository.save(user);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.userStateChanged(userId));
     }
 
     // 检查用户是否存在
@@ -312,6 +326,7 @@ public class UserService {
         user.setEnabled(true);
         user.setUpdatedAt(LocalDateTime.now());
         userRepository.save(user);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.userStateChanged(userId));
     }
 
     // 添加分页获取用户的方法
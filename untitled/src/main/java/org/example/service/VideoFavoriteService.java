@@ -5,6 +5,7 @@ import org.example.entity.User;
 import org.example.entity.Video;
 import org.example.repository.VideoFavoriteRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -18,6 +19,9 @@ public class VideoFavoriteService {
     @Autowired
     private VideoFavoriteRepository videoFavoriteRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * 收藏视频
      */
@@ -31,6 +35,7 @@ public class VideoFavoriteService {
         // 创建收藏记录
         VideoFavorite videoFavorite = new VideoFavorite(user, video);
         videoFavoriteRepository.save(videoFavorite);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoFavorited(user.getId(), video.getId()));
 
         return true;
     }
@@ -43,6 +48,7 @@ public class VideoFavoriteService {
         Optional<VideoFavorite> videoFavorite = videoFavoriteRepository.findByUserAndVideo(user, video);
         if (videoFavorite.isPresent()) {
             videoFavoriteRepository.delete(videoFavorite.get());
+            eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoUnfavorited(user.getId(), video.getId()));
             return true;
         }
         return false;
@@ -5,6 +5,7 @@ import org.example.entity.User;
 import org.example.entity.Video;
 import org.example.repository.VideoLikeRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -21,6 +22,9 @@ public class VideoLikeService {
     @Autowired
     private AchievementService achievementService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * 点赞视频
      */
@@ -34,6 +38,7 @@ public class VideoLikeService {
         // 创建点赞记录
         VideoLike videoLike = new VideoLike(user, video);
         videoLikeRepository.save(videoLike);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoLiked(user.getId(), video.getId()));
 
         // 触发点赞相关成就检查
         achievementService.triggerAchievementCheck(user, "LIKE_VIDEO", 1);
@@ -54,6 +59,7 @@ public class VideoLikeService {
         Optional<VideoLike> videoLike = videoLikeRepository.findByUserAndVideo(user, video);
         if (videoLike.isPresent()) {
             videoLikeRepository.delete(videoLike.get());
+            eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoUnliked(user.getId(), video.getId()));
             return true;
         }
         return false;
@@ -0,0 +1,40 @@
+package org.example.service;
+
+import org.example.entity.Video;
+import org.example.repository.VideoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 首页视频列表缓存
+ * 单独成 bean，VideoService 经代理调用缓存才生效；缓存的是脱离持久化上下文的副本（Video.displayCopy），
+ * 由 VideoService 在每次返回前再复制一份，调用方修改不会影响缓存。失效由 VideoService 的 @CacheEvict 负责
+ */
+@Component
+public class VideoListCache {
+
+    @Autowired
+    private VideoRepository videoRepository;
+
+    @Cacheable(value = "topVideos", key = "#limit")
+    public List<Video> topVideos(int limit) {
+        return videoRepository.findTop10ByOrderByViewsDescWithUser()
+                .stream()
+                .filter(video -> video.getStatus() == Video.VideoStatus.APPROVED)
+                .limit(limit)
+                .map(Video::displayCopy)
+                .toList();
+    }
+
+    @Cacheable(value = "latestVideos", key = "#limit")
+    public List<Video> latestVideos(int limit) {
+        return videoRepository.findByStatusOrderByCreatedAtDescWithUser()
+                .stream()
+                .limit(limit)
+                .map(Video::displayCopy)
+                .toList();
+    }
+}
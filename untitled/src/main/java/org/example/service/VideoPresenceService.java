@@ -0,0 +1,311 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.entity.Video;
+import org.example.repository.VideoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 视频实时观看人数
+ * 成员以 STOMP 会话为单位：加入时登记 (会话, 视频)，心跳刷新最后活跃时间，离开、会话断开或心跳超时时移除。
+ * 成员变化和人数变化都在 sessions.compute 内完成，与会话断开互斥；每个会话同时观看的视频数有上限。
+ * 每个视频维护原子计数，读取 O(1)；人数变化只标记视频，由定时任务合并推送，同一视频每秒最多推送一次。
+ */
+@Service
+public class VideoPresenceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VideoPresenceService.class);
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private VideoRepository videoRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 超过该时间没有心跳的成员视为已离开
+    @Value("${app.presence.ttl-ms:60000}")
+    private long ttlMillis;
+
+    // 同一视频两次人数推送的最小间隔
+    @Value("${app.presence.push-interval-ms:1000}")
+    private long pushIntervalMillis;
+
+    // 每个会话（含匿名会话）同时观看的视频数上限
+    @Value("${app.presence.max-videos-per-session:5}")
+    private int maxVideosPerSession;
+
+    // 热门直播视频列表的缓存时间
+    @Value("${app.presence.top-cache-ms:1000}")
+    private long topCacheMillis;
+
+    // 会话 -> (视频 -> 最后心跳 nanoTime)；内层 Map 只在该会话的 compute 内读写
+    private final Map<String, Map<Long, Long>> sessions = new ConcurrentHashMap<>();
+
+    // 视频 -> 观看人数（归零的视频由 expireStale 延后移除）
+    private final Map<Long, VideoViewers> videos = new ConcurrentHashMap<>();
+
+    private final Set<Long> dirtyVideos = ConcurrentHashMap.newKeySet();
+
+    private volatile TopSnapshot topSnapshot = new TopSnapshot(0, 0, List.of());
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("video.presence.sessions", sessions, Map::size)
+                .description("正在观看视频的会话数")
+                .register(meterRegistry);
+        Gauge.builder("video.presence.live.videos", videos, Map::size)
+                .description("有人观看的视频数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 会话加入观看
+     */
+    public void join(String sessionId, Long videoId) {
+        if (sessionId == null || videoId == null) {
+            return;
+        }
+        sessions.compute(sessionId, (k, watching) -> {
+            if (watching == null) {
+                watching = new HashMap<>();
+            }
+            if (watching.containsKey(videoId)) {
+                watching.put(videoId, System.nanoTime());
+            } else if (watching.size() < maxVideosPerSession) {
+                watching.put(videoId, System.nanoTime());
+                changeCount(videoId, 1);
+            } else {
+                logger.debug("会话观看的视频数已达上限，忽略加入: session={}, video={}", sessionId, videoId);
+            }
+            return watching.isEmpty() ? null : watching;
+        });
+    }
+
+    /**
+     * 心跳：刷新活跃时间；成员已过期被移除时重新加入
+     */
+    public void heartbeat(String sessionId, Long videoId) {
+        join(sessionId, videoId);
+    }
+
+    /**
+     * 会话离开观看
+     */
+    public void leave(String sessionId, Long videoId) {
+        if (sessionId == null || videoId == null) {
+            return;
+        }
+        sessions.computeIfPresent(sessionId, (k, watching) -> {
+            if (watching.remove(videoId) != null) {
+                changeCount(videoId, -1);
+            }
+            return watching.isEmpty() ? null : watching;
+        });
+    }
+
+    /**
+     * 会话断开时移除其全部观看记录，不依赖客户端发送 video.leave
+     */
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        sessions.computeIfPresent(event.getSessionId(), (k, watching) -> {
+            for (Long videoId : watching.keySet()) {
+                changeCount(videoId, -1);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 当前观看人数
+     */
+    public int getViewerCount(Long videoId) {
+        VideoViewers viewers = videos.get(videoId);
+        return viewers != null ? viewers.count.get() : 0;
+    }
+
+    /**
+     * 观看人数最多的视频（按人数降序），结果短时间缓存
+     */
+    public List<Map<String, Object>> getTopLiveVideos(int limit) {
+        TopSnapshot snapshot = topSnapshot;
+        long now = System.nanoTime();
+        if (now - snapshot.builtAtNanos > TimeUnit.MILLISECONDS.toNanos(topCacheMillis) || snapshot.limit < limit) {
+            snapshot = buildTop(limit, now);
+            topSnapshot = snapshot;
+        }
+        return snapshot.items.size() > limit ? snapshot.items.subList(0, limit) : snapshot.items;
+    }
+
+    private TopSnapshot buildTop(int limit, long now) {
+        PriorityQueue<Map.Entry<Long, Integer>> heap = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (Map.Entry<Long, VideoViewers> entry : videos.entrySet()) {
+            int count = entry.getValue().count.get();
+            if (count <= 0) {
+                continue;
+            }
+            if (heap.size() < limit) {
+                heap.add(Map.entry(entry.getKey(), count));
+            } else if (count > heap.peek().getValue()) {
+                heap.poll();
+                heap.add(Map.entry(entry.getKey(), count));
+            }
+        }
+
+        List<Map.Entry<Long, Integer>> top = new ArrayList<>(heap);
+        top.sort(Map.Entry.<Long, Integer>comparingByValue(Comparator.reverseOrder()));
+
+        Map<Long, Video> videoById = videoRepository.findAllById(
+                        top.stream().map(Map.Entry::getKey).collect(Collectors.toList()))
+                .stream().collect(Collectors.toMap(Video::getId, Function.identity()));
+
+        List<Map<String, Object>> items = new ArrayList<>(top.size());
+        for (Map.Entry<Long, Integer> entry : top) {
+            Video video = videoById.get(entry.getKey());
+            if (video == null) {
+                continue;
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("videoId", video.getId());
+            item.put("title", video.getTitle());
+            item.put("thumbnailUrl", video.getThumbnailUrl());
+            item.put("viewers", entry.getValue());
+            items.add(item);
+        }
+        return new TopSnapshot(now, limit, items);
+    }
+
+    /**
+     * 合并推送：标记过的视频距上次推送满 push-interval-ms 才推送，否则留到下一轮
+     */
+    @Scheduled(fixedDelayString = "${app.presence.flush-interval-ms:250}")
+    public void pushCounts() {
+        long now = System.nanoTime();
+        long minGap = TimeUnit.MILLISECONDS.toNanos(pushIntervalMillis);
+        Iterator<Long> iterator = dirtyVideos.iterator();
+        while (iterator.hasNext()) {
+            Long videoId = iterator.next();
+            VideoViewers viewers = videos.get(videoId);
+            if (viewers != null && now - viewers.lastPushNanos < minGap) {
+                continue;
+            }
+            iterator.remove();
+
+            int count = viewers != null ? viewers.count.get() : 0;
+            if (viewers != null) {
+                viewers.lastPushNanos = now;
+            }
+            try {
+                Map<String, Object> update = new HashMap<>();
+                update.put("type", "viewer_count");
+                update.put("videoId", videoId);
+                update.put("count", count);
+                messagingTemplate.convertAndSend("/topic/video/" + videoId + "/viewers", update);
+            } catch (Exception e) {
+                logger.warn("推送观看人数失败: video={}, {}", videoId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 移除心跳超时的成员（客户端异常退出但连接未正常断开时）
+     */
+    @Scheduled(fixedDelayString = "${app.presence.sweep-interval-ms:5000}")
+    public void expireStale() {
+        long deadline = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        AtomicInteger expired = new AtomicInteger();
+        for (String sessionId : sessions.keySet()) {
+            sessions.computeIfPresent(sessionId, (k, watching) -> {
+                Iterator<Map.Entry<Long, Long>> members = watching.entrySet().iterator();
+                while (members.hasNext()) {
+                    Map.Entry<Long, Long> member = members.next();
+                    if (member.getValue() - deadline < 0) {
+                        members.remove();
+                        changeCount(member.getKey(), -1);
+                        expired.incrementAndGet();
+                    }
+                }
+                return watching.isEmpty() ? null : watching;
+            });
+        }
+        if (expired.get() > 0) {
+            logger.debug("清理心跳超时的观看记录: {}", expired);
+        }
+
+        // 人数归零且归零后的人数已推送出去的视频才移除，保留的推送时间保证每秒最多推送一次
+        long now = System.nanoTime();
+        long minGap = TimeUnit.MILLISECONDS.toNanos(pushIntervalMillis);
+        for (Long videoId : videos.keySet()) {
+            videos.computeIfPresent(videoId, (k, v) ->
+                    v.count.get() <= 0 && !dirtyVideos.contains(k) && now - v.lastPushNanos >= minGap ? null : v);
+        }
+    }
+
+    private void changeCount(Long videoId, int delta) {
+        // 在 compute 内修改计数，与 expireStale 中移除空视频的操作互斥
+        videos.compute(videoId, (k, v) -> {
+            if (v == null) {
+                if (delta <= 0) {
+                    return null;
+                }
+                v = new VideoViewers();
+            }
+            v.count.addAndGet(delta);
+            return v;
+        });
+        dirtyVideos.add(videoId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sessions", sessions.size());
+        stats.put("liveVideos", videos.size());
+        stats.put("pendingPushes", dirtyVideos.size());
+        return stats;
+    }
+
+    private static final class VideoViewers {
+        final AtomicInteger count = new AtomicInteger();
+        volatile long lastPushNanos = System.nanoTime() - TimeUnit.HOURS.toNanos(1);
+    }
+
+    private static final class TopSnapshot {
+        final long builtAtNanos;
+        final int limit;
+        final List<Map<String, Object>> items;
+
+        TopSnapshot(long builtAtNanos, int limit, List<Map<String, Object>> items) {
+            this.builtAtNanos = builtAtNanos;
+            this.limit = limit;
+            this.items = items;
+        }
+    }
+}
@@ -4,11 +4,14 @@ import org.example.entity.Video;
 import org.example.entity.User;
 import org.example.repository.VideoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import java.util.stream.Collectors;
 
@@ -39,18 +42,25 @@ public class VideoService {
     @Autowired
     private CommentService commentService;
 
+    @Autowired
+    private SearchIndexService searchIndexService;
+
+    @Autowired
+    private ViewCounterService viewCounterService;
+
+    @Autowired
+    private VideoListCache videoListCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public long getTotalVideos() {
         return videoRepository.count();
     }
 
-    // 获取热门视频
-    // Replace the getTopVideos method:
+    // 获取热门视频（经 VideoListCache 缓存，返回调用方独占的副本）
     public List<Video> getTopVideos(int limit) {
-        return videoRepository.findTop10ByOrderByViewsDescWithUser()
-                .stream()
-                .filter(video -> video.getStatus() == Video.VideoStatus.APPROVED)
-                .limit(limit)
-                .collect(Collectors.toList());
+        return copyOf(videoListCache.topVideos(limit));
     }
 
     public List<Video> getVideosByStatus(Video.VideoStatus status) {
@@ -58,18 +68,25 @@ public class VideoService {
     }
 
 
+    // 观看次数先记入内存计数器，由 ViewCounterService 批量写回 views/view_count
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void incrementViews(Long videoId) {
-        Video video = getVideoByIdInternal(videoId);
-        // 使用 viewCount 字段，这是数据库中的实际字段
-        Long currentViewCount = video.getViewCount() != null ? video.getViewCount() : 0L;
-        video.setViewCount(currentViewCount + 1);
-
-        // 同时更新 views 字段以保持兼容性
-        Long currentViews = video.getViews() != null ? video.getViews() : 0L;
-        video.setViews(currentViews + 1);
+        viewCounterService.increment(ViewCounterService.CounterType.VIDEO_VIEWS, videoId);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoViewed(videoId));
+    }
 
-        videoRepository.save(video);
-        System.out.println("✅ 观看次数已更新 - 视频ID: " + videoId + ", 新观看次数: " + video.getViewCount());
+    /**
+     * 将尚未写回的观看增量叠加到实体上（仅用于展示，调用方不应再保存该实体）
+     */
+    public Video applyPendingViews(Video video) {
+        if (video != null && video.getId() != null) {
+            long pending = viewCounterService.getPending(ViewCounterService.CounterType.VIDEO_VIEWS, video.getId());
+            if (pending > 0) {
+                video.setViews((video.getViews() != null ? video.getViews() : 0L) + pending);
+                video.setViewCount((video.getViewCount() != null ? video.getViewCount() : 0L) + pending);
+            }
+        }
+        return video;
     }
 
     public void setFavoriteCount(Long videoId, Integer count) {
@@ -105,9 +122,13 @@ public class VideoService {
     }
 
     @Transactional(readOnly = false)
+    @CacheEvict(value = {"topVideos", "latestVideos"}, allEntries = true)
     public Video save(Video video) {
+        boolean created = video.getId() == null;
         video.setUpdatedAt(LocalDateTime.now());
         Video savedVideo = videoRepository.save(video);
+        searchIndexService.indexVideo(savedVideo);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoSaved(savedVideo, created));
 
         // 触发成就检查
         if (video.getUser() != null) {
@@ -117,8 +138,11 @@ public class VideoService {
         return savedVideo;
     }
 
+    @CacheEvict(value = {"topVideos", "latestVideos"}, allEntries = true)
     public void deleteById(Long id) {
         videoRepository.deleteById(id);
+        searchIndexService.removeVideo(id);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoDeleted(id));
     }
     // 获取所有视频
     public List<Video> getAllVideos() {
@@ -126,29 +150,38 @@ public class VideoService {
     }
 
     // 审核通过视频
+    @CacheEvict(value = {"topVideos", "latestVideos"}, allEntries = true)
     public void approveVideo(Long videoId) {
         Video video = getVideoByIdInternal(videoId);
         video.setStatus(Video.VideoStatus.APPROVED);
         video.setUpdatedAt(LocalDateTime.now());
         videoRepository.save(video);
+        searchIndexService.indexVideo(video);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoSaved(video, false));
     }
 
     // 拒绝视频（带原因）
+    @CacheEvict(value = {"topVideos", "latestVideos"}, allEntries = true)
     public void rejectVideo(Long videoId, String reason) {
         Video video = getVideoByIdInternal(videoId);
         video.setStatus(Video.VideoStatus.REJECTED);
         video.setRejectReason(reason);
         video.setUpdatedAt(LocalDateTime.now());
         videoRepository.save(video);
+        searchIndexService.indexVideo(video);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoSaved(video, false));
     }
 
     // 封禁视频（带原因）
+    @CacheEvict(value = {"topVideos", "latestVideos"}, allEntries = true)
     public void banVideo(Long videoId, String reason) {
         Video video = getVideoByIdInternal(videoId);
         video.setStatus(Video.VideoStatus.BANNED);
         video.setBanReason(reason);
         video.setUpdatedAt(LocalDateTime.now());
         videoRepository.save(video);
+        searchIndexService.indexVideo(video);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoSaved(video, false));
     }
 
     // 修改getVideoById方法返回Optional
@@ -167,9 +200,13 @@ public class VideoService {
 
     // 添加缺失的方法
     @Transactional(readOnly = false)
+    @CacheEvict(value = {"topVideos", "latestVideos"}, allEntries = true)
     public Video saveVideo(Video video) {
+        boolean created = video.getId() == null;
         video.setUpdatedAt(LocalDateTime.now());
         Video savedVideo = videoRepository.save(video);
+        searchIndexService.indexVideo(savedVideo);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoSaved(savedVideo, created));
 
         // 触发成就检查
         if (video.getUser() != null) {
@@ -180,6 +217,7 @@ public class VideoService {
     }
 
     @Transactional(readOnly = false)
+    @CacheEvict(value = {"topVideos", "latestVideos"}, allEntries = true)
     public void deleteVideo(Long id) {
         // 先删除相关的视频内容
         videoContentService.deleteByVideoId(id);
@@ -195,6 +233,8 @@ public class VideoService {
         
         // 最后删除视频本身
         videoRepository.deleteById(id);
+        searchIndexService.removeVideo(id);
+        eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoDeleted(id));
     }
 
     public List<Video> searchVideos(String keyword) {
@@ -209,10 +249,11 @@ public class VideoService {
     }
 
     public List<Video> getLatestVideos(int limit) {
-        return videoRepository.findByStatusOrderByCreatedAtDescWithUser()
-                .stream()
-                .limit(limit)
-                .collect(Collectors.toList());
+        return copyOf(videoListCache.latestVideos(limit));
+    }
+
+    private static List<Video> copyOf(List<Video> cached) {
+        return cached.stream().map(Video::displayCopy).collect(Collectors.toList());
     }
 
     public List<Video> getApprovedVideos() {
@@ -258,6 +299,7 @@ public class VideoService {
     /**
      * 临时修复方法：自动批准所有PENDING状态的视频
      */
+    @CacheEvict(value = {"topVideos", "latestVideos"}, allEntries = true)
     public void autoApproveAllPendingVideos() {
         try {
             List<Video> pendingVideos = videoRepository.findByStatus(Video.VideoStatus.PENDING);
@@ -266,6 +308,8 @@ public class VideoService {
                 for (Video video : pendingVideos) {
                     video.setStatus(Video.VideoStatus.APPROVED);
                     videoRepository.save(video);
+                    searchIndexService.indexVideo(video);
+                    eventPublisher.publishEvent(StatsAggregationService.StatsEvent.videoSaved(video, false));
                 }
                 System.out.println("已自动批准所有待审核视频");
             }
@@ -0,0 +1,463 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 视频流媒体引擎
+ * 负责文件句柄缓存、条件请求校验、单/多范围请求以及零拷贝传输
+ */
+@Service
+public class VideoStreamingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VideoStreamingService.class);
+
+    // Tomcat sendfile 相关请求属性
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final String CRLF = "\r\n";
+
+    @Value("${app.upload.path:./uploads}")
+    private String uploadPath;
+
+    @Value("${app.streaming.enable-range-requests:true}")
+    private boolean enableRangeRequests;
+
+    @Value("${app.streaming.cache-max-age:3600}")
+    private long cacheMaxAge;
+
+    @Value("${app.streaming.handle-revalidate-ms:5000}")
+    private long handleRevalidateMillis;
+
+    @Value("${app.streaming.max-cached-handles:10000}")
+    private int maxCachedHandles;
+
+    @Value("${app.streaming.max-ranges:16}")
+    private int maxRanges;
+
+    @Value("${app.streaming.use-sendfile:true}")
+    private boolean useSendfile;
+
+    // 不走 sendfile 时每次从文件读取的字节数
+    @Value("${app.streaming.buffer-size:16384}")
+    private int bufferSize;
+
+    // 已解析的候选根目录（启动时计算一次）
+    private final List<Path> baseDirs = new ArrayList<>();
+
+    // folder/filename -> 文件句柄，超出上限时按 W-TinyLFU 淘汰，热门视频的句柄不会被整体清空
+    private Cache<String, VideoFileHandle> handleCache;
+
+    @PostConstruct
+    public void initBaseDirs() {
+        handleCache = Caffeine.newBuilder()
+                .maximumSize(maxCachedHandles)
+                .build();
+
+        String workingDir = System.getProperty("user.dir");
+        Set<Path> dirs = new LinkedHashSet<>();
+        for (String basePath : new String[] {
+                workingDir + "/../uploads",
+                workingDir + "/uploads",
+                "./uploads",
+                "../uploads",
+                uploadPath }) {
+            if (basePath != null && !basePath.isBlank()) {
+                dirs.add(Paths.get(basePath).toAbsolutePath().normalize());
+            }
+        }
+        baseDirs.addAll(dirs);
+        logger.info("视频流媒体引擎候选目录: {}", baseDirs);
+    }
+
+    /**
+     * 解析视频文件句柄，命中缓存时仅在重新校验间隔到期后做一次 stat
+     */
+    public VideoFileHandle resolve(String folder, String filename) {
+        String key = folder + "/" + filename;
+        long now = System.currentTimeMillis();
+
+        VideoFileHandle cached = handleCache.getIfPresent(key);
+        if (cached != null) {
+            if (now - cached.checkedAt < handleRevalidateMillis) {
+                return cached;
+            }
+            VideoFileHandle refreshed = stat(cached.path, cached.contentType, now);
+            if (refreshed != null) {
+                handleCache.put(key, refreshed);
+                return refreshed;
+            }
+            handleCache.invalidate(key);
+        }
+
+        for (Path baseDir : baseDirs) {
+            Path candidate = baseDir.resolve(folder).resolve(filename).normalize();
+            // 防止 ../ 越权访问上传目录之外的文件
+            if (!candidate.startsWith(baseDir)) {
+                continue;
+            }
+            VideoFileHandle handle = stat(candidate, getVideoContentType(filename), now);
+            if (handle != null) {
+                handleCache.put(key, handle);
+                logger.debug("找到视频文件: {}", candidate);
+                return handle;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 使指定文件的缓存句柄失效（文件被替换或删除时调用）
+     */
+    public void evict(String folder, String filename) {
+        handleCache.invalidate(folder + "/" + filename);
+    }
+
+    /**
+     * 按 HTTP 语义输出视频：条件请求、If-Range、单/多范围以及完整响应
+     */
+    public void serve(VideoFileHandle handle, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        serve(handle, "public, max-age=" + cacheMaxAge, request, response);
+    }
+
+    /**
+     * 同上，使用指定的 Cache-Control（HLS 切片等内容不变的文件）
+     */
+    public void serve(VideoFileHandle handle, String cacheControl, HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, enableRangeRequests ? "bytes" : "none");
+        response.setHeader(HttpHeaders.ETAG, handle.etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, handle.lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+
+        if (isNotModified(handle, request)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        boolean headOnly = "HEAD".equalsIgnoreCase(request.getMethod());
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+
+        if (enableRangeRequests && rangeHeader != null && isIfRangeSatisfied(handle, request)) {
+            List<long[]> ranges = parseRanges(rangeHeader, handle.length);
+            if (ranges != null) {
+                if (ranges.isEmpty()) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + handle.length);
+                    return;
+                }
+                if (ranges.size() == 1) {
+                    long[] range = ranges.get(0);
+                    response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE,
+                            "bytes " + range[0] + "-" + range[1] + "/" + handle.length);
+                    writeSingle(handle, range[0], range[1] - range[0] + 1, headOnly, request, response);
+                } else {
+                    writeMultipart(handle, ranges, headOnly, response);
+                }
+                return;
+            }
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        writeSingle(handle, 0, handle.length, headOnly, request, response);
+    }
+
+    private void writeSingle(VideoFileHandle handle, long start, long count, boolean headOnly,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(handle.contentType);
+        response.setContentLengthLong(count);
+        if (headOnly || count == 0) {
+            return;
+        }
+
+        // 容器支持时交给 Tomcat 直接 sendfile，不经过 JVM 堆
+        if (useSendfile && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, handle.path.toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, start + count);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(handle.path, StandardOpenOption.READ)) {
+            transfer(channel, start, count, response.getOutputStream(), new byte[bufferSize]);
+        }
+    }
+
+    private void writeMultipart(VideoFileHandle handle, List<long[]> ranges, boolean headOnly,
+                                HttpServletResponse response) throws IOException {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (long[] range : ranges) {
+            byte[] header = (CRLF + "--" + boundary + CRLF
+                    + HttpHeaders.CONTENT_TYPE + ": " + handle.contentType + CRLF
+                    + HttpHeaders.CONTENT_RANGE + ": bytes " + range[0] + "-" + range[1] + "/" + handle.length
+                    + CRLF + CRLF).getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + (range[1] - range[0] + 1);
+        }
+        byte[] closing = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (headOnly) {
+            return;
+        }
+
+        ServletOutputStream out = response.getOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        try (FileChannel channel = FileChannel.open(handle.path, StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] range = ranges.get(i);
+                out.write(partHeaders.get(i));
+                transfer(channel, range[0], range[1] - range[0] + 1, out, buffer);
+            }
+        }
+        out.write(closing);
+    }
+
+    /**
+     * 按位置读取后直接写入 Servlet 输出流；Servlet 输出流不是文件或套接字通道，
+     * transferTo 只能经 Channels.newChannel 包装后按 8KB 逐块复制，比直接读写多一层拷贝
+     */
+    private void transfer(FileChannel channel, long position, long count, OutputStream out, byte[] buffer)
+            throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer);
+        long remaining = count;
+        while (remaining > 0) {
+            target.clear().limit((int) Math.min(buffer.length, remaining));
+            int read = channel.read(target, position);
+            if (read <= 0) {
+                // 文件在传输过程中被截断
+                throw new IOException("视频文件在传输过程中被截断");
+            }
+            out.write(buffer, 0, read);
+            position += read;
+            remaining -= read;
+        }
+    }
+
+    /**
+     * If-None-Match 优先于 If-Modified-Since（RFC 9110 13.2.2）
+     */
+    private boolean isNotModified(VideoFileHandle handle, HttpServletRequest request) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            if ("*".equals(ifNoneMatch.trim())) {
+                return true;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                String candidate = tag.trim();
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals(handle.etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = safeDateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && handle.lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * If-Range 不匹配时应忽略 Range 并返回完整内容；ETag 需强比较
+     */
+    private boolean isIfRangeSatisfied(VideoFileHandle handle, HttpServletRequest request) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(handle.etag);
+        }
+        long date = safeDateHeader(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && handle.lastModified / 1000 == date / 1000;
+    }
+
+    /**
+     * 解析 Range 头
+     * @return null 表示语法无效（应忽略并返回完整内容），空列表表示均不可满足
+     */
+    private List<long[]> parseRanges(String rangeHeader, long length) {
+        if (!rangeHeader.startsWith("bytes=")) {
+            return null;
+        }
+        String[] specs = rangeHeader.substring("bytes=".length()).split(",");
+        if (specs.length > maxRanges) {
+            return null;
+        }
+
+        List<long[]> ranges = new ArrayList<>(specs.length);
+        for (String rawSpec : specs) {
+            String spec = rawSpec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+                if (first.isEmpty()) {
+                    // 后缀范围：最后 N 个字节
+                    long suffix = Long.parseLong(last);
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    long requestedEnd = last.isEmpty() ? length - 1 : Long.parseLong(last);
+                    if (requestedEnd < start) {
+                        return null;
+                    }
+                    end = Math.min(requestedEnd, length - 1);
+                }
+                if (start < length && start <= end) {
+                    ranges.add(new long[] { start, end });
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return ranges;
+    }
+
+    private long safeDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private VideoFileHandle stat(Path path, String contentType, long now) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            return new VideoFileHandle(path, attrs.size(), attrs.lastModifiedTime().toMillis(), contentType, now);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("读取视频文件属性失败: {} - {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 检查是否是视频文件
+     */
+    public boolean isVideoFile(String filename) {
+        String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase();
+        switch (extension) {
+            case "mp4":
+            case "avi":
+            case "mov":
+            case "wmv":
+            case "mkv":
+            case "flv":
+            case "webm":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 获取视频文件的Content-Type
+     */
+    public String getVideoContentType(String filename) {
+        String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase();
+        switch (extension) {
+            case "mp4":
+                return "video/mp4";
+            case "avi":
+                return "video/x-msvideo";
+            case "mov":
+                return "video/quicktime";
+            case "wmv":
+                return "video/x-ms-wmv";
+            case "mkv":
+                return "video/x-matroska";
+            case "flv":
+                return "video/x-flv";
+            case "webm":
+                return "video/webm";
+            case "m3u8":
+                return "application/vnd.apple.mpegurl";
+            case "ts":
+                return "video/mp2t";
+            default:
+                return "video/mp4";
+        }
+    }
+
+    /**
+     * 已解析的视频文件句柄
+     */
+    public static final class VideoFileHandle {
+        private final Path path;
+        private final long length;
+        private final long lastModified;
+        private final String contentType;
+        private final String etag;
+        private final long checkedAt;
+
+        VideoFileHandle(Path path, long length, long lastModified, String contentType, long checkedAt) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+            this.checkedAt = checkedAt;
+        }
+
+        public Path getPath() { return path; }
+        public long getLength() { return length; }
+        public long getLastModified() { return lastModified; }
+        public String getContentType() { return contentType; }
+        public String getEtag() { return etag; }
+    }
+}
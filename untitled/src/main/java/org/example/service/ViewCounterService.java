@@ -0,0 +1,268 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 计数写回服务
+ * 播放/浏览计数先累加到内存中的 LongAdder（按对象分条），
+ * 由定时任务以批量 UPDATE ... SET x = x + ? 的方式写回数据库，避免热点行锁竞争和丢失更新。
+ * 写回一批（UPDATE 与推进基线）持写锁，getCurrent 按 ID 批量读取时持读锁，读到的持久化值与未写回增量总是同一时刻的
+ */
+@Service
+public class ViewCounterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ViewCounterService.class);
+
+    /**
+     * 计数类型及其增量写回语句（参数顺序：增量, ID）和按 ID 读取持久化值的语句
+     */
+    public enum CounterType {
+        VIDEO_VIEWS("UPDATE videos SET views = COALESCE(views, 0) + ?, view_count = COALESCE(view_count, 0) + ? WHERE id = ?", 2,
+                "SELECT id, COALESCE(views, 0) FROM videos WHERE id IN "),
+        MUSIC_PLAYS("UPDATE music SET play_count = COALESCE(play_count, 0) + ? WHERE id = ?", 1,
+                "SELECT id, COALESCE(play_count, 0) FROM music WHERE id IN "),
+        MOMENT_VIEWS("UPDATE user_moment SET view_count = COALESCE(view_count, 0) + ? WHERE id = ?", 1,
+                "SELECT id, COALESCE(view_count, 0) FROM user_moment WHERE id IN ");
+
+        private final String updateSql;
+        private final int deltaParams;
+        private final String selectSql;
+
+        CounterType(String updateSql, int deltaParams, String selectSql) {
+            this.updateSql = updateSql;
+            this.deltaParams = deltaParams;
+            this.selectSql = selectSql;
+        }
+
+        Object[] toArgs(long delta, Long id) {
+            Object[] args = new Object[deltaParams + 1];
+            for (int i = 0; i < deltaParams; i++) {
+                args[i] = delta;
+            }
+            args[deltaParams] = id;
+            return args;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.counter.batch-size:500}")
+    private int batchSize;
+
+    // 连续多少个周期无增量后移除计数条目
+    @Value("${app.counter.idle-flushes-before-evict:3}")
+    private int idleFlushesBeforeEvict;
+
+    private final Map<CounterType, ConcurrentHashMap<Long, Counter>> counters = new EnumMap<>(CounterType.class);
+
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    private final AtomicLong totalFlushed = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private volatile long lastFlushMillis;
+
+    public ViewCounterService() {
+        for (CounterType type : CounterType.values()) {
+            counters.put(type, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * 计数加一（无数据库访问）
+     */
+    public void increment(CounterType type, Long id) {
+        if (id == null) {
+            return;
+        }
+        ConcurrentHashMap<Long, Counter> map = counters.get(type);
+        while (true) {
+            Counter counter = map.computeIfAbsent(id, k -> new Counter());
+            counter.adder.increment();
+            if (!counter.retired) {
+                return;
+            }
+            // 写回线程正在回收该条目，本次累加不一定被看到：撤销后换新条目重试
+            counter.adder.decrement();
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 尚未写回数据库的增量，读取方可叠加到持久化值上
+     */
+    public long getPending(CounterType type, Long id) {
+        if (id == null) {
+            return 0L;
+        }
+        Counter counter = counters.get(type).get(id);
+        return counter == null ? 0L : counter.pending();
+    }
+
+    /**
+     * 持久化值 + 未写回增量
+     */
+    public long getCurrent(CounterType type, Long id, Long persisted) {
+        return (persisted != null ? persisted : 0L) + getPending(type, id);
+    }
+
+    /**
+     * 从数据库读取持久化值并叠加未写回增量；不存在的 ID 不在结果中
+     * 调用方缓存的实体中的计数可能早于最近一次写回，不能再与 getPending 相加，列表展示应使用本方法
+     */
+    public Map<Long, Long> getCurrent(CounterType type, Collection<Long> ids) {
+        Map<Long, Long> current = new HashMap<>();
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        flushLock.readLock().lock();
+        try {
+            for (int from = 0; from < distinct.size(); from += batchSize) {
+                List<Long> part = distinct.subList(from, Math.min(from + batchSize, distinct.size()));
+                String sql = type.selectSql + "(" + String.join(",", Collections.nCopies(part.size(), "?")) + ")";
+                jdbcTemplate.query(sql, rs -> {
+                    current.put(rs.getLong(1), rs.getLong(2));
+                }, part.toArray());
+            }
+            current.replaceAll((id, persisted) -> persisted + getPending(type, id));
+        } finally {
+            flushLock.readLock().unlock();
+        }
+        return current;
+    }
+
+    /**
+     * 定时写回
+     */
+    @Scheduled(fixedDelayString = "${app.counter.flush-interval-ms:5000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * 关闭时写回剩余增量
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        logger.info("应用关闭，写回未持久化的计数");
+        flush();
+    }
+
+    /**
+     * 将所有计数的增量批量写回数据库；只有写成功才推进已写回基线，失败的增量在下个周期重试
+     */
+    public synchronized void flush() {
+        for (CounterType type : CounterType.values()) {
+            ConcurrentHashMap<Long, Counter> map = counters.get(type);
+            List<Object[]> batchArgs = new ArrayList<>();
+            Map<Counter, Long> batchDeltas = new HashMap<>();
+
+            Iterator<Map.Entry<Long, Counter>> iterator = map.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Counter> entry = iterator.next();
+                Counter counter = entry.getValue();
+                long delta = counter.pending();
+                if (delta == 0) {
+                    if (++counter.idleFlushes >= idleFlushesBeforeEvict) {
+                        // 先标记回收再复查：复查时没看到的累加，累加方一定能看到标记并撤销重试
+                        counter.retired = true;
+                        if (counter.pending() == 0) {
+                            map.remove(entry.getKey(), counter);
+                            continue;
+                        }
+                        counter.retired = false;
+                        counter.idleFlushes = 0;
+                    }
+                    continue;
+                }
+                counter.idleFlushes = 0;
+                batchArgs.add(type.toArgs(delta, entry.getKey()));
+                batchDeltas.put(counter, delta);
+
+                if (batchArgs.size() >= batchSize) {
+                    writeBatch(type, batchArgs, batchDeltas);
+                    batchArgs = new ArrayList<>();
+                    batchDeltas = new HashMap<>();
+                }
+            }
+            if (!batchArgs.isEmpty()) {
+                writeBatch(type, batchArgs, batchDeltas);
+            }
+        }
+        lastFlushMillis = System.currentTimeMillis();
+    }
+
+    private void writeBatch(CounterType type, List<Object[]> batchArgs, Map<Counter, Long> batchDeltas) {
+        flushLock.writeLock().lock();
+        try {
+            jdbcTemplate.batchUpdate(type.updateSql, batchArgs);
+            long flushed = 0;
+            for (Map.Entry<Counter, Long> entry : batchDeltas.entrySet()) {
+                entry.getKey().flushed += entry.getValue();
+                flushed += entry.getValue();
+            }
+            totalFlushed.addAndGet(flushed);
+        } catch (Exception e) {
+            failedFlushes.incrementAndGet();
+            logger.error("计数写回失败 [{}], {} 条将在下个周期重试: {}", type, batchArgs.size(), e.getMessage());
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 计数器运行状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        for (CounterType type : CounterType.values()) {
+            ConcurrentHashMap<Long, Counter> map = counters.get(type);
+            long pending = 0;
+            for (Counter counter : map.values()) {
+                pending += counter.pending();
+            }
+            Map<String, Object> typeStats = new HashMap<>();
+            typeStats.put("trackedIds", map.size());
+            typeStats.put("pending", pending);
+            stats.put(type.name(), typeStats);
+        }
+        stats.put("totalFlushed", totalFlushed.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        stats.put("lastFlushMillis", lastFlushMillis);
+        return stats;
+    }
+
+    /**
+     * 单个对象的计数：adder 只增不减（回收时的撤销除外），flushed 为已写回的基线（仅由写回线程修改），
+     * retired 为写回线程回收空闲条目时设置的标记
+     */
+    private static final class Counter {
+        final LongAdder adder = new LongAdder();
+        volatile long flushed;
+        volatile boolean retired;
+        int idleFlushes;
+
+        long pending() {
+            return adder.sum() - flushed;
+        }
+    }
+}
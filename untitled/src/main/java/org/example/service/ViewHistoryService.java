@@ -22,6 +22,9 @@ public class ViewHistoryService {
     @Autowired
     private AchievementService achievementService;
 
+    @Autowired
+    private RecommendationModelService recommendationModelService;
+
     /**
      * 记录用户观看视频
      */
@@ -42,6 +45,7 @@ public class ViewHistoryService {
         }
         
         ViewHistory savedView = viewHistoryRepository.save(viewHistory);
+        recommendationModelService.recordView(user.getId(), video.getId());
         
         // 触发观看相关成就检查
         try {
@@ -98,6 +102,7 @@ public class ViewHistoryService {
      */
     public void clearUserViewHistory(User user) {
         viewHistoryRepository.deleteByUser(user);
+        recommendationModelService.clearUser(user.getId());
     }
 
     /**
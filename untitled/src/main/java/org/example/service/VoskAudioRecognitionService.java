@@ -1,501 +1,535 @@
 package org.example.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.vosk.LibVosk;
+import org.vosk.LogLevel;
+import org.vosk.Model;
+import org.vosk.Recognizer;
 
 import jakarta.annotation.PostConstruct;
-import java.io.*;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Vosk音频识别服务（性能优化版）
- * 使用Python脚本调用Vosk进行语音识别
- * 支持延迟加载和异步初始化
+ * Vosk音频识别服务
+ * 进程内加载一次模型，识别器放在有界池中复用；音频经 FFmpeg 解码为 16kHz 单声道 PCM，
+ * 按固定大小分块送入识别器，识别过程中通过 RecognitionListener 回调部分结果和进度。
+ * 识别任务运行在 voskTaskExecutor 上，线程数与识别器数量一致。
+ * app.vosk.engine=subprocess 时保留旧的方式：每个文件启动一次 Python 进程并加载模型，
+ * PCM 仍由本服务解码后经标准输入传入，用于对比和没有本地库的环境
  */
 @Service("voskAudioRecognitionService")
 public class VoskAudioRecognitionService {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(VoskAudioRecognitionService.class);
-    
+
     @Value("${vosk.model.path:models/vosk-model-cn-0.22}")
     private String modelPath;
-    
+
     @Value("${vosk.sample.rate:16000}")
     private int sampleRate;
-    
+
     @Value("${app.vosk.lazy-load:true}")
     private boolean lazyLoad;
-    
-    @Value("${app.vosk.check-on-startup:false}")
-    private boolean checkOnStartup;
-    
+
     @Value("${app.vosk.async-init:true}")
     private boolean asyncInit;
-    
+
+    // in-process：进程内识别器池；subprocess：每个文件启动一次 Python 进程
+    @Value("${app.vosk.engine:in-process}")
+    private String engine;
+
+    @Value("${app.vosk.python-command:python3}")
+    private String pythonCommand;
+
+    // subprocess 模式下单个文件的识别超时
+    @Value("${app.vosk.subprocess-timeout-seconds:600}")
+    private long subprocessTimeoutSeconds;
+
+    @Value("${app.vosk.pool-size:2}")
+    private int poolSize;
+
+    // 每次送入识别器的采样数（16kHz 下 4000 个采样为 0.25 秒）
+    @Value("${app.vosk.chunk-samples:4000}")
+    private int chunkSamples;
+
+    // 单个文件最多识别的时长，超出部分忽略
+    @Value("${app.vosk.max-audio-seconds:1200}")
+    private long maxAudioSeconds;
+
+    // 部分结果回调的最小间隔
+    @Value("${app.vosk.partial-interval-ms:500}")
+    private long partialIntervalMs;
+
     @Autowired
-    private LyricsService lyricsService;
-    
-    private final AtomicBoolean modelAvailable = new AtomicBoolean(false);
-    private final AtomicBoolean pythonAvailable = new AtomicBoolean(false);
-    private final AtomicBoolean initialized = new AtomicBoolean(false);
-    private final AtomicBoolean initializing = new AtomicBoolean(false);
-    
+    @Qualifier("voskTaskExecutor")
+    private ThreadPoolTaskExecutor voskTaskExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile Model model;
+    private volatile BlockingQueue<Recognizer> recognizers;
+    private volatile Path scriptPath;
+    private volatile boolean loadAttempted;
+    private volatile String loadError;
+
+    private final AtomicLong recognitionCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong audioMillisTotal = new AtomicLong();
+    private final AtomicLong processingMillisTotal = new AtomicLong();
+
+    private Timer recognitionTimer;
+    private DistributionSummary realTimeFactor;
+
     @PostConstruct
     public void init() {
+        Gauge.builder("vosk.recognizers.idle", this, s -> s.recognizers != null ? s.recognizers.size() : 0)
+                .description("空闲的Vosk识别器数量")
+                .register(meterRegistry);
+        Gauge.builder("vosk.queue.depth", voskTaskExecutor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .description("等待识别的任务数")
+                .register(meterRegistry);
+        Gauge.builder("vosk.active", voskTaskExecutor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("正在识别的任务数")
+                .register(meterRegistry);
+        recognitionTimer = Timer.builder("vosk.recognition")
+                .description("单个文件的识别耗时")
+                .register(meterRegistry);
+        realTimeFactor = DistributionSummary.builder("vosk.realtime.factor")
+                .description("识别耗时 / 音频时长")
+                .register(meterRegistry);
+
         if (!lazyLoad) {
-            // 立即初始化
-            initializeService();
+            // 立即加载模型
+            loadModel();
         } else {
             logger.info("Vosk服务配置为延迟加载模式");
         }
     }
-    
+
     /**
-     * 应用启动完成后异步初始化
+     * 应用启动完成后异步加载模型；关闭 async-init 时在第一次识别时加载
      */
     @EventListener(ApplicationReadyEvent.class)
     @Async
     public void onApplicationReady() {
-        if (lazyLoad && !initialized.get() && !initializing.get()) {
-            logger.info("开始异步初始化Vosk服务...");
-            initializeService();
+        if (lazyLoad && asyncInit && !loadAttempted) {
+            logger.info("开始异步加载Vosk模型...");
+            loadModel();
         }
     }
-    
-    /**
-     * 初始化服务
-     */
-    private void initializeService() {
-        if (initializing.compareAndSet(false, true)) {
-            try {
-                if (checkOnStartup) {
-                    checkPythonEnvironment();
-                    checkVoskModel();
-                }
-                createVoskScript();
-                initialized.set(true);
-                logger.info("Vosk服务初始化完成");
-            } catch (Exception e) {
-                logger.warn("Vosk服务初始化失败: {}", e.getMessage());
-            } finally {
-                initializing.set(false);
-            }
-        }
-    }
-    
-    /**
-     * 确保服务已初始化
-     */
-    private void ensureInitialized() {
-        if (!initialized.get() && !initializing.get()) {
-            initializeService();
-        }
-    }
-    
+
     /**
-     * 检查Python环境（优化版）
+     * 加载模型并创建识别器池，只尝试一次
      */
-    private void checkPythonEnvironment() {
-        if (pythonAvailable.get()) {
+    private synchronized void loadModel() {
+        if (loadAttempted) {
             return;
         }
-        
-        try {
-            // 使用更快的超时时间
-            ProcessBuilder pb = new ProcessBuilder("python", "--version");
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            boolean finished = process.waitFor(2, TimeUnit.SECONDS);
-            if (finished && process.exitValue() == 0) {
-                pythonAvailable.set(true);
-                logger.info("Python环境检查通过");
-                return;
-            }
-
-            // 尝试python3命令
-            pb = new ProcessBuilder("python3", "--version");
-            pb.redirectErrorStream(true);
-            process = pb.start();
+        loadAttempted = true;
 
-            finished = process.waitFor(2, TimeUnit.SECONDS);
-            if (finished && process.exitValue() == 0) {
-                pythonAvailable.set(true);
-                logger.info("Python3环境检查通过");
-                return;
-            }
-
-            // 尝试py命令（Windows）
-            pb = new ProcessBuilder("py", "--version");
-            pb.redirectErrorStream(true);
-            process = pb.start();
+        Path modelDir = Paths.get(modelPath);
+        if (!Files.isDirectory(modelDir.resolve("am")) || !Files.isDirectory(modelDir.resolve("graph"))) {
+            loadError = "模型文件不存在: " + modelPath;
+            logger.warn("Vosk模型文件不存在: {}，请下载中文模型", modelPath);
+            logger.info("可以从以下地址下载中文模型: https://alphacephei.com/vosk/models");
+            return;
+        }
 
-            finished = process.waitFor(2, TimeUnit.SECONDS);
-            if (finished && process.exitValue() == 0) {
-                pythonAvailable.set(true);
-                logger.info("Python (py) 环境检查通过");
-                return;
+        if (isSubprocess()) {
+            try {
+                scriptPath = writeScript();
+                logger.info("Vosk使用子进程模式: {} {}", pythonCommand, scriptPath);
+            } catch (IOException e) {
+                loadError = "创建识别脚本失败: " + e.getMessage();
+                logger.warn("Vosk{}", loadError);
             }
-
-            logger.warn("Python环境检查失败，语音识别功能将不可用");
-        } catch (Exception e) {
-            logger.warn("Python环境检查异常: {}", e.getMessage());
-        }
-    }
-    
-    /**
-     * 检查Vosk模型（优化版）
-     */
-    private void checkVoskModel() {
-        if (modelAvailable.get()) {
             return;
         }
-        
+
+        long start = System.currentTimeMillis();
         try {
-            Path modelDir = Paths.get(modelPath);
-            if (Files.exists(modelDir) && Files.isDirectory(modelDir)) {
-                // 检查关键文件
-                Path amModel = modelDir.resolve("am");
-                Path graphModel = modelDir.resolve("graph");
-                
-                if (Files.exists(amModel) && Files.exists(graphModel)) {
-                    modelAvailable.set(true);
-                    logger.info("Vosk模型检查通过: {}", modelPath);
-                    return;
-                }
+            LibVosk.setLogLevel(LogLevel.WARNINGS);
+            Model loaded = new Model(modelPath);
+            BlockingQueue<Recognizer> pool = new ArrayBlockingQueue<>(poolSize);
+            for (int i = 0; i < poolSize; i++) {
+                Recognizer recognizer = new Recognizer(loaded, sampleRate);
+                recognizer.setWords(true);
+                pool.add(recognizer);
             }
-            
-            logger.warn("Vosk模型文件不存在: {}，请下载中文模型", modelPath);
-            logger.info("可以从以下地址下载中文模型: https://alphacephei.com/vosk/models");
-        } catch (Exception e) {
-            logger.warn("Vosk模型检查异常: {}", e.getMessage());
+            model = loaded;
+            recognizers = pool;
+            logger.info("Vosk模型加载完成: {}，识别器 {} 个，耗时 {}ms",
+                    modelPath, poolSize, System.currentTimeMillis() - start);
+        } catch (Throwable e) {
+            // 本地库缺失时抛出的是 UnsatisfiedLinkError
+            loadError = e.getClass().getSimpleName() + ": " + e.getMessage();
+            logger.warn("Vosk模型加载失败: {}", loadError);
         }
     }
-    
+
     /**
-     * 创建Vosk识别脚本（优化版）
+     * 识别音频文件（阻塞，等待空闲识别器）
      */
-    private void createVoskScript() {
-        try {
-            String scriptContent = """
-                #!/usr/bin/env python3
-                # -*- coding: utf-8 -*-
-                import sys
-                import json
-                import wave
-                import os
-                from vosk import Model, KaldiRecognizer
-                
-                def recognize_audio(audio_file, model_path):
-                    try:
-                        # 检查模型是否存在
-                        if not os.path.exists(model_path):
-                            return {"error": "Model not found", "model_path": model_path}
-                        
-                        # 加载模型
-                        model = Model(model_path)
-                        
-                        # 打开音频文件
-                        wf = wave.open(audio_file, "rb")
-                        if wf.getnchannels() != 1 or wf.getsampwidth() != 2 or wf.getcomptype() != "NONE":
-                            return {"error": "Audio file must be WAV format mono 16 bit"}
-                        
-                        # 创建识别器
-                        rec = KaldiRecognizer(model, wf.getframerate())
-                        rec.SetWords(True)
-                        
-                        # 识别音频
-                        results = []
-                        while True:
-                            data = wf.readframes(4000)
-                            if len(data) == 0:
-                                break
-                            if rec.AcceptWaveform(data):
-                                result = json.loads(rec.Result())
-                                if result.get("text", "").strip():
-                                    results.append(result)
-                        
-                        # 获取最终结果
-                        final_result = json.loads(rec.FinalResult())
-                        if final_result.get("text", "").strip():
-                            results.append(final_result)
-                        
-                        wf.close()
-                        
-                        # 合并所有结果
-                        all_text = " ".join([r.get("text", "") for r in results if r.get("text", "")])
-                        
-                        return {
-                            "success": True,
-                            "text": all_text.strip(),
-                            "results": results
-                        }
-                        
-                    except Exception as e:
-                        return {"error": str(e)}
-                
-                if __name__ == "__main__":
-                    if len(sys.argv) != 3:
-                        print(json.dumps({"error": "Usage: python script.py <audio_file> <model_path>"}))
-                        sys.exit(1)
-                    
-                    audio_file = sys.argv[1]
-                    model_path = sys.argv[2]
-                    
-                    result = recognize_audio(audio_file, model_path)
-                    print(json.dumps(result, ensure_ascii=False))
-                """;
-            
-            Path scriptPath = Paths.get("vosk_recognizer_fixed.py");
-            Files.write(scriptPath, scriptContent.getBytes());
-            
-            // 设置执行权限（Unix系统）
-            try {
-                scriptPath.toFile().setExecutable(true);
-            } catch (Exception e) {
-                // Windows系统忽略权限设置
-            }
-            
-            logger.info("Vosk识别脚本创建成功: {}", scriptPath.toAbsolutePath());
-        } catch (Exception e) {
-            logger.error("创建Vosk识别脚本失败: {}", e.getMessage());
-        }
+    public List<RecognitionResult> recognizeAudio(String audioPath) throws Exception {
+        return recognizeAudio(audioPath, RecognitionListener.NONE);
     }
-    
+
     /**
-     * 使用Python脚本进行音频识别
+     * 识别音频文件，识别过程中回调部分结果和进度（阻塞）
      */
-    public List<RecognitionResult> recognizeAudio(String audioPath) throws Exception {
-        List<RecognitionResult> results = new ArrayList<>();
+    public List<RecognitionResult> recognizeAudio(String audioPath, RecognitionListener listener) throws IOException {
+        loadModel();
+        if (!isVoskAvailable()) {
+            logger.warn("Vosk不可用（{}），返回模拟识别结果", loadError);
+            List<RecognitionResult> mock = generateMockResults();
+            mock.forEach(listener::onSegment);
+            return mock;
+        }
+        if (isSubprocess()) {
+            return recognizeInSubprocess(audioPath, listener);
+        }
 
-        // 检查环境是否可用，如果不可用则返回模拟数据
-        if (!pythonAvailable.get() || !modelAvailable.get()) {
-            logger.warn("Python环境或Vosk模型不可用，返回模拟识别结果");
-            return generateMockResults();
+        Recognizer recognizer;
+        try {
+            recognizer = recognizers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待识别器时被中断");
         }
 
+        long start = System.nanoTime();
+        try {
+            RecognitionRun run = new RecognitionRun(recognizer, listener);
+            long samples = decode(audioPath, listener, run::feed);
+            run.finish();
+            record(audioPath, start, samples, run.results.size());
+            return run.results;
+        } catch (IOException | RuntimeException e) {
+            failureCount.incrementAndGet();
+            throw e;
+        } finally {
+            recognizer.reset();
+            recognizers.offer(recognizer);
+        }
+    }
+
+    /**
+     * 子进程识别：解码得到的 PCM 写入 Python 进程的标准输入，进程结束后按行读取 JSON 结果。
+     * 输出重定向到临时文件，避免写入标准输入时因输出管道写满而互相阻塞；
+     * 句子在进程结束后才回调，没有部分结果
+     */
+    private List<RecognitionResult> recognizeInSubprocess(String audioPath, RecognitionListener listener)
+            throws IOException {
+        long start = System.nanoTime();
+        Path output = Files.createTempFile("vosk-", ".jsonl");
+        Process process = null;
         try {
-            // 确定Python命令
-            String pythonCmd = determinePythonCommand();
-            if (pythonCmd == null) {
-                logger.warn("无法找到可用的Python命令，返回模拟识别结果");
-                return generateMockResults();
+            process = new ProcessBuilder(pythonCommand, scriptPath.toString(), modelPath, String.valueOf(sampleRate))
+                    .redirectOutput(output.toFile())
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            long samples;
+            try (OutputStream stdin = process.getOutputStream()) {
+                ByteBuffer bytes = ByteBuffer.allocate(chunkSamples * 2).order(ByteOrder.LITTLE_ENDIAN);
+                samples = decode(audioPath, listener, (chunk, n) -> {
+                    bytes.clear();
+                    bytes.asShortBuffer().put(chunk, 0, n);
+                    stdin.write(bytes.array(), 0, n * 2);
+                });
+            }
+            if (!process.waitFor(subprocessTimeoutSeconds, TimeUnit.SECONDS)) {
+                throw new IOException("Vosk子进程识别超时: " + audioPath);
+            }
+            if (process.exitValue() != 0) {
+                throw new IOException("Vosk子进程退出码 " + process.exitValue() + ": " + audioPath);
             }
 
-            ProcessBuilder pb = new ProcessBuilder(
-                pythonCmd, "vosk_recognizer_fixed.py", audioPath, modelPath
-            );
-            pb.directory(new File("."));
-            pb.redirectErrorStream(true);
-
-            Process process = pb.start();
-
-            // 读取输出
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream(), "UTF-8"))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line).append("\n");
+            List<RecognitionResult> results = new ArrayList<>();
+            for (String line : Files.readAllLines(output, StandardCharsets.UTF_8)) {
+                JsonNode node = objectMapper.readTree(line);
+                String text = node.path("text").asText("").trim();
+                if (!text.isEmpty()) {
+                    RecognitionResult result = new RecognitionResult(node.path("start").asDouble(0), text);
+                    results.add(result);
+                    listener.onSegment(result);
                 }
             }
-
-            boolean finished = process.waitFor(60, TimeUnit.SECONDS);
-            if (!finished) {
+            record(audioPath, start, samples, results.size());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failureCount.incrementAndGet();
+            throw new InterruptedIOException("识别被中断");
+        } catch (IOException | RuntimeException e) {
+            failureCount.incrementAndGet();
+            throw e;
+        } finally {
+            if (process != null && process.isAlive()) {
                 process.destroyForcibly();
-                logger.warn("Vosk识别超时，返回模拟识别结果");
-                return generateMockResults();
             }
+            Files.deleteIfExists(output);
+        }
+    }
 
-            int exitCode = process.exitValue();
-            String outputStr = output.toString().trim();
+    private void record(String audioPath, long startNanos, long samples, int segments) {
+        long processingMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        long audioMillis = samples * 1000 / sampleRate;
+        recognitionTimer.record(processingMillis, TimeUnit.MILLISECONDS);
+        recognitionCount.incrementAndGet();
+        audioMillisTotal.addAndGet(audioMillis);
+        processingMillisTotal.addAndGet(processingMillis);
+        if (audioMillis > 0) {
+            double rtf = (double) processingMillis / audioMillis;
+            realTimeFactor.record(rtf);
+            logger.info("Vosk识别完成（{}）: {}，音频 {}s，耗时 {}ms，RTF={}，{} 个片段", engine,
+                    audioPath, audioMillis / 1000, processingMillis, String.format("%.3f", rtf), segments);
+        }
+    }
 
-            if (exitCode == 0 && !outputStr.isEmpty()) {
-                // 尝试解析结果
-                results = parseJsonResults(outputStr);
-                if (!results.isEmpty()) {
-                    logger.info("Vosk识别成功，识别到{}个片段", results.size());
-                    return results;
+    /**
+     * 解码为 16kHz 单声道 s16，按 chunkSamples 分块交给 sink；返回送出的采样数
+     */
+    private long decode(String audioPath, RecognitionListener listener, PcmSink sink) throws IOException {
+        long maxSamples = maxAudioSeconds * sampleRate;
+        short[] chunk = new short[chunkSamples];
+        long samplesFed = 0;
+        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(audioPath)) {
+            // 由 FFmpeg 重采样为识别器需要的格式
+            grabber.setSampleRate(sampleRate);
+            grabber.setAudioChannels(1);
+            grabber.setSampleFormat(avutil.AV_SAMPLE_FMT_S16);
+            grabber.start();
+            double totalSeconds = Math.min(grabber.getLengthInTime() / 1_000_000.0, maxAudioSeconds);
+
+            int filled = 0;
+            Frame frame;
+            while (samplesFed + filled < maxSamples && (frame = grabber.grabSamples()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("识别被中断");
+                }
+                if (frame.samples == null || !(frame.samples[0] instanceof ShortBuffer)) {
+                    continue;
                 }
+                ShortBuffer buffer = (ShortBuffer) frame.samples[0];
+                while (buffer.hasRemaining()) {
+                    int n = Math.min(chunk.length - filled, buffer.remaining());
+                    buffer.get(chunk, filled, n);
+                    filled += n;
+                    if (filled == chunk.length) {
+                        sink.accept(chunk, filled);
+                        samplesFed += filled;
+                        filled = 0;
+                        listener.onProgress((double) samplesFed / sampleRate, totalSeconds);
+                    }
+                }
+            }
+            if (filled > 0) {
+                sink.accept(chunk, filled);
+                samplesFed += filled;
+                listener.onProgress((double) samplesFed / sampleRate, totalSeconds);
             }
+            return samplesFed;
+        } catch (org.bytedeco.javacv.FrameGrabber.Exception e) {
+            throw new IOException("音频解码失败: " + e.getMessage(), e);
+        }
+    }
 
-            logger.warn("Vosk识别失败，退出码: {}, 输出: {}, 返回模拟识别结果", exitCode, outputStr);
-            return generateMockResults();
+    private boolean isSubprocess() {
+        return "subprocess".equalsIgnoreCase(engine);
+    }
 
-        } catch (Exception e) {
-            logger.error("Python识别过程异常: {}, 返回模拟识别结果", e.getMessage());
-            return generateMockResults();
-        }
+    @FunctionalInterface
+    private interface PcmSink {
+        void accept(short[] chunk, int samples) throws IOException;
     }
 
     /**
-     * 确定可用的Python命令
+     * 子进程模式使用的脚本：从标准输入读取 s16le PCM，每识别完一句输出一行 JSON
      */
-    private String determinePythonCommand() {
-        String[] commands = {"python", "python3", "py"};
+    private Path writeScript() throws IOException {
+        String script = """
+                import json
+                import sys
+                from vosk import Model, KaldiRecognizer, SetLogLevel
 
-        for (String cmd : commands) {
-            try {
-                ProcessBuilder pb = new ProcessBuilder(cmd, "--version");
-                pb.redirectErrorStream(true);
-                Process process = pb.start();
+                SetLogLevel(-1)
+                model = Model(sys.argv[1])
+                rec = KaldiRecognizer(model, int(sys.argv[2]))
+                rec.SetWords(True)
+                start = 0.0
+                read = 0
 
-                boolean finished = process.waitFor(3, TimeUnit.SECONDS);
-                if (finished && process.exitValue() == 0) {
-                    return cmd;
-                }
-            } catch (Exception e) {
-                // 继续尝试下一个命令
-            }
-        }
+                def emit(result):
+                    text = result.get("text", "").strip()
+                    if text:
+                        words = result.get("result") or []
+                        at = words[0].get("start", start) if words else start
+                        print(json.dumps({"start": at, "text": text}, ensure_ascii=False), flush=True)
 
-        return null;
+                while True:
+                    data = sys.stdin.buffer.read(8000)
+                    if not data:
+                        break
+                    read += len(data) // 2
+                    if rec.AcceptWaveform(data):
+                        emit(json.loads(rec.Result()))
+                        start = read / int(sys.argv[2])
+                emit(json.loads(rec.FinalResult()))
+                """;
+        Path path = Files.createTempFile("vosk_recognizer", ".py");
+        Files.writeString(path, script, StandardCharsets.UTF_8);
+        path.toFile().deleteOnExit();
+        return path;
     }
-    
+
     /**
-     * 解析JSON结果
+     * 在 voskTaskExecutor 上识别；队列已满时返回失败的 Future（RejectedExecutionException）
      */
-    private List<RecognitionResult> parseJsonResults(String jsonResult) {
-        List<RecognitionResult> results = new ArrayList<>();
-        
+    public CompletableFuture<List<RecognitionResult>> recognizeAsync(String audioPath, RecognitionListener listener) {
         try {
-            // 简单的JSON解析（避免依赖外部库）
-            jsonResult = jsonResult.trim();
-            if (jsonResult.startsWith("[") && jsonResult.endsWith("]")) {
-                // 移除首尾的方括号
-                String content = jsonResult.substring(1, jsonResult.length() - 1);
-                
-                // 分割对象
-                String[] objects = content.split("\\},\\s*\\{");
-                
-                for (String obj : objects) {
-                    obj = obj.trim();
-                    if (!obj.startsWith("{")) obj = "{" + obj;
-                    if (!obj.endsWith("}")) obj = obj + "}";
-                    
-                    // 提取timestamp和text
-                    double timestamp = extractTimestamp(obj);
-                    String text = extractText(obj);
-                    
-                    if (!text.isEmpty()) {
-                        results.add(new RecognitionResult(timestamp, text));
-                    }
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return recognizeAudio(audioPath, listener);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
                 }
-            }
-        } catch (Exception e) {
-            logger.error("解析JSON结果失败: {}", e.getMessage());
+            }, voskTaskExecutor);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Vosk识别队列已满，拒绝任务: {}", audioPath);
+            return CompletableFuture.failedFuture(e);
         }
-        
-        return results;
     }
-    
+
     /**
-     * 提取时间戳
+     * 一次进程内识别：把分块送入识别器并解析输出
      */
-    private double extractTimestamp(String json) {
-        try {
-            String pattern = "\"timestamp\":\\s*([0-9.]+)";
-            java.util.regex.Pattern p = java.util.regex.Pattern.compile(pattern);
-            java.util.regex.Matcher m = p.matcher(json);
-            if (m.find()) {
-                return Double.parseDouble(m.group(1));
+    private class RecognitionRun {
+        private final Recognizer recognizer;
+        private final RecognitionListener listener;
+        private final List<RecognitionResult> results = new ArrayList<>();
+        private long samplesFed;
+        // 当前句子开始的位置（秒），识别结果没有词级时间时使用
+        private double segmentStart;
+        private long lastPartialAt;
+        private String lastPartial = "";
+
+        RecognitionRun(Recognizer recognizer, RecognitionListener listener) {
+            this.recognizer = recognizer;
+            this.listener = listener;
+        }
+
+        void finish() {
+            handleResult(recognizer.getFinalResult());
+        }
+
+        void feed(short[] chunk, int samples) {
+            boolean endOfUtterance = recognizer.acceptWaveForm(chunk, samples);
+            samplesFed += samples;
+            if (endOfUtterance) {
+                handleResult(recognizer.getResult());
+                segmentStart = (double) samplesFed / sampleRate;
+                lastPartial = "";
+            } else {
+                long now = System.currentTimeMillis();
+                if (now - lastPartialAt >= partialIntervalMs) {
+                    lastPartialAt = now;
+                    String partial = readText(recognizer.getPartialResult(), "partial");
+                    if (!partial.isEmpty() && !partial.equals(lastPartial)) {
+                        lastPartial = partial;
+                        listener.onPartial(segmentStart, partial);
+                    }
+                }
             }
-        } catch (Exception e) {
-            logger.debug("提取时间戳失败: {}", e.getMessage());
         }
-        return 0.0;
-    }
-    
-    /**
-     * 提取文本
-     */
-    private String extractText(String json) {
-        try {
-            String pattern = "\"text\":\\s*\"([^\"]+)\"";
-            java.util.regex.Pattern p = java.util.regex.Pattern.compile(pattern);
-            java.util.regex.Matcher m = p.matcher(json);
-            if (m.find()) {
-                return m.group(1);
+
+        private void handleResult(String json) {
+            try {
+                JsonNode node = objectMapper.readTree(json);
+                String text = node.path("text").asText("").trim();
+                if (text.isEmpty()) {
+                    return;
+                }
+                JsonNode words = node.path("result");
+                double timestamp = words.isArray() && words.size() > 0
+                        ? words.get(0).path("start").asDouble(segmentStart)
+                        : segmentStart;
+                RecognitionResult result = new RecognitionResult(timestamp, text);
+                results.add(result);
+                listener.onSegment(result);
+            } catch (IOException e) {
+                logger.debug("解析Vosk结果失败: {}", json);
+            }
+        }
+
+        private String readText(String json, String field) {
+            try {
+                return objectMapper.readTree(json).path(field).asText("").trim();
+            } catch (IOException e) {
+                return "";
             }
-        } catch (Exception e) {
-            logger.debug("提取文本失败: {}", e.getMessage());
         }
-        return "";
     }
-    
 
-    
     /**
-     * 生成带时间戳的歌词
+     * 生成时间戳歌词
      */
     public List<LyricsService.LyricLine> generateTimedLyrics(List<RecognitionResult> recognitionResults) {
         List<LyricsService.LyricLine> lyrics = new ArrayList<>();
-        
+
         for (RecognitionResult result : recognitionResults) {
             lyrics.add(new LyricsService.LyricLine(result.getTimestamp(), result.getText()));
         }
-        
+
         return lyrics;
     }
-    
-    /**
-     * 完整的音频识别歌词流程（异步）
-     */
-    public CompletableFuture<List<LyricsService.LyricLine>> processAudioToLyricsAsync(String audioPath) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                logger.info("开始处理音频文件: {}", audioPath);
-                
-                // 检查文件是否存在
-                if (!new File(audioPath).exists()) {
-                    logger.error("音频文件不存在: {}", audioPath);
-                    return createErrorLyrics("音频文件不存在");
-                }
-                
-                // 语音识别
-                List<RecognitionResult> recognitionResults = recognizeAudio(audioPath);
-                logger.info("语音识别完成，识别到 {} 个片段", recognitionResults.size());
-                
-                // 生成时间戳歌词
-                List<LyricsService.LyricLine> lyrics = generateTimedLyrics(recognitionResults);
-                logger.info("生成歌词完成，共 {} 行", lyrics.size());
-                
-                return lyrics;
-                
-            } catch (Exception e) {
-                logger.error("音频识别歌词处理失败: {}", e.getMessage());
-                return createErrorLyrics("识别失败: " + e.getMessage());
-            }
-        });
-    }
-    
-    /**
-     * 创建空歌词结果（不再显示错误提示）
-     */
-    private List<LyricsService.LyricLine> createErrorLyrics(String errorMessage) {
-        logger.warn("音频识别失败: {}", errorMessage);
-        // 返回空列表，不再显示错误提示歌词
-        return new ArrayList<>();
-    }
-    
+
     /**
      * 检查Vosk是否可用
      */
     public boolean isVoskAvailable() {
-        return pythonAvailable.get() && modelAvailable.get();
+        return isSubprocess() ? scriptPath != null : model != null;
     }
 
     /**
@@ -503,45 +537,110 @@ public class VoskAudioRecognitionService {
      */
     public String getVoskStatusInfo() {
         StringBuilder status = new StringBuilder();
-        status.append("Python环境: ").append(pythonAvailable.get() ? "✓ 可用" : "✗ 不可用").append("\n");
-        status.append("Vosk模型: ").append(modelAvailable.get() ? "✓ 可用" : "✗ 不可用").append("\n");
+        status.append("识别方式: ").append(isSubprocess() ? "子进程 (" + pythonCommand + ")" : "进程内").append("\n");
+        status.append("Vosk模型: ").append(isVoskAvailable() ? "✓ 可用" : (loadAttempted ? "✗ 不可用" : "未加载")).append("\n");
         status.append("模型路径: ").append(modelPath).append("\n");
+        status.append("识别器: ").append(recognizers != null ? recognizers.size() : 0).append("/").append(poolSize).append(" 空闲\n");
+        status.append("排队任务: ").append(voskTaskExecutor.getThreadPoolExecutor().getQueue().size()).append("\n");
 
-        if (!pythonAvailable.get()) {
-            status.append("错误: 请安装Python环境并确保可在命令行中执行\n");
-        }
-        if (!modelAvailable.get()) {
-            status.append("错误: 请下载Vosk中文模型到: ").append(modelPath).append("\n");
+        if (loadError != null) {
+            status.append("错误: ").append(loadError).append("\n");
             status.append("下载地址: https://alphacephei.com/vosk/models/vosk-model-cn-0.22.zip\n");
         }
-
-        if (pythonAvailable.get() && modelAvailable.get()) {
+        if (isVoskAvailable()) {
             status.append("✓ Vosk语音识别环境已就绪\n");
         }
 
         return status.toString();
     }
-    
+
+    /**
+     * 识别统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long audioMillis = audioMillisTotal.get();
+        stats.put("available", isVoskAvailable());
+        stats.put("engine", engine);
+        stats.put("modelPath", modelPath);
+        stats.put("poolSize", poolSize);
+        stats.put("idleRecognizers", recognizers != null ? recognizers.size() : 0);
+        stats.put("activeTasks", voskTaskExecutor.getActiveCount());
+        stats.put("queueDepth", voskTaskExecutor.getThreadPoolExecutor().getQueue().size());
+        stats.put("recognitions", recognitionCount.get());
+        stats.put("failures", failureCount.get());
+        stats.put("audioSeconds", audioMillis / 1000);
+        stats.put("realTimeFactor", audioMillis > 0 ? (double) processingMillisTotal.get() / audioMillis : 0.0);
+        stats.put("loadError", loadError);
+        return stats;
+    }
+
+    /**
+     * 关闭时先停止识别线程，再释放空闲识别器和模型；
+     * 仍在使用中的识别器不释放，避免本地代码访问已释放的模型
+     */
+    @PreDestroy
+    public void shutdown() {
+        voskTaskExecutor.shutdown();
+        BlockingQueue<Recognizer> pool = recognizers;
+        if (pool == null) {
+            return;
+        }
+        int closed = 0;
+        Recognizer recognizer;
+        while ((recognizer = pool.poll()) != null) {
+            recognizer.close();
+            closed++;
+        }
+        if (closed == poolSize && model != null) {
+            model.close();
+        }
+        logger.info("Vosk识别器已释放 {}/{}", closed, poolSize);
+    }
+
+    /**
+     * 识别过程回调，在识别线程上调用
+     */
+    public interface RecognitionListener {
+
+        RecognitionListener NONE = new RecognitionListener() {};
+
+        /**
+         * 一句识别完成
+         */
+        default void onSegment(RecognitionResult result) {}
+
+        /**
+         * 当前句子的部分结果（之后可能被修正）
+         */
+        default void onPartial(double segmentStart, String text) {}
+
+        /**
+         * 已处理的音频时长 / 总时长（秒，总时长未知时为 0）
+         */
+        default void onProgress(double processedSeconds, double totalSeconds) {}
+    }
+
     /**
      * 识别结果内部类
      */
     public static class RecognitionResult {
         private final double timestamp;
         private final String text;
-        
+
         public RecognitionResult(double timestamp, String text) {
             this.timestamp = timestamp;
             this.text = text;
         }
-        
+
         public double getTimestamp() {
             return timestamp;
         }
-        
+
         public String getText() {
             return text;
         }
-        
+
         @Override
         public String toString() {
             return String.format("[%.2fs] %s", timestamp, text);
@@ -549,7 +648,7 @@ public class VoskAudioRecognitionService {
     }
 
     /**
-     * 生成模拟识别结果（更真实的语音识别模拟）
+     * 生成模拟识别结果（模型不可用时使用）
      */
     private List<RecognitionResult> generateMockResults() {
         List<RecognitionResult> results = new ArrayList<>();
@@ -0,0 +1,341 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import jakarta.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket 连接注册表（每个节点一份）
+ * 会话ID -> 连接、用户名 -> 会话ID集合两张 ConcurrentHashMap，按会话和按用户查找都是 O(1)；
+ * 单用户连接数在用户名所在桶的 compute 内检查并登记（按桶加锁，不同用户互不阻塞），总连接数用 CAS 占位，
+ * 空闲过期由一个定时任务统一扫描。
+ */
+@Service
+public class WebSocketSessionRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketSessionRegistry.class);
+
+    /**
+     * 登记结果
+     */
+    public enum Admission {
+        ACCEPTED,
+        REJECTED_GLOBAL,
+        REJECTED_PER_USER
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 本节点最大连接数
+    @Value("${app.websocket.max-connections:10000}")
+    private int maxConnections;
+
+    // 单个用户最大连接数（多个标签页、设备）
+    @Value("${app.websocket.max-connections-per-user:3}")
+    private int maxConnectionsPerUser;
+
+    // 超过该时间没有收到任何帧（含 STOMP 心跳）的连接视为失效
+    @Value("${app.websocket.idle-timeout-ms:180000}")
+    private long idleTimeoutMillis;
+
+    // 会话ID -> 连接
+    private final Map<String, SessionEntry> sessions = new ConcurrentHashMap<>();
+
+    // 用户名 -> 会话ID集合；集合不可变，只在 compute 内整体替换，读取时无需加锁
+    private final Map<String, Set<String>> userSessions = new ConcurrentHashMap<>();
+
+    // WebRTC 信令用户ID -> 会话ID
+    private final Map<String, String> signalingSessions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejectedGlobal = new AtomicLong();
+    private final AtomicLong rejectedPerUser = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("websocket.sessions.active", connectionCount, AtomicInteger::get)
+                .description("本节点的 WebSocket 连接数")
+                .register(meterRegistry);
+        Gauge.builder("websocket.sessions.users", userSessions, Map::size)
+                .description("本节点有连接的用户数")
+                .register(meterRegistry);
+        FunctionCounter.builder("websocket.sessions.rejected", rejectedGlobal, AtomicLong::get)
+                .description("因连接数上限被拒绝的连接")
+                .tag("reason", "global")
+                .register(meterRegistry);
+        FunctionCounter.builder("websocket.sessions.rejected", rejectedPerUser, AtomicLong::get)
+                .description("因连接数上限被拒绝的连接")
+                .tag("reason", "per-user")
+                .register(meterRegistry);
+        FunctionCounter.builder("websocket.sessions.expired", expired, AtomicLong::get)
+                .description("因空闲超时被关闭的连接")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 握手前的快速检查，真正的限制在 tryRegister 中原子执行
+     */
+    public boolean isAtCapacity() {
+        return connectionCount.get() >= maxConnections;
+    }
+
+    /**
+     * 登记新连接；username 为空表示匿名连接，只占用总连接数
+     */
+    public Admission tryRegister(String sessionId, String username, WebSocketSession transport) {
+        if (sessions.containsKey(sessionId)) {
+            return Admission.ACCEPTED;
+        }
+
+        // 先占用一个总连接数名额
+        int current;
+        do {
+            current = connectionCount.get();
+            if (current >= maxConnections) {
+                rejectedGlobal.incrementAndGet();
+                logger.warn("WebSocket连接数达到上限: {}/{}", current, maxConnections);
+                return Admission.REJECTED_GLOBAL;
+            }
+        } while (!connectionCount.compareAndSet(current, current + 1));
+
+        if (username != null) {
+            boolean[] rejected = new boolean[1];
+            userSessions.compute(username, (name, ids) -> {
+                if (ids != null && ids.size() >= maxConnectionsPerUser) {
+                    rejected[0] = true;
+                    return ids;
+                }
+                Set<String> updated = ids == null ? new HashSet<>(2) : new HashSet<>(ids);
+                updated.add(sessionId);
+                return Collections.unmodifiableSet(updated);
+            });
+            if (rejected[0]) {
+                connectionCount.decrementAndGet();
+                rejectedPerUser.incrementAndGet();
+                logger.warn("用户 {} 连接数达到上限: {}", username, maxConnectionsPerUser);
+                return Admission.REJECTED_PER_USER;
+            }
+        }
+
+        sessions.put(sessionId, new SessionEntry(sessionId, username, transport));
+        accepted.incrementAndGet();
+        logger.debug("WebSocket连接登记: {} (用户: {})，当前连接数: {}", sessionId, username, connectionCount.get());
+        return Admission.ACCEPTED;
+    }
+
+    /**
+     * 注销连接，返回被注销的记录（未登记时返回 null）
+     */
+    public SessionEntry unregister(String sessionId) {
+        SessionEntry entry = sessions.remove(sessionId);
+        if (entry == null) {
+            return null;
+        }
+        connectionCount.decrementAndGet();
+        if (entry.username != null) {
+            userSessions.computeIfPresent(entry.username, (name, ids) -> {
+                if (!ids.contains(sessionId)) {
+                    return ids;
+                }
+                if (ids.size() == 1) {
+                    return null;
+                }
+                Set<String> updated = new HashSet<>(ids);
+                updated.remove(sessionId);
+                return Collections.unmodifiableSet(updated);
+            });
+        }
+        String signalingId;
+        synchronized (entry) {
+            // 与 bindSignaling 互斥：关闭后不再绑定，关闭前的绑定在这里一定能看到
+            entry.closed = true;
+            signalingId = entry.signalingId;
+        }
+        if (signalingId != null) {
+            // 只移除仍指向本会话的绑定，同一用户新会话的绑定保留
+            signalingSessions.remove(signalingId, sessionId);
+        }
+        logger.debug("WebSocket连接注销: {} (用户: {})，当前连接数: {}", sessionId, entry.username, connectionCount.get());
+        return entry;
+    }
+
+    /**
+     * 记录连接活动（收到任意帧时调用）
+     */
+    public void touch(String sessionId) {
+        SessionEntry entry = sessions.get(sessionId);
+        if (entry != null) {
+            entry.lastActiveNanos = System.nanoTime();
+        }
+    }
+
+    public String getUsername(String sessionId) {
+        SessionEntry entry = sessions.get(sessionId);
+        return entry != null ? entry.username : null;
+    }
+
+    public Set<String> getSessionIds(String username) {
+        return userSessions.getOrDefault(username, Collections.emptySet());
+    }
+
+    public boolean isUserConnected(String username) {
+        return userSessions.containsKey(username);
+    }
+
+    /**
+     * 把 WebRTC 信令用户ID 绑定到会话，连接关闭时自动解除；会话已关闭时返回 false
+     */
+    public boolean bindSignaling(String sessionId, String signalingId) {
+        SessionEntry entry = sessions.get(sessionId);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            if (entry.closed) {
+                return false;
+            }
+            String previous = entry.signalingId;
+            entry.signalingId = signalingId;
+            signalingSessions.put(signalingId, sessionId);
+            if (previous != null && !previous.equals(signalingId)) {
+                signalingSessions.remove(previous, sessionId);
+            }
+        }
+        return true;
+    }
+
+    public String getSignalingSession(String signalingId) {
+        return signalingSessions.get(signalingId);
+    }
+
+    public boolean isSignalingOnline(String signalingId) {
+        return signalingSessions.containsKey(signalingId);
+    }
+
+    public int getSignalingCount() {
+        return signalingSessions.size();
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * 关闭空闲超时的连接；连接关闭回调负责注销，已关闭但未回调的直接注销
+     */
+    @Scheduled(fixedDelayString = "${app.websocket.sweep-interval-ms:30000}")
+    public int expireIdle() {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        int count = 0;
+        for (SessionEntry entry : sessions.values()) {
+            if (now - entry.lastActiveNanos <= idleNanos) {
+                continue;
+            }
+            count++;
+            close(entry, CloseStatus.SESSION_NOT_RELIABLE);
+        }
+        if (count > 0) {
+            expired.addAndGet(count);
+            logger.info("关闭空闲WebSocket连接: {}，当前连接数: {}", count, connectionCount.get());
+        }
+        return count;
+    }
+
+    /**
+     * 关闭全部连接（紧急情况使用）
+     */
+    public int closeAll() {
+        int count = 0;
+        for (SessionEntry entry : sessions.values()) {
+            close(entry, CloseStatus.SERVICE_RESTARTED);
+            count++;
+        }
+        logger.warn("强制关闭全部WebSocket连接: {}", count);
+        return count;
+    }
+
+    private void close(SessionEntry entry, CloseStatus status) {
+        WebSocketSession transport = entry.transport;
+        if (transport == null || !transport.isOpen()) {
+            unregister(entry.sessionId);
+            return;
+        }
+        try {
+            transport.close(status);
+        } catch (Exception e) {
+            logger.debug("关闭WebSocket连接失败: {} - {}", entry.sessionId, e.getMessage());
+            unregister(entry.sessionId);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activeConnections", connectionCount.get());
+        stats.put("activeUsers", userSessions.size());
+        stats.put("signalingUsers", signalingSessions.size());
+        stats.put("maxConnections", maxConnections);
+        stats.put("maxConnectionsPerUser", maxConnectionsPerUser);
+        stats.put("idleTimeoutMs", idleTimeoutMillis);
+        stats.put("accepted", accepted.get());
+        stats.put("rejectedGlobal", rejectedGlobal.get());
+        stats.put("rejectedPerUser", rejectedPerUser.get());
+        stats.put("expired", expired.get());
+        stats.put("lastUpdate", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+        return stats;
+    }
+
+    /**
+     * 已登记的连接
+     */
+    public static final class SessionEntry {
+        private final String sessionId;
+        private final String username;
+        private final WebSocketSession transport;
+        private final long connectedAt = System.currentTimeMillis();
+        private volatile long lastActiveNanos = System.nanoTime();
+        private volatile String signalingId;
+        // 已注销；与 signalingId 一起在 entry 上同步读写
+        private boolean closed;
+
+        SessionEntry(String sessionId, String username, WebSocketSession transport) {
+            this.sessionId = sessionId;
+            this.username = username;
+            this.transport = transport;
+        }
+
+        public String getSessionId() { return sessionId; }
+        public String getUsername() { return username; }
+        public long getConnectedAt() { return connectedAt; }
+        public String getSignalingId() { return signalingId; }
+    }
+}
@@ -1,7 +1,7 @@
 package org.example.websocket;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.example.service.WebSocketAutoManager;
+import org.example.service.WebSocketSessionRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
@@ -20,7 +20,7 @@ public class WebSocketHandler extends TextWebSocketHandler {
     private static final Logger logger = Logger.getLogger(WebSocketHandler.class.getName());
     
     @Autowired
-    private WebSocketAutoManager autoManager;
+    private WebSocketSessionRegistry sessionRegistry;
     
     private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
     private final ObjectMapper objectMapper = new ObjectMapper();
@@ -28,11 +28,15 @@ public class WebSocketHandler extends TextWebSocketHandler {
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         String sessionId = session.getId();
+
+        // 登记到连接注册表，超出上限时关闭
+        String username = session.getPrincipal() != null ? session.getPrincipal().getName() : null;
+        if (sessionRegistry.tryRegister(sessionId, username, session) != WebSocketSessionRegistry.Admission.ACCEPTED) {
+            session.close(CloseStatus.SERVICE_OVERLOAD);
+            return;
+        }
         sessions.put(sessionId, session);
         
-        // 注册到自动管理器
-        autoManager.registerConnection(sessionId, session);
-        
         logger.info("WebSocket连接建立: " + sessionId);
         
         // 发送连接确认消息
@@ -49,6 +53,7 @@ public class WebSocketHandler extends TextWebSocketHandler {
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
         String sessionId = session.getId();
         String payload = message.getPayload();
+        sessionRegistry.touch(sessionId);
         
         logger.info("收到消息 from " + sessionId + ": " + payload);
         
@@ -90,8 +95,8 @@ public class WebSocketHandler extends TextWebSocketHandler {
         String sessionId = session.getId();
         sessions.remove(sessionId);
         
-        // 从自动管理器注销
-        autoManager.unregisterConnection(sessionId);
+        // 从连接注册表注销
+        sessionRegistry.unregister(sessionId);
         
         logger.info("WebSocket连接关闭: " + sessionId + " - 状态: " + status);
     }
@@ -103,7 +108,7 @@ public class WebSocketHandler extends TextWebSocketHandler {
         
         // 清理连接
         sessions.remove(sessionId);
-        autoManager.unregisterConnection(sessionId);
+        sessionRegistry.unregister(sessionId);
     }
     
     private void handlePing(WebSocketSession session, Map<String, Object> messageData) throws IOException {
@@ -143,7 +148,7 @@ public class WebSocketHandler extends TextWebSocketHandler {
     
     private void handleStatus(WebSocketSession session, Map<String, Object> messageData) throws IOException {
         // 获取连接状态信息
-        Map<String, Object> stats = autoManager.getConnectionStats();
+        Map<String, Object> stats = sessionRegistry.getStats();
         
         Map<String, Object> response = Map.of(
             "type", "status_response",
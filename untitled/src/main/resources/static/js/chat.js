@@ -270,8 +270,9 @@ const ChatApp = {
             // 重新渲染会话列表以更新选中状态
             this.renderConversations();
 
-            // 加载新会话（等待完成）
+            // 加载新会话（等待完成）后标记已读
             await this.loadConversation(newConversationId);
+            this.markConversationRead(newConversationId);
 
             // 订阅当前会话的WebSocket消息
             this.subscribeToConversation(newConversationId);
@@ -1055,6 +1056,7 @@ const ChatApp = {
             // 初始化分页参数
             if (!loadMore) {
                 this.currentPage = 0;
+                this.oldestMessageId = null;
                 this.hasMoreMessages = true;
                 this.isLoadingMessages = false;
             }
@@ -1066,7 +1068,9 @@ const ChatApp = {
 
             this.isLoadingMessages = true;
 
-            const response = await fetch(`/api/chat/conversations/${this.currentConversationId}/messages?page=${this.currentPage}&size=20`, {
+            // 游标分页：加载更多时取早于当前最早一条消息的记录
+            const cursor = loadMore && this.oldestMessageId ? `&before=${this.oldestMessageId}` : '';
+            const response = await fetch(`/api/chat/conversations/${this.currentConversationId}/messages?size=20${cursor}`, {
                 method: 'GET',
                 credentials: 'include'
             });
@@ -1129,7 +1133,8 @@ const ChatApp = {
 
                     // 更新分页信息
                     this.currentPage++;
-                    this.hasMoreMessages = this.currentPage < data.totalPages;
+                    this.oldestMessageId = data.nextBefore || this.oldestMessageId;
+                    this.hasMoreMessages = data.hasMore;
                 }
 
                 console.log('消息加载完成，当前会话ID:', this.currentConversationId, '当前页:', this.currentPage, '还有更多:', this.hasMoreMessages);
@@ -1591,6 +1596,26 @@ const ChatApp = {
         window.location.href = `/chat/private?userId=${userId}`;
     },
     
+    // 标记会话已读：清零本地未读数，需要时通知服务端，再刷新总未读数
+    async markConversationRead(conversationId, notifyServer = true) {
+        const conversation = this.conversations.find(c => c.id === conversationId);
+        if (conversation && conversation.unreadCount) {
+            conversation.unreadCount = 0;
+            this.renderConversations();
+        }
+        if (notifyServer) {
+            try {
+                await fetch(`/api/chat/conversations/${conversationId}/read`, {
+                    method: 'POST',
+                    credentials: 'include'
+                });
+            } catch (error) {
+                console.error('标记会话已读失败:', error);
+            }
+        }
+        this.updateUnreadCount();
+    },
+
     // 更新未读消息数量
     async updateUnreadCount() {
         try {
@@ -2611,7 +2636,8 @@ const ChatApp = {
 
         try {
             // 如果是当前会话的消息，直接显示
-            if (this.currentConversationId && message.conversationId === this.currentConversationId) {
+            const isCurrent = this.currentConversationId && message.conversationId === this.currentConversationId;
+            if (isCurrent) {
                 this.addMessageToUI(message);
                 this.scrollToLatestMessage(true); // 强制滚动到新消息
             }
@@ -2619,8 +2645,12 @@ const ChatApp = {
             // 更新会话列表
             this.updateConversationLastMessage(message);
 
-            // 更新未读消息数
-            this.updateUnreadCount();
+            // 正在查看的会话收到消息即视为已读，否则刷新未读消息数
+            if (isCurrent) {
+                this.markConversationRead(this.currentConversationId);
+            } else {
+                this.updateUnreadCount();
+            }
         } catch (error) {
             console.error('处理实时消息失败:', error, message);
         }
@@ -193,12 +193,14 @@ class OnlineStatusManager {
                 }
             });
 
-            // 订阅用户状态变化
-            stompClient.subscribe('/topic/user-status', (message) => {
+            // 订阅关注的用户的状态变化（服务端按批推送给关注者）
+            stompClient.subscribe('/user/queue/user-status', (message) => {
                 const data = JSON.parse(message.body);
-                if (data.type === 'user_status_change') {
-                    this.updateUserStatus(data.userId, data.isOnline ? 'online' : 'offline');
-                    console.log('📡 收到用户状态变化:', data.userId, data.isOnline ? '上线' : '下线');
+                if (data.type === 'user_status_batch') {
+                    data.changes.forEach(change => {
+                        this.updateUserStatus(change.userId, change.isOnline ? 'online' : 'offline');
+                    });
+                    console.log('📡 收到用户状态变化:', data.changes.length);
                 }
             });
 
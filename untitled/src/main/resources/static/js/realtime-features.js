@@ -76,9 +76,9 @@ class RealtimeFeatures {
     }
 
     onConnected() {
-        // 订阅个人通知
+        // 订阅个人通知（服务端 convertAndSendToUser(username, "/queue/notifications")，按会话用户路由）
         if (this.currentUser) {
-            this.stompClient.subscribe(`/user/${this.currentUser.username}/notifications`, (message) => {
+            this.stompClient.subscribe('/user/queue/notifications', (message) => {
                 this.handleNotification(JSON.parse(message.body));
             });
         }
@@ -98,8 +98,10 @@ class RealtimeFeatures {
             });
 
             // 订阅视频弹幕
+            // 服务端按帧合并推送，消息体是弹幕数组
             this.stompClient.subscribe(`/topic/video/${this.currentVideoId}/danmaku`, (message) => {
-                this.handleRealtimeDanmaku(JSON.parse(message.body));
+                const body = JSON.parse(message.body);
+                (Array.isArray(body) ? body : [body]).forEach(danmaku => this.handleRealtimeDanmaku(danmaku));
             });
 
             // 订阅视频活动
@@ -107,10 +109,23 @@ class RealtimeFeatures {
                 this.handleVideoActivity(JSON.parse(message.body));
             });
 
+            // 订阅观看人数（服务端每个视频每秒最多推送一次）
+            this.stompClient.subscribe(`/topic/video/${this.currentVideoId}/viewers`, (message) => {
+                this.handleViewerCount(JSON.parse(message.body));
+            });
+
             // 发送加入视频观看消息
             this.sendMessage('/app/video.join', {
                 videoId: this.currentVideoId
             });
+
+            // 观看心跳，服务端超过 60 秒未收到心跳会移除观看记录
+            clearInterval(this.viewerHeartbeat);
+            this.viewerHeartbeat = setInterval(() => {
+                this.sendMessage('/app/video.heartbeat', {
+                    videoId: this.currentVideoId
+                });
+            }, 20000);
         }
     }
 
@@ -151,9 +166,9 @@ class RealtimeFeatures {
         const topic = `/topic/video/${videoId}/danmaku`;
         this.stompClient.subscribe(topic, (message) => {
             try {
-                const danmaku = JSON.parse(message.body);
+                const body = JSON.parse(message.body);
                 if (callback && typeof callback === 'function') {
-                    callback(danmaku);
+                    (Array.isArray(body) ? body : [body]).forEach(danmaku => callback(danmaku));
                 }
             } catch (error) {
                 console.error('解析弹幕消息失败:', error);
@@ -202,6 +217,13 @@ class RealtimeFeatures {
         }
     }
 
+    // 更新观看人数
+    handleViewerCount(message) {
+        document.querySelectorAll('[data-viewer-count]').forEach(el => {
+            el.textContent = message.count;
+        });
+    }
+
     // 处理视频活动
     handleVideoActivity(message) {
         if (message.type === 'USER_JOIN') {
@@ -213,9 +235,18 @@ class RealtimeFeatures {
 
     // 处理通知
     handleNotification(notification) {
+        // 合并通知：一条消息带若干条更新后的通知和服务端未读总数（原地更新的通知不增加未读数）
+        if (notification.type === 'notification_update') {
+            this.notificationCount = notification.unreadCount;
+            this.updateNotificationBadge();
+            (notification.notifications || []).forEach(item => this.showNotificationToast(item));
+            this.playNotificationSound();
+            return;
+        }
+
         this.notificationCount++;
         this.updateNotificationBadge();
-        
+
         // 显示通知
         this.showNotificationToast(notification);
         
@@ -345,7 +376,7 @@ class RealtimeFeatures {
 
     // 显示通知Toast
     showNotificationToast(notification) {
-        const type = this.getNotificationToastType(notification.type);
+        const type = this.getNotificationToastType(notification.notificationType || notification.type);
         this.showToast(notification.title, notification.content, type);
     }
 
@@ -407,6 +438,7 @@ class RealtimeFeatures {
 
     // 页面卸载时断开连接
     disconnect() {
+        clearInterval(this.viewerHeartbeat);
         if (this.connected && this.stompClient) {
             // 发送离开视频观看消息
             if (this.currentVideoId) {
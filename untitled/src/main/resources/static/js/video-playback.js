@@ -0,0 +1,114 @@
+/**
+ * 播放页增强
+ * HLS：<video data-hls-src="master.m3u8"> 原生支持 HLS 时直接播放（Safari），否则用 hls.js；都不可用时保留原始 mp4 源
+ * 拖动预览：<video data-preview-vtt="..."> 加载 WebVTT 雪碧图索引，鼠标停在进度条区域时显示对应画面
+ */
+const VideoPlayback = {
+    // 原生控制栏（进度条所在）距视频底部的大致高度
+    CONTROLS_HEIGHT: 48,
+
+    attachAll() {
+        document.querySelectorAll('video[data-hls-src]').forEach(video => this.attachHls(video));
+        document.querySelectorAll('video[data-preview-vtt]').forEach(video => this.attachPreview(video));
+    },
+
+    attachHls(video) {
+        const src = video.dataset.hlsSrc;
+        if (video.canPlayType('application/vnd.apple.mpegurl')) {
+            video.src = src;
+            return;
+        }
+        if (typeof Hls === 'undefined' || !Hls.isSupported()) {
+            return;
+        }
+        const hls = new Hls();
+        hls.on(Hls.Events.ERROR, (event, data) => {
+            if (data.fatal) {
+                // 播放列表或切片不可用时退回原始文件
+                console.warn('HLS播放失败，改用原始文件:', data.type, data.details);
+                hls.destroy();
+                video.removeAttribute('src');
+                video.load();
+            }
+        });
+        hls.loadSource(src);
+        hls.attachMedia(video);
+    },
+
+    attachPreview(video) {
+        fetch(video.dataset.previewVtt)
+            .then(response => response.ok ? response.text() : Promise.reject(response.status))
+            .then(text => {
+                const cues = this.parseVtt(text);
+                if (cues.length > 0) {
+                    this.bindPreview(video, cues);
+                }
+            })
+            .catch(error => console.warn('加载拖动预览失败:', error));
+    },
+
+    // 每条 cue："00:00:10.000 --> 00:00:20.000" 下一行 "雪碧图地址#xywh=x,y,w,h"
+    parseVtt(text) {
+        const cues = [];
+        const lines = text.split(/\r?\n/);
+        for (let i = 0; i < lines.length - 1; i++) {
+            const timing = lines[i].match(/^([\d:.]+)\s+-->\s+([\d:.]+)/);
+            if (!timing) continue;
+            const target = lines[i + 1].match(/^(.*)#xywh=(\d+),(\d+),(\d+),(\d+)$/);
+            if (!target) continue;
+            cues.push({
+                start: this.parseTime(timing[1]),
+                end: this.parseTime(timing[2]),
+                url: target[1],
+                x: parseInt(target[2]),
+                y: parseInt(target[3]),
+                w: parseInt(target[4]),
+                h: parseInt(target[5])
+            });
+        }
+        return cues;
+    },
+
+    parseTime(value) {
+        return value.split(':').reduce((total, part) => total * 60 + parseFloat(part), 0);
+    },
+
+    bindPreview(video, cues) {
+        const wrapper = video.parentElement;
+        if (getComputedStyle(wrapper).position === 'static') {
+            wrapper.style.position = 'relative';
+        }
+        const tip = document.createElement('div');
+        tip.className = 'video-seek-preview';
+        tip.style.cssText = 'position: absolute; display: none; pointer-events: none; z-index: 5; ' +
+            'border: 2px solid #fff; border-radius: 4px; box-shadow: 0 2px 8px rgba(0,0,0,0.4); ' +
+            'background-repeat: no-repeat;';
+        wrapper.appendChild(tip);
+
+        video.addEventListener('mousemove', (e) => {
+            const rect = video.getBoundingClientRect();
+            if (!video.duration || rect.bottom - e.clientY > this.CONTROLS_HEIGHT) {
+                tip.style.display = 'none';
+                return;
+            }
+            const ratio = Math.min(1, Math.max(0, (e.clientX - rect.left) / rect.width));
+            const time = ratio * video.duration;
+            const cue = cues.find(c => time >= c.start && time < c.end) || cues[cues.length - 1];
+
+            const wrapperRect = wrapper.getBoundingClientRect();
+            const left = Math.min(Math.max(0, e.clientX - wrapperRect.left - cue.w / 2), wrapperRect.width - cue.w);
+            tip.style.width = cue.w + 'px';
+            tip.style.height = cue.h + 'px';
+            tip.style.backgroundImage = `url("${cue.url}")`;
+            tip.style.backgroundPosition = `-${cue.x}px -${cue.y}px`;
+            tip.style.left = left + 'px';
+            tip.style.top = (rect.bottom - wrapperRect.top - this.CONTROLS_HEIGHT - cue.h - 4) + 'px';
+            tip.style.display = 'block';
+        });
+        video.addEventListener('mouseleave', () => {
+            tip.style.display = 'none';
+        });
+    }
+};
+
+document.addEventListener('DOMContentLoaded', () => VideoPlayback.attachAll());
@@ -0,0 +1,315 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.activemq.artemis.core.config.Configuration;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.example.service.WebSocketSessionRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.autoconfigure.websocket.servlet.WebSocketMessagingAutoConfiguration;
+import org.springframework.boot.autoconfigure.websocket.servlet.WebSocketServletAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.ServerSocket;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * STOMP 代理集成测试
+ * 只启动 WebSocket 相关配置（不连数据库）：simple 模式验证单节点收发，
+ * relay 模式启动两个节点连接同一个嵌入式 Artemis，验证 /topic 消息和 /user/queue 用户消息跨节点送达。
+ * 每个用例启动的节点、STOMP 客户端和会话在 @AfterEach 中关闭
+ */
+class StompBrokerIntegrationTest {
+
+    // 握手请求中以该请求头模拟已登录用户
+    private static final String USER_HEADER = "X-Test-User";
+
+    private static final ThreadPoolTaskScheduler RECEIPT_SCHEDULER = new ThreadPoolTaskScheduler();
+
+    private static EmbeddedActiveMQ artemis;
+    private static int stompPort;
+
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+    private final List<WebSocketStompClient> clients = new ArrayList<>();
+    private final List<StompSession> sessions = new ArrayList<>();
+
+    @BeforeAll
+    static void startBroker() throws Exception {
+        RECEIPT_SCHEDULER.initialize();
+        stompPort = freePort();
+        Configuration configuration = new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .addAcceptorConfiguration("stomp",
+                        "tcp://localhost:" + stompPort + "?protocols=STOMP;anycastPrefix=/queue/;multicastPrefix=/topic/");
+        artemis = new EmbeddedActiveMQ().setConfiguration(configuration);
+        artemis.start();
+    }
+
+    @AfterEach
+    void closeNodes() {
+        // 先断开客户端，再关闭节点，避免容器关闭时仍有连接线程
+        for (StompSession session : sessions) {
+            if (session.isConnected()) {
+                session.disconnect();
+            }
+        }
+        clients.forEach(WebSocketStompClient::stop);
+        nodes.forEach(ConfigurableApplicationContext::close);
+        sessions.clear();
+        clients.clear();
+        nodes.clear();
+    }
+
+    @AfterAll
+    static void stopBroker() throws Exception {
+        if (artemis != null) {
+            artemis.stop();
+        }
+        RECEIPT_SCHEDULER.shutdown();
+    }
+
+    @Test
+    void simpleBrokerRoundTrip() throws Exception {
+        ConfigurableApplicationContext node = startNode("simple");
+        StompSession session = connect(node, null);
+        session.setAutoReceipt(false);
+        BlockingQueue<String> received = new ArrayBlockingQueue<>(100);
+        session.subscribe("/topic/echo", collector(received));
+
+        // 简单代理不回 RECEIPT，订阅与发送又在不同的入站线程上处理，重发直到订阅生效
+        String payload = null;
+        for (int attempt = 0; attempt < 50 && payload == null; attempt++) {
+            session.send("/app/echo", "ping");
+            payload = received.poll(200, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals("ping", payload);
+    }
+
+    @Test
+    void relayFansOutAcrossNodes() throws Exception {
+        ConfigurableApplicationContext nodeA = startNode("relay");
+        ConfigurableApplicationContext nodeB = startNode("relay");
+        awaitBrokerAvailable(nodeA);
+        awaitBrokerAvailable(nodeB);
+
+        StompSession sessionA = connect(nodeA, null);
+        BlockingQueue<String> received = subscribe(sessionA, "/topic/news");
+
+        // 节点 B 上发布，连接在节点 A 上的客户端应收到
+        nodeB.getBean(SimpMessagingTemplate.class).convertAndSend("/topic/news", "hello from B");
+        assertEquals("hello from B", received.poll(10, TimeUnit.SECONDS));
+
+        // 客户端经节点 B 的 /app 发送，@SendTo 的结果同样送达节点 A
+        StompSession sessionB = connect(nodeB, null);
+        BlockingQueue<String> echoed = subscribe(sessionA, "/topic/echo");
+        sessionB.send("/app/echo", "via B");
+        assertEquals("via B", echoed.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void relayDeliversUserDestinationAcrossNodes() throws Exception {
+        ConfigurableApplicationContext nodeA = startNode("relay");
+        ConfigurableApplicationContext nodeB = startNode("relay");
+        awaitBrokerAvailable(nodeA);
+        awaitBrokerAvailable(nodeB);
+
+        // 接收方只连接在节点 B 上
+        StompSession bob = connect(nodeB, "bob");
+        BlockingQueue<String> received = subscribe(bob, "/user/queue/notice");
+        StompSession alice = connect(nodeA, "alice");
+        BlockingQueue<String> aliceReceived = subscribe(alice, "/user/queue/notice");
+
+        // 节点 A 上找不到 bob 的会话，经 unresolved-user-destination 广播交给节点 B 投递；
+        // 各节点订阅广播目的地与代理连接建立是异步的，重发直到送达
+        SimpMessagingTemplate senderOnA = nodeA.getBean(SimpMessagingTemplate.class);
+        String payload = null;
+        for (int attempt = 0; attempt < 50 && payload == null; attempt++) {
+            senderOnA.convertAndSendToUser("bob", "/queue/notice", "for bob");
+            payload = received.poll(200, TimeUnit.MILLISECONDS);
+        }
+        assertEquals("for bob", payload);
+
+        // 只送达目标用户
+        assertNull(aliceReceived.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    private ConfigurableApplicationContext startNode(String mode) {
+        ConfigurableApplicationContext node = new SpringApplicationBuilder(TestNode.class)
+                .web(WebApplicationType.SERVLET)
+                .properties(
+                        // 不加载应用的配置文件，其余配置使用代码中的默认值
+                        "spring.config.name=stomp-broker-test",
+                        "server.port=0",
+                        "app.websocket.broker.mode=" + mode,
+                        "app.websocket.broker.relay-port=" + stompPort)
+                .run();
+        nodes.add(node);
+        return node;
+    }
+
+    private static void awaitBrokerAvailable(ConfigurableApplicationContext node) throws InterruptedException {
+        AbstractBrokerMessageHandler relay =
+                node.getBean("stompBrokerRelayMessageHandler", AbstractBrokerMessageHandler.class);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!relay.isBrokerAvailable() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(relay.isBrokerAvailable(), "代理中继未连接到嵌入式 Artemis");
+    }
+
+    private StompSession connect(ConfigurableApplicationContext node, String username) throws Exception {
+        int port = ((ServletWebServerApplicationContext) node).getWebServer().getPort();
+        WebSocketStompClient client = new WebSocketStompClient(new StandardWebSocketClient());
+        client.setMessageConverter(new StringMessageConverter());
+        client.setTaskScheduler(RECEIPT_SCHEDULER);
+        clients.add(client);
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        if (username != null) {
+            headers.add(USER_HEADER, username);
+        }
+        StompSession session = client.connectAsync("ws://localhost:" + port + "/ws/websocket", headers,
+                new StompSessionHandlerAdapter() { }).get(10, TimeUnit.SECONDS);
+        session.setAutoReceipt(true);
+        sessions.add(session);
+        return session;
+    }
+
+    /**
+     * 订阅并等待代理回执，确保订阅已到达代理后再发送
+     */
+    private static BlockingQueue<String> subscribe(StompSession session, String destination) throws InterruptedException {
+        BlockingQueue<String> received = new ArrayBlockingQueue<>(10);
+        CountDownLatch subscribed = new CountDownLatch(1);
+        StompSession.Subscription subscription = session.subscribe(destination, collector(received));
+        subscription.addReceiptTask(subscribed::countDown);
+        assertTrue(subscribed.await(10, TimeUnit.SECONDS), "订阅未收到回执: " + destination);
+        return received;
+    }
+
+    private static StompFrameHandler collector(BlockingQueue<String> received) {
+        return new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return String.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.offer((String) payload);
+            }
+        };
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * 只包含 WebSocket 配置和一个回声控制器的最小节点
+     */
+    @org.springframework.context.annotation.Configuration(proxyBeanMethods = false)
+    @ImportAutoConfiguration({
+            PropertyPlaceholderAutoConfiguration.class,
+            ServletWebServerFactoryAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class,
+            WebMvcAutoConfiguration.class,
+            JacksonAutoConfiguration.class,
+            WebSocketServletAutoConfiguration.class,
+            WebSocketMessagingAutoConfiguration.class
+    })
+    @Import({WebSocketConfig.class, StompDestinationMetrics.class, WebSocketSessionRegistry.class, EchoController.class})
+    static class TestNode {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        /**
+         * 以请求头中的用户名作为握手请求的登录用户，STOMP 会话据此解析 /user 目的地
+         */
+        @Bean
+        FilterRegistrationBean<OncePerRequestFilter> testUserFilter() {
+            return new FilterRegistrationBean<>(new OncePerRequestFilter() {
+                @Override
+                protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                                FilterChain chain) throws ServletException, IOException {
+                    String username = request.getHeader(USER_HEADER);
+                    if (username == null) {
+                        chain.doFilter(request, response);
+                        return;
+                    }
+                    Principal principal = () -> username;
+                    chain.doFilter(new HttpServletRequestWrapper(request) {
+                        @Override
+                        public Principal getUserPrincipal() {
+                            return principal;
+                        }
+                    }, response);
+                }
+            });
+        }
+    }
+
+    @Controller
+    static class EchoController {
+
+        @MessageMapping("/echo")
+        @SendTo("/topic/echo")
+        public String echo(String payload) {
+            return payload;
+        }
+    }
+}
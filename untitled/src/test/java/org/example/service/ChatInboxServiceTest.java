@@ -0,0 +1,294 @@
+package org.example.service;
+
+import org.example.entity.Conversation;
+import org.example.entity.ConversationInbox;
+import org.example.entity.Message;
+import org.example.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 会话收件箱读模型测试
+ * 在 MySQL 兼容模式的 H2 中随机执行发送、已读、撤回、退出和清空，每一步后对照独立维护的模型检查
+ * 每行未读数和 chat_unread_totals；另验证 5000 个会话按游标翻页不重不漏
+ */
+class ChatInboxServiceTest {
+
+    private static final LocalDateTime BASE_TIME = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private ChatInboxService service;
+
+    private final Map<Long, User> users = new HashMap<>();
+    private long nextMessageId;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE conversation_inbox (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "user_id BIGINT NOT NULL, conversation_id BIGINT NOT NULL, conversation_type VARCHAR(16) NOT NULL, " +
+                "title VARCHAR(255), other_user_id BIGINT, other_username VARCHAR(50), other_nickname VARCHAR(100), " +
+                "other_avatar VARCHAR(500), last_message_id BIGINT, last_message_preview VARCHAR(100), " +
+                "last_message_sender VARCHAR(100), last_message_at TIMESTAMP(6), unread_count INT NOT NULL, " +
+                "last_read_message_id BIGINT NOT NULL, is_active BOOLEAN NOT NULL, updated_at TIMESTAMP(6), " +
+                "UNIQUE (user_id, conversation_id))");
+        jdbcTemplate.execute("CREATE INDEX idx_inbox_user_list ON conversation_inbox (user_id, is_active, last_message_at, conversation_id)");
+        jdbcTemplate.execute("CREATE TABLE chat_unread_totals (user_id BIGINT PRIMARY KEY, unread_total BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, username VARCHAR(50), nickname VARCHAR(100))");
+        jdbcTemplate.execute("CREATE TABLE messages (id BIGINT PRIMARY KEY, conversation_id BIGINT NOT NULL, " +
+                "sender_id BIGINT NOT NULL, content VARCHAR(1000), created_at TIMESTAMP(6) NOT NULL, " +
+                "is_recalled BOOLEAN NOT NULL DEFAULT FALSE, is_deleted BOOLEAN NOT NULL DEFAULT FALSE)");
+
+        service = new ChatInboxService();
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "previewLength", 50);
+
+        for (long id = 1; id <= 4; id++) {
+            User user = new User();
+            user.setId(id);
+            user.setUsername("user" + id);
+            user.setNickname("用户" + id);
+            users.put(id, user);
+            jdbcTemplate.update("INSERT INTO users (id, username, nickname) VALUES (?, ?, ?)", id, user.getUsername(),
+                    user.getNickname());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void unreadCountersMatchModelUnderRandomOperations() {
+        Random random = new Random(42);
+        List<Conv> conversations = new ArrayList<>();
+        for (long id = 1; id <= 12; id++) {
+            List<User> participants = new ArrayList<>();
+            if (id % 3 == 0) {
+                participants.addAll(users.values());
+            } else {
+                participants.add(users.get(1L));
+                participants.add(users.get(2 + id % 3));
+            }
+            Conv conv = new Conv(conversation(id, id % 3 == 0 ? Conversation.ConversationType.GROUP
+                    : Conversation.ConversationType.PRIVATE, BASE_TIME), participants);
+            service.onConversationCreated(conv.entity, participants);
+            conversations.add(conv);
+        }
+
+        for (int step = 0; step < 3000; step++) {
+            Conv conv = conversations.get(random.nextInt(conversations.size()));
+            User user = conv.members.get(random.nextInt(conv.members.size()));
+            int op = random.nextInt(100);
+            if (op < 60) {
+                send(conv, user);
+            } else if (op < 80) {
+                service.markAsRead(user.getId(), conv.id());
+                conv.markRead(user.getId());
+            } else if (op < 94) {
+                List<Msg> visible = conv.visible();
+                if (!visible.isEmpty()) {
+                    remove(conv, visible.get(random.nextInt(visible.size())));
+                }
+            } else if (op < 97) {
+                if (conv.members.size() > 2) {
+                    service.onConversationLeft(user.getId(), conv.id());
+                    conv.markRead(user.getId());
+                    conv.members.remove(user);
+                    conv.left.add(user.getId());
+                }
+            } else {
+                jdbcTemplate.update("UPDATE messages SET is_deleted = TRUE WHERE conversation_id = ?", conv.id());
+                service.onConversationCleared(conv.id());
+                conv.clear();
+            }
+            assertMatchesModel(conversations, step);
+        }
+    }
+
+    @Test
+    void inboxPagesThroughManyConversationsWithoutGapsOrRepeats() {
+        int total = 5000;
+        User owner = users.get(1L);
+        User other = users.get(2L);
+        List<Long> expected = new ArrayList<>();
+        for (long id = 1; id <= total; id++) {
+            // 每 7 个会话共用同一时间，验证 conversation_id 作为第二排序键
+            service.onConversationCreated(conversation(id, Conversation.ConversationType.PRIVATE,
+                    BASE_TIME.plusSeconds(id / 7)), List.of(owner, other));
+            expected.add(id);
+        }
+        expected.sort(Comparator.<Long>comparingLong(id -> id / 7).thenComparingLong(id -> id).reversed());
+
+        List<Long> seen = new ArrayList<>();
+        LocalDateTime beforeAt = null;
+        Long beforeId = null;
+        int pages = 0;
+        while (true) {
+            Slice<ConversationInbox> page = service.getInbox(owner.getId(), beforeAt, beforeId, 50);
+            page.forEach(row -> seen.add(row.getConversationId()));
+            pages++;
+            if (!page.hasNext()) {
+                break;
+            }
+            ConversationInbox last = page.getContent().get(page.getNumberOfElements() - 1);
+            beforeAt = last.getLastMessageAt();
+            beforeId = last.getConversationId();
+        }
+
+        assertEquals(total / 50, pages);
+        assertEquals(expected, seen);
+        assertEquals(total, new HashSet<>(seen).size());
+        assertEquals(total, service.countInbox(owner.getId()));
+    }
+
+    @Test
+    void lastPageReportsNoMore() {
+        service.onConversationCreated(conversation(1L, Conversation.ConversationType.PRIVATE, BASE_TIME),
+                List.of(users.get(1L), users.get(2L)));
+
+        Slice<ConversationInbox> page = service.getInbox(1L, null, null, 20);
+
+        assertEquals(1, page.getNumberOfElements());
+        assertFalse(page.hasNext());
+        assertTrue(service.getInbox(1L, BASE_TIME, 1L, 20).isEmpty());
+    }
+
+    private void send(Conv conv, User sender) {
+        long id = ++nextMessageId;
+        LocalDateTime at = BASE_TIME.plusSeconds(id);
+        jdbcTemplate.update("INSERT INTO messages (id, conversation_id, sender_id, content, created_at) VALUES (?, ?, ?, ?, ?)",
+                id, conv.id(), sender.getId(), "消息" + id, Timestamp.valueOf(at));
+        Message message = new Message();
+        message.setId(id);
+        message.setConversation(conv.entity);
+        message.setSender(sender);
+        message.setContent("消息" + id);
+        message.setCreatedAt(at);
+        conv.entity.setLastMessageAt(at);
+        service.onMessageSent(conv.entity, message, sender, new ArrayList<>(conv.members));
+        conv.messages.add(new Msg(id, sender.getId()));
+    }
+
+    private void remove(Conv conv, Msg msg) {
+        jdbcTemplate.update("UPDATE messages SET is_recalled = TRUE WHERE id = ?", msg.id);
+        Message message = new Message();
+        message.setId(msg.id);
+        message.setConversation(conv.entity);
+        message.setSender(users.get(msg.senderId));
+        service.onMessageRemoved(message);
+        msg.removed = true;
+    }
+
+    private void assertMatchesModel(List<Conv> conversations, int step) {
+        Map<Long, Long> expectedTotals = new HashMap<>();
+        for (Conv conv : conversations) {
+            for (Map.Entry<Long, Long> entry : conv.lastRead.entrySet()) {
+                Long userId = entry.getKey();
+                long unread = conv.unread(userId);
+                expectedTotals.merge(userId, unread, Long::sum);
+                Integer actual = jdbcTemplate.queryForObject(
+                        "SELECT unread_count FROM conversation_inbox WHERE user_id = ? AND conversation_id = ?",
+                        Integer.class, userId, conv.id());
+                assertEquals(unread, actual.longValue(),
+                        "第 " + step + " 步后用户 " + userId + " 在会话 " + conv.id() + " 的未读数不一致");
+            }
+        }
+        for (Long userId : users.keySet()) {
+            assertEquals(expectedTotals.getOrDefault(userId, 0L).longValue(), service.getUnreadTotal(userId),
+                    "第 " + step + " 步后用户 " + userId + " 的未读总数不一致");
+        }
+    }
+
+    private static Conversation conversation(Long id, Conversation.ConversationType type, LocalDateTime lastMessageAt) {
+        Conversation conversation = new Conversation();
+        conversation.setId(id);
+        conversation.setType(type);
+        conversation.setTitle(type == Conversation.ConversationType.GROUP ? "群聊" + id : null);
+        conversation.setLastMessageAt(lastMessageAt);
+        return conversation;
+    }
+
+    private static final class Msg {
+        final long id;
+        final long senderId;
+        boolean removed;
+
+        Msg(long id, long senderId) {
+            this.id = id;
+            this.senderId = senderId;
+        }
+    }
+
+    /**
+     * 会话的独立模型：用户的已读位置和可见消息决定未读数；发送消息不改变发送者自己的已读位置
+     */
+    private static final class Conv {
+        final Conversation entity;
+        final List<User> members;
+        final List<Msg> messages = new ArrayList<>();
+        // 有收件箱行的用户（含已退出的）-> 已读到的消息ID
+        final Map<Long, Long> lastRead = new HashMap<>();
+        // 已退出的用户不再收到新消息，收件箱行保留且未读数为 0
+        final Set<Long> left = new HashSet<>();
+
+        Conv(Conversation entity, List<User> members) {
+            this.entity = entity;
+            this.members = new ArrayList<>(members);
+            members.forEach(user -> lastRead.put(user.getId(), 0L));
+        }
+
+        Long id() {
+            return entity.getId();
+        }
+
+        List<Msg> visible() {
+            return messages.stream().filter(m -> !m.removed).toList();
+        }
+
+        void markRead(Long userId) {
+            List<Msg> visible = visible();
+            if (!visible.isEmpty()) {
+                lastRead.merge(userId, visible.get(visible.size() - 1).id, Math::max);
+            }
+        }
+
+        void clear() {
+            Set<Long> userIds = new HashSet<>(lastRead.keySet());
+            userIds.forEach(this::markRead);
+            messages.forEach(m -> m.removed = true);
+        }
+
+        long unread(Long userId) {
+            if (left.contains(userId)) {
+                return 0;
+            }
+            long read = lastRead.get(userId);
+            return messages.stream().filter(m -> !m.removed && m.senderId != userId && m.id > read).count();
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package org.example.service;
+
+import org.example.entity.UploadSession;
+import org.example.entity.User;
+import org.example.entity.Video;
+import org.example.repository.UploadSessionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 分片上传服务测试
+ * upload_sessions / upload_chunks 放在 MySQL 兼容模式的 H2 内存库中，会话仓库用 Mockito 桥接到同一个库；
+ * 文件写在临时目录，视频登记用模拟对象代替
+ */
+class ChunkedUploadServiceTest {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final User OWNER = user(1L);
+
+    @TempDir
+    Path uploadRoot;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private ChunkedUploadService service;
+    private ExecutorService executor;
+    private final AtomicLong videoIds = new AtomicLong();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // 共用一个连接：H2 在并发事务争用同一唯一索引时偶尔会把 INSERT IGNORE 当作重复忽略，MySQL 不会；
+        // 语句因此串行执行，分片文件的写入仍然并行
+        dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE upload_sessions (id VARCHAR(36) PRIMARY KEY, user_id BIGINT NOT NULL, " +
+                "file_name VARCHAR(255) NOT NULL, total_size BIGINT NOT NULL, chunk_size INT NOT NULL, " +
+                "total_chunks INT NOT NULL, status VARCHAR(16) NOT NULL, video_id BIGINT, " +
+                "created_at TIMESTAMP NOT NULL, updated_at TIMESTAMP NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE upload_chunks (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "session_id VARCHAR(36) NOT NULL, chunk_index INT NOT NULL, size INT NOT NULL, " +
+                "received_at TIMESTAMP NOT NULL, UNIQUE (session_id, chunk_index))");
+
+        FileUploadService fileUploadService = new FileUploadService();
+        ReflectionTestUtils.setField(fileUploadService, "uploadPath", uploadRoot.toString());
+        ReflectionTestUtils.setField(fileUploadService, "fileIndexService", mock(FileIndexService.class));
+
+        VideoStreamingService videoStreamingService = mock(VideoStreamingService.class);
+        when(videoStreamingService.isVideoFile(anyString())).thenReturn(true);
+
+        VideoService videoService = mock(VideoService.class);
+        when(videoService.saveVideo(any(Video.class))).thenAnswer(invocation -> {
+            Video video = invocation.getArgument(0);
+            video.setId(videoIds.incrementAndGet());
+            return video;
+        });
+
+        service = new ChunkedUploadService();
+        ReflectionTestUtils.setField(service, "sessionRepository", sessionRepository());
+        ReflectionTestUtils.setField(service, "fileUploadService", fileUploadService);
+        ReflectionTestUtils.setField(service, "videoStreamingService", videoStreamingService);
+        ReflectionTestUtils.setField(service, "videoService", videoService);
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "chunkSize", CHUNK_SIZE);
+        ReflectionTestUtils.setField(service, "maxSize", 1L << 30);
+        ReflectionTestUtils.setField(service, "expireHours", 24L);
+        ReflectionTestUtils.setField(service, "claimTimeoutMinutes", 30L);
+        ReflectionTestUtils.setField(service, "maxOpenSessions", 5);
+
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        dataSource.destroy();
+    }
+
+    @Test
+    void retriedChunkIsNotWrittenTwice() throws Exception {
+        byte[] content = content(CHUNK_SIZE * 2);
+        UploadSession session = service.create(OWNER.getId(), "clip.mp4", content.length);
+
+        writeChunk(session.getId(), 0, content);
+        Map<String, Object> progress = writeChunk(session.getId(), 0, content);
+
+        assertEquals(List.of(1), progress.get("missingChunks"));
+        assertEquals((long) CHUNK_SIZE, progress.get("receivedBytes"));
+        assertEquals(1L, service.getStats().get("chunksWritten"));
+        assertEquals(1L, service.getStats().get("duplicateChunks"));
+        assertEquals(1, chunkRows(session.getId()));
+    }
+
+    @Test
+    void parallelChunksAssembleIntoOneFile() throws Exception {
+        // 最后一个分片不满
+        byte[] content = content(CHUNK_SIZE * 16 - 100);
+        UploadSession session = service.create(OWNER.getId(), "clip.mp4", content.length);
+
+        List<Future<Map<String, Object>>> writes = new ArrayList<>();
+        for (int i = session.getTotalChunks() - 1; i >= 0; i--) {
+            int index = i;
+            writes.add(executor.submit(() -> writeChunk(session.getId(), index, content)));
+        }
+        for (Future<Map<String, Object>> write : writes) {
+            write.get(10, TimeUnit.SECONDS);
+        }
+
+        Video video = service.commit(session.getId(), OWNER, new Video());
+
+        assertArrayEquals(content, Files.readAllBytes(resolve(video.getFilePath())));
+        assertEquals(0, chunkRows(session.getId()));
+        assertEquals(video.getId(), jdbcTemplate.queryForObject(
+                "SELECT video_id FROM upload_sessions WHERE id = ?", Long.class, session.getId()));
+        assertThrows(IllegalStateException.class, () -> service.commit(session.getId(), OWNER, new Video()));
+    }
+
+    @Test
+    void abortAndCommitConflictWithInFlightChunk() throws Exception {
+        byte[] content = content(CHUNK_SIZE * 2);
+        UploadSession session = service.create(OWNER.getId(), "clip.mp4", content.length);
+        writeChunk(session.getId(), 0, content);
+
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream slowBody = new ByteArrayInputStream(content, CHUNK_SIZE, CHUNK_SIZE) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                reading.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.read(b, off, len);
+            }
+        };
+        Future<Map<String, Object>> inFlight = executor.submit(() ->
+                service.writeChunk(session.getId(), OWNER.getId(), 1, CHUNK_SIZE, slowBody, null));
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+
+        // 分片写入途中取消和提交都返回冲突，文件和会话保持不动
+        assertThrows(IllegalStateException.class, () -> service.abort(session.getId(), OWNER.getId()));
+        assertThrows(IllegalStateException.class, () -> service.commit(session.getId(), OWNER, new Video()));
+        service.cleanupExpired();
+        assertTrue(Files.exists(stagingFile(session.getId())));
+
+        release.countDown();
+        assertEquals(List.of(), inFlight.get(10, TimeUnit.SECONDS).get("missingChunks"));
+
+        service.abort(session.getId(), OWNER.getId());
+        assertFalse(Files.exists(stagingFile(session.getId())));
+        assertEquals(0, chunkRows(session.getId()));
+        assertEquals(0, service.getStats().get("activeSessions"));
+    }
+
+    @Test
+    void interruptedCommitIsReclaimedAfterTimeout() throws Exception {
+        byte[] content = content(CHUNK_SIZE * 3);
+        UploadSession session = service.create(OWNER.getId(), "clip.mp4", content.length);
+        for (int i = 0; i < session.getTotalChunks(); i++) {
+            writeChunk(session.getId(), i, content);
+        }
+
+        // 模拟节点占住会话、把文件移入 videos 目录后、登记视频前退出
+        Path adopted = uploadRoot.resolve("videos").resolve(session.getId() + ".mp4");
+        Files.createDirectories(adopted.getParent());
+        Files.move(stagingFile(session.getId()), adopted);
+        claim(session.getId(), LocalDateTime.now());
+
+        // 租约未过期时视为正在提交
+        assertThrows(IllegalStateException.class, () -> service.commit(session.getId(), OWNER, new Video()));
+
+        claim(session.getId(), LocalDateTime.now().minusHours(1));
+        Video video = service.commit(session.getId(), OWNER, new Video());
+
+        assertNotNull(video.getId());
+        assertArrayEquals(content, Files.readAllBytes(resolve(video.getFilePath())));
+    }
+
+    @Test
+    void abandonedClaimIsCleanedUp() throws Exception {
+        byte[] content = content(CHUNK_SIZE);
+        UploadSession session = service.create(OWNER.getId(), "clip.mp4", content.length);
+        writeChunk(session.getId(), 0, content);
+
+        Path adopted = uploadRoot.resolve("videos").resolve(session.getId() + ".mp4");
+        Files.createDirectories(adopted.getParent());
+        Files.move(stagingFile(session.getId()), adopted);
+        claim(session.getId(), LocalDateTime.now().minusDays(2));
+
+        service.cleanupExpired();
+
+        assertFalse(Files.exists(adopted));
+        assertEquals(0, chunkRows(session.getId()));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM upload_sessions WHERE id = ?", Integer.class, session.getId()));
+    }
+
+    @Test
+    void openSessionsPerUserAreCapped() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            service.create(OWNER.getId(), "clip" + i + ".mp4", CHUNK_SIZE);
+        }
+        assertThrows(IllegalStateException.class, () -> service.create(OWNER.getId(), "clip5.mp4", CHUNK_SIZE));
+        assertNotNull(service.create(2L, "other.mp4", CHUNK_SIZE));
+    }
+
+    private Map<String, Object> writeChunk(String sessionId, int index, byte[] content) throws IOException {
+        int offset = index * CHUNK_SIZE;
+        int length = Math.min(CHUNK_SIZE, content.length - offset);
+        return service.writeChunk(sessionId, OWNER.getId(), index, length,
+                new ByteArrayInputStream(Arrays.copyOfRange(content, offset, offset + length)), null);
+    }
+
+    private void claim(String sessionId, LocalDateTime at) {
+        jdbcTemplate.update("UPDATE upload_sessions SET status = 'COMPLETED', updated_at = ? WHERE id = ?",
+                Timestamp.valueOf(at), sessionId);
+    }
+
+    private int chunkRows(String sessionId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM upload_chunks WHERE session_id = ?",
+                Integer.class, sessionId);
+    }
+
+    private Path stagingFile(String sessionId) {
+        return uploadRoot.resolve(".incomplete").resolve(sessionId + ".part");
+    }
+
+    private Path resolve(String webPath) {
+        return uploadRoot.resolve(webPath.substring("/uploads/".length()));
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31 + i / CHUNK_SIZE);
+        }
+        return content;
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+
+    /**
+     * 会话仓库的模拟对象，读写同一个 H2 库，使服务中的 JdbcTemplate 语句与仓库方法看到一致的数据
+     */
+    private UploadSessionRepository sessionRepository() {
+        UploadSessionRepository repository = mock(UploadSessionRepository.class);
+        when(repository.findById(anyString())).thenAnswer(invocation -> jdbcTemplate.query(
+                "SELECT * FROM upload_sessions WHERE id = ?", this::mapSession,
+                (String) invocation.getArgument(0)).stream().findFirst());
+        when(repository.save(any(UploadSession.class))).thenAnswer(invocation -> {
+            UploadSession session = invocation.getArgument(0);
+            jdbcTemplate.update("INSERT INTO upload_sessions (id, user_id, file_name, total_size, chunk_size, " +
+                            "total_chunks, status, video_id, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    session.getId(), session.getUserId(), session.getFileName(), session.getTotalSize(),
+                    session.getChunkSize(), session.getTotalChunks(), session.getStatus().name(), session.getVideoId(),
+                    Timestamp.valueOf(session.getCreatedAt()), Timestamp.valueOf(session.getUpdatedAt()));
+            return session;
+        });
+        doAnswer(invocation -> {
+            jdbcTemplate.update("DELETE FROM upload_sessions WHERE id = ?",
+                    ((UploadSession) invocation.getArgument(0)).getId());
+            return null;
+        }).when(repository).delete(any(UploadSession.class));
+        when(repository.countByUserIdAndStatus(any(), any())).thenAnswer(invocation -> jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM upload_sessions WHERE user_id = ? AND status = ?", Long.class,
+                invocation.getArgument(0), ((UploadSession.Status) invocation.getArgument(1)).name()));
+        when(repository.findByStatusAndUpdatedAtBefore(any(), any())).thenAnswer(invocation -> jdbcTemplate.query(
+                "SELECT * FROM upload_sessions WHERE status = ? AND updated_at < ?", this::mapSession,
+                ((UploadSession.Status) invocation.getArgument(0)).name(),
+                Timestamp.valueOf((LocalDateTime) invocation.getArgument(1))));
+        when(repository.findByStatusAndVideoIdIsNullAndUpdatedAtBefore(any(), any())).thenAnswer(invocation ->
+                jdbcTemplate.query("SELECT * FROM upload_sessions WHERE status = ? AND video_id IS NULL AND updated_at < ?",
+                        this::mapSession, ((UploadSession.Status) invocation.getArgument(0)).name(),
+                        Timestamp.valueOf((LocalDateTime) invocation.getArgument(1))));
+        return repository;
+    }
+
+    private UploadSession mapSession(ResultSet rs, int rowNum) throws SQLException {
+        UploadSession session = new UploadSession();
+        session.setId(rs.getString("id"));
+        session.setUserId(rs.getLong("user_id"));
+        session.setFileName(rs.getString("file_name"));
+        session.setTotalSize(rs.getLong("total_size"));
+        session.setChunkSize(rs.getInt("chunk_size"));
+        session.setTotalChunks(rs.getInt("total_chunks"));
+        session.setStatus(UploadSession.Status.valueOf(rs.getString("status")));
+        session.setVideoId(rs.getObject("video_id", Long.class));
+        session.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+        session.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
+        return session;
+    }
+}
@@ -0,0 +1,172 @@
+package org.example.service;
+
+import org.example.entity.Notification;
+import org.example.entity.NotificationBroadcast;
+import org.example.repository.NotificationBroadcastRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 通知群发测试
+ * users / notifications / notification_broadcasts 放在 MySQL 兼容模式的 H2 中，任务仓库用 Mockito 桥接到同一个库，
+ * 执行器同步运行；验证租约过期后从游标续跑不重不漏、他人持有租约时不接管、游标被他人推进后本节点整批回滚
+ */
+class NotificationBroadcastServiceTest {
+
+    private static final int USERS = 250;
+    private static final long DELETED_USER = 120;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private NotificationBroadcastService service;
+    private NotificationBroadcastRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, username VARCHAR(50), deleted TINYINT)");
+        jdbcTemplate.execute("CREATE TABLE notifications (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id BIGINT NOT NULL, " +
+                "type VARCHAR(100) NOT NULL, title VARCHAR(255), content TEXT, related_id BIGINT, related_type VARCHAR(50), " +
+                "actor_count INT, is_read TINYINT NOT NULL, created_at TIMESTAMP(6) NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE notification_broadcasts (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "type VARCHAR(100) NOT NULL, title VARCHAR(255) NOT NULL, content TEXT, target_user_ids LONGTEXT, " +
+                "status VARCHAR(16) NOT NULL, cursor_user_id BIGINT NOT NULL, total_recipients INT NOT NULL, " +
+                "delivered_count INT NOT NULL, lease_until TIMESTAMP(6), last_error VARCHAR(500), " +
+                "created_at TIMESTAMP(6) NOT NULL, updated_at TIMESTAMP(6), completed_at TIMESTAMP(6))");
+        for (long id = 1; id <= USERS; id++) {
+            jdbcTemplate.update("INSERT INTO users (id, username, deleted) VALUES (?, ?, ?)",
+                    id, "user" + id, id == DELETED_USER ? 1 : 0);
+        }
+
+        repository = mock(NotificationBroadcastRepository.class);
+        when(repository.findById(anyLong())).thenAnswer(invocation -> load(invocation.getArgument(0)));
+
+        service = new NotificationBroadcastService();
+        ReflectionTestUtils.setField(service, "broadcastRepository", repository);
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "transactionManager", new DataSourceTransactionManager(dataSource));
+        ReflectionTestUtils.setField(service, "messagingTemplate", mock(SimpMessagingTemplate.class));
+        ReflectionTestUtils.setField(service, "sessionRegistry", mock(WebSocketSessionRegistry.class));
+        ReflectionTestUtils.setField(service, "unreadCounter", mock(NotificationUnreadCounter.class));
+        ReflectionTestUtils.setField(service, "taskExecutor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(service, "batchSize", 100);
+        ReflectionTestUtils.setField(service, "leaseMillis", 60_000L);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void resumesFromCursorAfterLeaseExpires() {
+        // 上一个节点写完第一批（用户 1-100）后失联，租约已过期
+        long id = broadcast(null, "RUNNING", 100, 100, LocalDateTime.now().minusMinutes(1));
+        for (long userId = 1; userId <= 100; userId++) {
+            jdbcTemplate.update("INSERT INTO notifications (user_id, type, title, content, related_id, related_type, " +
+                    "actor_count, is_read, created_at) VALUES (?, 'SYSTEM', '维护', '今晚维护', ?, 'BROADCAST', 1, 0, ?)",
+                    userId, id, Timestamp.valueOf(LocalDateTime.now()));
+        }
+
+        service.resumePending();
+
+        Map<String, Object> row = jdbcTemplate.queryForMap("SELECT * FROM notification_broadcasts WHERE id = ?", id);
+        assertEquals("COMPLETED", row.get("STATUS"));
+        assertEquals(250L, ((Number) row.get("CURSOR_USER_ID")).longValue());
+        assertEquals(USERS - 1, ((Number) row.get("DELIVERED_COUNT")).intValue());
+        assertEquals(List.of(), jdbcTemplate.queryForList(
+                "SELECT user_id FROM notifications WHERE related_id = ? GROUP BY user_id HAVING COUNT(*) > 1", Long.class, id));
+        assertEquals(USERS - 1, count("SELECT COUNT(DISTINCT user_id) FROM notifications WHERE related_id = ?", id));
+        assertEquals(0, count("SELECT COUNT(*) FROM notifications WHERE related_id = ? AND user_id = " + DELETED_USER, id));
+        assertEquals(0, count("SELECT COUNT(*) FROM notifications WHERE related_id = ? AND (actor_count IS NULL OR actor_count <> 1)", id));
+    }
+
+    @Test
+    void leavesBroadcastLeasedByAnotherNodeAlone() {
+        long id = broadcast(null, "RUNNING", 100, 100, LocalDateTime.now().plusMinutes(1));
+
+        service.resumePending();
+
+        assertEquals(0, count("SELECT COUNT(*) FROM notifications WHERE related_id = ?", id));
+        assertEquals(100, count("SELECT cursor_user_id FROM notification_broadcasts WHERE id = ?", id));
+    }
+
+    @Test
+    void rollsBackBatchWhenAnotherNodeMovedTheCursor() {
+        long id = broadcast(null, "PENDING", 0, 0, null);
+        // 本节点读到任务后，另一个节点接管并写完了第一批
+        when(repository.findById(id)).thenAnswer(invocation -> {
+            Optional<NotificationBroadcast> loaded = load(id);
+            jdbcTemplate.update("UPDATE notification_broadcasts SET cursor_user_id = 100, delivered_count = 100 WHERE id = ?", id);
+            return loaded;
+        });
+
+        service.resumePending();
+
+        assertEquals(0, count("SELECT COUNT(*) FROM notifications WHERE related_id = ?", id));
+        assertEquals(100, count("SELECT cursor_user_id FROM notification_broadcasts WHERE id = ?", id));
+        assertEquals(100, count("SELECT delivered_count FROM notification_broadcasts WHERE id = ?", id));
+    }
+
+    @Test
+    void advancesCursorThroughTargetListIncludingMissingUsers() {
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+        long id = broadcast("5,7,9," + DELETED_USER + ",900", "PENDING", 0, 0, null);
+
+        service.resumePending();
+
+        assertEquals(List.of(5L, 7L, 9L), jdbcTemplate.queryForList(
+                "SELECT user_id FROM notifications WHERE related_id = ? ORDER BY user_id", Long.class, id));
+        assertEquals(900, count("SELECT cursor_user_id FROM notification_broadcasts WHERE id = ?", id));
+        assertEquals(3, count("SELECT delivered_count FROM notification_broadcasts WHERE id = ?", id));
+    }
+
+    private long broadcast(String targets, String status, long cursor, int delivered, LocalDateTime leaseUntil) {
+        jdbcTemplate.update("INSERT INTO notification_broadcasts (type, title, content, target_user_ids, status, " +
+                "cursor_user_id, total_recipients, delivered_count, lease_until, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                Notification.NotificationType.SYSTEM.name(), "维护", "今晚维护", targets, status, cursor, USERS - 1, delivered,
+                leaseUntil != null ? Timestamp.valueOf(leaseUntil) : null, Timestamp.valueOf(LocalDateTime.now()));
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM notification_broadcasts", Long.class);
+    }
+
+    private Optional<NotificationBroadcast> load(Long id) {
+        return jdbcTemplate.query("SELECT * FROM notification_broadcasts WHERE id = ?", (rs, rowNum) -> {
+            NotificationBroadcast broadcast = new NotificationBroadcast();
+            broadcast.setId(rs.getLong("id"));
+            broadcast.setType(Notification.NotificationType.valueOf(rs.getString("type")));
+            broadcast.setTitle(rs.getString("title"));
+            broadcast.setContent(rs.getString("content"));
+            broadcast.setTargetUserIds(rs.getString("target_user_ids"));
+            broadcast.setStatus(NotificationBroadcast.Status.valueOf(rs.getString("status")));
+            broadcast.setCursorUserId(rs.getLong("cursor_user_id"));
+            broadcast.setTotalRecipients(rs.getInt("total_recipients"));
+            broadcast.setDeliveredCount(rs.getInt("delivered_count"));
+            return broadcast;
+        }, id).stream().findFirst();
+    }
+
+    private int count(String sql, long id) {
+        return jdbcTemplate.queryForObject(sql, Integer.class, id);
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 补全查询基准：索引（二分 + 区间最大值）与逐条扫描标题做子串匹配、按热度取前 10 对比
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=SearchSuggestion
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchSuggestionBenchmark {
+
+    private static final String[] WORDS = {"spring", "boot", "java", "vlog", "music", "guitar", "travel", "cooking"};
+    private static final String HAN = "西湖杭州骑行周末美食做法教程入门音乐吉他旅行日常生活游戏攻略";
+
+    @Param({"10000", "100000"})
+    private int titleCount;
+
+    private SearchSuggestionService.CompletionIndex index;
+    private List<String> titles;
+    private long[] weights;
+    private String[] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        titles = new ArrayList<>(titleCount);
+        weights = new long[titleCount];
+        SearchSuggestionService.CompletionIndex.Builder builder = SearchSuggestionService.CompletionIndex.builder();
+        for (int i = 0; i < titleCount; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < 4; w++) {
+                if (random.nextBoolean()) {
+                    title.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                } else {
+                    for (int c = 0; c < 3; c++) {
+                        title.append(HAN.charAt(random.nextInt(HAN.length())));
+                    }
+                }
+            }
+            titles.add(title.toString().trim());
+            weights[i] = random.nextInt(100_000);
+            builder.addWithWordStarts(titles.get(i), weights[i]);
+        }
+        index = builder.build();
+        queries = new String[256];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = random.nextBoolean() ? WORDS[random.nextInt(WORDS.length)].substring(0, 3)
+                    : HAN.substring(random.nextInt(HAN.length() - 2)).substring(0, 2);
+        }
+    }
+
+    @Benchmark
+    public List<String> indexed() {
+        return index.complete(nextQuery(), 10);
+    }
+
+    @Benchmark
+    public List<String> scan() {
+        String query = nextQuery();
+        PriorityQueue<Integer> top = new PriorityQueue<>((a, b) -> Long.compare(weights[a], weights[b]));
+        for (int i = 0; i < titles.size(); i++) {
+            if (titles.get(i).toLowerCase().contains(query)) {
+                top.add(i);
+                if (top.size() > 10) {
+                    top.poll();
+                }
+            }
+        }
+        List<String> result = new ArrayList<>(top.size());
+        top.forEach(i -> result.add(titles.get(i)));
+        return result;
+    }
+
+    private String nextQuery() {
+        return queries[next++ & (queries.length - 1)];
+    }
+}
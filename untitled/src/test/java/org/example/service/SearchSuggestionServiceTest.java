@@ -0,0 +1,53 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 补全索引测试：英文按词首命中，中文从标题中间任意位置命中，超过键长度的输入按包含关系过滤
+ */
+class SearchSuggestionServiceTest {
+
+    @Test
+    void matchesWordStartsInLatinTitles() {
+        SearchSuggestionService.CompletionIndex index = SearchSuggestionService.CompletionIndex.builder()
+                .addWithWordStarts("Spring Boot Tutorial", 10)
+                .addWithWordStarts("Bootstrap Basics", 5)
+                .build();
+
+        assertEquals(List.of("Spring Boot Tutorial", "Bootstrap Basics"), index.complete("boot", 10));
+        assertEquals(List.of("Spring Boot Tutorial"), index.complete("tut", 10));
+        assertTrue(index.complete("oot", 10).isEmpty());
+    }
+
+    @Test
+    void matchesFromTheMiddleOfCjkTitles() {
+        SearchSuggestionService.CompletionIndex index = SearchSuggestionService.CompletionIndex.builder()
+                .addWithWordStarts("周末去杭州西湖骑行", 3)
+                .addWithWordStarts("西湖醋鱼做法", 8)
+                .addWithWordStarts("我的Vlog日常", 1)
+                .build();
+
+        assertEquals(List.of("西湖醋鱼做法", "周末去杭州西湖骑行"), index.complete("西湖", 10));
+        assertEquals(List.of("周末去杭州西湖骑行"), index.complete("杭州西", 10));
+        assertEquals(List.of("我的Vlog日常"), index.complete("vlog", 10));
+        assertEquals(List.of("我的Vlog日常"), index.complete("日常", 10));
+    }
+
+    @Test
+    void filtersQueriesLongerThanTheCjkKey() {
+        String title = "这是一个非常非常长的中文视频标题用来测试超过键长度的输入";
+        SearchSuggestionService.CompletionIndex index = SearchSuggestionService.CompletionIndex.builder()
+                .addWithWordStarts(title, 2)
+                .addWithWordStarts("一个非常非常长的中文视频标题但是后半段不同的另一个视频", 9)
+                .build();
+
+        String query = title.substring(2);
+        assertTrue(query.length() > SearchSuggestionService.CompletionIndex.CJK_KEY_LENGTH);
+        assertEquals(List.of(title), index.complete(query, 10));
+    }
+}
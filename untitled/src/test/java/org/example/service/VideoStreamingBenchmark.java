@@ -0,0 +1,155 @@
+package org.example.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 范围请求吞吐：流媒体引擎（句柄缓存 + transferTo）与原先每次查找文件、skip 后按 8KB 复制的方式对比。
+ * 响应写入丢弃输出，只测服务端开销；文件在页缓存中
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark=VideoStreaming
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VideoStreamingBenchmark {
+
+    private static final long FILE_SIZE = 64L << 20;
+    private static final String FOLDER = "videos";
+    private static final String FILENAME = "bench.mp4";
+
+    @Param({"64", "1024"})
+    private int rangeKb;
+
+    private Path root;
+    private VideoStreamingService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("stream-bench");
+        Files.createDirectories(root.resolve(FOLDER));
+        try (RandomAccessFile file = new RandomAccessFile(root.resolve(FOLDER).resolve(FILENAME).toFile(), "rw")) {
+            byte[] block = new byte[1 << 20];
+            ThreadLocalRandom.current().nextBytes(block);
+            for (long written = 0; written < FILE_SIZE; written += block.length) {
+                file.write(block);
+            }
+        }
+
+        service = new VideoStreamingService();
+        ReflectionTestUtils.setField(service, "uploadPath", root.toString());
+        ReflectionTestUtils.setField(service, "enableRangeRequests", true);
+        ReflectionTestUtils.setField(service, "cacheMaxAge", 3600L);
+        ReflectionTestUtils.setField(service, "handleRevalidateMillis", 5000L);
+        ReflectionTestUtils.setField(service, "maxCachedHandles", 10000);
+        ReflectionTestUtils.setField(service, "maxRanges", 16);
+        ReflectionTestUtils.setField(service, "useSendfile", false);
+        ReflectionTestUtils.setField(service, "bufferSize", 16384);
+        service.initBaseDirs();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public int engine() throws IOException {
+        long start = randomStart();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/video");
+        request.addHeader(HttpHeaders.RANGE, "bytes=" + start + "-" + (start + rangeKb * 1024L - 1));
+        MockHttpServletResponse response = new DiscardingResponse();
+        service.serve(service.resolve(FOLDER, FILENAME), request, response);
+        return response.getStatus();
+    }
+
+    /**
+     * 原实现：每次依次检查候选目录，再用 InputStream.skip 定位并经堆内缓冲复制
+     */
+    @Benchmark
+    public long legacy() throws IOException {
+        long start = randomStart();
+        File file = null;
+        for (String base : new String[] {root + "/missing", root.toString()}) {
+            File candidate = new File(base, FOLDER + "/" + FILENAME);
+            if (candidate.exists()) {
+                file = candidate;
+                break;
+            }
+        }
+        long remaining = rangeKb * 1024L;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file.toPath()); OutputStream out = OutputStream.nullOutputStream()) {
+            in.skip(start);
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return remaining;
+    }
+
+    private long randomStart() {
+        return ThreadLocalRandom.current().nextLong(FILE_SIZE - rangeKb * 1024L);
+    }
+
+    /**
+     * 丢弃响应体；DelegatingServletOutputStream 没有覆盖批量写，会逐字节写入，不能用于测吞吐
+     */
+    private static final class DiscardingResponse extends MockHttpServletResponse {
+        private final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+            }
+        };
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return out;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个文件的识别耗时：进程内识别器池与每个文件启动一次 Python 进程对比，
+ * 结束时打印两种方式的实时率（识别耗时 / 音频时长）。需要本地模型和音频文件：
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark="VoskRecognition -p modelPath=models/vosk-model-cn-0.22 -p audio=/path/song.mp3"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VoskRecognitionBenchmark {
+
+    @Param({"in-process", "subprocess"})
+    private String engine;
+
+    @Param("models/vosk-model-cn-0.22")
+    private String modelPath;
+
+    @Param("")
+    private String audio;
+
+    private VoskAudioRecognitionService service;
+    private ThreadPoolTaskExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (audio.isEmpty() || !Files.isRegularFile(Path.of(audio))) {
+            throw new IllegalStateException("用 -p audio=<音频文件> 指定要识别的文件");
+        }
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.initialize();
+
+        service = new VoskAudioRecognitionService();
+        ReflectionTestUtils.setField(service, "modelPath", modelPath);
+        ReflectionTestUtils.setField(service, "sampleRate", 16000);
+        ReflectionTestUtils.setField(service, "lazyLoad", false);
+        ReflectionTestUtils.setField(service, "engine", engine);
+        ReflectionTestUtils.setField(service, "pythonCommand", "python3");
+        ReflectionTestUtils.setField(service, "subprocessTimeoutSeconds", 600L);
+        ReflectionTestUtils.setField(service, "poolSize", 1);
+        ReflectionTestUtils.setField(service, "chunkSamples", 4000);
+        ReflectionTestUtils.setField(service, "maxAudioSeconds", 1200L);
+        ReflectionTestUtils.setField(service, "partialIntervalMs", 500L);
+        ReflectionTestUtils.setField(service, "voskTaskExecutor", executor);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        service.init();
+        if (!service.isVoskAvailable()) {
+            throw new IllegalStateException(service.getVoskStatusInfo());
+        }
+    }
+
+    @Benchmark
+    public List<VoskAudioRecognitionService.RecognitionResult> recognize() throws Exception {
+        return service.recognizeAudio(audio);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%s RTF=%.3f%n", engine, (double) service.getStats().get("realTimeFactor"));
+        service.shutdown();
+    }
+}
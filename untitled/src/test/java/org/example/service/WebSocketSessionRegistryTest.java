@@ -0,0 +1,139 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * WebSocket 连接注册表测试：总连接数和单用户上限、注销释放名额、信令绑定随连接解除，
+ * 以及绑定与注销并发时不留下指向已关闭会话的绑定
+ */
+class WebSocketSessionRegistryTest {
+
+    private WebSocketSessionRegistry registry;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        registry = new WebSocketSessionRegistry();
+        ReflectionTestUtils.setField(registry, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(registry, "maxConnections", 4);
+        ReflectionTestUtils.setField(registry, "maxConnectionsPerUser", 2);
+        ReflectionTestUtils.setField(registry, "idleTimeoutMillis", 180_000L);
+        registry.init();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void enforcesPerUserAndGlobalLimits() {
+        assertEquals(WebSocketSessionRegistry.Admission.ACCEPTED, registry.tryRegister("s1", "alice", null));
+        assertEquals(WebSocketSessionRegistry.Admission.ACCEPTED, registry.tryRegister("s2", "alice", null));
+        assertEquals(WebSocketSessionRegistry.Admission.REJECTED_PER_USER, registry.tryRegister("s3", "alice", null));
+        assertEquals(WebSocketSessionRegistry.Admission.ACCEPTED, registry.tryRegister("s4", "bob", null));
+        assertEquals(WebSocketSessionRegistry.Admission.ACCEPTED, registry.tryRegister("s5", null, null));
+        assertEquals(WebSocketSessionRegistry.Admission.REJECTED_GLOBAL, registry.tryRegister("s6", "carol", null));
+
+        assertEquals(4, registry.getConnectionCount());
+        assertEquals(Set.of("s1", "s2"), registry.getSessionIds("alice"));
+        assertEquals(1L, registry.getStats().get("rejectedPerUser"));
+        assertEquals(1L, registry.getStats().get("rejectedGlobal"));
+    }
+
+    @Test
+    void unregisterReleasesSlotsAndUserOnlyWhenLastSessionCloses() {
+        registry.tryRegister("s1", "alice", null);
+        registry.tryRegister("s2", "alice", null);
+
+        assertEquals("alice", registry.unregister("s1").getUsername());
+        assertNull(registry.unregister("s1"));
+        assertTrue(registry.isUserConnected("alice"));
+        assertEquals(WebSocketSessionRegistry.Admission.ACCEPTED, registry.tryRegister("s3", "alice", null));
+
+        registry.unregister("s2");
+        registry.unregister("s3");
+        assertFalse(registry.isUserConnected("alice"));
+        assertEquals(0, registry.getConnectionCount());
+    }
+
+    @Test
+    void signalingBindingFollowsTheSession() {
+        registry.tryRegister("s1", "alice", null);
+        registry.tryRegister("s2", "alice", null);
+        assertTrue(registry.bindSignaling("s1", "u1"));
+        // 同一用户在新会话上重新绑定后，旧会话关闭不能解除新绑定
+        assertTrue(registry.bindSignaling("s2", "u1"));
+        registry.unregister("s1");
+        assertEquals("s2", registry.getSignalingSession("u1"));
+
+        registry.unregister("s2");
+        assertFalse(registry.isSignalingOnline("u1"));
+        assertFalse(registry.bindSignaling("s2", "u1"));
+    }
+
+    @Test
+    void unregisterBetweenLookupAndBindLeavesNoStaleBinding() throws Exception {
+        registry.tryRegister("s1", "alice", null);
+        // 绑定线程取到连接记录之后、写入绑定之前，另一个线程注销该连接
+        Map<String, WebSocketSessionRegistry.SessionEntry> sessions = sessions();
+        ReflectionTestUtils.setField(registry, "sessions",
+                new ConcurrentHashMap<String, WebSocketSessionRegistry.SessionEntry>(sessions) {
+                    @Override
+                    public WebSocketSessionRegistry.SessionEntry get(Object key) {
+                        WebSocketSessionRegistry.SessionEntry entry = super.get(key);
+                        if (entry != null && Thread.currentThread().getName().startsWith("bind")) {
+                            try {
+                                executor.submit(() -> registry.unregister((String) key)).get(5, TimeUnit.SECONDS);
+                            } catch (Exception e) {
+                                throw new IllegalStateException(e);
+                            }
+                        }
+                        return entry;
+                    }
+                });
+
+        Thread binder = new Thread(() -> registry.bindSignaling("s1", "u1"), "bind-s1");
+        binder.start();
+        binder.join(5000);
+
+        assertEquals(0, registry.getConnectionCount());
+        assertFalse(registry.isSignalingOnline("u1"));
+        assertEquals(0, registry.getSignalingCount());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, WebSocketSessionRegistry.SessionEntry> sessions() {
+        return (Map<String, WebSocketSessionRegistry.SessionEntry>) ReflectionTestUtils.getField(registry, "sessions");
+    }
+
+    @Test
+    void expireIdleUnregistersClosedTransports() throws Exception {
+        ReflectionTestUtils.setField(registry, "idleTimeoutMillis", 1L);
+        registry.tryRegister("s1", "alice", null);
+        registry.bindSignaling("s1", "u1");
+        Thread.sleep(5);
+
+        assertEquals(1, registry.expireIdle());
+        assertEquals(0, registry.getConnectionCount());
+        assertFalse(registry.isUserConnected("alice"));
+        assertFalse(registry.isSignalingOnline("u1"));
+    }
+}